@@ -0,0 +1,52 @@
+package com.sohu.index.tv.mq.common;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import com.sohu.tv.mq.compress.CompressUtil;
+
+/**
+ * 延迟解析的批量消息，只读
+ *
+ * 每次访问元素时生成新的消息对象，调用getMessage()时才反序列化，列表本身不持有反序列化后的对象；
+ * 消费完一条即可被回收，一批消息占用的内存取决于单条消息而非批量大小。
+ * 需要多次使用同一条消息时应自行持有，重复get会重新反序列化。
+ * 单条消息解析失败时其getMessage()返回null，参见RawMessage.getParseException()。
+ *
+ * @author yongfeigao
+ * @date 2026年10月17日
+ * @param <T>
+ */
+public class LazyMessageList<T> extends AbstractList<MQMessage<T>> implements RandomAccess {
+
+    // 原始消息
+    private List<? extends MQMessage<T>> source;
+
+    // 消息解析器
+    private RawMessage.Parser<T> parser;
+
+    // 解压后的最大长度
+    private int maxDecompressedLength;
+
+    public LazyMessageList(List<? extends MQMessage<T>> source, RawMessage.Parser<T> parser) {
+        this(source, parser, CompressUtil.DEFAULT_MAX_DECOMPRESSED_LENGTH);
+    }
+
+    public LazyMessageList(List<? extends MQMessage<T>> source, RawMessage.Parser<T> parser,
+            int maxDecompressedLength) {
+        this.source = source;
+        this.parser = parser;
+        this.maxDecompressedLength = maxDecompressedLength;
+    }
+
+    @Override
+    public MQMessage<T> get(int index) {
+        return new RawMessage<>(source.get(index).getMessageExt(), parser, maxDecompressedLength);
+    }
+
+    @Override
+    public int size() {
+        return source.size();
+    }
+}
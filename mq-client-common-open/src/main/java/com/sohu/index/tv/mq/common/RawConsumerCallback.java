@@ -0,0 +1,21 @@
+package com.sohu.index.tv.mq.common;
+
+/**
+ * 原始消息消费回调，消息体以只读视图提供，按需反序列化
+ *
+ * 未压缩的消息体不复制；压缩的消息访问消息体或反序列化时解压一次，解压后的数据由RawMessage持有。
+ *
+ * @author yongfeigao
+ * @date 2026年10月17日
+ * @param <T> msg obj
+ */
+public interface RawConsumerCallback<T> {
+
+    /**
+     * 订阅回调方法
+     *
+     * @param message
+     * @throws Exception
+     */
+    void call(RawMessage<T> message) throws Exception;
+}
@@ -0,0 +1,137 @@
+package com.sohu.index.tv.mq.common;
+
+import java.nio.ByteBuffer;
+
+import org.apache.rocketmq.common.message.MessageExt;
+
+import com.sohu.tv.mq.compress.CompressUtil;
+import com.sohu.tv.mq.compress.CompressorEnum;
+
+/**
+ * 原始消息
+ *
+ * 以只读视图直接访问消息体，未压缩的消息不复制；压缩的消息解压到本对象持有的缓冲区，不修改MessageExt。
+ * 调用getMessage()时才反序列化，结果缓存；只转发、路由或计算摘要的消费者可以完全跳过反序列化。
+ * 解析失败时getMessage()返回null，异常可通过getParseException()获取，不影响同批其他消息。
+ *
+ * @author yongfeigao
+ * @date 2026年10月17日
+ * @param <T>
+ */
+public class RawMessage<T> extends MQMessage<T> {
+
+    // 消息解析器
+    private Parser<T> parser;
+
+    // 是否已解析
+    private boolean parsed;
+
+    // 解压后的消息体
+    private byte[] body;
+
+    // 解析异常
+    private Exception parseException;
+
+    // 解压后的最大长度
+    private int maxDecompressedLength;
+
+    public RawMessage(MessageExt messageExt, Parser<T> parser) {
+        this(messageExt, parser, CompressUtil.DEFAULT_MAX_DECOMPRESSED_LENGTH);
+    }
+
+    public RawMessage(MessageExt messageExt, Parser<T> parser, int maxDecompressedLength) {
+        super(null, messageExt);
+        this.parser = parser;
+        this.maxDecompressedLength = maxDecompressedLength;
+    }
+
+    /**
+     * 获取消息体的只读视图，压缩的消息为解压后的数据
+     *
+     * @return
+     * @throws IllegalStateException 解压失败
+     */
+    public ByteBuffer getBodyBuffer() {
+        return ByteBuffer.wrap(getDecompressedBody()).asReadOnlyBuffer();
+    }
+
+    /**
+     * 消息体长度，压缩的消息为解压后的长度
+     *
+     * @return
+     * @throws IllegalStateException 解压失败
+     */
+    public int getBodyLength() {
+        return getDecompressedBody().length;
+    }
+
+    /**
+     * 反序列化消息，仅首次调用时解析
+     *
+     * @return 解析失败时返回null
+     */
+    @Override
+    public T getMessage() {
+        if (!parsed) {
+            try {
+                super.setMessage(parser.parse(this));
+            } catch (Exception e) {
+                parseException = e;
+            }
+            parsed = true;
+        }
+        return super.getMessage();
+    }
+
+    @Override
+    public void setMessage(T message) {
+        super.setMessage(message);
+        parsed = true;
+    }
+
+    public boolean isParsed() {
+        return parsed;
+    }
+
+    /**
+     * 解析异常，未解析或解析成功时为null
+     *
+     * @return
+     */
+    public Exception getParseException() {
+        return parseException;
+    }
+
+    /**
+     * 解压后的消息体，未压缩时即为原消息体
+     *
+     * @return
+     * @throws IllegalStateException 解压失败
+     */
+    public byte[] getDecompressedBody() {
+        if (body == null) {
+            try {
+                body = CompressorEnum.decompressBody(getMessageExt(), maxDecompressedLength);
+            } catch (Exception e) {
+                throw new IllegalStateException("decompress msgId:" + getMessageExt().getMsgId() + " error", e);
+            }
+        }
+        return body;
+    }
+
+    /**
+     * 消息解析器
+     *
+     * @param <T>
+     */
+    public interface Parser<T> {
+        /**
+         * 解压并反序列化
+         *
+         * @param message
+         * @return
+         * @throws Exception
+         */
+        T parse(RawMessage<T> message) throws Exception;
+    }
+}
@@ -0,0 +1,124 @@
+package com.sohu.tv.mq.common;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 客户端运行时，jvm内共享
+ *
+ * 所有客户端的统计采样、指标同步等定时任务共用一个小的调度线程池，线程数、内存和唤醒次数不随客户端数量增长，任务需短小；
+ * 配置更新等阻塞的http任务使用独立的线程池，慢请求不会推迟采样等任务，阻塞操作仍需设置超时；统计上报使用自己的线程。
+ *
+ * @author yongfeigao
+ * @date 2026年10月17日
+ */
+public class ClientRuntime {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClientRuntime.class);
+
+    // 调度线程名前缀
+    public static final String THREAD_NAME_PREFIX = "MQClientRuntime-";
+
+    // 调度线程数
+    public static final int SCHEDULER_THREADS = 2;
+
+    // 阻塞任务线程数
+    public static final int BLOCKING_THREADS = 2;
+
+    private static final ClientRuntime INSTANCE = new ClientRuntime(SCHEDULER_THREADS);
+
+    private ScheduledThreadPoolExecutor scheduledExecutorService;
+
+    // 阻塞任务的调度器
+    private ScheduledThreadPoolExecutor blockingExecutorService;
+
+    ClientRuntime(int threads) {
+        scheduledExecutorService = newScheduledExecutor(threads, THREAD_NAME_PREFIX);
+        blockingExecutorService = newScheduledExecutor(BLOCKING_THREADS, THREAD_NAME_PREFIX + "blocking-");
+    }
+
+    private ScheduledThreadPoolExecutor newScheduledExecutor(int threads, String threadNamePrefix) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(threads, r -> {
+            Thread thread = new Thread(r, threadNamePrefix + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 取消的任务立即移出队列，客户端反复创建关闭时不堆积
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    public static ClientRuntime getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 按固定间隔执行任务，任务异常不会导致后续不再执行
+     *
+     * @param name 任务名，用于日志
+     * @param task
+     * @param initialDelay
+     * @param delay
+     * @param unit
+     * @return 客户端关闭时需取消
+     */
+    public ScheduledFuture<?> scheduleWithFixedDelay(String name, Runnable task, long initialDelay, long delay,
+            TimeUnit unit) {
+        return scheduledExecutorService.scheduleWithFixedDelay(wrap(name, task), initialDelay, delay, unit);
+    }
+
+    /**
+     * 按固定频率执行任务，任务异常不会导致后续不再执行
+     *
+     * @param name 任务名，用于日志
+     * @param task
+     * @param initialDelay
+     * @param period
+     * @param unit
+     * @return 客户端关闭时需取消
+     */
+    public ScheduledFuture<?> scheduleAtFixedRate(String name, Runnable task, long initialDelay, long period,
+            TimeUnit unit) {
+        return scheduledExecutorService.scheduleAtFixedRate(wrap(name, task), initialDelay, period, unit);
+    }
+
+    /**
+     * 按固定间隔执行阻塞的任务(如http)，任务异常不会导致后续不再执行
+     *
+     * @param name 任务名，用于日志
+     * @param task
+     * @param initialDelay
+     * @param delay
+     * @param unit
+     * @return 客户端关闭时需取消
+     */
+    public ScheduledFuture<?> scheduleBlockingWithFixedDelay(String name, Runnable task, long initialDelay,
+            long delay, TimeUnit unit) {
+        return blockingExecutorService.scheduleWithFixedDelay(wrap(name, task), initialDelay, delay, unit);
+    }
+
+    private Runnable wrap(String name, Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (Throwable e) {
+                logger.warn("task:{} err:{}", name, e.toString());
+            }
+        };
+    }
+
+    /**
+     * 待执行的任务数
+     *
+     * @return
+     */
+    public int getTaskCount() {
+        return scheduledExecutorService.getQueue().size();
+    }
+}
@@ -0,0 +1,179 @@
+package com.sohu.tv.mq.common;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 在途窗口，按条数和字节数限制未完成的异步发送
+ *
+ * @author yongfeigao
+ * @date 2026年10月17日
+ */
+public class InFlightWindow {
+
+    // 窗口名
+    private String name;
+
+    // 最大在途条数
+    private volatile int maxCount;
+
+    // 最大在途字节数
+    private volatile long maxBytes;
+
+    // 当前在途条数
+    private int count;
+
+    // 当前在途字节数
+    private long bytes;
+
+    // 等待线程数
+    private int waiters;
+
+    // 被拒绝次数
+    private long rejectedTimes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notFull = lock.newCondition();
+
+    public InFlightWindow(String name, int maxCount, long maxBytes) {
+        this.name = name;
+        this.maxCount = maxCount;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 尝试占用窗口，不等待
+     *
+     * @param size 消息字节数
+     * @return 是否占用成功
+     */
+    public boolean tryAcquire(int size) {
+        lock.lock();
+        try {
+            if (!hasRoom(size)) {
+                ++rejectedTimes;
+                return false;
+            }
+            occupy(size);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 占用窗口，窗口满时最多等待timeoutInMillis
+     *
+     * @param size 消息字节数
+     * @param timeoutInMillis
+     * @return 是否占用成功
+     * @throws InterruptedException
+     */
+    public boolean acquire(int size, long timeoutInMillis) throws InterruptedException {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(timeoutInMillis);
+        lock.lockInterruptibly();
+        try {
+            while (!hasRoom(size)) {
+                if (nanos <= 0) {
+                    ++rejectedTimes;
+                    return false;
+                }
+                ++waiters;
+                try {
+                    nanos = notFull.awaitNanos(nanos);
+                } finally {
+                    --waiters;
+                }
+            }
+            occupy(size);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 释放窗口
+     *
+     * @param size 消息字节数
+     */
+    public void release(int size) {
+        lock.lock();
+        try {
+            --count;
+            bytes -= size;
+            if (waiters > 0) {
+                notFull.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 是否有空间，窗口为空时总是允许，防止大消息永远无法发送
+     *
+     * @param size
+     * @return
+     */
+    private boolean hasRoom(int size) {
+        if (count == 0) {
+            return true;
+        }
+        return count < maxCount && bytes + size <= maxBytes;
+    }
+
+    private void occupy(int size) {
+        ++count;
+        bytes += size;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxCount() {
+        return maxCount;
+    }
+
+    public void setMaxCount(int maxCount) {
+        this.maxCount = maxCount;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public int getCount() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getBytes() {
+        lock.lock();
+        try {
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getRejectedTimes() {
+        lock.lock();
+        try {
+            return rejectedTimes;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
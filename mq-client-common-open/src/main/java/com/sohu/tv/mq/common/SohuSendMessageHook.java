@@ -1,10 +1,14 @@
 package com.sohu.tv.mq.common;
 
+import java.util.Iterator;
+
 import org.apache.rocketmq.client.hook.SendMessageContext;
 import org.apache.rocketmq.client.hook.SendMessageHook;
 import org.apache.rocketmq.client.producer.DefaultMQProducer;
 import org.apache.rocketmq.client.trace.TraceContext;
 import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageBatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,7 +44,7 @@ public class SohuSendMessageHook implements SendMessageHook {
     @Override
     public void sendMessageBefore(SendMessageContext context) {
         if (context.getMqTraceContext() == null) {
-            context.setMqTraceContext(System.currentTimeMillis());
+            context.setMqTraceContext(System.nanoTime());
         }
     }
 
@@ -50,23 +54,40 @@ public class SohuSendMessageHook implements SendMessageHook {
         if (obj == null) {
             return;
         }
-        long start = 0;
-        // 兼容4.4的trace对象
+        long costInMicros = 0;
+        // 兼容4.4的trace对象，只能精确到毫秒
         if (obj instanceof TraceContext) {
-            start = ((TraceContext) obj).getTimeStamp();
+            costInMicros = (System.currentTimeMillis() - ((TraceContext) obj).getTimeStamp()) * 1000;
         } else if (obj instanceof Long) {
-            start = (Long) obj;
+            costInMicros = (System.nanoTime() - (Long) obj) / 1000;
         } else {
             return;
         }
-        long cost = System.currentTimeMillis() - start;
         try {
-            statsHelper.increment(context.getBrokerAddr(), (int) cost, context.getException());
+            statsHelper.incrementInMicros(context.getBrokerAddr(), costInMicros, messageCount(context.getMessage()),
+                    context.getException());
         } catch (Throwable e) {
             logger.warn("stats err", e);
         }
     }
 
+    /**
+     * 消息条数，批量消息按实际条数计算
+     * 
+     * @param message
+     * @return
+     */
+    private int messageCount(Message message) {
+        if (!(message instanceof MessageBatch)) {
+            return 1;
+        }
+        int count = 0;
+        for (Iterator<Message> iterator = ((MessageBatch) message).iterator(); iterator.hasNext(); iterator.next()) {
+            ++count;
+        }
+        return count > 0 ? count : 1;
+    }
+
     /**
      * copy from org.apache.rocketmq.client.ClientConfig.buildMQClientId()
      * 将changeInstanceNameToPID逻辑加了进来
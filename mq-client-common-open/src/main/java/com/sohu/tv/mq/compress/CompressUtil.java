@@ -0,0 +1,67 @@
+package com.sohu.tv.mq.compress;
+
+import java.util.Arrays;
+
+/**
+ * 压缩工具
+ * 
+ * @author yongfeigao
+ * @date 2026年10月17日
+ */
+public class CompressUtil {
+
+    // 原始长度占用的字节数
+    public static final int LENGTH_BYTES = 4;
+
+    // 默认最大解压长度，防止损坏或恶意的长度头导致分配过大的内存
+    public static final int DEFAULT_MAX_DECOMPRESSED_LENGTH = 64 * 1024 * 1024;
+
+    public static void writeLength(byte[] bytes, int length) {
+        bytes[0] = (byte) (length >>> 24);
+        bytes[1] = (byte) (length >>> 16);
+        bytes[2] = (byte) (length >>> 8);
+        bytes[3] = (byte) length;
+    }
+
+    /**
+     * 读取原始长度
+     * 
+     * @param bytes
+     * @param maxLength 最大解压长度
+     * @return
+     * @throws IllegalArgumentException 长度非法时
+     */
+    public static int readLength(byte[] bytes, int maxLength) {
+        if (bytes.length < LENGTH_BYTES) {
+            throw new IllegalArgumentException("illegal compressed length:" + bytes.length);
+        }
+        int length = ((bytes[0] & 0xFF) << 24) | ((bytes[1] & 0xFF) << 16) | ((bytes[2] & 0xFF) << 8)
+                | (bytes[3] & 0xFF);
+        checkDecompressedLength(length, maxLength);
+        return length;
+    }
+
+    /**
+     * 检查解压后的长度
+     * 
+     * @param length
+     * @param maxLength 最大解压长度
+     * @throws IllegalArgumentException 长度为负或超过最大解压长度时
+     */
+    public static void checkDecompressedLength(long length, int maxLength) {
+        if (length < 0 || length > maxLength) {
+            throw new IllegalArgumentException("illegal original length:" + length + ", max:" + maxLength);
+        }
+    }
+
+    public static byte[] grow(byte[] bytes) {
+        return Arrays.copyOf(bytes, bytes.length << 1);
+    }
+
+    public static byte[] trim(byte[] bytes, int length) {
+        if (bytes.length == length) {
+            return bytes;
+        }
+        return Arrays.copyOf(bytes, length);
+    }
+}
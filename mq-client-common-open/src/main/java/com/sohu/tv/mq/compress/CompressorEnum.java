@@ -0,0 +1,133 @@
+package com.sohu.tv.mq.compress;
+
+import java.util.function.Supplier;
+
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageAccessor;
+
+/**
+ * 消息压缩方式
+ * 
+ * 压缩后的消息通过属性PROPERTY_COMPRESSOR标记压缩方式，消费时据此解压
+ * 
+ * @author yongfeigao
+ * @date 2026年10月17日
+ */
+public enum CompressorEnum {
+    DEFLATE("deflate", () -> new DeflateCompressor()),
+    LZ4("lz4", () -> new Lz4Compressor()),
+    ZSTD("zstd", () -> new ZstdCompressor()),
+    ;
+
+    // 消息属性：压缩方式
+    public static final String PROPERTY_COMPRESSOR = "MQ_COMPRESSOR";
+
+    private String name;
+    private Supplier<MessageCompressor> supplier;
+    // 延迟创建，zstd需加载本地库
+    private volatile MessageCompressor messageCompressor;
+
+    private CompressorEnum(String name, Supplier<MessageCompressor> supplier) {
+        this.name = name;
+        this.supplier = supplier;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 获取压缩器
+     * 
+     * @return
+     * @throws IllegalStateException 缺少依赖或无法加载本地库时
+     */
+    public MessageCompressor getMessageCompressor() {
+        if (messageCompressor == null) {
+            synchronized (this) {
+                if (messageCompressor == null) {
+                    try {
+                        messageCompressor = supplier.get();
+                    } catch (LinkageError e) {
+                        throw new IllegalStateException(name + " compressor unavailable, please add dependency", e);
+                    }
+                }
+            }
+        }
+        return messageCompressor;
+    }
+
+    /**
+     * 根据名字获取压缩方式
+     * 
+     * @param name
+     * @return
+     */
+    public static CompressorEnum getEnumByName(String name) {
+        for (CompressorEnum compressorEnum : CompressorEnum.values()) {
+            if (compressorEnum.name.equalsIgnoreCase(name)) {
+                return compressorEnum;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 若消息已压缩，则解压消息体并去掉压缩标记
+     * 
+     * @param message
+     * @return 是否进行了解压
+     * @throws Exception
+     */
+    public static boolean decompress(Message message) throws Exception {
+        return decompress(message, CompressUtil.DEFAULT_MAX_DECOMPRESSED_LENGTH);
+    }
+
+    /**
+     * 若消息已压缩，则解压消息体并去掉压缩标记
+     * 
+     * @param message
+     * @param maxLength 解压后的最大长度
+     * @return 是否进行了解压
+     * @throws Exception
+     */
+    public static boolean decompress(Message message, int maxLength) throws Exception {
+        if (message.getProperty(PROPERTY_COMPRESSOR) == null) {
+            return false;
+        }
+        message.setBody(decompressBody(message, maxLength));
+        MessageAccessor.clearProperty(message, PROPERTY_COMPRESSOR);
+        return true;
+    }
+
+    /**
+     * 获取解压后的消息体，不修改消息
+     * 
+     * @param message
+     * @return 未压缩时返回原消息体
+     * @throws Exception
+     */
+    public static byte[] decompressBody(Message message) throws Exception {
+        return decompressBody(message, CompressUtil.DEFAULT_MAX_DECOMPRESSED_LENGTH);
+    }
+
+    /**
+     * 获取解压后的消息体，不修改消息
+     * 
+     * @param message
+     * @param maxLength 解压后的最大长度
+     * @return 未压缩时返回原消息体
+     * @throws Exception
+     */
+    public static byte[] decompressBody(Message message, int maxLength) throws Exception {
+        String name = message.getProperty(PROPERTY_COMPRESSOR);
+        if (name == null) {
+            return message.getBody();
+        }
+        CompressorEnum compressorEnum = getEnumByName(name);
+        if (compressorEnum == null) {
+            throw new IllegalArgumentException("unknown compressor:" + name);
+        }
+        return compressorEnum.getMessageCompressor().decompress(message.getBody(), maxLength);
+    }
+}
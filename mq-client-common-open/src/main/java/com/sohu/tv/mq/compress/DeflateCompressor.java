@@ -0,0 +1,59 @@
+package com.sohu.tv.mq.compress;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * jdk自带的deflate压缩，格式：[原始长度(4)][deflate数据]
+ * 
+ * @author yongfeigao
+ * @date 2026年10月17日
+ */
+public class DeflateCompressor implements MessageCompressor {
+
+    // 压缩级别，与rocketmq默认的一致
+    public static final int LEVEL = 5;
+
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(LEVEL));
+
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+
+    @Override
+    public byte[] compress(byte[] bytes) {
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setInput(bytes);
+        deflater.finish();
+        byte[] buffer = new byte[CompressUtil.LENGTH_BYTES + bytes.length + 64];
+        CompressUtil.writeLength(buffer, bytes.length);
+        int length = CompressUtil.LENGTH_BYTES;
+        while (!deflater.finished()) {
+            if (length == buffer.length) {
+                buffer = CompressUtil.grow(buffer);
+            }
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+        return CompressUtil.trim(buffer, length);
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes, int maxLength) throws DataFormatException {
+        byte[] result = new byte[CompressUtil.readLength(bytes, maxLength)];
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(bytes, CompressUtil.LENGTH_BYTES, bytes.length - CompressUtil.LENGTH_BYTES);
+        int length = 0;
+        while (length < result.length && !inflater.finished()) {
+            int inflated = inflater.inflate(result, length, result.length - length);
+            if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                break;
+            }
+            length += inflated;
+        }
+        if (length != result.length) {
+            throw new DataFormatException("expect " + result.length + " bytes but inflate " + length);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,38 @@
+package com.sohu.tv.mq.compress;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+/**
+ * lz4压缩，格式：[原始长度(4)][lz4数据]
+ * 解压使用safeDecompressor，数据来自网络，不能信任长度头，损坏的数据不会越界读写
+ * 
+ * @author yongfeigao
+ * @date 2026年10月17日
+ */
+public class Lz4Compressor implements MessageCompressor {
+
+    private LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+
+    private LZ4SafeDecompressor decompressor = LZ4Factory.fastestInstance().safeDecompressor();
+
+    @Override
+    public byte[] compress(byte[] bytes) {
+        byte[] buffer = new byte[CompressUtil.LENGTH_BYTES + compressor.maxCompressedLength(bytes.length)];
+        CompressUtil.writeLength(buffer, bytes.length);
+        int length = compressor.compress(bytes, 0, bytes.length, buffer, CompressUtil.LENGTH_BYTES);
+        return CompressUtil.trim(buffer, CompressUtil.LENGTH_BYTES + length);
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes, int maxLength) {
+        byte[] result = new byte[CompressUtil.readLength(bytes, maxLength)];
+        int length = decompressor.decompress(bytes, CompressUtil.LENGTH_BYTES,
+                bytes.length - CompressUtil.LENGTH_BYTES, result, 0, result.length);
+        if (length != result.length) {
+            throw new IllegalArgumentException("expect " + result.length + " bytes but decompress " + length);
+        }
+        return result;
+    }
+}
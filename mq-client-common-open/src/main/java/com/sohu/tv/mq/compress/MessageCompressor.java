@@ -0,0 +1,37 @@
+package com.sohu.tv.mq.compress;
+
+/**
+ * 消息压缩
+ * 
+ * @author yongfeigao
+ * @date 2026年10月17日
+ */
+public interface MessageCompressor {
+
+    /**
+     * 压缩
+     * 
+     * @param bytes
+     * @return
+     */
+    public byte[] compress(byte[] bytes) throws Exception;
+
+    /**
+     * 解压，解压后的长度不超过默认最大解压长度
+     * 
+     * @param bytes
+     * @return
+     */
+    public default byte[] decompress(byte[] bytes) throws Exception {
+        return decompress(bytes, CompressUtil.DEFAULT_MAX_DECOMPRESSED_LENGTH);
+    }
+
+    /**
+     * 解压
+     * 
+     * @param bytes
+     * @param maxLength 解压后的最大长度，超过时抛出IllegalArgumentException
+     * @return
+     */
+    public byte[] decompress(byte[] bytes, int maxLength) throws Exception;
+}
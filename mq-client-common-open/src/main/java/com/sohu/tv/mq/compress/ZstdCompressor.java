@@ -0,0 +1,31 @@
+package com.sohu.tv.mq.compress;
+
+import com.github.luben.zstd.Zstd;
+
+/**
+ * zstd压缩，zstd帧中自带原始长度
+ * 
+ * @author yongfeigao
+ * @date 2026年10月17日
+ */
+public class ZstdCompressor implements MessageCompressor {
+
+    // 压缩级别，兼顾速度和压缩比
+    public static final int LEVEL = 3;
+
+    @Override
+    public byte[] compress(byte[] bytes) {
+        return Zstd.compress(bytes, LEVEL);
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes, int maxLength) {
+        // compress写入的帧总是带有原始长度，未知(-1)或错误(-2)时为负数
+        long size = Zstd.getFrameContentSize(bytes);
+        CompressUtil.checkDecompressedLength(size, maxLength);
+        if (size == 0) {
+            return new byte[0];
+        }
+        return Zstd.decompress(bytes, (int) size);
+    }
+}
@@ -0,0 +1,83 @@
+package com.sohu.tv.mq.metric;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * 消费线程采样数据
+ *
+ * @author yongfeigao
+ * @date 2026年10月17日
+ */
+public class ConsumeProfile {
+    // 采样开始时间
+    private long startTime;
+    // 采样结束时间
+    private long endTime;
+    // 采样间隔，毫秒
+    private long sampleInterval;
+    // 采样总数
+    private long samples;
+    // 折叠堆栈<->采样数
+    private Map<String, Long> stacks;
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(long startTime) {
+        this.startTime = startTime;
+    }
+
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public void setEndTime(long endTime) {
+        this.endTime = endTime;
+    }
+
+    public long getSampleInterval() {
+        return sampleInterval;
+    }
+
+    public void setSampleInterval(long sampleInterval) {
+        this.sampleInterval = sampleInterval;
+    }
+
+    public long getSamples() {
+        return samples;
+    }
+
+    public void setSamples(long samples) {
+        this.samples = samples;
+    }
+
+    public Map<String, Long> getStacks() {
+        return stacks;
+    }
+
+    public void setStacks(Map<String, Long> stacks) {
+        this.stacks = stacks;
+    }
+
+    /**
+     * 转换为折叠格式，每行为"堆栈 采样数"，按采样数降序，可直接用于生成火焰图
+     *
+     * @return
+     */
+    public String toFolded() {
+        if (stacks == null || stacks.isEmpty()) {
+            return "";
+        }
+        List<Entry<String, Long>> list = new ArrayList<>(stacks.entrySet());
+        list.sort((o1, o2) -> Long.compare(o2.getValue(), o1.getValue()));
+        StringBuilder sb = new StringBuilder();
+        for (Entry<String, Long> entry : list) {
+            sb.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,290 @@
+package com.sohu.tv.mq.metric;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.sohu.tv.mq.common.ClientRuntime;
+
+/**
+ * 消费线程采样分析
+ *
+ * 定时采样正在消费的线程堆栈，聚合为折叠堆栈(火焰图格式)的计数，按时间片存储在环形数组中，只保留最近一段时间。
+ * 获取线程堆栈需要进入安全点，停顿随线程数和堆栈深度增长，因此默认关闭，采样间隔也不宜过短。
+ *
+ * 折叠堆栈存储在所有时间片共享的字典中，时间片只记录堆栈id和计数；字典满时清理已过期时间片不再引用的堆栈，
+ * 仍然没有空间时计入[other]，堆栈数量总有上限。
+ *
+ * @author yongfeigao
+ * @date 2026年10月17日
+ */
+public class ConsumeProfiler {
+
+    // 默认采样间隔，毫秒
+    public static final long DEFAULT_SAMPLE_INTERVAL = 1000;
+
+    // 时间片时长，毫秒
+    public static final long SLOT_MILLIS = 10000;
+
+    // 默认时间片数，保留最近10分钟
+    public static final int DEFAULT_SLOTS = 60;
+
+    // 字典最多保留的堆栈数
+    public static final int MAX_STACKS = 1024;
+
+    // 堆栈最大深度
+    public static final int MAX_DEPTH = 128;
+
+    // 超出保留数量的堆栈
+    public static final String OVERFLOW_STACK = "[other]";
+
+    // 超出保留数量的堆栈id
+    private static final int OVERFLOW_ID = 0;
+
+    private ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    private ConsumeThreadStat consumeThreadStat;
+
+    // 时间片环形数组
+    private Slot[] slots;
+
+    // 堆栈字典，折叠堆栈<->id
+    private Map<String, Integer> stackIdMap = new HashMap<>();
+
+    // 堆栈字典，id<->折叠堆栈
+    private String[] stacks;
+
+    // 可用的堆栈id
+    private Deque<Integer> freeIds = new ArrayDeque<>();
+
+    // 采样间隔
+    private volatile long sampleInterval = DEFAULT_SAMPLE_INTERVAL;
+
+    // 采样任务
+    private ScheduledFuture<?> sampleFuture;
+
+    public ConsumeProfiler(ConsumeThreadStat consumeThreadStat) {
+        this(consumeThreadStat, DEFAULT_SLOTS, MAX_STACKS);
+    }
+
+    public ConsumeProfiler(ConsumeThreadStat consumeThreadStat, int slotSize, int maxStacks) {
+        this.consumeThreadStat = consumeThreadStat;
+        slots = new Slot[slotSize];
+        for (int i = 0; i < slots.length; ++i) {
+            slots[i] = new Slot();
+        }
+        stacks = new String[maxStacks + 1];
+        stacks[OVERFLOW_ID] = OVERFLOW_STACK;
+        for (int i = 1; i < stacks.length; ++i) {
+            freeIds.add(i);
+        }
+    }
+
+    /**
+     * 启动采样
+     *
+     * @param name 任务名
+     * @param sampleInterval 采样间隔，毫秒
+     */
+    public synchronized void start(String name, long sampleInterval) {
+        if (sampleFuture != null) {
+            return;
+        }
+        if (sampleInterval > 0) {
+            this.sampleInterval = sampleInterval;
+        }
+        sampleFuture = ClientRuntime.getInstance().scheduleAtFixedRate(name,
+                () -> sample(System.currentTimeMillis()), this.sampleInterval, this.sampleInterval,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止采样，已采集的数据保留
+     */
+    public synchronized void shutdown() {
+        if (sampleFuture != null) {
+            sampleFuture.cancel(false);
+            sampleFuture = null;
+        }
+    }
+
+    /**
+     * 采样一次
+     *
+     * @param now
+     */
+    void sample(long now) {
+        List<Thread> threads = new ArrayList<>(consumeThreadStat.getThreads());
+        if (threads.isEmpty()) {
+            return;
+        }
+        long[] ids = new long[threads.size()];
+        for (int i = 0; i < ids.length; ++i) {
+            ids[i] = threads.get(i).getId();
+        }
+        // 批量获取，一次安全点取得所有线程的堆栈
+        ThreadInfo[] threadInfos = threadMXBean.getThreadInfo(ids, MAX_DEPTH);
+        List<String> folded = new ArrayList<>(threadInfos.length);
+        for (ThreadInfo threadInfo : threadInfos) {
+            if (threadInfo != null && threadInfo.getStackTrace().length > 0) {
+                folded.add(fold(threadInfo.getStackTrace()));
+            }
+        }
+        add(folded, now);
+    }
+
+    /**
+     * 记录采样的折叠堆栈
+     *
+     * @param folded
+     * @param now
+     */
+    synchronized void add(List<String> folded, long now) {
+        long index = now / SLOT_MILLIS;
+        Slot slot = getSlot(index);
+        for (String stack : folded) {
+            slot.counts.merge(intern(stack, index), 1, Integer::sum);
+        }
+    }
+
+    /**
+     * 获取时间片，过期的时间片重置后复用
+     *
+     * @param index
+     * @return
+     */
+    private Slot getSlot(long index) {
+        Slot slot = slots[(int) (index % slots.length)];
+        if (slot.index != index) {
+            slot.index = index;
+            slot.counts.clear();
+        }
+        return slot;
+    }
+
+    /**
+     * 获取堆栈id，字典满时先清理不再引用的堆栈
+     *
+     * @param stack
+     * @param current 当前时间片序号
+     * @return
+     */
+    private int intern(String stack, long current) {
+        Integer id = stackIdMap.get(stack);
+        if (id != null) {
+            return id;
+        }
+        if (freeIds.isEmpty()) {
+            evict(current);
+        }
+        if (freeIds.isEmpty()) {
+            return OVERFLOW_ID;
+        }
+        id = freeIds.poll();
+        stacks[id] = stack;
+        stackIdMap.put(stack, id);
+        return id;
+    }
+
+    /**
+     * 清理有效时间片不再引用的堆栈
+     *
+     * @param current 当前时间片序号
+     */
+    private void evict(long current) {
+        Set<Integer> referenced = new HashSet<>();
+        for (Slot slot : slots) {
+            if (isExpired(slot, current)) {
+                slot.index = -1;
+                slot.counts.clear();
+            } else {
+                referenced.addAll(slot.counts.keySet());
+            }
+        }
+        for (int id = 1; id < stacks.length; ++id) {
+            if (stacks[id] != null && !referenced.contains(id)) {
+                stackIdMap.remove(stacks[id]);
+                stacks[id] = null;
+                freeIds.add(id);
+            }
+        }
+    }
+
+    private boolean isExpired(Slot slot, long current) {
+        return slot.index < 0 || current - slot.index >= slots.length;
+    }
+
+    /**
+     * 折叠堆栈，由栈底到栈顶，以分号分隔
+     *
+     * @param stackTrace
+     * @return
+     */
+    static String fold(StackTraceElement[] stackTrace) {
+        StringBuilder sb = new StringBuilder(stackTrace.length * 48);
+        for (int i = stackTrace.length - 1; i >= 0; --i) {
+            sb.append(stackTrace[i].getClassName()).append('.').append(stackTrace[i].getMethodName());
+            if (i > 0) {
+                sb.append(';');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 获取聚合的采样数据
+     *
+     * @return
+     */
+    public ConsumeProfile getProfile() {
+        return getProfile(System.currentTimeMillis());
+    }
+
+    synchronized ConsumeProfile getProfile(long now) {
+        long current = now / SLOT_MILLIS;
+        long startIndex = current;
+        long samples = 0;
+        Map<String, Long> stackMap = new HashMap<>();
+        for (Slot slot : slots) {
+            if (isExpired(slot, current)) {
+                continue;
+            }
+            startIndex = Math.min(startIndex, slot.index);
+            for (Map.Entry<Integer, Integer> entry : slot.counts.entrySet()) {
+                stackMap.merge(stacks[entry.getKey()], entry.getValue().longValue(), Long::sum);
+                samples += entry.getValue();
+            }
+        }
+        ConsumeProfile profile = new ConsumeProfile();
+        profile.setStartTime(startIndex * SLOT_MILLIS);
+        profile.setEndTime(now);
+        profile.setSampleInterval(sampleInterval);
+        profile.setSamples(samples);
+        profile.setStacks(stackMap);
+        return profile;
+    }
+
+    public long getSampleInterval() {
+        return sampleInterval;
+    }
+
+    /**
+     * 时间片
+     */
+    private static class Slot {
+        // 时间片序号
+        private long index = -1;
+        // 堆栈id<->采样数
+        private Map<Integer, Integer> counts = new HashMap<>();
+    }
+}
@@ -17,6 +17,8 @@ public class ConsumeStatManager {
 
     private Map<String, ConsumeFailedStat> consumeFailedMetricsMap = new HashMap<>();
 
+    private Map<String, ConsumeProfiler> consumeProfilerMap = new HashMap<>();
+
     private ConsumeStatManager() {
     }
 
@@ -30,7 +32,9 @@ public class ConsumeStatManager {
      * @param consuemrGroup
      */
     public void register(String consuemrGroup) {
-        consumeThreadMetricsMap.put(consuemrGroup, new ConsumeThreadStat());
+        ConsumeThreadStat consumeThreadStat = new ConsumeThreadStat();
+        consumeThreadMetricsMap.put(consuemrGroup, consumeThreadStat);
+        consumeProfilerMap.put(consuemrGroup, new ConsumeProfiler(consumeThreadStat));
         consumeFailedMetricsMap.put(consuemrGroup, new ConsumeFailedStat(10));
     }
 
@@ -41,4 +45,8 @@ public class ConsumeStatManager {
     public ConsumeFailedStat getConsumeFailedMetrics(String consuemrGroup) {
         return consumeFailedMetricsMap.get(consuemrGroup);
     }
+
+    public ConsumeProfiler getConsumeProfiler(String consuemrGroup) {
+        return consumeProfilerMap.get(consuemrGroup);
+    }
 }
@@ -6,8 +6,13 @@ package com.sohu.tv.mq.metric;
  * @date 2021年4月14日
  */
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -45,11 +50,35 @@ public class ConsumeThreadStat {
      */
     public List<StackTraceMetric> getAll() {
         List<StackTraceMetric> list = new LinkedList<>();
-        threadMessageMetricMap.forEach((thread, messageMetric) -> {
+        List<Entry<Thread, MessageMetric>> entryList = new ArrayList<>(threadMessageMetricMap.entrySet());
+        if (entryList.isEmpty()) {
+            return list;
+        }
+        long[] ids = new long[entryList.size()];
+        for (int i = 0; i < ids.length; ++i) {
+            ids[i] = entryList.get(i).getKey().getId();
+        }
+        // 一次批量获取所有线程的堆栈
+        ThreadInfo[] threadInfos = ManagementFactory.getThreadMXBean().getThreadInfo(ids, Integer.MAX_VALUE);
+        for (int i = 0; i < threadInfos.length; ++i) {
+            // 线程已结束
+            if (threadInfos[i] == null) {
+                continue;
+            }
+            MessageMetric messageMetric = entryList.get(i).getValue();
             StackTraceMetric threadMetric = new StackTraceMetric(messageMetric.getStartTime(), messageMetric.getMsgIdList());
-            threadMetric.initThreadMetric(thread);
+            threadMetric.initThreadMetric(threadInfos[i]);
             list.add(threadMetric);
-        });
+        }
         return list;
     }
+
+    /**
+     * 获取正在消费的线程
+     * 
+     * @return
+     */
+    public Set<Thread> getThreads() {
+        return threadMessageMetricMap.keySet();
+    }
 }
@@ -0,0 +1,139 @@
+package com.sohu.tv.mq.metric;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 实时指标，jvm内共享
+ *
+ * 在发送、消费等热点路径上直接记录到micrometer的全局注册表，抓取时无需再计算；
+ * 未引入micrometer时所有方法为空操作。
+ *
+ * @author yongfeigao
+ * @date 2026年10月17日
+ */
+public class MQMeters {
+
+    // 发送耗时
+    public static final String SEND = "rocketmq.send";
+    // 发送的消息数
+    public static final String SEND_MESSAGES = "rocketmq.send.messages";
+    // 发送失败次数
+    public static final String SEND_ERRORS = "rocketmq.send.errors";
+    // 异步发送在途消息数
+    public static final String SEND_INFLIGHT_MESSAGES = "rocketmq.send.inflight.messages";
+    // 异步发送在途字节数
+    public static final String SEND_INFLIGHT_BYTES = "rocketmq.send.inflight.bytes";
+    // 消费耗时
+    public static final String CONSUME = "rocketmq.consume";
+    // 消费的消息数
+    public static final String CONSUME_MESSAGES = "rocketmq.consume.messages";
+    // 消费限速等待时间
+    public static final String CONSUME_LIMIT_WAIT = "rocketmq.consume.limit.wait";
+    // 本地队列中待消费的消息数
+    public static final String PROCESS_QUEUE_MESSAGES = "rocketmq.consume.process.queue.messages";
+
+    private static MicrometerMeters meters;
+
+    static {
+        try {
+            if (null != Class.forName("io.micrometer.core.instrument.Metrics")) {
+                meters = new MicrometerMeters();
+            }
+        } catch (Throwable t) {
+            // ignore
+        }
+    }
+
+    public static boolean isEnabled() {
+        return meters != null;
+    }
+
+    /**
+     * 记录发送
+     *
+     * @param group
+     * @param broker
+     * @param timeInMicros
+     * @param count 消息条数
+     * @param error 是否失败
+     */
+    public static void recordSend(String group, String broker, long timeInMicros, int count, boolean error) {
+        if (meters != null) {
+            meters.recordSend(group, broker, timeInMicros, count, error);
+        }
+    }
+
+    /**
+     * 记录消费
+     *
+     * @param group
+     * @param timeInNanos
+     * @param count 消息条数
+     * @param success 是否成功
+     */
+    public static void recordConsume(String group, long timeInNanos, int count, boolean success) {
+        if (meters != null) {
+            meters.recordConsume(group, timeInNanos, count, success);
+        }
+    }
+
+    /**
+     * 记录消费限速等待时间
+     *
+     * @param group
+     * @param timeInNanos
+     */
+    public static void recordLimitWait(String group, long timeInNanos) {
+        if (meters != null) {
+            meters.recordLimitWait(group, timeInNanos);
+        }
+    }
+
+    /**
+     * 移除生产者组的发送指标，生产者关闭时调用
+     *
+     * @param group
+     */
+    public static void removeSend(String group) {
+        if (meters != null) {
+            meters.removeSend(group);
+        }
+    }
+
+    /**
+     * 移除消费者组的消费指标，消费者关闭时调用
+     *
+     * @param group
+     */
+    public static void removeConsume(String group) {
+        if (meters != null) {
+            meters.removeConsume(group);
+        }
+    }
+
+    /**
+     * 注册仪表，抓取时调用function读取当前值
+     *
+     * @param name
+     * @param obj
+     * @param function
+     * @param tags 键值对
+     */
+    public static <T> void gauge(String name, T obj, ToDoubleFunction<T> function, String... tags) {
+        if (meters != null) {
+            meters.gauge(name, obj, function, tags);
+        }
+    }
+
+    /**
+     * 移除仪表
+     *
+     * @param name
+     * @param tags 键值对
+     */
+    public static void removeGauge(String name, String... tags) {
+        if (meters != null) {
+            meters.removeGauge(name, tags);
+        }
+    }
+}
@@ -5,6 +5,7 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
@@ -12,6 +13,7 @@ import javax.management.ObjectName;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.sohu.tv.mq.common.InFlightWindow;
 import com.sohu.tv.mq.stats.ConsumeStats;
 import com.sohu.tv.mq.stats.InvokeStats.InvokeStatsResult;
 import com.sohu.tv.mq.stats.StatsHelper;
@@ -32,6 +34,9 @@ public class MQMetricsExporter implements MQMetricsExporterMBean {
     private List<StatsHelper> statsHelperList = new LinkedList<>();
 
     private List<ConsumeStats> consumeStatsList = new LinkedList<>();
+
+    // 生产者关闭时移除，使用写时复制以便遍历
+    private List<InFlightWindow> inFlightWindowList = new CopyOnWriteArrayList<>();
     
     private static boolean canMetrics;
     
@@ -68,6 +73,19 @@ public class MQMetricsExporter implements MQMetricsExporterMBean {
         registerMBean();
     }
 
+    public void add(InFlightWindow inFlightWindow) {
+        inFlightWindowList.add(inFlightWindow);
+        registerMBean();
+    }
+
+    public void remove(InFlightWindow inFlightWindow) {
+        inFlightWindowList.remove(inFlightWindow);
+    }
+
+    public List<InFlightWindow> getInFlightWindowList() {
+        return inFlightWindowList;
+    }
+
     /**
      * 获取生产统计指标
      * 
@@ -169,6 +187,24 @@ public class MQMetricsExporter implements MQMetricsExporterMBean {
         return toMap(getConsumerMetricsList());
     }
     
+    @Override
+    public Map<String, Map<String, Number>> getProducerInFlight() {
+        if (inFlightWindowList.size() == 0) {
+            return null;
+        }
+        Map<String, Map<String, Number>> map = new HashMap<>();
+        for (InFlightWindow inFlightWindow : inFlightWindowList) {
+            Map<String, Number> metricsMap = new HashMap<>();
+            metricsMap.put("inFlightCount", inFlightWindow.getCount());
+            metricsMap.put("inFlightBytes", inFlightWindow.getBytes());
+            metricsMap.put("maxInFlightCount", inFlightWindow.getMaxCount());
+            metricsMap.put("maxInFlightBytes", inFlightWindow.getMaxBytes());
+            metricsMap.put("rejectedTimes", inFlightWindow.getRejectedTimes());
+            map.put(inFlightWindow.getName(), metricsMap);
+        }
+        return map;
+    }
+
     private Map<String, Map<String, Number>> toMap(List<MQMetrics> list) {
         if (list.size() == 0) {
             return null;
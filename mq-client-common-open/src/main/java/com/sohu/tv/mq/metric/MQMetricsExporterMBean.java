@@ -16,4 +16,11 @@ public interface MQMetricsExporterMBean {
      * @return
      */
     public Map<String, Map<String, Number>> getConsumerMetrics();
+
+    /**
+     * 获取生产者异步发送在途统计
+     * 
+     * @return
+     */
+    public Map<String, Map<String, Number>> getProducerInFlight();
 }
@@ -3,14 +3,14 @@ package com.sohu.tv.mq.metric;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.sohu.tv.mq.common.ClientRuntime;
+
 import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.Tags;
 
@@ -28,13 +28,8 @@ public class MQMetricsMicrometer {
     private Map<String, Map<String, Map<String, AtomicLong>>> metricMap = new HashMap<>();
 
     public MQMetricsMicrometer() {
-        // 指标收集线程
-        Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
-            @Override
-            public Thread newThread(Runnable r) {
-                return new Thread(r, "MQMetricsMicrometer");
-            }
-        }).scheduleWithFixedDelay(new Runnable() {
+        // 指标收集，使用jvm内共享的调度线程
+        ClientRuntime.getInstance().scheduleWithFixedDelay("MQMetricsMicrometer", new Runnable() {
             @Override
             public void run() {
                 try {
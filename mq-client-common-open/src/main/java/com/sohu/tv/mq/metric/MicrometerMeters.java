@@ -0,0 +1,148 @@
+package com.sohu.tv.mq.metric;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * micrometer实时指标，仅在引入micrometer时由{@link MQMeters}加载
+ *
+ * 按group、broker缓存已注册的指标，热点路径只有map查找，不访问注册表。
+ *
+ * @author yongfeigao
+ * @date 2026年10月17日
+ */
+class MicrometerMeters {
+
+    // 直方图的最小值
+    private static final Duration MIN_EXPECTED = Duration.ofMillis(1);
+
+    // 直方图的最大值
+    private static final Duration MAX_EXPECTED = Duration.ofSeconds(10);
+
+    private MeterRegistry registry = Metrics.globalRegistry;
+
+    // group<->broker<->发送指标
+    private ConcurrentMap<String, ConcurrentMap<String, SendMeters>> sendMetersMap = new ConcurrentHashMap<>();
+
+    // group<->消费指标
+    private ConcurrentMap<String, ConsumeMeters> consumeMetersMap = new ConcurrentHashMap<>();
+
+    public void recordSend(String group, String broker, long timeInMicros, int count, boolean error) {
+        ConcurrentMap<String, SendMeters> brokerMap = sendMetersMap.get(group);
+        if (brokerMap == null) {
+            brokerMap = sendMetersMap.computeIfAbsent(group, k -> new ConcurrentHashMap<>());
+        }
+        SendMeters sendMeters = brokerMap.get(broker);
+        if (sendMeters == null) {
+            sendMeters = brokerMap.computeIfAbsent(broker, k -> new SendMeters(group, broker));
+        }
+        sendMeters.timer.record(timeInMicros, TimeUnit.MICROSECONDS);
+        sendMeters.messages.increment(count);
+        if (error) {
+            sendMeters.errors.increment();
+        }
+    }
+
+    public void recordConsume(String group, long timeInNanos, int count, boolean success) {
+        ConsumeMeters consumeMeters = getConsumeMeters(group);
+        if (success) {
+            consumeMeters.okTimer.record(timeInNanos, TimeUnit.NANOSECONDS);
+        } else {
+            consumeMeters.failTimer.record(timeInNanos, TimeUnit.NANOSECONDS);
+        }
+        consumeMeters.messages.increment(count);
+    }
+
+    public void recordLimitWait(String group, long timeInNanos) {
+        getConsumeMeters(group).limitWaitTimer.record(timeInNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private ConsumeMeters getConsumeMeters(String group) {
+        ConsumeMeters consumeMeters = consumeMetersMap.get(group);
+        if (consumeMeters == null) {
+            consumeMeters = consumeMetersMap.computeIfAbsent(group, ConsumeMeters::new);
+        }
+        return consumeMeters;
+    }
+
+    public void removeSend(String group) {
+        ConcurrentMap<String, SendMeters> brokerMap = sendMetersMap.remove(group);
+        if (brokerMap == null) {
+            return;
+        }
+        for (SendMeters sendMeters : brokerMap.values()) {
+            registry.remove(sendMeters.timer);
+            registry.remove(sendMeters.messages);
+            registry.remove(sendMeters.errors);
+        }
+    }
+
+    public void removeConsume(String group) {
+        ConsumeMeters consumeMeters = consumeMetersMap.remove(group);
+        if (consumeMeters == null) {
+            return;
+        }
+        registry.remove(consumeMeters.okTimer);
+        registry.remove(consumeMeters.failTimer);
+        registry.remove(consumeMeters.messages);
+        registry.remove(consumeMeters.limitWaitTimer);
+    }
+
+    public <T> void gauge(String name, T obj, ToDoubleFunction<T> function, String... tags) {
+        Gauge.builder(name, obj, function).tags(tags).strongReference(true).register(registry);
+    }
+
+    public void removeGauge(String name, String... tags) {
+        Meter meter = registry.find(name).tags(tags).gauge();
+        if (meter != null) {
+            registry.remove(meter);
+        }
+    }
+
+    private Timer timer(String name, String... tags) {
+        return Timer.builder(name).tags(tags).publishPercentileHistogram().minimumExpectedValue(MIN_EXPECTED)
+                .maximumExpectedValue(MAX_EXPECTED).register(registry);
+    }
+
+    /**
+     * 发送指标
+     */
+    private class SendMeters {
+        private Timer timer;
+        private Counter messages;
+        private Counter errors;
+
+        public SendMeters(String group, String broker) {
+            timer = timer(MQMeters.SEND, "group", group, "broker", broker);
+            messages = registry.counter(MQMeters.SEND_MESSAGES, "group", group, "broker", broker);
+            errors = registry.counter(MQMeters.SEND_ERRORS, "group", group, "broker", broker);
+        }
+    }
+
+    /**
+     * 消费指标
+     */
+    private class ConsumeMeters {
+        private Timer okTimer;
+        private Timer failTimer;
+        private Counter messages;
+        private Timer limitWaitTimer;
+
+        public ConsumeMeters(String group) {
+            okTimer = timer(MQMeters.CONSUME, "group", group, "status", "ok");
+            failTimer = timer(MQMeters.CONSUME, "group", group, "status", "fail");
+            messages = registry.counter(MQMeters.CONSUME_MESSAGES, "group", group);
+            limitWaitTimer = timer(MQMeters.CONSUME_LIMIT_WAIT, "group", group);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.sohu.tv.mq.metric;
 
 import java.lang.Thread.State;
+import java.lang.management.ThreadInfo;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
@@ -46,6 +47,13 @@ public class StackTraceMetric {
         this.stackTraceArray = thread.getStackTrace();
     }
 
+    public void initThreadMetric(ThreadInfo threadInfo) {
+        this.id = threadInfo.getThreadId();
+        this.name = threadInfo.getThreadName();
+        this.state = threadInfo.getThreadState();
+        this.stackTraceArray = threadInfo.getStackTrace();
+    }
+
     public long getId() {
         return id;
     }
@@ -0,0 +1,153 @@
+package com.sohu.tv.mq.metric;
+
+/**
+ * 时间段消费进度
+ *
+ * @author yongfeigao
+ * @date 2026年10月17日
+ */
+public class TimespanConsumeProgress {
+    // 消费的topic
+    private String topic;
+    // 消息开始时间
+    private long start;
+    // 消息结束时间
+    private long end;
+    // 消费开始时间
+    private long beginTime;
+    // 消费结束时间，未结束为0
+    private long finishTime;
+    // 队列数
+    private int queues;
+    // 已完成的队列数
+    private int finishedQueues;
+    // 失败的队列数
+    private int failedQueues;
+    // 需拉取的偏移量总数
+    private long totalOffset;
+    // 已拉取的偏移量数
+    private long pulledOffset;
+    // 已消费的消息数
+    private long consumed;
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public void setStart(long start) {
+        this.start = start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public void setEnd(long end) {
+        this.end = end;
+    }
+
+    public long getBeginTime() {
+        return beginTime;
+    }
+
+    public void setBeginTime(long beginTime) {
+        this.beginTime = beginTime;
+    }
+
+    public long getFinishTime() {
+        return finishTime;
+    }
+
+    public void setFinishTime(long finishTime) {
+        this.finishTime = finishTime;
+    }
+
+    public int getQueues() {
+        return queues;
+    }
+
+    public void setQueues(int queues) {
+        this.queues = queues;
+    }
+
+    public int getFinishedQueues() {
+        return finishedQueues;
+    }
+
+    public void setFinishedQueues(int finishedQueues) {
+        this.finishedQueues = finishedQueues;
+    }
+
+    public int getFailedQueues() {
+        return failedQueues;
+    }
+
+    public void setFailedQueues(int failedQueues) {
+        this.failedQueues = failedQueues;
+    }
+
+    public long getTotalOffset() {
+        return totalOffset;
+    }
+
+    public void setTotalOffset(long totalOffset) {
+        this.totalOffset = totalOffset;
+    }
+
+    public long getPulledOffset() {
+        return pulledOffset;
+    }
+
+    public void setPulledOffset(long pulledOffset) {
+        this.pulledOffset = pulledOffset;
+    }
+
+    public long getConsumed() {
+        return consumed;
+    }
+
+    public void setConsumed(long consumed) {
+        this.consumed = consumed;
+    }
+
+    public boolean isFinished() {
+        return finishTime > 0;
+    }
+
+    /**
+     * 进度百分比
+     */
+    public int getPercent() {
+        if (totalOffset <= 0) {
+            return isFinished() ? 100 : 0;
+        }
+        return (int) (pulledOffset * 100 / totalOffset);
+    }
+
+    /**
+     * 消费速度，条/秒
+     */
+    public long getTps() {
+        long use = (isFinished() ? finishTime : System.currentTimeMillis()) - beginTime;
+        if (use <= 0) {
+            return 0;
+        }
+        return consumed * 1000 / use;
+    }
+
+    @Override
+    public String toString() {
+        return "TimespanConsumeProgress [topic=" + topic + ", start=" + start + ", end=" + end + ", beginTime="
+                + beginTime + ", finishTime=" + finishTime + ", queues=" + queues + ", finishedQueues="
+                + finishedQueues + ", failedQueues=" + failedQueues + ", totalOffset=" + totalOffset
+                + ", pulledOffset=" + pulledOffset + ", consumed=" + consumed + "]";
+    }
+}
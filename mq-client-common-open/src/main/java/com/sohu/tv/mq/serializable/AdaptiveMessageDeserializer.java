@@ -0,0 +1,318 @@
+package com.sohu.tv.mq.serializable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.rocketmq.common.message.MessageConst;
+import org.apache.rocketmq.common.message.MessageExt;
+
+import com.sohu.tv.mq.util.JSONUtil.Binding;
+
+/**
+ * 自适应反序列化器
+ * 
+ * 配置了自定义(非内置)的序列化器时总是优先使用，标识和魔数只能识别内置的序列化器，不能覆盖自定义格式。
+ * 否则按如下顺序确定序列化器，只有在识别失败时才会逐个尝试：
+ * 1. 消息属性中的序列化标识
+ * 2. 类型化序列化的魔数，仅在配置了类型化序列化时识别，魔数可能与其他格式的首字节相同
+ * 3. 该生产者组上次成功使用的序列化器
+ * 4. 配置的序列化器，不符合其格式特征时使用其他符合格式特征的序列化器
+ * 
+ * 格式特征通过消息头尾字节判断，避免用异常控制流程。
+ * 识别为类型化序列化时，使用绑定了消费类型的实例，以便生产者和消费者的类名不同时也能反序列化。
+ * 
+ * @author yongfeigao
+ * @date 2026年10月17日
+ */
+@SuppressWarnings("unchecked")
+public class AdaptiveMessageDeserializer {
+
+    // protostuff序列化的VO以字段1的group开始标识开始，以group结束标识结束
+    private static final byte PROTOSTUFF_START_GROUP = 0x0B;
+    private static final byte PROTOSTUFF_END_GROUP = 0x0C;
+
+    // 配置的序列化器
+    private MessageSerializer<Object> messageSerializer;
+
+    // 配置的序列化器是否为自定义的
+    private boolean customSerializer;
+
+    // 配置的序列化器是否为类型化的
+    private boolean typedSerializer;
+
+    // 类型化序列化使用的实例
+    private MessageSerializer<Object> typedMessageSerializer;
+
+    // 生产者组<->上次成功的序列化器
+    private ConcurrentMap<String, MessageSerializer<Object>> winnerMap = new ConcurrentHashMap<>();
+
+    // 通过消息属性识别的次数
+    private LongAdder markerHits = new LongAdder();
+    // 通过魔数识别的次数
+    private LongAdder magicHits = new LongAdder();
+    // 通过生产者组缓存识别的次数
+    private LongAdder cacheHits = new LongAdder();
+    // 使用配置的序列化器的次数
+    private LongAdder configuredHits = new LongAdder();
+    // 使用其他序列化器的次数
+    private LongAdder fallbackHits = new LongAdder();
+    // 识别的序列化器反序列化失败，逐个尝试的次数
+    private LongAdder retries = new LongAdder();
+    // 全部失败的次数
+    private LongAdder failures = new LongAdder();
+
+    public AdaptiveMessageDeserializer(MessageSerializer<Object> messageSerializer) {
+        this(messageSerializer, null);
+    }
+
+    /**
+     * @param messageSerializer 配置的序列化器
+     * @param typedMessageSerializer 绑定了消费类型的类型化序列化器，为null时使用内置的实例，
+     *        配置的序列化器为自行创建的类型化序列化器时优先使用配置的
+     */
+    public AdaptiveMessageDeserializer(MessageSerializer<Object> messageSerializer,
+            TypedMessageSerializer<?> typedMessageSerializer) {
+        this.messageSerializer = messageSerializer;
+        this.customSerializer = messageSerializer != null
+                && MessageSerializerEnum.getEnumBySerializer(messageSerializer) == null;
+        this.typedSerializer = MessageSerializerEnum
+                .getEnumBySerializer(messageSerializer) == MessageSerializerEnum.TYPED_PROTOSTUF;
+        if (typedSerializer && messageSerializer != MessageSerializerEnum.TYPED_PROTOSTUF.getMessageSerializer()) {
+            this.typedMessageSerializer = messageSerializer;
+        } else if (typedMessageSerializer == null) {
+            this.typedMessageSerializer = (MessageSerializer<Object>) MessageSerializerEnum.TYPED_PROTOSTUF
+                    .getMessageSerializer();
+        } else {
+            this.typedMessageSerializer = (MessageSerializer<Object>) typedMessageSerializer;
+        }
+    }
+
+    /**
+     * 反序列化
+     * 
+     * @param me
+     * @return
+     * @throws Exception 所有序列化器都失败时抛出第一个异常
+     */
+    public Object deserialize(MessageExt me) throws Exception {
+        return deserialize(me, null);
+    }
+
+    /**
+     * 反序列化，消息为字符串格式时，直接从字节解析为json绑定的类型，不经过中间字符串
+     * 
+     * @param me
+     * @param jsonBinding 绑定了消费类型的json，可为null
+     * @return
+     * @throws Exception 所有序列化器都失败时抛出第一个异常
+     */
+    public Object deserialize(MessageExt me, Binding<?> jsonBinding) throws Exception {
+        return deserialize(me, me.getBody(), jsonBinding);
+    }
+
+    /**
+     * 反序列化指定的消息体，如解压到本地缓冲区的消息体
+     * 
+     * @param me 用于获取消息属性
+     * @param bytes 消息体
+     * @param jsonBinding 绑定了消费类型的json，可为null
+     * @return
+     * @throws Exception 所有序列化器都失败时抛出第一个异常
+     */
+    public Object deserialize(MessageExt me, byte[] bytes, Binding<?> jsonBinding) throws Exception {
+        String producerGroup = me.getProperty(MessageConst.PROPERTY_PRODUCER_GROUP);
+        MessageSerializer<Object> selected = select(me, bytes, producerGroup);
+        if (jsonBinding != null && selected instanceof StringSerializer) {
+            Object object = jsonBinding.parse(bytes);
+            cacheWinner(producerGroup, selected);
+            return object;
+        }
+        Exception excp = null;
+        try {
+            return deserialize(selected, bytes, producerGroup);
+        } catch (Exception e) {
+            excp = e;
+        }
+        // 识别错误，逐个尝试符合格式特征的序列化器
+        retries.increment();
+        for (MessageSerializerEnum messageSerializerEnum : MessageSerializerEnum.values()) {
+            MessageSerializer<Object> candidate = getMessageSerializer(messageSerializerEnum);
+            if (candidate == selected || !matches(messageSerializerEnum, bytes)) {
+                continue;
+            }
+            try {
+                return deserialize(candidate, bytes, producerGroup);
+            } catch (Exception e) {
+                // 继续尝试
+            }
+        }
+        failures.increment();
+        throw excp;
+    }
+
+    private Object deserialize(MessageSerializer<Object> messageSerializer, byte[] bytes, String producerGroup)
+            throws Exception {
+        Object object = messageSerializer.deserialize(bytes);
+        cacheWinner(producerGroup, messageSerializer);
+        return object;
+    }
+
+    private void cacheWinner(String producerGroup, MessageSerializer<Object> messageSerializer) {
+        if (producerGroup != null && winnerMap.get(producerGroup) != messageSerializer) {
+            winnerMap.put(producerGroup, messageSerializer);
+        }
+    }
+
+    /**
+     * 选择序列化器
+     * 
+     * @param me
+     * @param bytes
+     * @param producerGroup
+     * @return
+     */
+    MessageSerializer<Object> select(MessageExt me, byte[] bytes, String producerGroup) {
+        // 自定义的序列化器
+        if (customSerializer) {
+            configuredHits.increment();
+            return messageSerializer;
+        }
+        // 消息属性
+        String type = me.getProperty(MessageSerializerEnum.PROPERTY_SERIALIZER);
+        if (type != null) {
+            MessageSerializerEnum messageSerializerEnum = getEnumByType(type);
+            if (messageSerializerEnum != null) {
+                markerHits.increment();
+                return getMessageSerializer(messageSerializerEnum);
+            }
+        }
+        // 魔数
+        if (typedSerializer && TypedMessageSerializer.isTyped(bytes)) {
+            magicHits.increment();
+            return typedMessageSerializer;
+        }
+        // 生产者组缓存
+        if (producerGroup != null) {
+            MessageSerializer<Object> winner = winnerMap.get(producerGroup);
+            if (winner != null && matches(winner, bytes)) {
+                cacheHits.increment();
+                return winner;
+            }
+        }
+        // 配置的序列化器
+        if (messageSerializer != null && matches(messageSerializer, bytes)) {
+            configuredHits.increment();
+            return typedSerializer ? typedMessageSerializer : messageSerializer;
+        }
+        // 其他符合格式特征的序列化器
+        for (MessageSerializerEnum messageSerializerEnum : MessageSerializerEnum.values()) {
+            if (matches(messageSerializerEnum, bytes)) {
+                fallbackHits.increment();
+                return getMessageSerializer(messageSerializerEnum);
+            }
+        }
+        fallbackHits.increment();
+        return (MessageSerializer<Object>) MessageSerializerEnum.STRING.getMessageSerializer();
+    }
+
+    /**
+     * 获取内置序列化器对应的实例，类型化序列化使用绑定了消费类型的实例
+     * 
+     * @param messageSerializerEnum
+     * @return
+     */
+    private MessageSerializer<Object> getMessageSerializer(MessageSerializerEnum messageSerializerEnum) {
+        if (messageSerializerEnum == MessageSerializerEnum.TYPED_PROTOSTUF) {
+            return typedMessageSerializer;
+        }
+        return (MessageSerializer<Object>) messageSerializerEnum.getMessageSerializer();
+    }
+
+    private MessageSerializerEnum getEnumByType(String type) {
+        try {
+            return MessageSerializerEnum.getEnumByType(Integer.parseInt(type));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 数据是否符合序列化器的格式特征，非内置的序列化器总是符合
+     * 
+     * @param messageSerializer
+     * @param bytes
+     * @return
+     */
+    private boolean matches(MessageSerializer<?> messageSerializer, byte[] bytes) {
+        MessageSerializerEnum messageSerializerEnum = MessageSerializerEnum.getEnumBySerializer(messageSerializer);
+        if (messageSerializerEnum == null) {
+            return true;
+        }
+        return matches(messageSerializerEnum, bytes);
+    }
+
+    /**
+     * 数据是否符合序列化器的格式特征
+     * 
+     * @param messageSerializerEnum
+     * @param bytes
+     * @return
+     */
+    static boolean matches(MessageSerializerEnum messageSerializerEnum, byte[] bytes) {
+        switch (messageSerializerEnum) {
+            case TYPED_PROTOSTUF:
+                // jdk类型仍使用VO格式
+                return TypedMessageSerializer.isTyped(bytes) || isProtostuff(bytes);
+            case PROTOSTUF:
+                return isProtostuff(bytes);
+            case STRING:
+                return !isProtostuff(bytes) && !TypedMessageSerializer.isTyped(bytes);
+            default:
+                return true;
+        }
+    }
+
+    private static boolean isProtostuff(byte[] bytes) {
+        return bytes.length >= 2 && bytes[0] == PROTOSTUFF_START_GROUP
+                && bytes[bytes.length - 1] == PROTOSTUFF_END_GROUP;
+    }
+
+    /**
+     * 统计数据
+     * 
+     * @return
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> map = new LinkedHashMap<>();
+        map.put("markerHits", markerHits.sum());
+        map.put("magicHits", magicHits.sum());
+        map.put("cacheHits", cacheHits.sum());
+        map.put("configuredHits", configuredHits.sum());
+        map.put("fallbackHits", fallbackHits.sum());
+        map.put("retries", retries.sum());
+        map.put("failures", failures.sum());
+        return map;
+    }
+
+    /**
+     * 回退率：未通过标识、魔数、缓存或配置的序列化器直接识别的比例
+     * 
+     * @return
+     */
+    public double getFallbackRate() {
+        long fallback = fallbackHits.sum() + retries.sum();
+        long total = markerHits.sum() + magicHits.sum() + cacheHits.sum() + configuredHits.sum()
+                + fallbackHits.sum();
+        if (total == 0) {
+            return 0;
+        }
+        return (double) fallback / total;
+    }
+
+    public MessageSerializer<Object> getMessageSerializer() {
+        return messageSerializer;
+    }
+}
@@ -1,5 +1,6 @@
 package com.sohu.tv.mq.serializable;
 
+import java.io.OutputStream;
 
 import io.protostuff.LinkedBuffer;
 import io.protostuff.ProtostuffIOUtil;
@@ -9,12 +10,21 @@ import io.protostuff.runtime.RuntimeSchema;
 /**
  * 序列化工具
  * 
- * @Description: protostuff 提供序列化
+ * @Description: protostuff 提供序列化，序列化缓冲区和VO按线程复用，缓冲区大小按topic自适应
  * @author copy from indexmq
  * @date 2018年1月17日
  */
 @SuppressWarnings({"rawtypes", "unchecked"})
 public class DefaultMessageSerializer<T> implements MessageSerializer<T> {
+
+    private static final Schema<VO> SCHEMA = RuntimeSchema.getSchema(VO.class);
+
+    // 线程复用的缓冲区
+    private static final ThreadLocal<BufferHolder> BUFFER_HOLDER = ThreadLocal.withInitial(BufferHolder::new);
+
+    // 大小估算
+    private final SerializeSizeEstimator sizeEstimator = new SerializeSizeEstimator();
+
     /**
      * 序列化
      * 
@@ -22,13 +32,60 @@ public class DefaultMessageSerializer<T> implements MessageSerializer<T> {
      * @return
      */
     public byte[] serialize(T source) throws Exception {
-        VO<T> vo = new VO<T>(source);
-        LinkedBuffer buffer = LinkedBuffer.allocate(LinkedBuffer.DEFAULT_BUFFER_SIZE);
+        return serialize(null, source);
+    }
+
+    /**
+     * 序列化
+     * 
+     * @param topic
+     * @param source
+     * @return
+     */
+    public byte[] serialize(String topic, T source) throws Exception {
+        BufferHolder holder = BUFFER_HOLDER.get();
+        // 重入时不能复用
+        if (holder.inUse) {
+            return ProtostuffIOUtil.toByteArray(new VO<T>(source), SCHEMA,
+                    LinkedBuffer.allocate(LinkedBuffer.DEFAULT_BUFFER_SIZE));
+        }
+        LinkedBuffer buffer = holder.acquire(sizeEstimator.bufferSize(topic));
+        try {
+            holder.vo.setValue(source);
+            byte[] bytes = ProtostuffIOUtil.toByteArray(holder.vo, SCHEMA, buffer);
+            sizeEstimator.record(topic, bytes.length);
+            return bytes;
+        } finally {
+            holder.release();
+        }
+    }
+
+    /**
+     * 序列化到调用方的缓冲区，先序列化到线程缓冲区，放得下时再拷贝
+     * 
+     * @param source
+     * @param buffer
+     * @param offset
+     * @return 写入的字节数，缓冲区不足时返回-1，且不会写入调用方的缓冲区
+     */
+    public int serialize(T source, byte[] buffer, int offset) throws Exception {
+        BufferHolder holder = BUFFER_HOLDER.get();
+        // 重入时不能复用
+        if (holder.inUse) {
+            return MessageSerializer.super.serialize(source, buffer, offset);
+        }
+        LinkedBuffer linkedBuffer = holder.acquire(0);
         try {
-            final Schema<VO> schema = RuntimeSchema.getSchema(VO.class);
-            return ProtostuffIOUtil.toByteArray(vo, schema, buffer);
-        } catch (Exception e) {
-            throw e;
+            holder.vo.setValue(source);
+            int size = ProtostuffIOUtil.writeTo(linkedBuffer, holder.vo, SCHEMA);
+            if (size > buffer.length - offset) {
+                return -1;
+            }
+            holder.output.reset(buffer, offset);
+            LinkedBuffer.writeTo(holder.output, linkedBuffer);
+            return size;
+        } finally {
+            holder.release();
         }
     }
 
@@ -39,16 +96,73 @@ public class DefaultMessageSerializer<T> implements MessageSerializer<T> {
      * @return
      */
     public T deserialize(final byte[] bytes) throws Exception {
-        try {
-            Schema<VO> schema = RuntimeSchema.getSchema(VO.class);
-            VO vo = schema.newMessage();
-            ProtostuffIOUtil.mergeFrom(bytes, vo, schema);
-            if (vo != null && vo.getValue() != null) {
-                return (T) vo.getValue();
-            }
-        } catch (Exception e) {
-            throw e;
+        VO vo = SCHEMA.newMessage();
+        ProtostuffIOUtil.mergeFrom(bytes, vo, SCHEMA);
+        if (vo.getValue() != null) {
+            return (T) vo.getValue();
         }
         return null;
     }
+
+    public SerializeSizeEstimator getSizeEstimator() {
+        return sizeEstimator;
+    }
+
+    /**
+     * 线程缓冲区
+     * 
+     * 只保留首个分块，容量不超过SerializeSizeEstimator.MAX_BUFFER_SIZE；超出的分块在release时释放
+     */
+    private static class BufferHolder {
+        private LinkedBuffer buffer;
+        private int capacity;
+        private VO vo = new VO();
+        private ArrayOutputStream output = new ArrayOutputStream();
+        private boolean inUse;
+
+        /**
+         * 获取缓冲区，容量不足时按推荐大小重新分配
+         */
+        public LinkedBuffer acquire(int expectedSize) {
+            int size = Math.min(Math.max(expectedSize, LinkedBuffer.DEFAULT_BUFFER_SIZE),
+                    SerializeSizeEstimator.MAX_BUFFER_SIZE);
+            if (buffer == null || capacity < size) {
+                capacity = size;
+                buffer = LinkedBuffer.allocate(capacity);
+            }
+            inUse = true;
+            return buffer;
+        }
+
+        public void release() {
+            buffer.clear();
+            vo.setValue(null);
+            output.reset(null, 0);
+            inUse = false;
+        }
+    }
+
+    /**
+     * 写入数组的输出流，按线程复用
+     */
+    private static class ArrayOutputStream extends OutputStream {
+        private byte[] bytes;
+        private int position;
+
+        public void reset(byte[] bytes, int position) {
+            this.bytes = bytes;
+            this.position = position;
+        }
+
+        @Override
+        public void write(int b) {
+            bytes[position++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            System.arraycopy(b, off, bytes, position, len);
+            position += len;
+        }
+    }
 }
@@ -17,6 +17,34 @@ public interface MessageSerializer<T> {
      */
     public byte[] serialize(T source) throws Exception;
 
+    /**
+     * 序列化，实现类可按topic优化缓冲区
+     * 
+     * @param topic
+     * @param source
+     * @return
+     */
+    default byte[] serialize(String topic, T source) throws Exception {
+        return serialize(source);
+    }
+
+    /**
+     * 序列化到调用方提供的缓冲区
+     * 
+     * @param source
+     * @param buffer
+     * @param offset 写入的起始位置
+     * @return 写入的字节数，缓冲区不足时返回-1
+     */
+    default int serialize(T source, byte[] buffer, int offset) throws Exception {
+        byte[] bytes = serialize(source);
+        if (bytes.length > buffer.length - offset) {
+            return -1;
+        }
+        System.arraycopy(bytes, 0, buffer, offset, bytes.length);
+        return bytes.length;
+    }
+
     /**
      * 反序列化
      * 
@@ -9,7 +9,11 @@ package com.sohu.tv.mq.serializable;
 public enum MessageSerializerEnum {
     PROTOSTUF(0, "Protostuf", new DefaultMessageSerializer<Object>()),
     STRING(1, "String", new StringSerializer<Object>()),
+    TYPED_PROTOSTUF(2, "TypedProtostuf", new TypedMessageSerializer<Object>()),
     ;
+
+    // 消息属性：序列化方式，值为type
+    public static final String PROPERTY_SERIALIZER = "MQ_SERIALIZER";
     
     private int type;
     private String name;
@@ -72,6 +76,23 @@ public enum MessageSerializerEnum {
         return messageSerializerEnum.name;
     }
     
+    /**
+     * 根据序列化器获取枚举
+     * @param messageSerializer
+     * @return 非内置的序列化器返回null
+     */
+    public static MessageSerializerEnum getEnumBySerializer(MessageSerializer<?> messageSerializer) {
+        if (messageSerializer == null) {
+            return null;
+        }
+        for (MessageSerializerEnum messageSerializerEnum : MessageSerializerEnum.values()) {
+            if (messageSerializerEnum.messageSerializer.getClass() == messageSerializer.getClass()) {
+                return messageSerializerEnum;
+            }
+        }
+        return null;
+    }
+    
     @SuppressWarnings("unchecked")
     public static <T> MessageSerializer<T> getMessageSerializerByType(int type) {
         MessageSerializerEnum messageSerializerEnum = getEnumByType(type);
@@ -0,0 +1,74 @@
+package com.sohu.tv.mq.serializable;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 序列化大小估算
+ * 
+ * 按topic统计序列化后大小的滑动平均值，用于决定序列化缓冲区的大小
+ * 
+ * @author yongfeigao
+ * @date 2026年10月17日
+ */
+public class SerializeSizeEstimator {
+
+    // 最小缓冲区
+    public static final int MIN_BUFFER_SIZE = 512;
+
+    // 最大缓冲区，即每个线程常驻的缓冲区上限，更大的消息由protostuff临时追加分块
+    public static final int MAX_BUFFER_SIZE = 64 * 1024;
+
+    // topic->平均大小
+    private ConcurrentMap<String, AtomicInteger> sizeMap = new ConcurrentHashMap<>();
+
+    /**
+     * 记录序列化后的大小
+     * 
+     * @param topic
+     * @param size
+     */
+    public void record(String topic, int size) {
+        if (topic == null) {
+            return;
+        }
+        AtomicInteger average = sizeMap.get(topic);
+        if (average == null) {
+            average = new AtomicInteger(size);
+            AtomicInteger prev = sizeMap.putIfAbsent(topic, average);
+            if (prev == null) {
+                return;
+            }
+            average = prev;
+        }
+        // 权重1/8的滑动平均，并发丢失少量更新不影响估算
+        int old = average.get();
+        average.lazySet(old - (old >> 3) + (size >> 3));
+    }
+
+    /**
+     * 推荐的缓冲区大小：平均大小的1.5倍向上取2的幂，介于[MIN_BUFFER_SIZE, MAX_BUFFER_SIZE]之间
+     * 
+     * @param topic
+     * @return
+     */
+    public int bufferSize(String topic) {
+        if (topic == null) {
+            return MIN_BUFFER_SIZE;
+        }
+        AtomicInteger average = sizeMap.get(topic);
+        if (average == null) {
+            return MIN_BUFFER_SIZE;
+        }
+        int size = average.get();
+        size += size >> 1;
+        if (size <= MIN_BUFFER_SIZE) {
+            return MIN_BUFFER_SIZE;
+        }
+        if (size >= MAX_BUFFER_SIZE) {
+            return MAX_BUFFER_SIZE;
+        }
+        return Integer.highestOneBit(size - 1) << 1;
+    }
+}
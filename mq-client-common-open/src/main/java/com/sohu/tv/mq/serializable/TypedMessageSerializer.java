@@ -0,0 +1,290 @@
+package com.sohu.tv.mq.serializable;
+
+import java.io.OutputStream;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.protostuff.LinkedBuffer;
+import io.protostuff.ProtostuffIOUtil;
+import io.protostuff.Schema;
+import io.protostuff.runtime.RuntimeSchema;
+
+/**
+ * 类型化的protostuff序列化
+ * 
+ * 直接按具体类的RuntimeSchema序列化，不再包装VO，也不写入类名。
+ * 消息格式：[MAGIC(1)][类名hash(4)][protostuff数据]，消费方根据类名hash找到已注册的类型，
+ * 找不到时使用绑定的类型，因此生产者和消费者的类名可以不同。
+ * 不同类名的hash相同时注册失败，该类型退化为VO方式序列化，避免反序列化为错误的类型。
+ * JDK自带类型(String、Map等)无法绑定具体类，仍使用VO方式序列化，无MAGIC头。
+ * 类型注册在实例内，每个消费者使用绑定了消费类型的实例，不会与其他classloader加载的同名类混用。
+ * 
+ * @author yongfeigao
+ * @date 2026年10月17日
+ * @param <T>
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class TypedMessageSerializer<T> implements MessageSerializer<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(TypedMessageSerializer.class);
+
+    // 0xA7不是合法的UTF-8首字节，也不是VO序列化后的首字节，可据此快速识别
+    public static final byte MAGIC = (byte) 0xA7;
+
+    public static final int HEADER_LENGTH = 5;
+
+    // 类名hash->schema
+    private ConcurrentMap<Integer, Schema<?>> schemaMap = new ConcurrentHashMap<>();
+
+    // hash冲突而使用VO方式序列化的类型
+    private Set<Class<?>> untypedClasses = ConcurrentHashMap.newKeySet();
+
+    // 线程复用的缓冲区
+    private static final ThreadLocal<BufferHolder> BUFFER_HOLDER = ThreadLocal.withInitial(BufferHolder::new);
+
+    // 无法绑定类型时使用
+    private static final DefaultMessageSerializer<Object> DEFAULT_SERIALIZER = new DefaultMessageSerializer<>();
+
+    // 绑定的类型
+    private Class<T> clazz;
+
+    // 绑定类型的schema
+    private Schema<T> schema;
+
+    public TypedMessageSerializer() {
+    }
+
+    /**
+     * 绑定类型，消费者使用绑定了消费类型的实例反序列化
+     * 
+     * @param clazz
+     * @throws IllegalArgumentException 不支持该类型时
+     */
+    public TypedMessageSerializer(Class<T> clazz) {
+        if (!isSupported(clazz)) {
+            throw new IllegalArgumentException("unsupported type:" + clazz);
+        }
+        this.clazz = clazz;
+        this.schema = RuntimeSchema.getSchema(clazz);
+        schemaMap.put(typeHash(clazz.getName()), schema);
+    }
+
+    /**
+     * 注册类型，注册后可反序列化该类型的消息
+     * 
+     * @param clazz
+     * @return 是否注册成功，不支持该类型或与已注册的类型hash冲突时返回false
+     */
+    public boolean register(Class<?> clazz) {
+        if (!isSupported(clazz)) {
+            return false;
+        }
+        return registerSchema(clazz) != null;
+    }
+
+    /**
+     * 注册并返回类型的schema
+     * 
+     * @param clazz
+     * @return hash冲突时返回null
+     */
+    private Schema<?> registerSchema(Class<?> clazz) {
+        int hash = typeHash(clazz.getName());
+        Schema<?> schema = schemaMap.get(hash);
+        if (schema != null && schema.typeClass() == clazz) {
+            return schema;
+        }
+        if (schema != null && !schema.typeClass().getName().equals(clazz.getName())) {
+            logger.warn("type hash collision between {} and {}, use untyped serializer", clazz.getName(),
+                    schema.typeClass().getName());
+            return null;
+        }
+        // 未注册，或同名类由新的classloader加载，使用新的类型
+        schema = RuntimeSchema.getSchema(clazz);
+        schemaMap.put(hash, schema);
+        return schema;
+    }
+
+    /**
+     * 类名hash
+     * 
+     * @param className
+     * @return
+     */
+    public static int typeHash(String className) {
+        return className.hashCode();
+    }
+
+    /**
+     * 读取类型化消息头中的类名hash
+     * 
+     * @param bytes 类型化的消息
+     * @return
+     */
+    public static int getTypeHash(byte[] bytes) {
+        return ((bytes[1] & 0xFF) << 24) | ((bytes[2] & 0xFF) << 16) | ((bytes[3] & 0xFF) << 8) | (bytes[4] & 0xFF);
+    }
+
+    /**
+     * 是否支持绑定该类型
+     * 
+     * @param clazz
+     * @return
+     */
+    public static boolean isSupported(Class<?> clazz) {
+        if (clazz == null || clazz.isInterface() || clazz.isArray() || clazz.isPrimitive() || clazz.isEnum()) {
+            return false;
+        }
+        return !clazz.getName().startsWith("java.");
+    }
+
+    /**
+     * 是否为类型化的消息
+     * 
+     * @param bytes
+     * @return
+     */
+    public static boolean isTyped(byte[] bytes) {
+        return bytes != null && bytes.length >= HEADER_LENGTH && bytes[0] == MAGIC;
+    }
+
+    @Override
+    public byte[] serialize(T source) throws Exception {
+        return serialize(null, source);
+    }
+
+    @Override
+    public byte[] serialize(String topic, T source) throws Exception {
+        Class<?> sourceClass = source == null ? null : source.getClass();
+        Schema schema = getSchema(sourceClass);
+        if (schema == null) {
+            return DEFAULT_SERIALIZER.serialize(topic, source);
+        }
+        BufferHolder holder = BUFFER_HOLDER.get();
+        LinkedBuffer buffer = holder.buffer;
+        // 重入时不能复用
+        if (holder.inUse) {
+            buffer = LinkedBuffer.allocate(LinkedBuffer.DEFAULT_BUFFER_SIZE);
+        }
+        holder.inUse = true;
+        try {
+            int size = ProtostuffIOUtil.writeTo(buffer, source, schema);
+            byte[] bytes = new byte[HEADER_LENGTH + size];
+            writeHeader(bytes, typeHash(sourceClass.getName()));
+            ArrayOutputStream out = new ArrayOutputStream(bytes, HEADER_LENGTH);
+            LinkedBuffer.writeTo(out, buffer);
+            return bytes;
+        } finally {
+            buffer.clear();
+            if (buffer == holder.buffer) {
+                holder.inUse = false;
+            }
+        }
+    }
+
+    /**
+     * 获取序列化使用的schema
+     * 
+     * @param sourceClass
+     * @return 不支持或hash冲突时返回null
+     */
+    private Schema getSchema(Class<?> sourceClass) {
+        if (sourceClass != null && sourceClass == clazz) {
+            return schema;
+        }
+        if (!isSupported(sourceClass) || untypedClasses.contains(sourceClass)) {
+            return null;
+        }
+        // 注册以检查hash冲突
+        Schema<?> sourceSchema = registerSchema(sourceClass);
+        if (sourceSchema == null) {
+            untypedClasses.add(sourceClass);
+        }
+        return sourceSchema;
+    }
+
+    private void writeHeader(byte[] bytes, int hash) {
+        bytes[0] = MAGIC;
+        bytes[1] = (byte) (hash >>> 24);
+        bytes[2] = (byte) (hash >>> 16);
+        bytes[3] = (byte) (hash >>> 8);
+        bytes[4] = (byte) hash;
+    }
+
+    @Override
+    public T deserialize(byte[] bytes) throws Exception {
+        if (!isTyped(bytes)) {
+            return (T) DEFAULT_SERIALIZER.deserialize(bytes);
+        }
+        int hash = getTypeHash(bytes);
+        Schema messageSchema = schemaMap.get(hash);
+        if (messageSchema == null) {
+            // 生产者和消费者的类名不同时，使用绑定的类型
+            if (schema == null) {
+                throw new IllegalStateException("unregistered type hash:" + hash);
+            }
+            messageSchema = schema;
+        }
+        return (T) deserialize(bytes, messageSchema);
+    }
+
+    /**
+     * 按指定类型反序列化类型化的消息，用于未注册类型的场景，如控制台
+     * 
+     * @param bytes 类型化的消息
+     * @param clazz 类名hash须与消息头一致
+     * @return
+     */
+    public static <M> M deserialize(byte[] bytes, Class<M> clazz) {
+        if (!isTyped(bytes) || getTypeHash(bytes) != typeHash(clazz.getName())) {
+            throw new IllegalArgumentException("message is not typed as " + clazz.getName());
+        }
+        return deserialize(bytes, RuntimeSchema.getSchema(clazz));
+    }
+
+    private static <M> M deserialize(byte[] bytes, Schema<M> messageSchema) {
+        M message = messageSchema.newMessage();
+        ProtostuffIOUtil.mergeFrom(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH, message, messageSchema);
+        return message;
+    }
+
+    public Class<T> getClazz() {
+        return clazz;
+    }
+
+    /**
+     * 线程缓冲区
+     */
+    private static class BufferHolder {
+        private LinkedBuffer buffer = LinkedBuffer.allocate(LinkedBuffer.DEFAULT_BUFFER_SIZE);
+        private boolean inUse;
+    }
+
+    /**
+     * 写入数组的输出流
+     */
+    private static class ArrayOutputStream extends OutputStream {
+        private byte[] bytes;
+        private int position;
+
+        public ArrayOutputStream(byte[] bytes, int position) {
+            this.bytes = bytes;
+            this.position = position;
+        }
+
+        @Override
+        public void write(int b) {
+            bytes[position++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            System.arraycopy(b, off, bytes, position, len);
+            position += len;
+        }
+    }
+}
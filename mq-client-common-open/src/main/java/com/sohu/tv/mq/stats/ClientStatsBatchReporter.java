@@ -0,0 +1,269 @@
+package com.sohu.tv.mq.stats;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.rocketmq.common.utils.HttpTinyClient;
+import org.apache.rocketmq.common.utils.HttpTinyClient.HttpResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sohu.tv.mq.stats.StatsHelper.StatsReporter;
+import com.sohu.tv.mq.stats.dto.ClientStats;
+import com.sohu.tv.mq.util.JSONUtil;
+
+/**
+ * 客户端统计批量上报，jvm内共享
+ * 
+ * 同一jvm内所有StatsHelper的统计结果先入队，由一个线程定时按mqcloud域名合并，
+ * 编码为gzip压缩的二进制格式后一次请求发送，HttpURLConnection会复用keep-alive连接。
+ * mqcloud不支持二进制接口(404)或二进制发送失败时，退化为逐条发送json，404的域名一段时间内直接使用json。
+ * 逐条发送json可能较慢，因此使用独立的线程，不占用ClientRuntime的阻塞任务线程，避免推迟配置更新等任务。
+ * 
+ * @author yongfeigao
+ * @date 2026年10月17日
+ */
+public class ClientStatsBatchReporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClientStatsBatchReporter.class);
+
+    public static final String BINARY_REPORT_PATH = "/cluster/report/binary";
+
+    public static final String JSON_REPORT_PATH = "/cluster/report";
+
+    // 默认合并间隔
+    public static final int DEFAULT_FLUSH_INTERVAL_IN_MILLIS = 5000;
+
+    // 单次请求最多携带的统计条数
+    public static final int MAX_BATCH_SIZE = 500;
+
+    // 不支持二进制接口的域名，直接使用json的时间
+    public static final long JSON_ONLY_EXPIRE_IN_MILLIS = 10 * 60 * 1000;
+
+    private static final ClientStatsBatchReporter INSTANCE = new ClientStatsBatchReporter(
+            DEFAULT_FLUSH_INTERVAL_IN_MILLIS);
+
+    // 域名<->待上报的统计
+    private ConcurrentMap<String, ConcurrentLinkedQueue<ReportItem>> queueMap = new ConcurrentHashMap<>();
+
+    // 不支持二进制接口的域名<->过期时间
+    private ConcurrentMap<String, Long> jsonOnlyDomainMap = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService flushExecutorService;
+
+    ClientStatsBatchReporter(int flushIntervalInMillis) {
+        flushExecutorService = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ClientStatsBatchReporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushExecutorService.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flush();
+                } catch (Throwable ignored) {
+                    logger.warn("flush err:{}", ignored.getMessage());
+                }
+            }
+        }, flushIntervalInMillis, flushIntervalInMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public static ClientStatsBatchReporter getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 统计结果入队
+     * 
+     * @param mqCloudDomain
+     * @param clientStats
+     * @param statsReporter 用于记录上报耗时，可为null
+     */
+    public void add(String mqCloudDomain, ClientStats clientStats, StatsReporter statsReporter) {
+        if (mqCloudDomain == null) {
+            return;
+        }
+        ConcurrentLinkedQueue<ReportItem> queue = queueMap.get(mqCloudDomain);
+        if (queue == null) {
+            queue = new ConcurrentLinkedQueue<>();
+            ConcurrentLinkedQueue<ReportItem> prev = queueMap.putIfAbsent(mqCloudDomain, queue);
+            if (prev != null) {
+                queue = prev;
+            }
+        }
+        queue.offer(new ReportItem(clientStats, statsReporter));
+    }
+
+    /**
+     * 按域名批量发送
+     */
+    void flush() {
+        for (Entry<String, ConcurrentLinkedQueue<ReportItem>> entry : queueMap.entrySet()) {
+            ConcurrentLinkedQueue<ReportItem> queue = entry.getValue();
+            while (!queue.isEmpty()) {
+                List<ReportItem> batch = new ArrayList<>();
+                ReportItem item = null;
+                while (batch.size() < MAX_BATCH_SIZE && (item = queue.poll()) != null) {
+                    batch.add(item);
+                }
+                send(entry.getKey(), batch);
+            }
+        }
+    }
+
+    /**
+     * 发送
+     * 
+     * @param mqCloudDomain
+     * @param batch
+     */
+    private void send(String mqCloudDomain, List<ReportItem> batch) {
+        long start = System.currentTimeMillis();
+        if (isJsonOnly(mqCloudDomain) || !sendBinary(mqCloudDomain, batch)) {
+            for (ReportItem item : batch) {
+                sendJson(mqCloudDomain, item.clientStats);
+            }
+        }
+        long cost = System.currentTimeMillis() - start;
+        for (ReportItem item : batch) {
+            if (item.statsReporter != null) {
+                item.statsReporter.recordReportCost(cost, new Date(start));
+            }
+        }
+    }
+
+    /**
+     * 域名是否直接使用json，过期后重新尝试二进制格式，以便mqcloud升级后生效
+     * 
+     * @param mqCloudDomain
+     * @return
+     */
+    private boolean isJsonOnly(String mqCloudDomain) {
+        Long expireTime = jsonOnlyDomainMap.get(mqCloudDomain);
+        if (expireTime == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() < expireTime) {
+            return true;
+        }
+        jsonOnlyDomainMap.remove(mqCloudDomain, expireTime);
+        return false;
+    }
+
+    /**
+     * 发送二进制格式
+     * 
+     * @param mqCloudDomain
+     * @param batch
+     * @return 返回false时需要退化为json，包括服务端不支持及发送失败
+     */
+    private boolean sendBinary(String mqCloudDomain, List<ReportItem> batch) {
+        List<ClientStats> list = new ArrayList<>(batch.size());
+        for (ReportItem item : batch) {
+            list.add(item.clientStats);
+        }
+        HttpURLConnection conn = null;
+        try {
+            byte[] data = ClientStatsCodec.encode(list);
+            conn = (HttpURLConnection) new URL("http://" + mqCloudDomain + BINARY_REPORT_PATH).openConnection();
+            conn.setRequestMethod("POST");
+            conn.setConnectTimeout(5000);
+            conn.setReadTimeout(5000);
+            conn.setDoOutput(true);
+            conn.setFixedLengthStreamingMode(data.length);
+            conn.setRequestProperty("Content-Type", ClientStatsCodec.CONTENT_TYPE);
+            try (OutputStream out = conn.getOutputStream()) {
+                out.write(data);
+            }
+            int code = conn.getResponseCode();
+            // 读完响应，连接才能被复用
+            String content = readFully(code < HttpURLConnection.HTTP_BAD_REQUEST ? conn.getInputStream()
+                    : conn.getErrorStream());
+            if (HttpURLConnection.HTTP_OK == code) {
+                return true;
+            }
+            if (HttpURLConnection.HTTP_NOT_FOUND == code) {
+                logger.info("{} not support binary report, use json", mqCloudDomain);
+                jsonOnlyDomainMap.put(mqCloudDomain, System.currentTimeMillis() + JSON_ONLY_EXPIRE_IN_MILLIS);
+                return false;
+            }
+            logger.error("http response err: code:{},info:{}", code, content);
+        } catch (Throwable e) {
+            logger.error("http err, size:{}", list.size(), e);
+            // 连接异常时断开，下次重建
+            if (conn != null) {
+                conn.disconnect();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 发送json格式
+     * 
+     * @param mqCloudDomain
+     * @param clientStats
+     */
+    private void sendJson(String mqCloudDomain, ClientStats clientStats) {
+        String stats = JSONUtil.toJSONString(clientStats);
+        List<String> paramValues = new ArrayList<String>();
+        paramValues.add("stats");
+        paramValues.add(stats);
+        try {
+            HttpResult result = HttpTinyClient.httpPost("http://" + mqCloudDomain + JSON_REPORT_PATH, null,
+                    paramValues, "UTF-8", 5000);
+            if (HttpURLConnection.HTTP_OK != result.code) {
+                logger.error("http response err: code:{},info:{}", result.code, result.content);
+            }
+        } catch (Throwable e) {
+            logger.error("http err, stats:{}", stats, e);
+        }
+    }
+
+    private String readFully(InputStream inputStream) throws IOException {
+        if (inputStream == null) {
+            return null;
+        }
+        try (InputStream in = inputStream) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                out.write(buffer, 0, len);
+            }
+            return out.toString("UTF-8");
+        }
+    }
+
+    public void shutdown() {
+        flushExecutorService.shutdown();
+    }
+
+    /**
+     * 待上报的统计
+     */
+    private static class ReportItem {
+        private ClientStats clientStats;
+        private StatsReporter statsReporter;
+
+        public ReportItem(ClientStats clientStats, StatsReporter statsReporter) {
+            this.clientStats = clientStats;
+            this.statsReporter = statsReporter;
+        }
+    }
+}
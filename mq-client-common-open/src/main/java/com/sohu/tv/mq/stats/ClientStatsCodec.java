@@ -0,0 +1,238 @@
+package com.sohu.tv.mq.stats;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.sohu.tv.mq.stats.InvokeStats.InvokeStatsResult;
+import com.sohu.tv.mq.stats.dto.ClientStats;
+
+/**
+ * 客户端统计二进制编解码
+ * 
+ * 格式：gzip(版本(byte) 条数(int) ClientStats*)，字符串使用writeUTF，可为null的字段前有一个标记字节。
+ * 相比json，编码更紧凑，且一次请求可以携带多个客户端的统计。
+ * 解码的数据来自网络，解压后的长度有上限，条数按剩余字节数校验，避免构造的数据导致内存溢出。
+ * 
+ * @author yongfeigao
+ * @date 2026年10月17日
+ */
+public class ClientStatsCodec {
+
+    public static final String CONTENT_TYPE = "application/octet-stream";
+
+    // 当前版本
+    public static final byte VERSION = 1;
+
+    // 解压后的最大长度
+    public static final int MAX_DECODED_LENGTH = 16 * 1024 * 1024;
+
+    // 一条ClientStats编码后的最小长度
+    private static final int MIN_STATS_LENGTH = 71;
+
+    // 一条broker调用统计编码后的最小长度
+    private static final int MIN_INVOKE_LENGTH = 22;
+
+    // 一条计数编码后的最小长度
+    private static final int MIN_COUNT_LENGTH = 6;
+
+    /**
+     * 编码
+     * 
+     * @param list
+     * @return gzip压缩后的数据
+     * @throws IOException
+     */
+    public static byte[] encode(List<ClientStats> list) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(256 * list.size());
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(byteArrayOutputStream))) {
+            out.writeByte(VERSION);
+            out.writeInt(list.size());
+            for (ClientStats clientStats : list) {
+                write(out, clientStats);
+            }
+        }
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    /**
+     * 解码
+     * 
+     * @param inputStream gzip压缩后的数据
+     * @return
+     * @throws IOException 数据非法或解压后超过MAX_DECODED_LENGTH时
+     */
+    public static List<ClientStats> decode(InputStream inputStream) throws IOException {
+        byte[] data = null;
+        try (InputStream in = new GZIPInputStream(inputStream)) {
+            data = readFully(in, MAX_DECODED_LENGTH);
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new IOException("unsupported version:" + version);
+            }
+            int size = readSize(in, MIN_STATS_LENGTH);
+            List<ClientStats> list = new ArrayList<ClientStats>(size);
+            for (int i = 0; i < size; ++i) {
+                list.add(read(in));
+            }
+            return list;
+        }
+    }
+
+    private static void write(DataOutputStream out, ClientStats clientStats) throws IOException {
+        writeString(out, clientStats.getClient());
+        writeString(out, clientStats.getProducer());
+        out.writeInt(clientStats.getStatsTime());
+        out.writeLong(clientStats.getCounts());
+        out.writeLong(clientStats.getTotalTime());
+        out.writeDouble(clientStats.getAvg());
+        out.writeInt(clientStats.getPercent90());
+        out.writeInt(clientStats.getPercent99());
+        out.writeDouble(clientStats.getPercent50());
+        out.writeDouble(clientStats.getPercent999());
+        out.writeDouble(clientStats.getPercent9999());
+        writeString(out, clientStats.getHistogram());
+        // broker调用统计
+        Map<String, InvokeStatsResult> detailInvoke = clientStats.getDetailInvoke();
+        if (detailInvoke == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(detailInvoke.size());
+            for (Entry<String, InvokeStatsResult> entry : detailInvoke.entrySet()) {
+                InvokeStatsResult result = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeInt(result.getMaxTime());
+                out.writeLong(result.totalTime());
+                out.writeInt(result.getTimes());
+                writeCountMap(out, result.getExceptionMap());
+            }
+        }
+        // 异常统计
+        writeCountMap(out, clientStats.getExceptionMap());
+    }
+
+    private static ClientStats read(DataInputStream in) throws IOException {
+        ClientStats clientStats = new ClientStats();
+        clientStats.setClient(readString(in));
+        clientStats.setProducer(readString(in));
+        clientStats.setStatsTime(in.readInt());
+        clientStats.setCounts(in.readLong());
+        clientStats.setTotalTime(in.readLong());
+        clientStats.setAvg(in.readDouble());
+        clientStats.setPercent90(in.readInt());
+        clientStats.setPercent99(in.readInt());
+        clientStats.setPercent50(in.readDouble());
+        clientStats.setPercent999(in.readDouble());
+        clientStats.setPercent9999(in.readDouble());
+        clientStats.setHistogram(readString(in));
+        int size = readSize(in, MIN_INVOKE_LENGTH);
+        if (size >= 0) {
+            Map<String, InvokeStatsResult> detailInvoke = new HashMap<String, InvokeStatsResult>();
+            for (int i = 0; i < size; ++i) {
+                String broker = in.readUTF();
+                InvokeStatsResult result = new InvokeStatsResult();
+                result.setMaxTime(in.readInt());
+                result.setTotalTime(in.readLong());
+                result.setTimes(in.readInt());
+                result.setExceptionMap(readCountMap(in));
+                detailInvoke.put(broker, result);
+            }
+            clientStats.setDetailInvoke(detailInvoke);
+        }
+        clientStats.setExceptionMap(readCountMap(in));
+        return clientStats;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeBoolean(false);
+            return;
+        }
+        out.writeBoolean(true);
+        out.writeUTF(value);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        return in.readUTF();
+    }
+
+    /**
+     * 写入计数map，值必须为数字
+     */
+    private static void writeCountMap(DataOutputStream out, Map<String, ?> map) throws IOException {
+        if (map == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(map.size());
+        for (Entry<String, ?> entry : map.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(((Number) entry.getValue()).intValue());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> Map<String, V> readCountMap(DataInputStream in) throws IOException {
+        int size = readSize(in, MIN_COUNT_LENGTH);
+        if (size < 0) {
+            return null;
+        }
+        Map<String, Object> map = new HashMap<String, Object>();
+        for (int i = 0; i < size; ++i) {
+            map.put(in.readUTF(), in.readInt());
+        }
+        return (Map<String, V>) map;
+    }
+
+    /**
+     * 读取条数，剩余字节数不足以容纳时认为数据非法；字符串由readUTF读取，长度不超过65535，数据不足时抛出EOFException
+     * 
+     * @param in 基于字节数组的输入流，available为剩余字节数
+     * @param minElementLength 每条的最小长度
+     * @return 小于0表示null
+     * @throws IOException
+     */
+    private static int readSize(DataInputStream in, int minElementLength) throws IOException {
+        int size = in.readInt();
+        if (size > in.available() / minElementLength) {
+            throw new IOException("invalid size:" + size + ", remaining:" + in.available());
+        }
+        return size;
+    }
+
+    /**
+     * 读取全部数据
+     * 
+     * @param in
+     * @param maxLength 最大长度
+     * @return
+     * @throws IOException 超过最大长度时
+     */
+    private static byte[] readFully(InputStream in, int maxLength) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        byte[] buffer = new byte[4096];
+        int len;
+        while ((len = in.read(buffer)) != -1) {
+            if (out.size() + len > maxLength) {
+                throw new IOException("decoded length exceeds " + maxLength);
+            }
+            out.write(buffer, 0, len);
+        }
+        return out.toByteArray();
+    }
+}
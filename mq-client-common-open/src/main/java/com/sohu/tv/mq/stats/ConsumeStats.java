@@ -1,13 +1,12 @@
 package com.sohu.tv.mq.stats;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.sohu.tv.mq.common.ClientRuntime;
 import com.sohu.tv.mq.common.ConsumeException;
 import com.sohu.tv.mq.stats.InvokeStats.InvokeStatsResult;
 
@@ -24,7 +23,7 @@ public class ConsumeStats {
 
     private InvokeStats invokeStats;
 
-    private ScheduledExecutorService sampleExecutorService;
+    private ScheduledFuture<?> sampleFuture;
 
     private volatile InvokeStatsResult invokeStatsResult;
 
@@ -42,16 +41,8 @@ public class ConsumeStats {
      * 初始化任务
      */
     private void initTask() {
-        // 数据采样线程
-        sampleExecutorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
-            @Override
-            public Thread newThread(Runnable r) {
-            	Thread thread = new Thread(r, "ConsumeStats-" + consumer);
-            	thread.setDaemon(true);
-            	return thread;
-            }
-        });
-        sampleExecutorService.scheduleWithFixedDelay(new Runnable() {
+        // 数据采样，使用jvm内共享的调度线程
+        sampleFuture = ClientRuntime.getInstance().scheduleWithFixedDelay("ConsumeStats-" + consumer, new Runnable() {
             @Override
             public void run() {
                 try {
@@ -82,7 +73,7 @@ public class ConsumeStats {
     }
 
     public void shutdown() {
-        sampleExecutorService.shutdown();
+        sampleFuture.cancel(false);
     }
 
     public String getConsumer() {
@@ -8,27 +8,29 @@ import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * 调用统计
  * 
+ * 每个统计周期使用一个新的TimeAndExceptionStats，计数采用LongAdder分段累加，避免多线程竞争；
+ * 采样时先切换到新周期，再等待旧周期中正在写入的线程退出后读取，旧周期不再复用，因此不会丢失计数。
+ * 正在写入的线程数使用AtomicInteger而非LongAdder，LongAdder的sum()不是原子快照，可能在写入未结束时读到0。
+ * 
  * @author yongfeigao
  * @date 2018年9月11日
  */
 public class InvokeStats {
 
-    // 统计数组，只有两个元素，来回切换使用
-    private TimeAndExceptionStats[] statsArray = new TimeAndExceptionStats[2];
+    // 当前统计周期
+    private volatile TimeAndExceptionStats current = new TimeAndExceptionStats();
 
-    // 当前统计的下标
-    private volatile int indexer;
-    
-    public InvokeStats() {
-        for(int i = 0; i < statsArray.length; ++i) {
-            statsArray[i] = new TimeAndExceptionStats();
-        }
-    }
+    // 上个周期的平均耗时
+    private volatile double lastAvgTime = -1;
+
+    // 当前周期调用次数达到该值时，才使用当前周期的平均耗时
+    public static final int MIN_COUNT_FOR_AVG = 10;
 
     /**
      * 记录耗时
@@ -36,7 +38,22 @@ public class InvokeStats {
      * @param timeInMillis
      */
     public void increment(long timeInMillis) {
-        statsArray[indexer].getTimeStats().increment(timeInMillis);
+        increment(timeInMillis, 1);
+    }
+
+    /**
+     * 记录耗时，批量消息按条数计
+     * 
+     * @param timeInMillis
+     * @param count
+     */
+    public void increment(long timeInMillis, int count) {
+        TimeAndExceptionStats stats = enter();
+        try {
+            stats.getTimeStats().increment(timeInMillis, count);
+        } finally {
+            stats.exit();
+        }
     }
 
     /**
@@ -45,7 +62,28 @@ public class InvokeStats {
      * @param timeInMillis
      */
     public void record(Exception exception) {
-        statsArray[indexer].getExceptionStats().record(exception);
+        TimeAndExceptionStats stats = enter();
+        try {
+            stats.getExceptionStats().record(exception);
+        } finally {
+            stats.exit();
+        }
+    }
+
+    /**
+     * 进入当前周期，若进入后周期已切换则重新进入新周期
+     * 
+     * @return
+     */
+    private TimeAndExceptionStats enter() {
+        while (true) {
+            TimeAndExceptionStats stats = current;
+            stats.writers.incrementAndGet();
+            if (stats == current) {
+                return stats;
+            }
+            stats.writers.decrementAndGet();
+        }
     }
 
     /**
@@ -53,36 +91,49 @@ public class InvokeStats {
      * 
      * @return
      */
-    public InvokeStatsResult sample() {
-        // 记录当前索引
-        int index = indexer;
-        // 当前索引切换
-        indexer = (indexer + 1) % statsArray.length;
+    public synchronized InvokeStatsResult sample() {
+        // 切换到新周期
+        TimeAndExceptionStats stats = current;
+        current = new TimeAndExceptionStats();
+        // 等待正在写入旧周期的线程退出
+        while (stats.writers.get() != 0) {
+            Thread.yield();
+        }
         // 获取统计耗时
-        TimeStats timeStats = statsArray[index].getTimeStats();
+        TimeStats timeStats = stats.getTimeStats();
         // 没有调用
-        if(timeStats.getCount().get() <= 0) {
+        if(timeStats.getCount() <= 0) {
             return null;
         }
-        // 获取统计异常
-        ExceptionStats exceptionStats = statsArray[index].getExceptionStats();
         // 封装返回结果
         InvokeStatsResult invokeStatsResult = new InvokeStatsResult();
         invokeStatsResult.init(timeStats);
-        invokeStatsResult.init(exceptionStats);
-        // 重置，以便下次使用
-        timeStats.reset();
-        // 重置，以便下次使用
-        exceptionStats.reset();
+        invokeStatsResult.init(stats.getExceptionStats());
+        lastAvgTime = (double) invokeStatsResult.totalTime() / invokeStatsResult.getTimes();
         return invokeStatsResult;
     }
 
-    public TimeAndExceptionStats[] getStatsArray() {
-        return statsArray;
+    /**
+     * 近期平均耗时，当前周期调用较少时使用上个周期的数据
+     * 
+     * @return 无数据时返回-1
+     */
+    public double getRecentAvgTime() {
+        TimeStats timeStats = current.getTimeStats();
+        long count = timeStats.getCount();
+        if (count >= MIN_COUNT_FOR_AVG || (count > 0 && lastAvgTime < 0)) {
+            return (double) timeStats.getTime() / count;
+        }
+        return lastAvgTime;
     }
 
-    public int getIndexer() {
-        return indexer;
+    /**
+     * 当前周期的统计，仅用于展示
+     * 
+     * @return
+     */
+    public TimeAndExceptionStats getCurrent() {
+        return current;
     }
 
     /**
@@ -91,9 +142,11 @@ public class InvokeStats {
      * @author yongfeigao
      * @date 2018年9月11日
      */
-    public class TimeAndExceptionStats {
+    public static class TimeAndExceptionStats {
         private TimeStats timeStats = new TimeStats();
         private ExceptionStats exceptionStats = new ExceptionStats();
+        // 正在写入的线程数
+        private AtomicInteger writers = new AtomicInteger();
 
         public TimeStats getTimeStats() {
             return timeStats;
@@ -102,6 +155,10 @@ public class InvokeStats {
         public ExceptionStats getExceptionStats() {
             return exceptionStats;
         }
+
+        private void exit() {
+            writers.decrementAndGet();
+        }
     }
 
     /**
@@ -161,68 +218,52 @@ public class InvokeStats {
      * @author yongfeigao
      * @date 2018年9月11日
      */
-    public class TimeStats {
+    public static class TimeStats {
         // 最大耗时
-        private AtomicLong maxTimeReference = new AtomicLong(0L);
+        private LongAccumulator maxTime = new LongAccumulator(Math::max, 0L);
         // 调用次数统计
-        private AtomicLong count = new AtomicLong();
+        private LongAdder count = new LongAdder();
         // 调用时间统计
-        private AtomicLong time = new AtomicLong();
+        private LongAdder time = new LongAdder();
 
         /**
          * 记录耗时
          * 
          * @param timeInMillis
+         * @param times 调用次数
          */
-        public void increment(long timeInMillis) {
+        public void increment(long timeInMillis, int times) {
             // 记录调用次数
-            count.incrementAndGet();
+            count.add(times);
             // 0不用记录
             if(timeInMillis <= 0) {
                 return;
             }
             // 记录耗时
-            time.addAndGet(timeInMillis);
+            time.add(timeInMillis * times);
             // 记录最大耗时
-            for(int i = 0; i < 10; ++i) {
-                long maxTime = maxTimeReference.get();
-                if (maxTime >= timeInMillis) {
-                    return;
-                }
-                if (maxTimeReference.compareAndSet(maxTime, timeInMillis)) {
-                    return;
-                }
-            }
+            maxTime.accumulate(timeInMillis);
         }
 
-        public AtomicLong getMaxTimeReference() {
-            return maxTimeReference;
+        public long getMaxTime() {
+            return maxTime.get();
         }
 
-        public AtomicLong getCount() {
-            return count;
+        public long getCount() {
+            return count.sum();
         }
 
-        public AtomicLong getTime() {
-            return time;
+        public long getTime() {
+            return time.sum();
         }
         
         public Map<String, Object> getMap(){
             Map<String, Object> map = new HashMap<String, Object>();
-            map.put("time", getTime().get());
-            map.put("count", getCount().get());
-            map.put("maxTime", getMaxTimeReference().get());
+            map.put("time", getTime());
+            map.put("count", getCount());
+            map.put("maxTime", getMaxTime());
             return map;
         }
-
-        /**
-         * 重置
-         */
-        public void reset() {
-            maxTimeReference.set(0L);
-            count.set(0L);
-            time.set(0L);
-        }
     }
 
     /**
@@ -242,9 +283,9 @@ public class InvokeStats {
         private Map<String, Integer> exceptionMap;
 
         public void init(TimeStats timeStats) {
-            setMaxTime((int)timeStats.getMaxTimeReference().get());
-            totalTime = timeStats.getTime().get();
-            times = (int) timeStats.getCount().get();
+            setMaxTime((int) timeStats.getMaxTime());
+            totalTime = timeStats.getTime();
+            times = (int) timeStats.getCount();
         }
 
         public void init(ExceptionStats exceptionStats) {
@@ -270,6 +311,10 @@ public class InvokeStats {
             return totalTime;
         }
 
+        public void setTotalTime(long totalTime) {
+            this.totalTime = totalTime;
+        }
+
         public double getAvgTime() {
             // 保留一位小数
             return (long)((double)totalTime / times * 10) / 10D;
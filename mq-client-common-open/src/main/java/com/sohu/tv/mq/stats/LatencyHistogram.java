@@ -0,0 +1,295 @@
+package com.sohu.tv.mq.stats;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 对数线性直方图，以微秒为单位记录耗时
+ * 
+ * 小于2^precisionBits的值精确记录，更大的值按2的幂分段，每段再线性分为2^(precisionBits-1)个桶，
+ * 相对误差不超过1/2^(precisionBits-1)，例如precisionBits为7时误差小于1.6%。
+ * 采样时逐桶getAndSet(0)，写入不会丢失；快照可合并、可编码，便于跨客户端准确聚合百分位数。
+ * 
+ * @author yongfeigao
+ * @date 2026年10月17日
+ */
+public class LatencyHistogram {
+
+    // 默认精度
+    public static final int DEFAULT_PRECISION_BITS = 7;
+
+    // 精度
+    private int precisionBits;
+
+    // 可记录的最大值，超过按最大值记录
+    private long maxValue;
+
+    // 桶计数
+    private AtomicLongArray counts;
+
+    // 总耗时
+    private LongAdder sum = new LongAdder();
+
+    /**
+     * @param precisionBits 精度，取值[2, 16]
+     * @param maxValue 可记录的最大值
+     */
+    public LatencyHistogram(int precisionBits, long maxValue) {
+        if (precisionBits < 2 || precisionBits > 16) {
+            throw new IllegalArgumentException("precisionBits must in [2, 16]:" + precisionBits);
+        }
+        this.precisionBits = precisionBits;
+        this.maxValue = Math.max(maxValue, 1L << precisionBits);
+        this.counts = new AtomicLongArray(index(precisionBits, this.maxValue) + 1);
+    }
+
+    /**
+     * 记录
+     * 
+     * @param value 耗时，微秒
+     * @param times 次数
+     */
+    public void record(long value, int times) {
+        if (value < 0) {
+            value = 0;
+        } else if (value > maxValue) {
+            value = maxValue;
+        }
+        counts.addAndGet(index(precisionBits, value), times);
+        sum.add(value * times);
+    }
+
+    /**
+     * 采样，返回自上次采样以来的快照
+     * 
+     * @return
+     */
+    public Snapshot sample() {
+        long[] data = new long[counts.length()];
+        for (int i = 0; i < data.length; ++i) {
+            data[i] = counts.getAndSet(i, 0);
+        }
+        return new Snapshot(precisionBits, data, sum.sumThenReset());
+    }
+
+    /**
+     * 当前未采样的快照，不重置
+     * 
+     * @return
+     */
+    public Snapshot peek() {
+        long[] data = new long[counts.length()];
+        for (int i = 0; i < data.length; ++i) {
+            data[i] = counts.get(i);
+        }
+        return new Snapshot(precisionBits, data, sum.sum());
+    }
+
+    public int getPrecisionBits() {
+        return precisionBits;
+    }
+
+    public long getMaxValue() {
+        return maxValue;
+    }
+
+    /**
+     * 计算值对应的桶下标
+     * 
+     * @param precisionBits
+     * @param value
+     * @return
+     */
+    static int index(int precisionBits, long value) {
+        long subBucketCount = 1L << precisionBits;
+        if (value < subBucketCount) {
+            return (int) value;
+        }
+        int halfCount = 1 << (precisionBits - 1);
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (precisionBits - 1);
+        int subBucket = (int) (value >>> shift);
+        return (int) subBucketCount + (shift - 1) * halfCount + (subBucket - halfCount);
+    }
+
+    /**
+     * 桶下标对应的最大值
+     * 
+     * @param precisionBits
+     * @param index
+     * @return
+     */
+    static long highestValue(int precisionBits, int index) {
+        int subBucketCount = 1 << precisionBits;
+        if (index < subBucketCount) {
+            return index;
+        }
+        int halfCount = 1 << (precisionBits - 1);
+        int shift = (index - subBucketCount) / halfCount + 1;
+        long subBucket = (index - subBucketCount) % halfCount + halfCount;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * 直方图快照
+     */
+    public static class Snapshot {
+        private int precisionBits;
+        private long[] counts;
+        private long totalCount;
+        private long sum;
+
+        public Snapshot(int precisionBits, long[] counts, long sum) {
+            this.precisionBits = precisionBits;
+            this.counts = counts;
+            this.sum = sum;
+            for (long count : counts) {
+                totalCount += count;
+            }
+        }
+
+        /**
+         * 百分位数，返回所在桶的最大值
+         * 
+         * @param percentile 例如0.999
+         * @return 无数据时返回-1
+         */
+        public long percentile(double percentile) {
+            if (totalCount == 0) {
+                return -1;
+            }
+            long target = (long) Math.ceil(percentile * totalCount);
+            if (target < 1) {
+                target = 1;
+            }
+            long current = 0;
+            for (int i = 0; i < counts.length; ++i) {
+                current += counts[i];
+                if (current >= target) {
+                    return highestValue(precisionBits, i);
+                }
+            }
+            return highestValue(precisionBits, counts.length - 1);
+        }
+
+        /**
+         * 最大值
+         * 
+         * @return
+         */
+        public long max() {
+            for (int i = counts.length - 1; i >= 0; --i) {
+                if (counts[i] > 0) {
+                    return highestValue(precisionBits, i);
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * 合并，精度需一致
+         * 
+         * @param other
+         * @return 合并后的新快照
+         */
+        public Snapshot merge(Snapshot other) {
+            if (other.precisionBits != precisionBits) {
+                throw new IllegalArgumentException(
+                        "precisionBits not match:" + precisionBits + "!=" + other.precisionBits);
+            }
+            long[] merged = new long[Math.max(counts.length, other.counts.length)];
+            for (int i = 0; i < counts.length; ++i) {
+                merged[i] += counts[i];
+            }
+            for (int i = 0; i < other.counts.length; ++i) {
+                merged[i] += other.counts[i];
+            }
+            return new Snapshot(precisionBits, merged, sum + other.sum);
+        }
+
+        /**
+         * 编码为base64字符串，格式：精度,总耗时,(下标差,次数)*，均为varint
+         * 
+         * @return
+         */
+        public String encode() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeVarLong(out, precisionBits);
+            writeVarLong(out, sum);
+            int prev = -1;
+            for (int i = 0; i < counts.length; ++i) {
+                if (counts[i] == 0) {
+                    continue;
+                }
+                writeVarLong(out, i - prev);
+                writeVarLong(out, counts[i]);
+                prev = i;
+            }
+            return Base64.getEncoder().encodeToString(out.toByteArray());
+        }
+
+        /**
+         * 解码
+         * 
+         * @param encoded
+         * @return
+         */
+        public static Snapshot decode(String encoded) {
+            ByteBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(encoded));
+            int precisionBits = (int) readVarLong(buffer);
+            long sum = readVarLong(buffer);
+            long[] counts = new long[16];
+            int index = -1;
+            while (buffer.hasRemaining()) {
+                index += (int) readVarLong(buffer);
+                if (index >= counts.length) {
+                    long[] tmp = new long[Math.max(index + 1, counts.length * 2)];
+                    System.arraycopy(counts, 0, tmp, 0, counts.length);
+                    counts = tmp;
+                }
+                counts[index] = readVarLong(buffer);
+            }
+            long[] trimmed = new long[index + 1];
+            System.arraycopy(counts, 0, trimmed, 0, trimmed.length);
+            return new Snapshot(precisionBits, trimmed, sum);
+        }
+
+        private static void writeVarLong(ByteArrayOutputStream out, long value) {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+
+        private static long readVarLong(ByteBuffer buffer) {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buffer.get();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("malformed varint");
+        }
+
+        public int getPrecisionBits() {
+            return precisionBits;
+        }
+
+        public long[] getCounts() {
+            return counts;
+        }
+
+        public long getTotalCount() {
+            return totalCount;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+    }
+}
@@ -1,22 +1,19 @@
 package com.sohu.tv.mq.stats;
 
+import com.sohu.tv.mq.common.ClientRuntime;
+import com.sohu.tv.mq.metric.MQMeters;
 import com.sohu.tv.mq.stats.InvokeStats.ExceptionStats;
 import com.sohu.tv.mq.stats.InvokeStats.InvokeStatsResult;
 import com.sohu.tv.mq.stats.InvokeStats.TimeAndExceptionStats;
 import com.sohu.tv.mq.stats.dto.ClientStats;
-import com.sohu.tv.mq.util.JSONUtil;
-import org.apache.rocketmq.common.utils.HttpTinyClient;
-import org.apache.rocketmq.common.utils.HttpTinyClient.HttpResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.net.HttpURLConnection;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 统计助手
@@ -31,8 +28,10 @@ public class StatsHelper implements StatsHelperMBean {
     private String producer;
     // brokerAddr<->调用统计
     private ConcurrentMap<String, InvokeStats> invokeStatsMap;
-    // 时间段统计
-    private TimeSectionStats timeSectionStats;
+    // 耗时直方图
+    private LatencyHistogram latencyHistogram;
+    // 上次采样的直方图快照
+    private volatile LatencyHistogram.Snapshot sampledSnapshot;
     // 是否停止统计
     private volatile boolean stoped;
     // 状态采样上报
@@ -54,8 +53,18 @@ public class StatsHelper implements StatsHelperMBean {
      * @param timeInMillis
      */
     public void init(int timeInMillis) {
+        init(timeInMillis, LatencyHistogram.DEFAULT_PRECISION_BITS);
+    }
+
+    /**
+     * 初始化
+     * 
+     * @param timeInMillis 最大耗时
+     * @param precisionBits 直方图精度
+     */
+    public void init(int timeInMillis, int precisionBits) {
         invokeStatsMap = new ConcurrentHashMap<String, InvokeStats>();
-        timeSectionStats = new TimeSectionStats(timeInMillis);
+        latencyHistogram = new LatencyHistogram(precisionBits, timeInMillis * 1000L);
         // 初始化上报
         statsReporter = new StatsReporter(this);
         statsReporter.init();
@@ -71,6 +80,30 @@ public class StatsHelper implements StatsHelperMBean {
      * @param exception
      */
     public void increment(String brokerAddr, int timeInMillis, Exception exception) {
+        increment(brokerAddr, timeInMillis, 1, exception);
+    }
+
+    /**
+     * 统计，批量消息按条数统计
+     * 
+     * @param brokerAddr
+     * @param timeInMillis
+     * @param count 消息条数
+     * @param exception
+     */
+    public void increment(String brokerAddr, int timeInMillis, int count, Exception exception) {
+        incrementInMicros(brokerAddr, timeInMillis * 1000L, count, exception);
+    }
+
+    /**
+     * 统计，耗时精确到微秒
+     * 
+     * @param brokerAddr
+     * @param timeInMicros
+     * @param count 消息条数
+     * @param exception
+     */
+    public void incrementInMicros(String brokerAddr, long timeInMicros, int count, Exception exception) {
         // 停止后不再统计
         if (stoped) {
             return;
@@ -89,15 +122,39 @@ public class StatsHelper implements StatsHelperMBean {
                 invokeStats = prev;
             }
         }
-        invokeStats.increment(timeInMillis);
+        invokeStats.increment((int) (timeInMicros / 1000), count);
         // 统计异常
         if (exception != null) {
             invokeStats.record(exception);
         }
-        // 统计时间段
-        timeSectionStats.increment(timeInMillis);
+        // 统计耗时分布
+        latencyHistogram.record(timeInMicros, count);
+        // 实时指标
+        MQMeters.recordSend(producer, brokerAddr, timeInMicros, count, exception != null);
     }
     
+    /**
+     * 获取broker近期的平均耗时
+     * 
+     * @param brokerAddr
+     * @return 无数据时返回-1
+     */
+    public double getRecentAvgTime(String brokerAddr) {
+        if (brokerAddr == null) {
+            return -1;
+        }
+        // 只取ip
+        int idx = brokerAddr.indexOf(":");
+        if (idx != -1) {
+            brokerAddr = brokerAddr.substring(0, idx);
+        }
+        InvokeStats invokeStats = invokeStatsMap.get(brokerAddr);
+        if (invokeStats == null) {
+            return -1;
+        }
+        return invokeStats.getRecentAvgTime();
+    }
+
     /**
      * 记录异常
      * @param exception
@@ -133,7 +190,7 @@ public class StatsHelper implements StatsHelperMBean {
         // 上报统计
         private Stats reportStats = new Stats();
         
-        private ScheduledExecutorService reportExecutorService;
+        private ScheduledFuture<?> reportFuture;
 
         public StatsReporter(StatsHelper statsHelper) {
             this.statsHelper = statsHelper;
@@ -143,23 +200,18 @@ public class StatsHelper implements StatsHelperMBean {
          * 采样任务初始化
          */
         public void init() {
-            // 数据采样线程
-            reportExecutorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
-                @Override
-                public Thread newThread(Runnable r) {
-                    return new Thread(r, "StatsReporter-" + statsHelper.getProducer() + "-" + threadCounter.incrementAndGet());
-                }
-            });
-            reportExecutorService.scheduleWithFixedDelay(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        report();
-                    } catch (Throwable ignored) {
-                        logger.warn("report err:{}", ignored.getMessage());
-                    }
-                }
-            }, ONE_MINITE_IN_MILLIS, ONE_MINITE_IN_MILLIS, TimeUnit.MILLISECONDS);
+            // 数据采样，使用jvm内共享的调度线程
+            reportFuture = ClientRuntime.getInstance().scheduleWithFixedDelay(
+                    "StatsReporter-" + statsHelper.getProducer(), new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                report();
+                            } catch (Throwable ignored) {
+                                logger.warn("report err:{}", ignored.getMessage());
+                            }
+                        }
+                    }, ONE_MINITE_IN_MILLIS, ONE_MINITE_IN_MILLIS, TimeUnit.MILLISECONDS);
         }
 
         /**
@@ -176,9 +228,10 @@ public class StatsHelper implements StatsHelperMBean {
                 return;
             }
             // 百分数采样
-            statsHelper.timeSectionStats.sample();
+            LatencyHistogram.Snapshot snapshot = statsHelper.latencyHistogram.sample();
+            statsHelper.sampledSnapshot = snapshot;
             // 没有调用量不用统计
-            if (statsHelper.timeSectionStats.getTotalCount() <= 0) {
+            if (snapshot.getTotalCount() <= 0) {
                 sampleStats.recordCost(System.currentTimeMillis() - start, new Date(start));
                 // 记录指标数据
                 statsHelper.clientStats = null;
@@ -205,13 +258,15 @@ public class StatsHelper implements StatsHelperMBean {
 
             // 百分数结果封装
             clientStats.setStatsTime((int) (System.currentTimeMillis() / ONE_MINITE_IN_MILLIS));
-            clientStats.setPercent99(statsHelper.timeSectionStats.percentile(0.99));
-            clientStats.setPercent90(statsHelper.timeSectionStats.percentile(0.9));
-            clientStats.setCounts(statsHelper.timeSectionStats.getTotalCount());
-            clientStats.setTotalTime(statsHelper.timeSectionStats.totalTime());
-            if (clientStats.getCounts() > 0) {
-                clientStats.setAvg((long) (((double) clientStats.getTotalTime()) / clientStats.getCounts() * 10) / 10D);
-            }
+            clientStats.setPercent99(toMillis(snapshot.percentile(0.99)));
+            clientStats.setPercent90(toMillis(snapshot.percentile(0.9)));
+            clientStats.setPercent50(snapshot.percentile(0.5) / 1000D);
+            clientStats.setPercent999(snapshot.percentile(0.999) / 1000D);
+            clientStats.setPercent9999(snapshot.percentile(0.9999) / 1000D);
+            clientStats.setHistogram(snapshot.encode());
+            clientStats.setCounts(snapshot.getTotalCount());
+            clientStats.setTotalTime(snapshot.getSum() / 1000);
+            clientStats.setAvg((long) (((double) snapshot.getSum()) / snapshot.getTotalCount() / 100) / 10D);
             
             // 统计异常
             Map<String, Object> exceptionMap = statsHelper.exceptionStatsHelper.report();
@@ -219,35 +274,31 @@ public class StatsHelper implements StatsHelperMBean {
                 clientStats.setExceptionMap(exceptionMap);
             }
             statsHelper.clientStats = clientStats;
-            // 发送结果
-            String stats = JSONUtil.toJSONString(clientStats);
             // 统计采样
             sampleStats.recordCost(System.currentTimeMillis() - start, new Date(start));
 
-            sendToMQCloud(stats);
+            // 交给jvm内共享的上报器合并发送
+            ClientStatsBatchReporter.getInstance().add(statsHelper.getMqCloudDomain(), clientStats, this);
         }
 
         /**
-         * 发送到MQCloud
+         * 微秒转为毫秒，向上取整
          * 
-         * @param stats
+         * @param timeInMicros
+         * @return
          */
-        private void sendToMQCloud(String stats) {
-            long start = System.currentTimeMillis();
-            List<String> paramValues = new ArrayList<String>();
-            paramValues.add("stats");
-            paramValues.add(stats);
-            try {
-                HttpResult result = HttpTinyClient.httpPost("http://" + statsHelper.getMqCloudDomain() + 
-                        "/cluster/report", null, paramValues, "UTF-8", 5000);
-                if (HttpURLConnection.HTTP_OK != result.code) {
-                    logger.error("http response err: code:{},info:{}", result.code, result.content);
-                }
-            } catch (Throwable e) {
-                logger.error("http err, stats:{}", stats, e);
-            }
-            // 统计采样
-            reportStats.recordCost(System.currentTimeMillis() - start, new Date(start));
+        private int toMillis(long timeInMicros) {
+            return (int) ((timeInMicros + 999) / 1000);
+        }
+
+        /**
+         * 记录上报耗时
+         * 
+         * @param cost
+         * @param date
+         */
+        void recordReportCost(long cost, Date date) {
+            reportStats.recordCost(cost, date);
         }
 
         public Stats getSampleStats() {
@@ -259,7 +310,7 @@ public class StatsHelper implements StatsHelperMBean {
         }
         
         public void shutdown() {
-            reportExecutorService.shutdown();
+            reportFuture.cancel(false);
         }
     }
 
@@ -333,28 +384,50 @@ public class StatsHelper implements StatsHelperMBean {
         // 状态map
         Map<String, Object> statsMap = new HashMap<String, Object>();
 
-        // 设置时间段统计
-        List<Integer> timeSection = timeSectionStats.getTimeSection();
-        AtomicLong[] timeSectionCounter = timeSectionStats.getTimeSectionCounter();
-        long[] snapshotData = timeSectionStats.getSnapshotData();
-        long[] sampledData = timeSectionStats.getSampledData();
-        Map<Integer, Map<String, Long>> timeSectionStatsMap = new TreeMap<Integer, Map<String, Long>>();
-        for (int i = 0; i < timeSection.size(); ++i) {
-            Map<String, Long> tmpMap = new HashMap<String, Long>();
-            tmpMap.put("now", timeSectionCounter[i].get());
-            if (snapshotData != null) {
-                tmpMap.put("snapshot", snapshotData[i]);
-            }
-            if (sampledData != null) {
-                tmpMap.put("sampled", sampledData[i]);
-            }
-            timeSectionStatsMap.put(timeSection.get(i), tmpMap);
+        // 设置耗时分布，key为桶的最大耗时(微秒)
+        Map<Long, Map<String, Long>> timeSectionStatsMap = new TreeMap<Long, Map<String, Long>>();
+        putBuckets(timeSectionStatsMap, "now", latencyHistogram.peek());
+        LatencyHistogram.Snapshot snapshot = sampledSnapshot;
+        if (snapshot != null) {
+            putBuckets(timeSectionStatsMap, "sampled", snapshot);
+            statsMap.put("sampledTotalCount", snapshot.getTotalCount());
+            Map<String, Long> percentileMap = new LinkedHashMap<String, Long>();
+            percentileMap.put("p50", snapshot.percentile(0.5));
+            percentileMap.put("p90", snapshot.percentile(0.9));
+            percentileMap.put("p99", snapshot.percentile(0.99));
+            percentileMap.put("p999", snapshot.percentile(0.999));
+            percentileMap.put("p9999", snapshot.percentile(0.9999));
+            percentileMap.put("max", snapshot.max());
+            statsMap.put("sampledPercentileInMicros", percentileMap);
         }
         statsMap.put("timeSectionStats", timeSectionStatsMap);
-        statsMap.put("sampledTotalCount", timeSectionStats.getTotalCount());
         return statsMap;
     }
 
+    /**
+     * 将非空桶放入map
+     * 
+     * @param timeSectionStatsMap
+     * @param name
+     * @param snapshot
+     */
+    private void putBuckets(Map<Long, Map<String, Long>> timeSectionStatsMap, String name,
+            LatencyHistogram.Snapshot snapshot) {
+        long[] counts = snapshot.getCounts();
+        for (int i = 0; i < counts.length; ++i) {
+            if (counts[i] == 0) {
+                continue;
+            }
+            long highestValue = LatencyHistogram.highestValue(snapshot.getPrecisionBits(), i);
+            Map<String, Long> tmpMap = timeSectionStatsMap.get(highestValue);
+            if (tmpMap == null) {
+                tmpMap = new HashMap<String, Long>();
+                timeSectionStatsMap.put(highestValue, tmpMap);
+            }
+            tmpMap.put(name, counts[i]);
+        }
+    }
+
     @Override
     public void stop() {
         this.stoped = true;
@@ -391,9 +464,7 @@ public class StatsHelper implements StatsHelperMBean {
         for (Entry<String, InvokeStats> entry : invokeStatsMap.entrySet()) {
             InvokeStats invokeStats = entry.getValue();
             Map<String, Object> invokeStatsMap = new HashMap<String, Object>();
-            int indexer = invokeStats.getIndexer();
-            invokeStatsMap.put("indexer", indexer);
-            TimeAndExceptionStats timeAndExceptionStats = invokeStats.getStatsArray()[indexer];
+            TimeAndExceptionStats timeAndExceptionStats = invokeStats.getCurrent();
             invokeStatsMap.put("timeStats", timeAndExceptionStats.getTimeStats().getMap());
             invokeStatsMap.put("exceptionStats", timeAndExceptionStats.getExceptionStats().getMap());
             invokeMap.put(entry.getKey(), invokeStatsMap);
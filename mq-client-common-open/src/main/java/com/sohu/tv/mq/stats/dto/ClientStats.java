@@ -19,6 +19,14 @@ public class ClientStats {
     private int percent99;
     // 90%调用耗时在percent90以下
     private int percent90;
+    // 50%调用耗时在percent50以下，单位毫秒，精确到微秒
+    private double percent50;
+    // 99.9%调用耗时在percent999以下，单位毫秒，精确到微秒
+    private double percent999;
+    // 99.99%调用耗时在percent9999以下，单位毫秒，精确到微秒
+    private double percent9999;
+    // 编码后的耗时直方图，可用LatencyHistogram.Snapshot.decode解码后合并
+    private String histogram;
     // 平均耗时
     private double avg;
     // 总调用次数
@@ -65,6 +73,38 @@ public class ClientStats {
         this.percent90 = percent90;
     }
 
+    public double getPercent50() {
+        return percent50;
+    }
+
+    public void setPercent50(double percent50) {
+        this.percent50 = percent50;
+    }
+
+    public double getPercent999() {
+        return percent999;
+    }
+
+    public void setPercent999(double percent999) {
+        this.percent999 = percent999;
+    }
+
+    public double getPercent9999() {
+        return percent9999;
+    }
+
+    public void setPercent9999(double percent9999) {
+        this.percent9999 = percent9999;
+    }
+
+    public String getHistogram() {
+        return histogram;
+    }
+
+    public void setHistogram(String histogram) {
+        this.histogram = histogram;
+    }
+
     public double getAvg() {
         return avg;
     }
@@ -116,7 +156,8 @@ public class ClientStats {
     @Override
     public String toString() {
         return "ClientStats [client=" + client + ", producer=" + producer + ", percent99=" + percent99 + ", percent90="
-                + percent90 + ", avg=" + avg + ", counts=" + counts + ", detailInvoke=" + detailInvoke + ", statsTime="
+                + percent90 + ", percent50=" + percent50 + ", percent999=" + percent999 + ", percent9999="
+                + percent9999 + ", avg=" + avg + ", counts=" + counts + ", detailInvoke=" + detailInvoke + ", statsTime="
                 + statsTime + "]";
     }
 }
@@ -102,6 +102,60 @@ public class JSONUtil {
         }
     }
 
+    /**
+     * 绑定类型，返回的对象线程安全，可缓存复用，避免每次解析都查找类型
+     *
+     * @param valueType
+     * @param <T>
+     * @return
+     */
+    public static <T> Binding<T> bind(Class<T> valueType) {
+        return new Binding<T>(mapper.readerFor(valueType), mapper.writer());
+    }
+
+    /**
+     * 类型绑定，预先构建好reader和writer
+     */
+    public static class Binding<T> {
+        private ObjectReader reader;
+        private ObjectWriter writer;
+
+        private Binding(ObjectReader reader, ObjectWriter writer) {
+            this.reader = reader;
+            this.writer = writer;
+        }
+
+        /**
+         * 直接从utf-8字节解析，不经过中间字符串
+         *
+         * @param bytes
+         * @return
+         */
+        public T parse(byte[] bytes) {
+            try {
+                return reader.readValue(bytes);
+            } catch (IOException e) {
+                throw new JSONExecption(e);
+            }
+        }
+
+        public T parse(String content) {
+            try {
+                return reader.readValue(content);
+            } catch (IOException e) {
+                throw new JSONExecption(e);
+            }
+        }
+
+        public String toJSONString(Object entity) {
+            try {
+                return writer.writeValueAsString(entity);
+            } catch (IOException e) {
+                throw new JSONExecption(e);
+            }
+        }
+    }
+
     /**
      * json异常
      */
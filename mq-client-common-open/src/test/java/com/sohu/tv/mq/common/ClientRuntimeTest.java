@@ -0,0 +1,52 @@
+package com.sohu.tv.mq.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.sohu.tv.mq.stats.ConsumeStats;
+import com.sohu.tv.mq.stats.StatsHelper;
+
+public class ClientRuntimeTest {
+
+    @Test
+    public void testThreadsNotGrow() {
+        int threadsBefore = Thread.activeCount();
+        int tasksBefore = ClientRuntime.getInstance().getTaskCount();
+        List<ConsumeStats> consumeStatsList = new ArrayList<>();
+        List<StatsHelper> statsHelperList = new ArrayList<>();
+        for (int i = 0; i < 60; ++i) {
+            consumeStatsList.add(new ConsumeStats("consumer-" + i));
+            StatsHelper statsHelper = new StatsHelper();
+            statsHelper.setProducer("producer-" + i);
+            statsHelper.init(3000);
+            statsHelperList.add(statsHelper);
+        }
+        // 共享的调度线程数固定
+        Assert.assertTrue(Thread.activeCount() - threadsBefore <= ClientRuntime.SCHEDULER_THREADS);
+        Assert.assertEquals(tasksBefore + 120, ClientRuntime.getInstance().getTaskCount());
+        for (int i = 0; i < 60; ++i) {
+            consumeStatsList.get(i).shutdown();
+            statsHelperList.get(i).shutdown();
+        }
+        // 关闭后任务移出队列
+        Assert.assertEquals(tasksBefore, ClientRuntime.getInstance().getTaskCount());
+    }
+
+    @Test
+    public void testTaskErrorNotStop() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(3);
+        ScheduledFuture<?> future = ClientRuntime.getInstance().scheduleWithFixedDelay("error", () -> {
+            latch.countDown();
+            throw new RuntimeException("mock");
+        }, 0, 10, TimeUnit.MILLISECONDS);
+        // 异常后继续执行
+        Assert.assertTrue(latch.await(1, TimeUnit.SECONDS));
+        future.cancel(false);
+    }
+}
@@ -0,0 +1,52 @@
+package com.sohu.tv.mq.common;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class InFlightWindowTest {
+
+    @Test
+    public void testCount() {
+        InFlightWindow window = new InFlightWindow("test", 2, 1024);
+        Assert.assertTrue(window.tryAcquire(10));
+        Assert.assertTrue(window.tryAcquire(10));
+        Assert.assertFalse(window.tryAcquire(10));
+        window.release(10);
+        Assert.assertTrue(window.tryAcquire(10));
+        Assert.assertEquals(2, window.getCount());
+        Assert.assertEquals(1, window.getRejectedTimes());
+    }
+
+    @Test
+    public void testBytes() {
+        InFlightWindow window = new InFlightWindow("test", 100, 100);
+        // 空窗口总是允许
+        Assert.assertTrue(window.tryAcquire(200));
+        Assert.assertFalse(window.tryAcquire(1));
+        window.release(200);
+        Assert.assertTrue(window.tryAcquire(60));
+        Assert.assertFalse(window.tryAcquire(60));
+        Assert.assertTrue(window.tryAcquire(40));
+    }
+
+    @Test
+    public void testBlock() throws InterruptedException {
+        InFlightWindow window = new InFlightWindow("test", 1, 1024);
+        Assert.assertTrue(window.acquire(10, 100));
+        Assert.assertFalse(window.acquire(10, 50));
+        CountDownLatch latch = new CountDownLatch(1);
+        new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+            }
+            window.release(10);
+            latch.countDown();
+        }).start();
+        Assert.assertTrue(window.acquire(10, 5000));
+        latch.await();
+        Assert.assertEquals(1, window.getCount());
+    }
+}
@@ -0,0 +1,73 @@
+package com.sohu.tv.mq.compress;
+
+import java.util.Arrays;
+
+import org.apache.rocketmq.common.message.Message;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompressorEnumTest {
+
+    private byte[] data() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; ++i) {
+            sb.append("{\"id\":").append(i).append(",\"name\":\"test\"}");
+        }
+        return sb.toString().getBytes();
+    }
+
+    @Test
+    public void testCompress() throws Exception {
+        byte[] data = data();
+        for (CompressorEnum compressorEnum : CompressorEnum.values()) {
+            MessageCompressor compressor = compressorEnum.getMessageCompressor();
+            byte[] compressed = compressor.compress(data);
+            Assert.assertTrue(compressed.length < data.length);
+            Assert.assertArrayEquals(data, compressor.decompress(compressed));
+            Assert.assertArrayEquals(new byte[0], compressor.decompress(compressor.compress(new byte[0])));
+        }
+    }
+
+    @Test
+    public void testMaxDecompressedLength() throws Exception {
+        byte[] data = data();
+        for (CompressorEnum compressorEnum : CompressorEnum.values()) {
+            MessageCompressor compressor = compressorEnum.getMessageCompressor();
+            byte[] compressed = compressor.compress(data);
+            Assert.assertArrayEquals(data, compressor.decompress(compressed, data.length));
+            try {
+                compressor.decompress(compressed, data.length - 1);
+                Assert.fail(compressorEnum.getName());
+            } catch (IllegalArgumentException e) {
+            }
+        }
+    }
+
+    @Test
+    public void testCorrupted() throws Exception {
+        byte[] data = data();
+        for (CompressorEnum compressorEnum : CompressorEnum.values()) {
+            MessageCompressor compressor = compressorEnum.getMessageCompressor();
+            byte[] compressed = compressor.compress(data);
+            // 截断的数据解压失败，不会越界
+            byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+            try {
+                compressor.decompress(truncated);
+                Assert.fail(compressorEnum.getName());
+            } catch (Exception e) {
+            }
+        }
+    }
+
+    @Test
+    public void testDecompressMessage() throws Exception {
+        byte[] data = data();
+        Message message = new Message("test", data);
+        Assert.assertFalse(CompressorEnum.decompress(message));
+        message.setBody(CompressorEnum.LZ4.getMessageCompressor().compress(data));
+        message.putUserProperty(CompressorEnum.PROPERTY_COMPRESSOR, CompressorEnum.LZ4.getName());
+        Assert.assertTrue(CompressorEnum.decompress(message));
+        Assert.assertArrayEquals(data, message.getBody());
+        Assert.assertNull(message.getProperty(CompressorEnum.PROPERTY_COMPRESSOR));
+    }
+}
@@ -0,0 +1,85 @@
+package com.sohu.tv.mq.metric;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.sohu.tv.mq.util.JSONUtil;
+
+public class ConsumeProfilerTest {
+
+    private volatile boolean running = true;
+
+    @Test
+    public void testSample() throws Exception {
+        ConsumeThreadStat consumeThreadStat = new ConsumeThreadStat();
+        ConsumeProfiler profiler = new ConsumeProfiler(consumeThreadStat, 6, ConsumeProfiler.MAX_STACKS);
+        CountDownLatch latch = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            consumeThreadStat.set(new MessageMetric());
+            latch.countDown();
+            busyConsume();
+            consumeThreadStat.remove();
+        });
+        thread.start();
+        latch.await();
+        long now = 100 * ConsumeProfiler.SLOT_MILLIS;
+        for (int i = 0; i < 10; ++i) {
+            profiler.sample(now + i);
+        }
+        running = false;
+        thread.join();
+        // 未在消费的线程不采样
+        profiler.sample(now + 10);
+
+        ConsumeProfile profile = profiler.getProfile(now + 10);
+        Assert.assertEquals(10, profile.getSamples());
+        Assert.assertEquals(now, profile.getStartTime());
+        String folded = profile.toFolded();
+        Assert.assertTrue(folded, folded.contains("java.lang.Thread.run;"));
+        Assert.assertTrue(folded, folded.contains(ConsumeProfilerTest.class.getName() + ".busyConsume"));
+
+        // 客户端上报，mqcloud解析
+        ConsumeProfile parsed = JSONUtil.parse(JSONUtil.toJSONString(profile), ConsumeProfile.class);
+        Assert.assertEquals(profile.getStacks(), parsed.getStacks());
+
+        // 超出时间窗口的数据被淘汰
+        Assert.assertEquals(0, profiler.getProfile(now + 6 * ConsumeProfiler.SLOT_MILLIS).getSamples());
+    }
+
+    private void busyConsume() {
+        long count = 0;
+        while (running) {
+            ++count;
+        }
+        Assert.assertTrue(count > 0);
+    }
+
+    @Test
+    public void testMaxStacks() {
+        ConsumeProfiler profiler = new ConsumeProfiler(new ConsumeThreadStat(), 2, 2);
+        long now = 100 * ConsumeProfiler.SLOT_MILLIS;
+        profiler.add(Arrays.asList("a", "b", "c", "a"), now);
+        ConsumeProfile profile = profiler.getProfile(now);
+        Assert.assertEquals(4, profile.getSamples());
+        // 字典已满，新堆栈计入[other]
+        Assert.assertEquals(1L, profile.getStacks().get(ConsumeProfiler.OVERFLOW_STACK).longValue());
+        Assert.assertEquals(2L, profile.getStacks().get("a").longValue());
+        // 过期时间片的堆栈被清理，空间可复用
+        now += 2 * ConsumeProfiler.SLOT_MILLIS;
+        profiler.add(Arrays.asList("c", "d"), now);
+        profile = profiler.getProfile(now);
+        Assert.assertEquals(2, profile.getStacks().size());
+        Assert.assertEquals(1L, profile.getStacks().get("d").longValue());
+    }
+
+    @Test
+    public void testFold() {
+        StackTraceElement[] stackTrace = new StackTraceElement[] {
+                new StackTraceElement("com.a.Consumer", "consume", null, 0),
+                new StackTraceElement("java.lang.Thread", "run", null, 0) };
+        Assert.assertEquals("java.lang.Thread.run;com.a.Consumer.consume", ConsumeProfiler.fold(stackTrace));
+    }
+}
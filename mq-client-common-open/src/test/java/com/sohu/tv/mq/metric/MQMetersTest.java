@@ -0,0 +1,65 @@
+package com.sohu.tv.mq.metric;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class MQMetersTest {
+
+    private SimpleMeterRegistry registry;
+
+    @Before
+    public void before() {
+        registry = new SimpleMeterRegistry();
+        Metrics.addRegistry(registry);
+    }
+
+    @After
+    public void after() {
+        Metrics.removeRegistry(registry);
+    }
+
+    @Test
+    public void testRecord() {
+        Assert.assertTrue(MQMeters.isEnabled());
+        MQMeters.recordSend("test-producer", "broker-a", 2000, 1, false);
+        MQMeters.recordSend("test-producer", "broker-a", 3000, 10, true);
+        MQMeters.recordConsume("test-consumer", TimeUnit.MILLISECONDS.toNanos(5), 4, true);
+        MQMeters.recordConsume("test-consumer", TimeUnit.MILLISECONDS.toNanos(5), 2, false);
+        Assert.assertEquals(2, registry.get(MQMeters.SEND).tags("group", "test-producer", "broker", "broker-a")
+                .timer().count());
+        Assert.assertEquals(11, registry.get(MQMeters.SEND_MESSAGES).tag("broker", "broker-a").counter().count(), 0);
+        Assert.assertEquals(1, registry.get(MQMeters.SEND_ERRORS).tag("broker", "broker-a").counter().count(), 0);
+        Assert.assertEquals(1, registry.get(MQMeters.CONSUME).tags("group", "test-consumer", "status", "fail")
+                .timer().count());
+        Assert.assertEquals(6, registry.get(MQMeters.CONSUME_MESSAGES).tag("group", "test-consumer").counter()
+                .count(), 0);
+        // 关闭时移除
+        MQMeters.removeSend("test-producer");
+        MQMeters.removeConsume("test-consumer");
+        Assert.assertNull(Metrics.globalRegistry.find(MQMeters.SEND).tag("group", "test-producer").timer());
+        Assert.assertNull(Metrics.globalRegistry.find(MQMeters.SEND_ERRORS).tag("group", "test-producer").counter());
+        Assert.assertNull(Metrics.globalRegistry.find(MQMeters.CONSUME).tag("group", "test-consumer").timer());
+        Assert.assertNull(Metrics.globalRegistry.find(MQMeters.CONSUME_MESSAGES).tag("group", "test-consumer")
+                .counter());
+    }
+
+    @Test
+    public void testGauge() {
+        AtomicLong inflight = new AtomicLong(5);
+        MQMeters.gauge(MQMeters.SEND_INFLIGHT_MESSAGES, inflight, AtomicLong::get, "group", "test-gauge");
+        Assert.assertEquals(5, registry.get(MQMeters.SEND_INFLIGHT_MESSAGES).gauge().value(), 0);
+        // 抓取时读取实时值
+        inflight.set(8);
+        Assert.assertEquals(8, registry.get(MQMeters.SEND_INFLIGHT_MESSAGES).gauge().value(), 0);
+        MQMeters.removeGauge(MQMeters.SEND_INFLIGHT_MESSAGES, "group", "test-gauge");
+        Assert.assertNull(Metrics.globalRegistry.find(MQMeters.SEND_INFLIGHT_MESSAGES).gauge());
+    }
+}
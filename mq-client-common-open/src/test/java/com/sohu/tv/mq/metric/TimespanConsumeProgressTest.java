@@ -0,0 +1,34 @@
+package com.sohu.tv.mq.metric;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.sohu.tv.mq.util.JSONUtil;
+
+public class TimespanConsumeProgressTest {
+
+    @Test
+    public void testCodec() {
+        TimespanConsumeProgress progress = new TimespanConsumeProgress();
+        progress.setTopic("test-topic");
+        progress.setBeginTime(1000);
+        progress.setFinishTime(3000);
+        progress.setQueues(8);
+        progress.setFinishedQueues(8);
+        progress.setTotalOffset(400);
+        progress.setPulledOffset(100);
+        progress.setConsumed(90);
+        Assert.assertEquals(25, progress.getPercent());
+        Assert.assertEquals(45, progress.getTps());
+        // 客户端上报，mqcloud解析
+        String json = JSONUtil.toJSONString(Arrays.asList(progress));
+        List<TimespanConsumeProgress> list = JSONUtil.parseList(json, TimespanConsumeProgress.class);
+        Assert.assertEquals(1, list.size());
+        Assert.assertEquals("test-topic", list.get(0).getTopic());
+        Assert.assertEquals(90, list.get(0).getConsumed());
+        Assert.assertTrue(list.get(0).isFinished());
+    }
+}
@@ -0,0 +1,117 @@
+package com.sohu.tv.mq.serializable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.rocketmq.common.message.MessageAccessor;
+import org.apache.rocketmq.common.message.MessageConst;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.sohu.tv.mq.util.JSONUtil;
+
+public class AdaptiveMessageDeserializerTest {
+
+    private DefaultMessageSerializer<Object> protostuff = new DefaultMessageSerializer<>();
+
+    private StringSerializer<Object> string = new StringSerializer<>();
+
+    @Test
+    public void testMarker() throws Exception {
+        AdaptiveMessageDeserializer deserializer = new AdaptiveMessageDeserializer(protostuff);
+        MessageExt me = buildMessage(string.serialize("hello"), "p1");
+        MessageAccessor.putProperty(me, MessageSerializerEnum.PROPERTY_SERIALIZER,
+                String.valueOf(MessageSerializerEnum.STRING.getType()));
+        Assert.assertEquals("hello", deserializer.deserialize(me));
+        Assert.assertEquals(1L, deserializer.getStats().get("markerHits").longValue());
+    }
+
+    @Test
+    public void testMagicOnlyForTyped() throws Exception {
+        TypedMessageSerializer<Object> typed = new TypedMessageSerializer<>();
+        typed.register(TypedMessageSerializerTest.User.class);
+        byte[] bytes = typed.serialize(new TypedMessageSerializerTest.User());
+        // 配置了其他序列化器时，魔数不覆盖配置
+        AdaptiveMessageDeserializer deserializer = new AdaptiveMessageDeserializer(protostuff,
+                new TypedMessageSerializer<>(TypedMessageSerializerTest.User.class));
+        deserializer.select(buildMessage(bytes, "p1"), bytes, "p1");
+        Assert.assertEquals(0L, deserializer.getStats().get("magicHits").longValue());
+        // 生产者标记了类型化序列化
+        MessageExt me = buildMessage(bytes, "p1");
+        MessageAccessor.putProperty(me, MessageSerializerEnum.PROPERTY_SERIALIZER,
+                String.valueOf(MessageSerializerEnum.TYPED_PROTOSTUF.getType()));
+        Assert.assertTrue(deserializer.deserialize(me) instanceof TypedMessageSerializerTest.User);
+        deserializer = new AdaptiveMessageDeserializer(typed);
+        Assert.assertTrue(deserializer.deserialize(buildMessage(bytes, "p1")) instanceof TypedMessageSerializerTest.User);
+        Assert.assertEquals(1L, deserializer.getStats().get("magicHits").longValue());
+    }
+
+    @Test
+    public void testCustomSerializer() throws Exception {
+        MessageSerializer<Object> custom = new MessageSerializer<Object>() {
+            public byte[] serialize(Object source) throws Exception {
+                return ("custom:" + source).getBytes();
+            }
+
+            public Object deserialize(byte[] bytes) throws Exception {
+                return new String(bytes).substring("custom:".length());
+            }
+        };
+        AdaptiveMessageDeserializer deserializer = new AdaptiveMessageDeserializer(custom);
+        MessageExt me = buildMessage(custom.serialize("hello"), "p1");
+        // 生产者的标识不能覆盖自定义的序列化器
+        MessageAccessor.putProperty(me, MessageSerializerEnum.PROPERTY_SERIALIZER,
+                String.valueOf(MessageSerializerEnum.STRING.getType()));
+        Assert.assertEquals("hello", deserializer.deserialize(me));
+        Assert.assertEquals(0L, deserializer.getStats().get("markerHits").longValue());
+    }
+
+    @Test
+    public void testMixedProducers() throws Exception {
+        AdaptiveMessageDeserializer deserializer = new AdaptiveMessageDeserializer(protostuff);
+        Map<String, Object> map = new HashMap<>();
+        map.put("a", 1);
+        for (int i = 0; i < 100; ++i) {
+            Assert.assertEquals(map, deserializer.deserialize(buildMessage(protostuff.serialize(map), "p1")));
+            Assert.assertEquals("{\"a\":1}", deserializer.deserialize(buildMessage(string.serialize(map), "p2")));
+        }
+        Map<String, Long> stats = deserializer.getStats();
+        // 无需逐个尝试
+        Assert.assertEquals(0L, stats.get("retries").longValue());
+        Assert.assertEquals(0L, stats.get("failures").longValue());
+        Assert.assertEquals(200L, stats.get("configuredHits") + stats.get("cacheHits") + stats.get("fallbackHits"));
+        // 两个生产者组只在首次识别，之后命中缓存
+        Assert.assertEquals(1L, stats.get("configuredHits").longValue());
+        Assert.assertEquals(1L, stats.get("fallbackHits").longValue());
+        Assert.assertEquals(198L, stats.get("cacheHits").longValue());
+        Assert.assertEquals(0.005, deserializer.getFallbackRate(), 0.0001);
+    }
+
+    @Test
+    public void testJsonBinding() throws Exception {
+        AdaptiveMessageDeserializer deserializer = new AdaptiveMessageDeserializer(string);
+        Map<String, Object> map = new HashMap<>();
+        map.put("a", 1);
+        MessageExt me = buildMessage(string.serialize(map), "p1");
+        Assert.assertEquals(map, deserializer.deserialize(me, JSONUtil.bind(HashMap.class)));
+    }
+
+    @Test
+    public void testMatches() throws Exception {
+        byte[] vo = protostuff.serialize("hello");
+        byte[] text = string.serialize("hello");
+        Assert.assertTrue(AdaptiveMessageDeserializer.matches(MessageSerializerEnum.PROTOSTUF, vo));
+        Assert.assertFalse(AdaptiveMessageDeserializer.matches(MessageSerializerEnum.PROTOSTUF, text));
+        Assert.assertTrue(AdaptiveMessageDeserializer.matches(MessageSerializerEnum.STRING, text));
+        Assert.assertFalse(AdaptiveMessageDeserializer.matches(MessageSerializerEnum.STRING, vo));
+        Assert.assertTrue(AdaptiveMessageDeserializer.matches(MessageSerializerEnum.TYPED_PROTOSTUF, vo));
+    }
+
+    private MessageExt buildMessage(byte[] body, String producerGroup) {
+        MessageExt me = new MessageExt();
+        me.setBody(body);
+        MessageAccessor.putProperty(me, MessageConst.PROPERTY_PRODUCER_GROUP, producerGroup);
+        return me;
+    }
+}
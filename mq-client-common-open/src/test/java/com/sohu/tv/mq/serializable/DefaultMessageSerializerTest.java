@@ -0,0 +1,59 @@
+package com.sohu.tv.mq.serializable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DefaultMessageSerializerTest {
+
+    private DefaultMessageSerializer<Object> serializer = new DefaultMessageSerializer<>();
+
+    @Test
+    public void testSerialize() throws Exception {
+        for (int i = 0; i < 3; ++i) {
+            Map<String, String> map = new HashMap<>();
+            map.put("a", String.valueOf(i));
+            byte[] bs = serializer.serialize("topic", map);
+            Assert.assertEquals(map, serializer.deserialize(bs));
+        }
+        // 大消息超过线程缓冲区
+        char[] chars = new char[100000];
+        Arrays.fill(chars, 'a');
+        String big = new String(chars);
+        Assert.assertEquals(big, serializer.deserialize(serializer.serialize("topic", big)));
+        Assert.assertEquals("b", serializer.deserialize(serializer.serialize("b")));
+    }
+
+    @Test
+    public void testSerializeToBuffer() throws Exception {
+        byte[] buffer = new byte[1024];
+        int size = serializer.serialize("hello", buffer, 10);
+        Assert.assertTrue(size > 0);
+        Assert.assertEquals("hello", serializer.deserialize(Arrays.copyOfRange(buffer, 10, 10 + size)));
+        // 缓冲区不足时不写入
+        Arrays.fill(buffer, (byte) 7);
+        Assert.assertEquals(-1, serializer.serialize(new String(new char[2000]), buffer, 0));
+        for (byte b : buffer) {
+            Assert.assertEquals(7, b);
+        }
+        // 缓冲区小于protostuff要求的最小值
+        byte[] small = new byte[100];
+        size = serializer.serialize("hello", small, 0);
+        Assert.assertEquals("hello", serializer.deserialize(Arrays.copyOf(small, size)));
+    }
+
+    @Test
+    public void testSizeEstimator() {
+        SerializeSizeEstimator estimator = new SerializeSizeEstimator();
+        Assert.assertEquals(SerializeSizeEstimator.MIN_BUFFER_SIZE, estimator.bufferSize("topic"));
+        for (int i = 0; i < 100; ++i) {
+            estimator.record("topic", 3000);
+        }
+        Assert.assertEquals(8192, estimator.bufferSize("topic"));
+        estimator.record("big", 10 * 1024 * 1024);
+        Assert.assertEquals(SerializeSizeEstimator.MAX_BUFFER_SIZE, estimator.bufferSize("big"));
+    }
+}
@@ -0,0 +1,109 @@
+package com.sohu.tv.mq.serializable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TypedMessageSerializerTest {
+
+    @Test
+    public void testSerialize() throws Exception {
+        TypedMessageSerializer<Object> serializer = new TypedMessageSerializer<>();
+        Assert.assertTrue(serializer.register(User.class));
+        User user = new User();
+        user.setId(1);
+        user.setName("test");
+        byte[] bytes = serializer.serialize(user);
+        Assert.assertTrue(TypedMessageSerializer.isTyped(bytes));
+        // 比VO方式小
+        Assert.assertTrue(bytes.length < new DefaultMessageSerializer<Object>().serialize(user).length);
+        User u = (User) serializer.deserialize(bytes);
+        Assert.assertEquals(1, u.getId());
+        Assert.assertEquals("test", u.getName());
+    }
+
+    @Test
+    public void testJdkType() throws Exception {
+        TypedMessageSerializer<Object> serializer = new TypedMessageSerializer<>();
+        Map<String, String> map = new HashMap<>();
+        map.put("a", "1");
+        byte[] bytes = serializer.serialize(map);
+        Assert.assertFalse(TypedMessageSerializer.isTyped(bytes));
+        Assert.assertEquals(map, serializer.deserialize(bytes));
+        Assert.assertFalse(TypedMessageSerializer.isTyped("abc".getBytes()));
+    }
+
+    @Test
+    public void testBound() throws Exception {
+        TypedMessageSerializer<User> serializer = new TypedMessageSerializer<>(User.class);
+        User user = new User();
+        user.setName("bound");
+        User u = serializer.deserialize(serializer.serialize(user));
+        Assert.assertEquals("bound", u.getName());
+    }
+
+    @Test
+    public void testCrossName() throws Exception {
+        User user = new User();
+        user.setId(2);
+        user.setName("cross");
+        byte[] bytes = new TypedMessageSerializer<>().serialize(user);
+        // 消费者的类名与生产者不同时，使用绑定的类型
+        UserCopy u = new TypedMessageSerializer<>(UserCopy.class).deserialize(bytes);
+        Assert.assertEquals(2, u.getId());
+        Assert.assertEquals("cross", u.getName());
+    }
+
+    @Test
+    public void testHashCollision() throws Exception {
+        Assert.assertEquals(Aa.class.getName().hashCode(), BB.class.getName().hashCode());
+        TypedMessageSerializer<Object> serializer = new TypedMessageSerializer<>();
+        Assert.assertTrue(serializer.register(Aa.class));
+        Assert.assertFalse(serializer.register(BB.class));
+        // 冲突的类型退化为VO方式序列化
+        byte[] bytes = serializer.serialize(new BB());
+        Assert.assertFalse(TypedMessageSerializer.isTyped(bytes));
+        Object object = new TypedMessageSerializer<>(Aa.class).deserialize(bytes);
+        Assert.assertTrue(object instanceof BB);
+    }
+
+    @Test
+    public void testDeserializeWithClass() throws Exception {
+        User user = new User();
+        user.setName("console");
+        byte[] bytes = new TypedMessageSerializer<>().serialize(user);
+        Assert.assertEquals("console", TypedMessageSerializer.deserialize(bytes, User.class).getName());
+    }
+
+    public static class Aa {
+    }
+
+    public static class BB {
+    }
+
+    public static class UserCopy extends User {
+    }
+
+    public static class User {
+        private int id;
+        private String name;
+
+        public int getId() {
+            return id;
+        }
+
+        public void setId(int id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+}
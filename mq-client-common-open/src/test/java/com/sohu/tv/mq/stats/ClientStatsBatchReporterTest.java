@@ -0,0 +1,50 @@
+package com.sohu.tv.mq.stats;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.sohu.tv.mq.stats.dto.ClientStats;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class ClientStatsBatchReporterTest {
+
+    @Test
+    public void testFallbackToJsonOnError() throws Exception {
+        AtomicInteger binaryCount = new AtomicInteger();
+        AtomicInteger jsonCount = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext(ClientStatsBatchReporter.BINARY_REPORT_PATH, exchange -> {
+            binaryCount.incrementAndGet();
+            respond(exchange, 500);
+        });
+        server.createContext(ClientStatsBatchReporter.JSON_REPORT_PATH, exchange -> {
+            jsonCount.incrementAndGet();
+            respond(exchange, 200);
+        });
+        server.start();
+        ClientStatsBatchReporter reporter = new ClientStatsBatchReporter(Integer.MAX_VALUE);
+        try {
+            String domain = "127.0.0.1:" + server.getAddress().getPort();
+            reporter.add(domain, new ClientStats(), null);
+            reporter.add(domain, new ClientStats(), null);
+            reporter.flush();
+            Assert.assertEquals(1, binaryCount.get());
+            // 二进制发送失败，退化为json，统计不丢失
+            Assert.assertEquals(2, jsonCount.get());
+        } finally {
+            reporter.shutdown();
+            server.stop(0);
+        }
+    }
+
+    private void respond(HttpExchange exchange, int code) throws IOException {
+        exchange.getRequestBody().close();
+        exchange.sendResponseHeaders(code, -1);
+        exchange.close();
+    }
+}
@@ -0,0 +1,99 @@
+package com.sohu.tv.mq.stats;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.sohu.tv.mq.stats.InvokeStats.InvokeStatsResult;
+import com.sohu.tv.mq.stats.dto.ClientStats;
+import com.sohu.tv.mq.util.JSONUtil;
+
+public class ClientStatsCodecTest {
+
+    @Test
+    public void test() throws Exception {
+        List<ClientStats> list = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            list.add(buildClientStats(i));
+        }
+        list.add(new ClientStats());
+        byte[] data = ClientStatsCodec.encode(list);
+        List<ClientStats> decoded = ClientStatsCodec.decode(new ByteArrayInputStream(data));
+        Assert.assertEquals(list.size(), decoded.size());
+        for (int i = 0; i < list.size(); ++i) {
+            ClientStats expected = list.get(i);
+            ClientStats actual = decoded.get(i);
+            Assert.assertEquals(JSONUtil.toJSONString(expected), JSONUtil.toJSONString(actual));
+            Assert.assertEquals(expected.getTotalTime(), actual.getTotalTime());
+            if (expected.getDetailInvoke() != null) {
+                Assert.assertEquals(expected.getDetailInvoke().get("127.0.0.1").totalTime(),
+                        actual.getDetailInvoke().get("127.0.0.1").totalTime());
+            }
+        }
+        // 比逐条json紧凑
+        int jsonSize = 0;
+        for (ClientStats clientStats : list) {
+            jsonSize += JSONUtil.toJSONString(clientStats).getBytes("UTF-8").length;
+        }
+        Assert.assertTrue(data.length < jsonSize / 2);
+    }
+
+    @Test
+    public void testInvalidSize() throws Exception {
+        // 一条空的统计恰好为最小长度
+        Assert.assertEquals(1, ClientStatsCodec.decode(new ByteArrayInputStream(
+                ClientStatsCodec.encode(Collections.singletonList(new ClientStats())))).size());
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(byteArrayOutputStream))) {
+            out.writeByte(ClientStatsCodec.VERSION);
+            out.writeInt(Integer.MAX_VALUE);
+        }
+        try {
+            ClientStatsCodec.decode(new ByteArrayInputStream(byteArrayOutputStream.toByteArray()));
+            Assert.fail();
+        } catch (IOException e) {
+        }
+    }
+
+    private ClientStats buildClientStats(int i) {
+        ClientStats clientStats = new ClientStats();
+        clientStats.setClient("10.0.0." + i + "@1234");
+        clientStats.setProducer("test-producer");
+        clientStats.setStatsTime(29000000 + i);
+        clientStats.setCounts(1000 + i);
+        clientStats.setTotalTime(3000 + i);
+        clientStats.setAvg(3.1);
+        clientStats.setPercent90(5);
+        clientStats.setPercent99(12);
+        clientStats.setPercent50(0.875);
+        clientStats.setPercent999(30.5);
+        clientStats.setPercent9999(101.2);
+        LatencyHistogram histogram = new LatencyHistogram(7, 3500000);
+        histogram.record(875, 1000);
+        clientStats.setHistogram(histogram.sample().encode());
+        InvokeStatsResult result = new InvokeStatsResult();
+        result.setMaxTime(200);
+        result.setTotalTime(3000 + i);
+        result.setTimes(1000 + i);
+        Map<String, Integer> exceptionMap = new HashMap<>();
+        exceptionMap.put("RemotingTimeoutException", 2);
+        result.setExceptionMap(exceptionMap);
+        Map<String, InvokeStatsResult> detailInvoke = new HashMap<>();
+        detailInvoke.put("127.0.0.1", result);
+        clientStats.setDetailInvoke(detailInvoke);
+        Map<String, Object> clientExceptionMap = new HashMap<>();
+        clientExceptionMap.put("MQBrokerException", 1);
+        clientStats.setExceptionMap(clientExceptionMap);
+        return clientStats;
+    }
+}
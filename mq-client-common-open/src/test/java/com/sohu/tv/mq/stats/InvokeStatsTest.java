@@ -0,0 +1,85 @@
+package com.sohu.tv.mq.stats;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.sohu.tv.mq.stats.InvokeStats.InvokeStatsResult;
+
+public class InvokeStatsTest {
+
+    private static final int THREADS = 8;
+
+    private static final int TIMES = 200000;
+
+    /**
+     * 多线程写入的同时不断采样，所有采样结果之和应与写入完全一致
+     */
+    @Test
+    public void testNoLostUpdate() throws Exception {
+        InvokeStats invokeStats = new InvokeStats();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(THREADS);
+        for (int i = 0; i < THREADS; ++i) {
+            new Thread(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < TIMES; ++j) {
+                        invokeStats.increment(2);
+                        if (j % 100 == 0) {
+                            invokeStats.record(new IllegalStateException());
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        AtomicBoolean finished = new AtomicBoolean();
+        long[] total = new long[3];
+        Thread sampler = new Thread(() -> {
+            while (!finished.get()) {
+                accumulate(total, invokeStats.sample());
+            }
+        });
+        sampler.start();
+        start.countDown();
+        done.await();
+        finished.set(true);
+        sampler.join();
+        accumulate(total, invokeStats.sample());
+        Assert.assertEquals(THREADS * TIMES, total[0]);
+        Assert.assertEquals(THREADS * TIMES * 2L, total[1]);
+        Assert.assertEquals(THREADS * TIMES / 100, total[2]);
+    }
+
+    private void accumulate(long[] total, InvokeStatsResult result) {
+        if (result == null) {
+            return;
+        }
+        total[0] += result.getTimes();
+        total[1] += result.totalTime();
+        if (result.getExceptionMap() != null) {
+            total[2] += result.getExceptionMap().get("IllegalStateException");
+        }
+    }
+
+    @Test
+    public void testSample() {
+        InvokeStats invokeStats = new InvokeStats();
+        Assert.assertNull(invokeStats.sample());
+        Assert.assertEquals(-1, invokeStats.getRecentAvgTime(), 0);
+        invokeStats.increment(10);
+        invokeStats.increment(30, 2);
+        InvokeStatsResult result = invokeStats.sample();
+        Assert.assertEquals(3, result.getTimes());
+        Assert.assertEquals(70, result.totalTime());
+        Assert.assertEquals(30, result.getMaxTime());
+        Assert.assertEquals(70D / 3, invokeStats.getRecentAvgTime(), 0.001);
+        Assert.assertNull(invokeStats.sample());
+    }
+}
@@ -0,0 +1,70 @@
+package com.sohu.tv.mq.stats;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.sohu.tv.mq.stats.LatencyHistogram.Snapshot;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testIndex() {
+        int precisionBits = LatencyHistogram.DEFAULT_PRECISION_BITS;
+        int prev = -1;
+        for (long value = 0; value < 10000000; value += 1 + value / 100) {
+            int index = LatencyHistogram.index(precisionBits, value);
+            Assert.assertTrue(index >= prev);
+            long highestValue = LatencyHistogram.highestValue(precisionBits, index);
+            Assert.assertTrue(highestValue >= value);
+            // 相对误差小于1/64
+            Assert.assertTrue(highestValue - value <= value / 64);
+            prev = index;
+        }
+    }
+
+    @Test
+    public void testPercentile() {
+        LatencyHistogram histogram = new LatencyHistogram(7, 3500000);
+        for (int i = 1; i <= 10000; ++i) {
+            histogram.record(i, 1);
+        }
+        Snapshot snapshot = histogram.sample();
+        Assert.assertEquals(10000, snapshot.getTotalCount());
+        Assert.assertEquals(10000L * 10001 / 2, snapshot.getSum());
+        assertNear(5000, snapshot.percentile(0.5));
+        assertNear(9990, snapshot.percentile(0.999));
+        assertNear(9999, snapshot.percentile(0.9999));
+        assertNear(10000, snapshot.max());
+        // 采样后清零
+        Assert.assertEquals(0, histogram.sample().getTotalCount());
+        Assert.assertEquals(-1, histogram.sample().percentile(0.99));
+    }
+
+    @Test
+    public void testMaxValue() {
+        LatencyHistogram histogram = new LatencyHistogram(7, 1000);
+        histogram.record(5000, 2);
+        Snapshot snapshot = histogram.sample();
+        Assert.assertEquals(2, snapshot.getTotalCount());
+        assertNear(1000, snapshot.max());
+    }
+
+    @Test
+    public void testMergeAndEncode() {
+        LatencyHistogram fast = new LatencyHistogram(7, 3500000);
+        LatencyHistogram slow = new LatencyHistogram(7, 3500000);
+        for (int i = 0; i < 990; ++i) {
+            fast.record(200, 1);
+        }
+        slow.record(100000, 10);
+        Snapshot merged = Snapshot.decode(fast.sample().encode()).merge(Snapshot.decode(slow.sample().encode()));
+        Assert.assertEquals(1000, merged.getTotalCount());
+        Assert.assertEquals(990 * 200 + 10 * 100000, merged.getSum());
+        assertNear(200, merged.percentile(0.99));
+        assertNear(100000, merged.percentile(0.999));
+    }
+
+    private void assertNear(long expected, long actual) {
+        Assert.assertTrue(expected + "!=" + actual, actual >= expected && actual - expected <= expected / 64);
+    }
+}
@@ -0,0 +1,106 @@
+package com.sohu.tv.mq.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.sohu.tv.mq.util.JSONUtil.Binding;
+
+public class JSONUtilTest {
+
+    private static final int WARMUP = 20000;
+
+    private static final int ITERATIONS = 200000;
+
+    @Test
+    public void testBind() throws Exception {
+        Order order = buildOrder();
+        Binding<Order> binding = JSONUtil.bind(Order.class);
+        byte[] bytes = JSONUtil.toJSONString(order).getBytes(StandardCharsets.UTF_8);
+        Order parsed = binding.parse(bytes);
+        Assert.assertEquals(JSONUtil.toJSONString(order), binding.toJSONString(parsed));
+    }
+
+    /**
+     * 对比每次经过字符串解析与绑定类型直接解析字节的耗时
+     */
+    @Test
+    public void benchmark() throws Exception {
+        byte[] bytes = JSONUtil.toJSONString(buildOrder()).getBytes(StandardCharsets.UTF_8);
+        Binding<Order> binding = JSONUtil.bind(Order.class);
+        // 预热
+        parseFromString(bytes, WARMUP);
+        parseFromBytes(binding, bytes, WARMUP);
+        long start = System.nanoTime();
+        long sum1 = parseFromString(bytes, ITERATIONS);
+        long stringCost = System.nanoTime() - start;
+        start = System.nanoTime();
+        long sum2 = parseFromBytes(binding, bytes, ITERATIONS);
+        long bytesCost = System.nanoTime() - start;
+        Assert.assertEquals(sum1, sum2);
+        System.out.println("String+parse: " + stringCost / ITERATIONS + "ns/op, binding+bytes: "
+                + bytesCost / ITERATIONS + "ns/op, gain: " + (stringCost * 100 / bytesCost - 100) + "%");
+    }
+
+    private long parseFromString(byte[] bytes, int times) {
+        long sum = 0;
+        for (int i = 0; i < times; ++i) {
+            String json = new String(bytes, StandardCharsets.UTF_8);
+            sum += JSONUtil.parse(json, Order.class).getId();
+        }
+        return sum;
+    }
+
+    private long parseFromBytes(Binding<Order> binding, byte[] bytes, int times) {
+        long sum = 0;
+        for (int i = 0; i < times; ++i) {
+            sum += binding.parse(bytes).getId();
+        }
+        return sum;
+    }
+
+    private Order buildOrder() {
+        Order order = new Order();
+        order.setId(123456789L);
+        order.setName("测试订单-test-order");
+        List<String> items = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            items.add("item" + i);
+        }
+        order.setItems(items);
+        return order;
+    }
+
+    public static class Order {
+        private long id;
+        private String name;
+        private List<String> items;
+
+        public long getId() {
+            return id;
+        }
+
+        public void setId(long id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public List<String> getItems() {
+            return items;
+        }
+
+        public void setItems(List<String> items) {
+            this.items = items;
+        }
+    }
+}
@@ -6,10 +6,13 @@ import java.lang.reflect.Modifier;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.net.HttpURLConnection;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ThreadFactory;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import com.sohu.tv.mq.util.JSONUtil;
@@ -22,6 +25,7 @@ import org.apache.rocketmq.client.consumer.listener.MessageListenerConcurrently;
 import org.apache.rocketmq.client.consumer.listener.MessageListenerOrderly;
 import org.apache.rocketmq.client.exception.MQClientException;
 import org.apache.rocketmq.client.impl.consumer.DefaultMQPushConsumerImpl;
+import org.apache.rocketmq.client.impl.consumer.ProcessQueue;
 import org.apache.rocketmq.client.impl.consumer.PullMessageService;
 import org.apache.rocketmq.client.impl.factory.MQClientInstance;
 import org.apache.rocketmq.client.trace.AsyncTraceDispatcher;
@@ -30,6 +34,7 @@ import org.apache.rocketmq.common.ServiceState;
 import org.apache.rocketmq.common.ServiceThread;
 import org.apache.rocketmq.common.consumer.ConsumeFromWhere;
 import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
 import org.apache.rocketmq.common.protocol.RequestCode;
 import org.apache.rocketmq.common.protocol.heartbeat.MessageModel;
 import org.apache.rocketmq.common.utils.HttpTinyClient;
@@ -38,21 +43,36 @@ import org.apache.rocketmq.remoting.RemotingClient;
 
 import com.sohu.index.tv.mq.common.BatchConsumerCallback;
 import com.sohu.index.tv.mq.common.ConsumerCallback;
+import com.sohu.index.tv.mq.common.RawConsumerCallback;
 import com.sohu.tv.mq.common.AbstractConfig;
+import com.sohu.tv.mq.common.ClientRuntime;
+import com.sohu.tv.mq.compress.CompressUtil;
 import com.sohu.tv.mq.dto.ConsumerConfigDTO;
 import com.sohu.tv.mq.dto.DTOResult;
+import com.sohu.tv.mq.metric.ConsumeProfile;
+import com.sohu.tv.mq.metric.ConsumeProfiler;
 import com.sohu.tv.mq.metric.ConsumeStatManager;
+import com.sohu.tv.mq.metric.MQMeters;
+import com.sohu.tv.mq.metric.TimespanConsumeProgress;
+import com.sohu.tv.mq.rocketmq.consumer.AdaptiveConcurrencyController;
 import com.sohu.tv.mq.rocketmq.consumer.BatchMessageConsumer;
 import com.sohu.tv.mq.rocketmq.consumer.IMessageConsumer;
+import com.sohu.tv.mq.rocketmq.consumer.KeyPartitionedExecutor;
+import com.sohu.tv.mq.rocketmq.consumer.RawMessageConsumer;
 import com.sohu.tv.mq.rocketmq.consumer.SingleMessageConsumer;
+import com.sohu.tv.mq.rocketmq.consumer.deduplicate.DeduplicateBatchMessageConsumer;
 import com.sohu.tv.mq.rocketmq.consumer.deduplicate.DeduplicateSingleMessageConsumer;
 import com.sohu.tv.mq.rocketmq.limiter.LeakyBucketRateLimiter;
+import com.sohu.tv.mq.rocketmq.limiter.LockFreeTokenBucketRateLimiter;
 import com.sohu.tv.mq.rocketmq.limiter.RateLimiter;
+import com.sohu.tv.mq.rocketmq.limiter.RedisRateLimiter;
 import com.sohu.tv.mq.rocketmq.limiter.SwitchableRateLimiter;
 import com.sohu.tv.mq.rocketmq.limiter.TokenBucketRateLimiter;
 import com.sohu.tv.mq.rocketmq.netty.SohuClientRemotingProcessor;
 import com.sohu.tv.mq.rocketmq.redis.IRedis;
+import com.sohu.tv.mq.serializable.TypedMessageSerializer;
 import com.sohu.tv.mq.util.Constant;
+import com.sohu.tv.mq.util.JSONUtil.Binding;
 
 /**
  * rocketmq 消费者
@@ -75,6 +95,12 @@ public class RocketMQConsumer extends AbstractConfig {
     @SuppressWarnings("rawtypes")
     private ConsumerCallback consumerCallback;
 
+    // 原始消息消费，消息体只读访问，按需反序列化
+    private RawConsumerCallback<?> rawConsumerCallback;
+
+    // 批量消费时是否延迟反序列化
+    private boolean batchLazyDeserialize;
+
     /**
      * 是否重试
      */
@@ -97,10 +123,20 @@ public class RocketMQConsumer extends AbstractConfig {
     // 消息限速器
     private RateLimiter rateLimiter;
 
-    private ScheduledExecutorService clientConfigScheduledExecutorService;
+    // 从mqcloud更新动态配置的任务
+    private ScheduledFuture<?> clientConfigFuture;
 
     private Class<?> consumerParameterTypeClass;
 
+    // 绑定了消费类型的json，消息与消费类型一个是字符串一个不是时用于转换
+    private Binding<?> consumerParameterTypeBinding;
+
+    // 绑定了消费类型的类型化序列化器，用于类型化序列化的消息反序列化
+    private TypedMessageSerializer<?> typedMessageSerializer;
+
+    // 压缩消息解压后的最大长度
+    private int maxDecompressedLength = CompressUtil.DEFAULT_MAX_DECOMPRESSED_LENGTH;
+
     // 是否开启统计
     private boolean enableStats = true;
 
@@ -113,12 +149,51 @@ public class RocketMQConsumer extends AbstractConfig {
     // 消费去重窗口时间，默认3分钟
     private int deduplicateWindowSeconds = 3 * 60 + 10;
 
+    // 本地去重缓存的最大key数，默认为0，不使用本地缓存
+    private int deduplicateLocalCacheSize;
+
     // 幂等消费用的redis
     private IRedis redis;
 
     // 消息消费
     private IMessageConsumer<?> messageConsumer;
 
+    // 批内并行消费的线程数，大于0时开启，仅对单条消息回调的并发消费有效
+    private int parallelConsumeThreads;
+
+    // 批内并行消费执行器
+    private KeyPartitionedExecutor parallelConsumeExecutor;
+
+    // 自适应消费线程数的下限
+    private int adaptiveConsumeThreadMin = 1;
+
+    // 自适应消费线程数的上限，大于0时开启
+    private int adaptiveConsumeThreadMax;
+
+    // 自适应消费并发控制
+    private AdaptiveConcurrencyController adaptiveConcurrencyController;
+
+    // 已注册指标的本地队列
+    private ConcurrentMap<MessageQueue, ProcessQueue> meteredProcessQueueMap = new ConcurrentHashMap<>();
+
+    // 同步本地队列指标的任务
+    private ScheduledFuture<?> processQueueMetersFuture;
+
+    // 是否采样消费线程堆栈，采样需要进入安全点，默认关闭
+    private boolean consumeProfileEnabled;
+
+    // 消费线程堆栈的采样间隔，毫秒
+    private long consumeProfileInterval = ConsumeProfiler.DEFAULT_SAMPLE_INTERVAL;
+
+    // 时间段消费每次拉取的消息数
+    private int timespanPullBatchSize = TimespanConsumer.DEFAULT_PULL_BATCH_SIZE;
+
+    // 时间段消费并行拉取的线程数
+    private int timespanPullThreads = TimespanConsumer.DEFAULT_PULL_THREADS;
+
+    // 时间段消费，key为topic@start@end
+    private Map<String, TimespanConsumer> timespanConsumerMap = new ConcurrentHashMap<>();
+
     public RocketMQConsumer() {
     }
 
@@ -178,6 +253,8 @@ public class RocketMQConsumer extends AbstractConfig {
 
             // 构建消费者对象
             messageConsumer = detectMessageConsumer();
+            // 初始化批内并行消费
+            initParallelConsumeExecutor();
             // 注册顺序或并发消费
             if (consumeOrderly) {
                 consumer.registerMessageListener(new MessageListenerOrderly() {
@@ -197,10 +274,23 @@ public class RocketMQConsumer extends AbstractConfig {
             initConsumerParameterTypeClass();
             // 初始化定时调度任务
             initScheduleTask();
+            // 自适应调整的是线程池的核心线程数，rocketmq会忽略不小于consumeThreadMax的值
+            if (adaptiveConsumeThreadMax >= consumer.getConsumeThreadMax()) {
+                throw new MQClientException("adaptiveConsumeThreadMax:" + adaptiveConsumeThreadMax
+                        + " must be less than consumeThreadMax:" + consumer.getConsumeThreadMax(), null);
+            }
             // 消费者启动
             consumer.start();
             // init after start
             initAfterStart();
+            // 初始化自适应消费并发
+            initAdaptiveConcurrencyController();
+            // 初始化本地队列指标
+            initProcessQueueMeters();
+            // 启动消费线程采样
+            if (consumeProfileEnabled) {
+                getConsumeProfiler().start("consumeProfiler-" + group, consumeProfileInterval);
+            }
             logger.info("topic:{} group:{} start", topic, group);
         } catch (MQClientException e) {
             logger.error(e.getMessage(), e);
@@ -211,69 +301,64 @@ public class RocketMQConsumer extends AbstractConfig {
      * 从mqcloud更新动态配置
      */
     private void initScheduleTask() {
-        // 数据采样线程
-        clientConfigScheduledExecutorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
-            @Override
-            public Thread newThread(Runnable r) {
-                return new Thread(r, "updateConsumerConfigThread-" + getGroup());
-            }
-        });
-        clientConfigScheduledExecutorService.scheduleAtFixedRate(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    HttpResult result = HttpTinyClient.httpGet(
-                            "http://" + getMqCloudDomain() + "/consumer/config/" + getGroup(), null, null, "UTF-8",
-                            5000);
-                    if (HttpURLConnection.HTTP_OK != result.code) {
-                        logger.error("http response err: code:{},info:{}", result.code, result.content);
-                        return;
-                    }
-                    DTOResult<ConsumerConfigDTO> dtoResult = JSONUtil.parse(result.content, DTOResult.class,
-                            ConsumerConfigDTO.class);
-                    ConsumerConfigDTO consumerConfigDTO = dtoResult.getResult();
-                    if (consumerConfigDTO == null) {
-                        return;
-                    }
-                    // 1.更新重试跳过时间戳
-                    if (consumerConfigDTO.getRetryMessageResetTo() != null &&
-                            retryMessageResetTo != consumerConfigDTO.getRetryMessageResetTo()) {
-                        setRetryMessageResetTo(consumerConfigDTO.getRetryMessageResetTo());
-                    }
-                    // 2.更新消费是否暂停
-                    boolean needCheckPause = false;
-                    if (consumerConfigDTO.getPause() != null) {
-                        String pauseClientId = consumerConfigDTO.getPauseClientId();
-                        // 停止所有实例
-                        if (pauseClientId == null || pauseClientId.length() == 0) {
-                            needCheckPause = true;
-                        } else if (consumerConfigDTO.getPauseClientId()
-                                .equals(consumer.getDefaultMQPushConsumerImpl().getmQClientFactory().getClientId())) { // 只停止当前实例
-                            needCheckPause = true;
+        // http请求使用jvm内共享的阻塞任务线程
+        clientConfigFuture = ClientRuntime.getInstance().scheduleBlockingWithFixedDelay(
+                "updateConsumerConfig-" + getGroup(), new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            HttpResult result = HttpTinyClient.httpGet(
+                                    "http://" + getMqCloudDomain() + "/consumer/config/" + getGroup(), null, null,
+                                    "UTF-8", 5000);
+                            if (HttpURLConnection.HTTP_OK != result.code) {
+                                logger.error("http response err: code:{},info:{}", result.code, result.content);
+                                return;
+                            }
+                            DTOResult<ConsumerConfigDTO> dtoResult = JSONUtil.parse(result.content, DTOResult.class,
+                                    ConsumerConfigDTO.class);
+                            ConsumerConfigDTO consumerConfigDTO = dtoResult.getResult();
+                            if (consumerConfigDTO == null) {
+                                return;
+                            }
+                            // 1.更新重试跳过时间戳
+                            if (consumerConfigDTO.getRetryMessageResetTo() != null &&
+                                    retryMessageResetTo != consumerConfigDTO.getRetryMessageResetTo()) {
+                                setRetryMessageResetTo(consumerConfigDTO.getRetryMessageResetTo());
+                            }
+                            // 2.更新消费是否暂停
+                            boolean needCheckPause = false;
+                            if (consumerConfigDTO.getPause() != null) {
+                                String pauseClientId = consumerConfigDTO.getPauseClientId();
+                                // 停止所有实例
+                                if (pauseClientId == null || pauseClientId.length() == 0) {
+                                    needCheckPause = true;
+                                } else if (consumerConfigDTO.getPauseClientId()
+                                        .equals(consumer.getDefaultMQPushConsumerImpl().getmQClientFactory().getClientId())) { // 只停止当前实例
+                                    needCheckPause = true;
+                                }
+                            }
+                            if (needCheckPause && consumer.getDefaultMQPushConsumerImpl()
+                                    .isPause() != consumerConfigDTO.getPause()) {
+                                setPause(consumerConfigDTO.getPause());
+                            }
+                            // 3.更新限速
+                            if (consumerConfigDTO.getEnableRateLimit() != null &&
+                                    isEnableRateLimit() != consumerConfigDTO.getEnableRateLimit()) {
+                                setEnableRateLimit(consumerConfigDTO.getEnableRateLimit());
+                            }
+                            if (consumerConfigDTO.getPermitsPerSecond() != null) {
+                                int rate = consumerConfigDTO.getPermitsPerSecond().intValue();
+                                if (getRate() != rate) {
+                                    setRate(rate);
+                                }
+                            }
+                            // 更新重试消息跳过的key
+                            setRetryMessageSkipKey(consumerConfigDTO.getRetryMessageSkipKey());
+                        } catch (Throwable ignored) {
+                            logger.warn("skipRetryMessage err:{}", ignored);
                         }
                     }
-                    if (needCheckPause
-                            && consumer.getDefaultMQPushConsumerImpl().isPause() != consumerConfigDTO.getPause()) {
-                        setPause(consumerConfigDTO.getPause());
-                    }
-                    // 3.更新限速
-                    if (consumerConfigDTO.getEnableRateLimit() != null &&
-                            isEnableRateLimit() != consumerConfigDTO.getEnableRateLimit()) {
-                        setEnableRateLimit(consumerConfigDTO.getEnableRateLimit());
-                    }
-                    if (consumerConfigDTO.getPermitsPerSecond() != null) {
-                        int rate = consumerConfigDTO.getPermitsPerSecond().intValue();
-                        if (getRate() != rate) {
-                            setRate(rate);
-                        }
-                    }
-                    // 更新重试消息跳过的key
-                    setRetryMessageSkipKey(consumerConfigDTO.getRetryMessageSkipKey());
-                } catch (Throwable ignored) {
-                    logger.warn("skipRetryMessage err:{}", ignored);
-                }
-            }
-        }, 5, 60, TimeUnit.SECONDS);
+                }, 5, 60, TimeUnit.SECONDS);
     }
 
     public void shutdown() {
@@ -290,8 +375,22 @@ public class RocketMQConsumer extends AbstractConfig {
         pull.makeStop();
         // 4.如下为正常关闭流程
         consumer.shutdown();
+        if (parallelConsumeExecutor != null) {
+            parallelConsumeExecutor.shutdown(consumer.getAwaitTerminationMillisWhenShutdown());
+        }
+        if (adaptiveConcurrencyController != null) {
+            adaptiveConcurrencyController.shutdown();
+        }
         rateLimiter.shutdown();
-        clientConfigScheduledExecutorService.shutdown();
+        getConsumeProfiler().shutdown();
+        clientConfigFuture.cancel(false);
+        if (processQueueMetersFuture != null) {
+            processQueueMetersFuture.cancel(false);
+            for (MessageQueue mq : meteredProcessQueueMap.keySet()) {
+                MQMeters.removeGauge(MQMeters.PROCESS_QUEUE_MESSAGES, processQueueTags(mq));
+            }
+        }
+        MQMeters.removeConsume(group);
         super.shutdown();
     }
 
@@ -462,6 +561,35 @@ public class RocketMQConsumer extends AbstractConfig {
         return consumerCallback;
     }
 
+    @SuppressWarnings("unchecked")
+    public <T> RawConsumerCallback<T> getRawConsumerCallback() {
+        return (RawConsumerCallback<T>) rawConsumerCallback;
+    }
+
+    /**
+     * 设置原始消息消费回调，只转发、路由消息等无需反序列化的场景使用，不支持去重
+     * 
+     * @param rawConsumerCallback
+     */
+    public void setRawConsumerCallback(RawConsumerCallback<?> rawConsumerCallback) {
+        this.rawConsumerCallback = rawConsumerCallback;
+    }
+
+    public boolean isBatchLazyDeserialize() {
+        return batchLazyDeserialize;
+    }
+
+    /**
+     * 设置批量消费时是否延迟反序列化，默认关闭。
+     * 开启后回调收到的列表在访问每条消息时才反序列化，且不持有反序列化后的对象，适用于大批量大消息体的场景；
+     * 反序列化失败时getMessage()抛出IllegalStateException，不再自动跳过该消息。
+     * 
+     * @param batchLazyDeserialize
+     */
+    public void setBatchLazyDeserialize(boolean batchLazyDeserialize) {
+        this.batchLazyDeserialize = batchLazyDeserialize;
+    }
+
     @SuppressWarnings("unchecked")
     public <T, C> BatchConsumerCallback<T, C> getBatchConsumerCallback() {
         return (BatchConsumerCallback<T, C>) batchConsumerCallback;
@@ -617,6 +745,18 @@ public class RocketMQConsumer extends AbstractConfig {
         return consumer.getDefaultMQPushConsumerImpl().isPause();
     }
 
+    /**
+     * 将消息发回其所在队列的broker的重试队列
+     * 
+     * @param msgExt
+     * @param delayLevel
+     * @param messageQueue 消息所在队列
+     * @throws Exception
+     */
+    public void sendMessageBack(MessageExt msgExt, int delayLevel, MessageQueue messageQueue) throws Exception {
+        consumer.getDefaultMQPushConsumerImpl().sendMessageBack(msgExt, delayLevel, messageQueue.getBrokerName());
+    }
+
     public void setEnableRateLimit(boolean enableRateLimit) {
         if (rateLimiter instanceof SwitchableRateLimiter) {
             ((SwitchableRateLimiter) rateLimiter).setEnabled(enableRateLimit);
@@ -649,6 +789,32 @@ public class RocketMQConsumer extends AbstractConfig {
         initRateLimiter(new TokenBucketRateLimiter(Constant.LIMIT_CONSUME_TPS));
     }
 
+    /**
+     * 初始化无锁令牌桶限速器，语义同令牌桶限速器，消费线程较多时竞争更小
+     */
+    public void initLockFreeTokenBucketRateLimiter() {
+        boolean enableRateLimit = isEnableRateLimit();
+        int rate = getRate();
+        rateLimiter.shutdown();
+        initRateLimiter(new LockFreeTokenBucketRateLimiter(rate));
+        setEnableRateLimit(enableRateLimit);
+    }
+
+    /**
+     * 初始化集群限速器，消费者组的所有实例共享速率，需先设置redis
+     */
+    public void initRedisRateLimiter() {
+        if (redis == null) {
+            logger.warn("topic:{}'s consumer:{} redis is null, can't init redis rate limiter", getTopic(), getGroup());
+            return;
+        }
+        boolean enableRateLimit = isEnableRateLimit();
+        int rate = getRate();
+        rateLimiter.shutdown();
+        initRateLimiter(new RedisRateLimiter(redis, group, rate));
+        setEnableRateLimit(enableRateLimit);
+    }
+
     public boolean isEnableStats() {
         return enableStats;
     }
@@ -675,6 +841,15 @@ public class RocketMQConsumer extends AbstractConfig {
 
     public void initConsumerParameterTypeClass() {
         consumerParameterTypeClass = detectConsumerParameterTypeClass();
+        // 绑定消费类型，用于类型化序列化的消息反序列化
+        if (TypedMessageSerializer.isSupported(consumerParameterTypeClass)) {
+            typedMessageSerializer = new TypedMessageSerializer<>(consumerParameterTypeClass);
+            logger.info("bind typed serializer:{}", consumerParameterTypeClass.getName());
+        }
+        // 预先绑定json类型，字符串消息直接从字节解析
+        if (consumerParameterTypeClass != null) {
+            consumerParameterTypeBinding = JSONUtil.bind(consumerParameterTypeClass);
+        }
     }
 
     /**
@@ -684,6 +859,9 @@ public class RocketMQConsumer extends AbstractConfig {
      */
     private Class<?> detectConsumerParameterTypeClass() {
         try {
+            if (getRawConsumerCallback() != null) {
+                return _getRawConsumerParameterTypeClass();
+            }
             if (getConsumerCallback() != null) {
                 return _getConsumerParameterTypeClass();
             }
@@ -724,6 +902,28 @@ public class RocketMQConsumer extends AbstractConfig {
         return null;
     }
 
+    /**
+     * 获取原始消息消费者参数类型
+     * 
+     * @return
+     */
+    private Class<?> _getRawConsumerParameterTypeClass() {
+        for (Type type : getRawConsumerCallback().getClass().getGenericInterfaces()) {
+            if (!(type instanceof ParameterizedType)) {
+                continue;
+            }
+            ParameterizedType parameterizedType = (ParameterizedType) type;
+            if (RawConsumerCallback.class != parameterizedType.getRawType()) {
+                continue;
+            }
+            Type typeArgument = parameterizedType.getActualTypeArguments()[0];
+            Class<?> clz = typeArgument instanceof Class ? (Class<?>) typeArgument : null;
+            logger.info("consumer:{}'s parameterTypeClass:{}", getGroup(), clz);
+            return clz;
+        }
+        return null;
+    }
+
     /**
      * 获取消费者参数类型
      * 
@@ -766,7 +966,15 @@ public class RocketMQConsumer extends AbstractConfig {
         return null;
     }
 
-    private IMessageConsumer<?> detectMessageConsumer() {
+    private IMessageConsumer<?> detectMessageConsumer() throws MQClientException {
+        if (getRawConsumerCallback() != null) {
+            // 原始消息消费不支持去重，直接拒绝，避免误以为已去重
+            if (getRedis() != null) {
+                throw new MQClientException("consumer:" + getGroup() + " raw message consumer cannot use deduplication",
+                        null);
+            }
+            return new RawMessageConsumer<>(this);
+        }
         if (getConsumerCallback() != null) {
             if (getRedis() != null) {
                 if (MessageModel.CLUSTERING.equals(consumer.getMessageModel())) {
@@ -777,9 +985,160 @@ public class RocketMQConsumer extends AbstractConfig {
             }
             return new SingleMessageConsumer<>(this);
         }
+        if (getRedis() != null) {
+            if (MessageModel.CLUSTERING.equals(consumer.getMessageModel())) {
+                return new DeduplicateBatchMessageConsumer<>(this);
+            } else {
+                logger.warn("consume message model is broadcasting, cannot use deduplication!");
+            }
+        }
         return new BatchMessageConsumer<>(this);
     }
 
+    /**
+     * 初始化批内并行消费
+     */
+    private void initParallelConsumeExecutor() {
+        if (parallelConsumeThreads <= 0) {
+            return;
+        }
+        if (consumeOrderly || (getConsumerCallback() == null && getRawConsumerCallback() == null)) {
+            logger.warn("consumer:{} parallel consume only support concurrently ConsumerCallback", getGroup());
+            return;
+        }
+        if (consumer.getConsumeMessageBatchMaxSize() <= 1) {
+            logger.warn("consumer:{} consumeMessageBatchMaxSize is 1, parallel consume is useless", getGroup());
+        }
+        parallelConsumeExecutor = new KeyPartitionedExecutor(getGroup(), parallelConsumeThreads);
+        logger.info("consumer:{} parallel consume threads:{}", getGroup(), parallelConsumeThreads);
+    }
+
+    public int getParallelConsumeThreads() {
+        return parallelConsumeThreads;
+    }
+
+    /**
+     * 设置批内并行消费的线程数，一批消息按消息key(或幂等id)分区后并行消费，相同key的消息保持顺序；
+     * 某条消息失败时，只确认之前连续成功的消息，其余消息重试。
+     * 线程数为各消费线程共享的辅助线程上限，辅助线程不足时由消费线程自己执行。
+     * 
+     * @param parallelConsumeThreads
+     */
+    public void setParallelConsumeThreads(int parallelConsumeThreads) {
+        if (parallelConsumeThreads <= 0) {
+            return;
+        }
+        this.parallelConsumeThreads = parallelConsumeThreads;
+    }
+
+    public KeyPartitionedExecutor getParallelConsumeExecutor() {
+        return parallelConsumeExecutor;
+    }
+
+    /**
+     * 初始化自适应消费并发
+     */
+    private void initAdaptiveConcurrencyController() {
+        if (adaptiveConsumeThreadMax <= 0) {
+            return;
+        }
+        DefaultMQPushConsumerImpl innerConsumer = consumer.getDefaultMQPushConsumerImpl();
+        adaptiveConcurrencyController = new AdaptiveConcurrencyController(getGroup(), adaptiveConsumeThreadMin,
+                adaptiveConsumeThreadMax, consumer.getConsumeThreadMin(), this::getProcessQueueMsgCount,
+                threads -> innerConsumer.getConsumeMessageService().updateCorePoolSize(threads));
+        adaptiveConcurrencyController.start(1000);
+    }
+
+    /**
+     * 获取已拉取到本地尚未消费的消息量
+     * 
+     * @return
+     */
+    public long getProcessQueueMsgCount() {
+        long count = 0;
+        for (ProcessQueue processQueue : consumer.getDefaultMQPushConsumerImpl().getRebalanceImpl()
+                .getProcessQueueTable().values()) {
+            count += processQueue.getMsgCount().get();
+        }
+        return count;
+    }
+
+    /**
+     * 初始化本地队列指标，抓取时直接读取队列的消息量，队列随负载均衡变化，定时同步注册
+     */
+    private void initProcessQueueMeters() {
+        if (!MQMeters.isEnabled()) {
+            return;
+        }
+        processQueueMetersFuture = ClientRuntime.getInstance().scheduleWithFixedDelay("processQueueMeters-" + group,
+                this::syncProcessQueueMeters, 5, 30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 同步本地队列指标
+     */
+    private void syncProcessQueueMeters() {
+        ConcurrentMap<MessageQueue, ProcessQueue> processQueueTable = consumer.getDefaultMQPushConsumerImpl()
+                .getRebalanceImpl().getProcessQueueTable();
+        // 移除已分配给其他实例或重建的队列
+        for (Entry<MessageQueue, ProcessQueue> entry : meteredProcessQueueMap.entrySet()) {
+            if (processQueueTable.get(entry.getKey()) != entry.getValue()) {
+                MQMeters.removeGauge(MQMeters.PROCESS_QUEUE_MESSAGES, processQueueTags(entry.getKey()));
+                meteredProcessQueueMap.remove(entry.getKey());
+            }
+        }
+        // 注册新分配的队列
+        for (Entry<MessageQueue, ProcessQueue> entry : processQueueTable.entrySet()) {
+            if (meteredProcessQueueMap.putIfAbsent(entry.getKey(), entry.getValue()) == null) {
+                MQMeters.gauge(MQMeters.PROCESS_QUEUE_MESSAGES, entry.getValue(), pq -> pq.getMsgCount().get(),
+                        processQueueTags(entry.getKey()));
+            }
+        }
+    }
+
+    private String[] processQueueTags(MessageQueue mq) {
+        return new String[] { "group", group, "topic", mq.getTopic(), "broker", mq.getBrokerName(), "queue",
+                String.valueOf(mq.getQueueId()) };
+    }
+
+    public int getAdaptiveConsumeThreadMin() {
+        return adaptiveConsumeThreadMin;
+    }
+
+    /**
+     * 设置自适应消费线程数的下限，默认1
+     * 
+     * @param adaptiveConsumeThreadMin
+     */
+    public void setAdaptiveConsumeThreadMin(int adaptiveConsumeThreadMin) {
+        if (adaptiveConsumeThreadMin <= 0) {
+            return;
+        }
+        this.adaptiveConsumeThreadMin = adaptiveConsumeThreadMin;
+    }
+
+    public int getAdaptiveConsumeThreadMax() {
+        return adaptiveConsumeThreadMax;
+    }
+
+    /**
+     * 设置自适应消费线程数的上限，设置后开启自适应消费并发：
+     * 积压时逐步增加消费线程，积压消退时逐步减少，消费耗时或失败率上升(下游饱和)时成倍减少，初始线程数为consumeThreadMin。
+     * 须小于consumeThreadMax，否则启动失败。
+     * 
+     * @param adaptiveConsumeThreadMax
+     */
+    public void setAdaptiveConsumeThreadMax(int adaptiveConsumeThreadMax) {
+        if (adaptiveConsumeThreadMax <= 0) {
+            return;
+        }
+        this.adaptiveConsumeThreadMax = adaptiveConsumeThreadMax;
+    }
+
+    public AdaptiveConcurrencyController getAdaptiveConcurrencyController() {
+        return adaptiveConcurrencyController;
+    }
+
     public boolean isDeduplicate() {
         return deduplicate;
     }
@@ -796,6 +1155,23 @@ public class RocketMQConsumer extends AbstractConfig {
         this.deduplicateWindowSeconds = deduplicateWindowSeconds;
     }
 
+    public int getDeduplicateLocalCacheSize() {
+        return deduplicateLocalCacheSize;
+    }
+
+    /**
+     * 设置本地去重缓存的最大key数，默认关闭。去重窗口内本实例消费过的消息无需访问redis即可判重，
+     * 首次消费的消息仍需访问redis，因此只适合重复消息较多的场景；每个key约占数百字节，请按去重窗口内的消息量设置。
+     * 
+     * @param deduplicateLocalCacheSize
+     */
+    public void setDeduplicateLocalCacheSize(int deduplicateLocalCacheSize) {
+        if (deduplicateLocalCacheSize < 0) {
+            return;
+        }
+        this.deduplicateLocalCacheSize = deduplicateLocalCacheSize;
+    }
+
     public IRedis getRedis() {
         return redis;
     }
@@ -809,6 +1185,14 @@ public class RocketMQConsumer extends AbstractConfig {
         this.redis = redis;
     }
 
+    public Binding<?> getConsumerParameterTypeBinding() {
+        return consumerParameterTypeBinding;
+    }
+
+    public TypedMessageSerializer<?> getTypedMessageSerializer() {
+        return typedMessageSerializer;
+    }
+
     public IMessageConsumer<?> getMessageConsumer() {
         return messageConsumer;
     }
@@ -829,6 +1213,116 @@ public class RocketMQConsumer extends AbstractConfig {
             logger.warn("consumeMessage topic:{} {}!={}", consumer, getGroup());
             return;
         }
-        new TimespanConsumer(this, topic, start, end).start();
+        // 清理结束超过1小时的
+        long expireTime = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1);
+        timespanConsumerMap.values().removeIf(c -> c.isFinished() && c.getFinishTime() < expireTime);
+        TimespanConsumer timespanConsumer = new TimespanConsumer(this, topic, start, end);
+        timespanConsumer.setPullBatchSize(timespanPullBatchSize);
+        timespanConsumer.setPullThreads(timespanPullThreads);
+        timespanConsumerMap.put(topic + "@" + start + "@" + end, timespanConsumer);
+        timespanConsumer.start();
+    }
+
+    /**
+     * 获取时间段消费的进度
+     * 
+     * @return
+     */
+    public List<TimespanConsumeProgress> getTimespanConsumeProgress() {
+        List<TimespanConsumeProgress> list = new ArrayList<>(timespanConsumerMap.size());
+        for (TimespanConsumer timespanConsumer : timespanConsumerMap.values()) {
+            list.add(timespanConsumer.getProgress());
+        }
+        return list;
+    }
+
+    private ConsumeProfiler getConsumeProfiler() {
+        return ConsumeStatManager.getInstance().getConsumeProfiler(getGroup());
+    }
+
+    /**
+     * 获取消费线程的采样数据
+     * 
+     * @return
+     */
+    public ConsumeProfile getConsumeProfile() {
+        return getConsumeProfiler().getProfile();
+    }
+
+    public boolean isConsumeProfileEnabled() {
+        return consumeProfileEnabled;
+    }
+
+    /**
+     * 设置是否采样消费线程堆栈，默认关闭；每次采样都会进入安全点，排查问题时再开启
+     * 
+     * @param consumeProfileEnabled
+     */
+    public void setConsumeProfileEnabled(boolean consumeProfileEnabled) {
+        this.consumeProfileEnabled = consumeProfileEnabled;
+    }
+
+    public int getMaxDecompressedLength() {
+        return maxDecompressedLength;
+    }
+
+    /**
+     * 压缩消息解压后的最大长度，超过时解压失败，默认64M，仅对本消费者生效
+     * 
+     * @param maxDecompressedLength
+     */
+    public void setMaxDecompressedLength(int maxDecompressedLength) {
+        if (maxDecompressedLength <= 0) {
+            return;
+        }
+        this.maxDecompressedLength = maxDecompressedLength;
+    }
+
+    public long getConsumeProfileInterval() {
+        return consumeProfileInterval;
+    }
+
+    /**
+     * 设置消费线程堆栈的采样间隔，默认1000毫秒
+     * 
+     * @param consumeProfileInterval
+     */
+    public void setConsumeProfileInterval(long consumeProfileInterval) {
+        if (consumeProfileInterval <= 0) {
+            return;
+        }
+        this.consumeProfileInterval = consumeProfileInterval;
+    }
+
+    public int getTimespanPullBatchSize() {
+        return timespanPullBatchSize;
+    }
+
+    /**
+     * 设置时间段消费每次拉取的消息数，默认32
+     * 
+     * @param timespanPullBatchSize
+     */
+    public void setTimespanPullBatchSize(int timespanPullBatchSize) {
+        if (timespanPullBatchSize <= 0) {
+            return;
+        }
+        this.timespanPullBatchSize = timespanPullBatchSize;
+    }
+
+    public int getTimespanPullThreads() {
+        return timespanPullThreads;
+    }
+
+    /**
+     * 设置时间段消费并行拉取的线程数，默认8，每个队列同时只有一个线程拉取
+     * 
+     * @param timespanPullThreads
+     */
+    public void setTimespanPullThreads(int timespanPullThreads) {
+        if (timespanPullThreads <= 0) {
+            return;
+        }
+        this.timespanPullThreads = timespanPullThreads;
     }
 }
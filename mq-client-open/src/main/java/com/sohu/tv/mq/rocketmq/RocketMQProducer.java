@@ -3,21 +3,33 @@ package com.sohu.tv.mq.rocketmq;
 import com.sohu.index.tv.mq.common.MQMessage;
 import com.sohu.index.tv.mq.common.Result;
 import com.sohu.tv.mq.common.AbstractConfig;
+import com.sohu.tv.mq.common.InFlightWindow;
 import com.sohu.tv.mq.common.MQRateLimitException;
 import com.sohu.tv.mq.common.SohuSendMessageHook;
+import com.sohu.tv.mq.compress.CompressorEnum;
+import com.sohu.tv.mq.metric.MQMeters;
 import com.sohu.tv.mq.metric.MQMetricsExporter;
+import com.sohu.tv.mq.rocketmq.producer.FailoverMessageQueueSelector;
+import com.sohu.tv.mq.rocketmq.producer.MessageAccumulator;
+import com.sohu.tv.mq.rocketmq.producer.ResendScheduler;
+import com.sohu.tv.mq.serializable.MessageSerializerEnum;
 import com.sohu.tv.mq.stats.StatsHelper;
+import org.apache.rocketmq.client.exception.MQBrokerException;
 import org.apache.rocketmq.client.exception.MQClientException;
+import org.apache.rocketmq.client.impl.factory.MQClientInstance;
+import org.apache.rocketmq.client.impl.producer.DefaultMQProducerImpl;
+import org.apache.rocketmq.client.impl.producer.TopicPublishInfo;
 import org.apache.rocketmq.client.producer.*;
 import org.apache.rocketmq.client.trace.AsyncTraceDispatcher;
 import org.apache.rocketmq.client.trace.hook.SendMessageTraceHookImpl;
 import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageQueue;
 import org.apache.rocketmq.remoting.exception.RemotingException;
 
+import java.io.File;
 import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 /**
@@ -36,18 +48,82 @@ public class RocketMQProducer extends AbstractConfig {
     
     // 发送顺序消息使用
     private MessageQueueSelector messageQueueSelector;
+
+    // 发送非顺序消息使用，为null时使用rocketmq默认的轮询，可选ConsistentHashMessageQueueSelector或LatencyAwareMessageQueueSelector；
+    // 设置后失败时排除该broker重试，但不再使用rocketmq的故障broker规避(sendLatencyFaultEnable)
+    private MessageQueueSelector loadBalanceQueueSelector;
     
     // 默认重试次数
     private int defaultRetryTimes = 1;
     
-    // 重试发送线程池
+    // 重试发送线程池，已由resendScheduler代替
+    @Deprecated
     private ExecutorService retrySenderExecutor;
     
     private Consumer<Result<SendResult>> resendResultConsumer;
 
+    // 重试退避基础延迟
+    private int resendBaseDelayMillis = 100;
+
+    // 重试退避最大延迟
+    private int resendMaxDelayMillis = 10000;
+
+    // 内存中最多待重试的消息数，超过后溢出到文件
+    private int resendMaxPending = 10000;
+
+    // 每个broker每秒允许的重试次数
+    private int resendBrokerPermitsPerSecond = 200;
+
+    // 是否启用重试溢出文件，默认不启用
+    private boolean resendSpillEnabled;
+
+    // 重试溢出文件目录，默认为${user.home}/.mqcloud/resend/${group}，同一目录只能被一个进程使用
+    private String resendSpillDir;
+
+    // 重试调度器
+    private ResendScheduler resendScheduler;
+
+    // 压缩方式：deflate,lz4,zstd，为null不压缩
+    private String compressType;
+
+    // 消息体超过该字节数才压缩
+    private int compressThreshold = 4096;
+
+    private CompressorEnum compressorEnum;
+
     // 限流发生时，是否暂停一会发送线程
     private boolean suspendAWhileWhenRateLimited = false;
 
+    // 是否开启攒批发送
+    private boolean batchEnabled = false;
+
+    // 每批最大条数
+    private int batchMaxSize = 32;
+
+    // 每批最大字节数
+    private int batchMaxBytes = 512 * 1024;
+
+    // 攒批最长等待时间
+    private int batchLingerMillis = 5;
+
+    // 每个topic的攒批通道数，同时也是发送线程数
+    private int batchLanes = 4;
+
+    // 消息累积器
+    private MessageAccumulator messageAccumulator;
+
+    // publishAsyncFuture最大在途条数，publishAsync不受限制
+    private int asyncMaxInFlight = 10000;
+
+    // publishAsyncFuture最大在途字节数
+    private long asyncMaxInFlightBytes = 64 * 1024 * 1024;
+
+    // 在途窗口满时是否阻塞等待，默认直接失败，避免异步调用阻塞调用线程
+    private boolean asyncBlockWhenInFlightFull;
+
+    // publishAsyncFuture的在途窗口
+    private InFlightWindow inFlightWindow;
+
     public RocketMQProducer() {
     }
 
@@ -106,24 +182,32 @@ public class RocketMQProducer extends AbstractConfig {
                 MQMetricsExporter.getInstance().add(statsHelper);
                 producer.getDefaultMQProducerImpl().registerSendMessageHook(hook);
             }
+            initCompressor();
             producer.start();
-            // 初始化重试线程池
-            if (defaultRetryTimes > 0 && retrySenderExecutor == null) {
-                retrySenderExecutor = new ThreadPoolExecutor(
-                        Runtime.getRuntime().availableProcessors(),
-                        Runtime.getRuntime().availableProcessors(),
-                        1000 * 60,
-                        TimeUnit.MILLISECONDS,
-                        new ArrayBlockingQueue<>(100),
-                        new ThreadFactory() {
-                            private AtomicInteger threadIndex = new AtomicInteger(0);
-
-                            @Override
-                            public Thread newThread(Runnable r) {
-                                return new Thread(r,
-                                        getGroup() + "-retrySenderExecutor-" + this.threadIndex.incrementAndGet());
-                            }
-                        });
+            // 初始化异步发送在途窗口
+            inFlightWindow = new InFlightWindow(group, asyncMaxInFlight, asyncMaxInFlightBytes);
+            MQMetricsExporter.getInstance().add(inFlightWindow);
+            MQMeters.gauge(MQMeters.SEND_INFLIGHT_MESSAGES, inFlightWindow, InFlightWindow::getCount, "group", group);
+            MQMeters.gauge(MQMeters.SEND_INFLIGHT_BYTES, inFlightWindow, InFlightWindow::getBytes, "group", group);
+            // 初始化重试调度器
+            if (defaultRetryTimes > 0 && resendScheduler == null) {
+                String spillDir = null;
+                if (resendSpillEnabled) {
+                    spillDir = resendSpillDir;
+                    if (spillDir == null) {
+                        spillDir = System.getProperty("user.home") + File.separator + ".mqcloud" + File.separator
+                                + "resend" + File.separator + group;
+                    }
+                }
+                resendScheduler = new ResendScheduler(this, this::processResendResult, resendBaseDelayMillis,
+                        resendMaxDelayMillis, resendMaxPending, resendBrokerPermitsPerSecond, spillDir);
+                resendScheduler.start();
+            }
+            // 初始化消息累积器
+            if (batchEnabled && messageAccumulator == null) {
+                messageAccumulator = new MessageAccumulator(this, batchMaxSize, batchMaxBytes, batchLingerMillis,
+                        batchLanes);
+                messageAccumulator.start();
             }
             logger.info("topic:{} group:{} start", topic, group);
         } catch (MQClientException e) {
@@ -131,6 +215,83 @@ public class RocketMQProducer extends AbstractConfig {
         }
     }
 
+    /**
+     * 初始化压缩器
+     */
+    private void initCompressor() {
+        if (compressType == null) {
+            return;
+        }
+        CompressorEnum compressorEnum = CompressorEnum.getEnumByName(compressType);
+        if (compressorEnum == null) {
+            logger.error("unknown compressType:{}, compress disabled", compressType);
+            return;
+        }
+        try {
+            compressorEnum.getMessageCompressor();
+        } catch (IllegalStateException e) {
+            logger.error("compressType:{} unavailable, compress disabled", compressType, e);
+            return;
+        }
+        this.compressorEnum = compressorEnum;
+        // 已自行压缩，关闭rocketmq自带的压缩
+        producer.setCompressMsgBodyOverHowmuch(Integer.MAX_VALUE);
+    }
+
+    /**
+     * 标记序列化方式，消费者据此直接选择反序列化器；类型化序列化的魔数只有配置了类型化序列化的消费者才识别，同样需要标记
+     * 
+     * @param message
+     */
+    private void markSerializer(Message message) {
+        MessageSerializerEnum messageSerializerEnum = MessageSerializerEnum.getEnumBySerializer(getMessageSerializer());
+        if (messageSerializerEnum == null) {
+            return;
+        }
+        message.putUserProperty(MessageSerializerEnum.PROPERTY_SERIALIZER,
+                String.valueOf(messageSerializerEnum.getType()));
+    }
+
+    /**
+     * 还原消息对象，用于重放溢出的消息
+     * 
+     * @param message
+     * @return 失败时返回null
+     */
+    public Object deserialize(Message message) {
+        try {
+            return getMessageSerializer().deserialize(CompressorEnum.decompressBody(message));
+        } catch (Exception e) {
+            logger.warn("deserialize topic:{} message error:{}", topic, e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * 压缩消息体，超过阈值且压缩后更小时才使用压缩后的数据，并标记压缩方式
+     * 
+     * @param bytes 消息体
+     * @param message 消息
+     * @return 消息体
+     */
+    private byte[] compress(byte[] bytes, Message message) {
+        if (compressorEnum == null || bytes == null || bytes.length < compressThreshold
+                || message.getProperty(CompressorEnum.PROPERTY_COMPRESSOR) != null) {
+            return bytes;
+        }
+        try {
+            byte[] compressed = compressorEnum.getMessageCompressor().compress(bytes);
+            if (compressed.length >= bytes.length) {
+                return bytes;
+            }
+            message.putUserProperty(CompressorEnum.PROPERTY_COMPRESSOR, compressorEnum.getName());
+            return compressed;
+        } catch (Exception e) {
+            logger.warn("compress topic:{} message error:{}", topic, e.toString());
+        }
+        return bytes;
+    }
+
     /**
      * 发送消息
      *
@@ -201,8 +362,10 @@ public class RocketMQProducer extends AbstractConfig {
      */
     public Message buildMessage(Object messageObject, String tags, String keys, MessageDelayLevel delayLevel)
             throws Exception {
-        byte[] bytes = getMessageSerializer().serialize(messageObject);
+        byte[] bytes = getMessageSerializer().serialize(topic, messageObject);
         Message message = new Message(topic, tags, keys, bytes);
+        markSerializer(message);
+        message.setBody(compress(bytes, message));
         if (delayLevel != null) {
             message.setDelayTimeLevel(delayLevel.getLevel());
         }
@@ -237,12 +400,73 @@ public class RocketMQProducer extends AbstractConfig {
      */
     public Result<SendResult> publish(Message message) {
         try {
-            SendResult sendResult = producer.send(message);
+            SendResult sendResult = null;
+            if (loadBalanceQueueSelector == null) {
+                sendResult = producer.send(message);
+            } else {
+                sendResult = sendWithSelector(message);
+            }
             return new Result<SendResult>(true, sendResult);
         } catch (Exception e) {
             return processException(e);
         }
     }
+
+    /**
+     * 经由负载均衡选择器发送，失败时排除该broker重试retryTimesWhenSendFailed次
+     * 
+     * @param message
+     * @return
+     * @throws Exception
+     */
+    private SendResult sendWithSelector(Message message) throws Exception {
+        FailoverMessageQueueSelector selector = new FailoverMessageQueueSelector(loadBalanceQueueSelector);
+        int retryTimes = producer.getRetryTimesWhenSendFailed();
+        for (int i = 0;; ++i) {
+            try {
+                return producer.send(message, selector, null);
+            } catch (RemotingException | MQBrokerException e) {
+                if (i >= retryTimes) {
+                    throw e;
+                }
+                logger.warn("send to {} error:{}, retry {}", selector.getSelected(), e.toString(), i + 1);
+                selector.markFailed();
+            }
+        }
+    }
+
+    /**
+     * 经由负载均衡选择器异步发送，失败时排除该broker重试retryTimesWhenSendAsyncFailed次
+     * 
+     * @param message
+     * @param sendCallback
+     * @throws Exception
+     */
+    private void sendAsyncWithSelector(Message message, SendCallback sendCallback) throws Exception {
+        FailoverMessageQueueSelector selector = new FailoverMessageQueueSelector(loadBalanceQueueSelector);
+        producer.send(message, selector, null, new SendCallback() {
+            private int retried;
+
+            public void onSuccess(SendResult sendResult) {
+                sendCallback.onSuccess(sendResult);
+            }
+
+            public void onException(Throwable e) {
+                if (retried >= producer.getRetryTimesWhenSendAsyncFailed()
+                        || !(e instanceof RemotingException || e instanceof MQBrokerException)) {
+                    sendCallback.onException(e);
+                    return;
+                }
+                logger.warn("async send to {} error:{}, retry {}", selector.getSelected(), e.toString(), ++retried);
+                selector.markFailed();
+                try {
+                    producer.send(message, selector, null, this);
+                } catch (Exception ex) {
+                    sendCallback.onException(ex);
+                }
+            }
+        });
+    }
     
     /**
      * 异常处理
@@ -281,6 +505,49 @@ public class RocketMQProducer extends AbstractConfig {
         }
     }
 
+    /**
+     * 攒批发送消息，需开启batchEnabled，否则同步发送
+     *
+     * @param messageObject 消息数据
+     * @param keys key
+     * @return 该消息的发送结果
+     */
+    public CompletableFuture<Result<SendResult>> publishAccumulated(Object messageObject, String keys) {
+        return publishAccumulated(messageObject, "", keys);
+    }
+
+    /**
+     * 攒批发送消息，需开启batchEnabled，否则同步发送
+     *
+     * @param messageObject 消息数据
+     * @param tags tags
+     * @param keys key
+     * @return 该消息的发送结果
+     */
+    public CompletableFuture<Result<SendResult>> publishAccumulated(Object messageObject, String tags, String keys) {
+        Message message = null;
+        try {
+            message = buildMessage(messageObject, tags, keys, null);
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+            return CompletableFuture.completedFuture(new Result<SendResult>(false, e));
+        }
+        return publishAccumulated(message);
+    }
+
+    /**
+     * 攒批发送消息，需开启batchEnabled，否则同步发送；批量消息不支持延时
+     *
+     * @param message 消息
+     * @return 该消息的发送结果
+     */
+    public CompletableFuture<Result<SendResult>> publishAccumulated(Message message) {
+        if (messageAccumulator == null || message.getDelayTimeLevel() > 0) {
+            return CompletableFuture.completedFuture(publish(message));
+        }
+        return messageAccumulator.append(message);
+    }
+
     /**
      * 发送有序消息
      *
@@ -372,6 +639,7 @@ public class RocketMQProducer extends AbstractConfig {
         } catch (Exception e) {
             logger.error(e.getMessage(), e);
             sendCallback.onException(e);
+            return;
         }
         publishAsync(message, sendCallback);
     }
@@ -384,20 +652,21 @@ public class RocketMQProducer extends AbstractConfig {
      */
     public void publishAsync(Message message, final SendCallback sendCallback) {
         try {
-            if(statsHelper == null) {
-                producer.send(message, sendCallback);
-            } else {
-                producer.send(message, new SendCallback() {
-                    public void onSuccess(SendResult sendResult) {
-                        sendCallback.onSuccess(sendResult);
-                    }
-                    public void onException(Throwable e) {
-                        if(statsHelper != null) {
-                            statsHelper.recordException(e);
-                        }
-                        sendCallback.onException(e);
+            SendCallback statsSendCallback = new SendCallback() {
+                public void onSuccess(SendResult sendResult) {
+                    sendCallback.onSuccess(sendResult);
+                }
+                public void onException(Throwable e) {
+                    if(statsHelper != null) {
+                        statsHelper.recordException(e);
                     }
-                });
+                    sendCallback.onException(e);
+                }
+            };
+            if (loadBalanceQueueSelector == null) {
+                producer.send(message, statsSendCallback);
+            } else {
+                sendAsyncWithSelector(message, statsSendCallback);
             }
         } catch (Exception e) {
             logger.error(e.getMessage(), e);
@@ -408,6 +677,121 @@ public class RocketMQProducer extends AbstractConfig {
         }
     }
 
+    /**
+     * 发送异步消息
+     * 
+     * @param messageObject 消息
+     * @param keys key
+     * @return 发送结果
+     */
+    public CompletableFuture<Result<SendResult>> publishAsyncFuture(Object messageObject, String keys) {
+        return publishAsyncFuture(messageObject, keys, null);
+    }
+
+    /**
+     * 发送异步消息
+     * 
+     * @param messageObject 消息
+     * @param keys key
+     * @param delayLevel 延时级别
+     * @return 发送结果
+     */
+    public CompletableFuture<Result<SendResult>> publishAsyncFuture(Object messageObject, String keys,
+            MessageDelayLevel delayLevel) {
+        return publishAsyncFuture(messageObject, "", keys, delayLevel);
+    }
+
+    /**
+     * 发送异步消息
+     * 
+     * @param messageObject 消息
+     * @param tags tags
+     * @param keys key
+     * @param delayLevel 延时级别
+     * @return 发送结果
+     */
+    public CompletableFuture<Result<SendResult>> publishAsyncFuture(Object messageObject, String tags, String keys,
+            MessageDelayLevel delayLevel) {
+        Message message = null;
+        try {
+            message = buildMessage(messageObject, tags, keys, delayLevel);
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+            return CompletableFuture.completedFuture(new Result<SendResult>(false, e));
+        }
+        return publishAsyncFuture(message);
+    }
+
+    /**
+     * 发送异步消息，受在途窗口限制
+     * 
+     * @param message 消息
+     * @return 发送结果
+     */
+    public CompletableFuture<Result<SendResult>> publishAsyncFuture(Message message) {
+        final int size = message.getBody() == null ? 0 : message.getBody().length;
+        // 占用在途窗口
+        Exception acquireException = acquireInFlight(size);
+        if (acquireException != null) {
+            if (statsHelper != null) {
+                statsHelper.recordException(acquireException);
+            }
+            return CompletableFuture.completedFuture(new Result<SendResult>(false, acquireException));
+        }
+        CompletableFuture<Result<SendResult>> future = new CompletableFuture<>();
+        publishAsync(message, new SendCallback() {
+            public void onSuccess(SendResult sendResult) {
+                releaseInFlight(size);
+                future.complete(new Result<SendResult>(true, sendResult));
+            }
+
+            public void onException(Throwable e) {
+                releaseInFlight(size);
+                future.complete(new Result<SendResult>(false, e));
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 占用在途窗口
+     * 
+     * @param size 消息字节数
+     * @return 占用失败时返回异常
+     */
+    private Exception acquireInFlight(int size) {
+        if (inFlightWindow == null) {
+            return null;
+        }
+        try {
+            boolean acquired = false;
+            if (asyncBlockWhenInFlightFull) {
+                acquired = inFlightWindow.acquire(size, producer.getSendMsgTimeout());
+            } else {
+                acquired = inFlightWindow.tryAcquire(size);
+            }
+            if (acquired) {
+                return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return e;
+        }
+        return new RejectedExecutionException("topic:" + topic + " in-flight full, count:"
+                + inFlightWindow.getCount() + " bytes:" + inFlightWindow.getBytes());
+    }
+
+    /**
+     * 释放在途窗口
+     * 
+     * @param size
+     */
+    private void releaseInFlight(int size) {
+        if (inFlightWindow != null) {
+            inFlightWindow.release(size);
+        }
+    }
+
     /**
      * 发送异步消息
      * 
@@ -688,12 +1072,15 @@ public class RocketMQProducer extends AbstractConfig {
         // 无body，序列化
         if (mqMessage.getBody() == null) {
             try {
-                mqMessage.setBody(getMessageSerializer().serialize(mqMessage.getMessage()));
+                mqMessage.setBody(getMessageSerializer().serialize(getTopic(), mqMessage.getMessage()));
+                markSerializer(mqMessage.getInnerMessage());
             } catch (Exception e) {
                 logger.error(e.getMessage(), e);
                 return new Result<SendResult>(false, e);
             }
         }
+        // 压缩
+        mqMessage.setBody(compress(mqMessage.getBody(), mqMessage.getInnerMessage()));
         // 设置属性
         mqMessage.setTopic(getTopic());
         mqMessage.resetRetryTimes(this.defaultRetryTimes);
@@ -718,59 +1105,17 @@ public class RocketMQProducer extends AbstractConfig {
     }
     
     /**
-     * 重试发送
+     * 重试发送，由重试调度器退避后异步发送
      * 
      * @param message
      * @return
      */
     @SuppressWarnings("rawtypes")
     private boolean resend(MQMessage mqMessage) {
-        try {
-            retrySenderExecutor.execute(() -> {
-                Result<SendResult> result = null;
-                try {
-                    result = _resend(mqMessage);
-                } catch (Throwable e) {
-                    result = new Result<>(false, new MQClientException(e.toString(), e));
-                }
-                result.setMqMessage(mqMessage);
-                // 处理重发消息结果
-                processResendResult(result);
-            });
-            return true;
-        } catch (RejectedExecutionException e) {
-            logger.warn("reject retryPublish...");
+        if (resendScheduler == null) {
             return false;
         }
-    }
-
-    /**
-     * 重试发送
-     * 
-     * @param message
-     * @return
-     */
-    @SuppressWarnings("rawtypes")
-    private Result<SendResult> _resend(MQMessage mqMessage) {
-        Exception exception = null;
-        // 循环重试发送
-        for (int i = 1; i <= mqMessage.getRetryTimes(); ++i) {
-            try {
-                SendResult sendResult = producer.send(mqMessage.getInnerMessage());
-                Result<SendResult> result = new Result<>(true, sendResult);
-                result.setRetriedTimes(i);
-                return result;
-            } catch (Exception e) {
-                exception = e;
-            }
-        }
-        // 发送失败，记录结果
-        if (statsHelper != null) {
-            statsHelper.recordException(exception);
-        }
-        Result<SendResult> result = new Result<>(false, exception);
-        result.setRetriedTimes(mqMessage.getRetryTimes());
-        return result;
+        return resendScheduler.resend(mqMessage);
     }
     
     /**
@@ -807,14 +1152,107 @@ public class RocketMQProducer extends AbstractConfig {
         this.defaultRetryTimes = defaultRetryTimes;
     }
 
+    /**
+     * 重试已改由重试调度器处理，该线程池不再使用
+     */
+    @Deprecated
     public ExecutorService getRetrySenderExecutor() {
         return retrySenderExecutor;
     }
 
+    /**
+     * 重试已改由重试调度器处理，该线程池不再使用
+     */
+    @Deprecated
     public void setRetrySenderExecutor(ExecutorService retrySenderExecutor) {
+        logger.warn("topic:{} group:{} retrySenderExecutor is ignored, use resendBaseDelayMillis etc. instead",
+                topic, group);
         this.retrySenderExecutor = retrySenderExecutor;
     }
 
+    public int getResendBaseDelayMillis() {
+        return resendBaseDelayMillis;
+    }
+
+    public void setResendBaseDelayMillis(int resendBaseDelayMillis) {
+        if (resendBaseDelayMillis <= 0) {
+            return;
+        }
+        this.resendBaseDelayMillis = resendBaseDelayMillis;
+    }
+
+    public int getResendMaxDelayMillis() {
+        return resendMaxDelayMillis;
+    }
+
+    public void setResendMaxDelayMillis(int resendMaxDelayMillis) {
+        if (resendMaxDelayMillis <= 0) {
+            return;
+        }
+        this.resendMaxDelayMillis = resendMaxDelayMillis;
+    }
+
+    public int getResendMaxPending() {
+        return resendMaxPending;
+    }
+
+    public void setResendMaxPending(int resendMaxPending) {
+        if (resendMaxPending <= 0) {
+            return;
+        }
+        this.resendMaxPending = resendMaxPending;
+    }
+
+    public int getResendBrokerPermitsPerSecond() {
+        return resendBrokerPermitsPerSecond;
+    }
+
+    public void setResendBrokerPermitsPerSecond(int resendBrokerPermitsPerSecond) {
+        if (resendBrokerPermitsPerSecond <= 0) {
+            return;
+        }
+        this.resendBrokerPermitsPerSecond = resendBrokerPermitsPerSecond;
+    }
+
+    public boolean isResendSpillEnabled() {
+        return resendSpillEnabled;
+    }
+
+    public void setResendSpillEnabled(boolean resendSpillEnabled) {
+        this.resendSpillEnabled = resendSpillEnabled;
+    }
+
+    public String getResendSpillDir() {
+        return resendSpillDir;
+    }
+
+    public void setResendSpillDir(String resendSpillDir) {
+        this.resendSpillDir = resendSpillDir;
+    }
+
+    public ResendScheduler getResendScheduler() {
+        return resendScheduler;
+    }
+
+    public String getCompressType() {
+        return compressType;
+    }
+
+    public void setCompressType(String compressType) {
+        this.compressType = compressType;
+    }
+
+    public int getCompressThreshold() {
+        return compressThreshold;
+    }
+
+    public void setCompressThreshold(int compressThreshold) {
+        if (compressThreshold <= 0) {
+            return;
+        }
+        this.compressThreshold = compressThreshold;
+    }
+
     public Consumer<Result<SendResult>> getResendResultConsumer() {
         return resendResultConsumer;
     }
@@ -824,6 +1262,13 @@ public class RocketMQProducer extends AbstractConfig {
     }
 
     public void shutdown() {
+        if (messageAccumulator != null) {
+            messageAccumulator.shutdown();
+        }
+        // 先关闭重试调度器，未完成的重试溢出到文件
+        if (resendScheduler != null) {
+            resendScheduler.shutdown();
+        }
         producer.shutdown();
         if (statsHelper != null) {
             statsHelper.shutdown();
@@ -831,6 +1276,12 @@ public class RocketMQProducer extends AbstractConfig {
         if (retrySenderExecutor != null) {
             retrySenderExecutor.shutdown();
         }
+        if (inFlightWindow != null) {
+            MQMetricsExporter.getInstance().remove(inFlightWindow);
+        }
+        MQMeters.removeGauge(MQMeters.SEND_INFLIGHT_MESSAGES, "group", group);
+        MQMeters.removeGauge(MQMeters.SEND_INFLIGHT_BYTES, "group", group);
+        MQMeters.removeSend(group);
         super.shutdown();
     }
 
@@ -838,6 +1289,127 @@ public class RocketMQProducer extends AbstractConfig {
         return producer;
     }
 
+    public boolean isBatchEnabled() {
+        return batchEnabled;
+    }
+
+    /**
+     * 开启攒批发送，开启后可以使用publishAccumulated发送消息
+     * 
+     * @param batchEnabled
+     */
+    public void setBatchEnabled(boolean batchEnabled) {
+        this.batchEnabled = batchEnabled;
+    }
+
+    public int getBatchMaxSize() {
+        return batchMaxSize;
+    }
+
+    public void setBatchMaxSize(int batchMaxSize) {
+        if (batchMaxSize <= 0) {
+            return;
+        }
+        this.batchMaxSize = batchMaxSize;
+    }
+
+    public int getBatchMaxBytes() {
+        return batchMaxBytes;
+    }
+
+    /**
+     * 每批最大字节数，不能超过broker的maxMessageSize
+     * 
+     * @param batchMaxBytes
+     */
+    public void setBatchMaxBytes(int batchMaxBytes) {
+        if (batchMaxBytes <= 0) {
+            return;
+        }
+        this.batchMaxBytes = batchMaxBytes;
+    }
+
+    public int getBatchLingerMillis() {
+        return batchLingerMillis;
+    }
+
+    public void setBatchLingerMillis(int batchLingerMillis) {
+        if (batchLingerMillis <= 0) {
+            return;
+        }
+        this.batchLingerMillis = batchLingerMillis;
+    }
+
+    public int getBatchLanes() {
+        return batchLanes;
+    }
+
+    public void setBatchLanes(int batchLanes) {
+        if (batchLanes <= 0) {
+            return;
+        }
+        this.batchLanes = batchLanes;
+    }
+
+    public MessageAccumulator getMessageAccumulator() {
+        return messageAccumulator;
+    }
+
+    public int getAsyncMaxInFlight() {
+        return asyncMaxInFlight;
+    }
+
+    /**
+     * publishAsyncFuture最大在途条数，默认10000，publishAsync不受限制
+     * 
+     * @param asyncMaxInFlight
+     */
+    public void setAsyncMaxInFlight(int asyncMaxInFlight) {
+        if (asyncMaxInFlight <= 0) {
+            return;
+        }
+        this.asyncMaxInFlight = asyncMaxInFlight;
+        if (inFlightWindow != null) {
+            inFlightWindow.setMaxCount(asyncMaxInFlight);
+        }
+    }
+
+    public long getAsyncMaxInFlightBytes() {
+        return asyncMaxInFlightBytes;
+    }
+
+    /**
+     * publishAsyncFuture最大在途字节数，默认64M
+     * 
+     * @param asyncMaxInFlightBytes
+     */
+    public void setAsyncMaxInFlightBytes(long asyncMaxInFlightBytes) {
+        if (asyncMaxInFlightBytes <= 0) {
+            return;
+        }
+        this.asyncMaxInFlightBytes = asyncMaxInFlightBytes;
+        if (inFlightWindow != null) {
+            inFlightWindow.setMaxBytes(asyncMaxInFlightBytes);
+        }
+    }
+
+    public boolean isAsyncBlockWhenInFlightFull() {
+        return asyncBlockWhenInFlightFull;
+    }
+
+    /**
+     * 在途窗口满时，true:阻塞等待(最多sendMsgTimeout)，false:直接失败，默认false
+     * 
+     * @param asyncBlockWhenInFlightFull
+     */
+    public void setAsyncBlockWhenInFlightFull(boolean asyncBlockWhenInFlightFull) {
+        this.asyncBlockWhenInFlightFull = asyncBlockWhenInFlightFull;
+    }
+
+    public InFlightWindow getInFlightWindow() {
+        return inFlightWindow;
+    }
+
     /**
      * 参考@com.alibaba.rocketmq.store.config.MessageStoreConfig.messageDelayLevel定义
      */
@@ -892,6 +1464,35 @@ public class RocketMQProducer extends AbstractConfig {
         return statsHelper;
     }
 
+    /**
+     * 按路由选择一个队列，尽量避开上次失败的broker
+     * 
+     * @param lastBrokerName
+     * @return 路由未就绪时返回null
+     */
+    public MessageQueue selectOneMessageQueue(String lastBrokerName) {
+        DefaultMQProducerImpl producerImpl = producer.getDefaultMQProducerImpl();
+        TopicPublishInfo topicPublishInfo = producerImpl.getTopicPublishInfoTable().get(getTopic());
+        if (topicPublishInfo == null || !topicPublishInfo.ok()) {
+            return null;
+        }
+        return producerImpl.selectOneMessageQueue(topicPublishInfo, lastBrokerName);
+    }
+
+    /**
+     * 获取broker的master地址
+     * 
+     * @param brokerName
+     * @return 未启动或未找到时返回null
+     */
+    public String findBrokerAddress(String brokerName) {
+        MQClientInstance clientInstance = producer.getDefaultMQProducerImpl().getmQClientFactory();
+        if (clientInstance == null) {
+            return null;
+        }
+        return clientInstance.findBrokerAddressInPublish(brokerName);
+    }
+
     public MessageQueueSelector getMessageQueueSelector() {
         return messageQueueSelector;
     }
@@ -900,6 +1501,14 @@ public class RocketMQProducer extends AbstractConfig {
         this.messageQueueSelector = messageQueueSelector;
     }
 
+    public MessageQueueSelector getLoadBalanceQueueSelector() {
+        return loadBalanceQueueSelector;
+    }
+
+    public void setLoadBalanceQueueSelector(MessageQueueSelector loadBalanceQueueSelector) {
+        this.loadBalanceQueueSelector = loadBalanceQueueSelector;
+    }
+
     @Override
     protected int role() {
         return PRODUCER;
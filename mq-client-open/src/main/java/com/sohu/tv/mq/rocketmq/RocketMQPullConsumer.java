@@ -3,6 +3,7 @@ package com.sohu.tv.mq.rocketmq;
 import com.sohu.index.tv.mq.common.PullResponse;
 import com.sohu.index.tv.mq.common.PullResponse.Status;
 import com.sohu.tv.mq.common.AbstractConfig;
+import com.sohu.tv.mq.compress.CompressorEnum;
 import com.sohu.tv.mq.rocketmq.limiter.NoneBlockingRateLimiter;
 import com.sohu.tv.mq.util.JSONUtil;
 import org.apache.rocketmq.client.consumer.DefaultMQPullConsumer;
@@ -120,6 +121,7 @@ public class RocketMQPullConsumer extends AbstractConfig {
      * @throws Exception
      */
     public String deserialize(MessageExt me) throws Exception {
+        CompressorEnum.decompress(me);
         Object msgObj = getMessageSerializer().deserialize(me.getBody());
         if (msgObj instanceof String) {
             return (String) msgObj;
@@ -6,8 +6,16 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.rocketmq.client.consumer.DefaultMQPullConsumer;
+import org.apache.rocketmq.client.consumer.PullCallback;
 import org.apache.rocketmq.client.consumer.PullResult;
 import org.apache.rocketmq.client.consumer.PullStatus;
 import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyContext;
@@ -18,12 +26,15 @@ import org.apache.rocketmq.common.message.MessageQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.sohu.tv.mq.metric.TimespanConsumeProgress;
 import com.sohu.tv.mq.rocketmq.consumer.NORebalanceDefaultMQPullConsumer;
 import com.sohu.tv.mq.util.CommonUtil;
 
 /**
  * 支持消费某段时间内的消息
- * 
+ *
+ * 每个队列由独立的拉取任务处理，多个队列并行；队列内消费当前批次的同时预取下一批，拉取与消费重叠。
+ *
  * @author yongfeigao
  * @date 2021年11月18日
  */
@@ -32,6 +43,15 @@ public class TimespanConsumer {
 
     private Logger logger = LoggerFactory.getLogger(this.getClass());
 
+    // 默认每次拉取的消息数
+    public static final int DEFAULT_PULL_BATCH_SIZE = 32;
+
+    // 默认并行拉取的线程数
+    public static final int DEFAULT_PULL_THREADS = 8;
+
+    // 拉取失败的最大重试次数
+    private static final int MAX_PULL_RETRY = 3;
+
     // 消息拉取线程
     private Thread consumeThread;
 
@@ -49,6 +69,36 @@ public class TimespanConsumer {
     // 消息结束时间
     private long end;
 
+    // 每次拉取的消息数
+    private int pullBatchSize = DEFAULT_PULL_BATCH_SIZE;
+
+    // 并行拉取的线程数
+    private int pullThreads = DEFAULT_PULL_THREADS;
+
+    // 消费开始时间
+    private volatile long beginTime;
+
+    // 消费结束时间
+    private volatile long finishTime;
+
+    // 队列数
+    private volatile int queues;
+
+    // 已完成的队列数
+    private AtomicInteger finishedQueues = new AtomicInteger();
+
+    // 失败的队列数
+    private AtomicInteger failedQueues = new AtomicInteger();
+
+    // 需拉取的偏移量总数
+    private LongAdder totalOffset = new LongAdder();
+
+    // 已拉取的偏移量数
+    private LongAdder pulledOffset = new LongAdder();
+
+    // 已消费的消息数
+    private LongAdder consumed = new LongAdder();
+
     public TimespanConsumer(RocketMQConsumer rocketMQConsumer, String topic, long start, long end) {
         this.topic = topic;
         this.mqConsumer = rocketMQConsumer;
@@ -87,8 +137,10 @@ public class TimespanConsumer {
         SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMddHHmmss");
         String startDate = sdf.format(new Date(start));
         String endDate = sdf.format(new Date(end));
-        long time = System.currentTimeMillis();
-        logger.info("topic:{} time[{},{}] consume begin", topic, startDate, endDate);
+        beginTime = System.currentTimeMillis();
+        logger.info("topic:{} time[{},{}] consume begin, pullThreads:{} pullBatchSize:{}", topic, startDate, endDate,
+                pullThreads, pullBatchSize);
+        ExecutorService pullExecutorService = null;
         try {
             // 启动
             pullConsumer.start();
@@ -101,65 +153,192 @@ public class TimespanConsumer {
                 logger.warn("{}'s messageQueue is empty!", topic);
                 return;
             }
-            long totalSize = 0;
+            queues = mqs.size();
             boolean isDLQ = CommonUtil.isDeadTopic(topic);
+            AtomicInteger threadIndex = new AtomicInteger();
+            pullExecutorService = Executors.newFixedThreadPool(Math.min(pullThreads, mqs.size()), r -> {
+                Thread thread = new Thread(r, consumeThread.getName() + "-" + threadIndex.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            List<Future<?>> futures = new ArrayList<>(mqs.size());
             for (MessageQueue mq : mqs) {
-                // 获取偏移量
-                long endOffset = pullConsumer.searchOffset(mq, end);
-                long startOffset = pullConsumer.searchOffset(mq, start);
-                // 处理非法情况
-                if (startOffset >= endOffset) {
-                    if (startOffset == 0) {
-                        endOffset = 1;
-                    } else {
-                        endOffset = startOffset + 1;
-                    }
+                futures.add(pullExecutorService.submit(() -> consume(mq, isDLQ)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (Exception e) {
+            logger.error("{} consume start:{} end:{} error", topic, startDate, endDate, e);
+        } finally {
+            if (pullExecutorService != null) {
+                pullExecutorService.shutdownNow();
+            }
+            pullConsumer.shutdown();
+            finishTime = System.currentTimeMillis();
+            TimespanConsumeProgress progress = getProgress();
+            logger.info("{} time[{},{}] {} tps:{}", topic, startDate, endDate, progress, progress.getTps());
+        }
+    }
+
+    /**
+     * 消费一个队列
+     *
+     * @param mq
+     * @param isDLQ
+     */
+    private void consume(MessageQueue mq, boolean isDLQ) {
+        try {
+            // 获取偏移量
+            long endOffset = pullConsumer.searchOffset(mq, end);
+            long startOffset = pullConsumer.searchOffset(mq, start);
+            // 处理非法情况
+            if (startOffset >= endOffset) {
+                if (startOffset == 0) {
+                    endOffset = 1;
+                } else {
+                    endOffset = startOffset + 1;
                 }
-                logger.info("{}'s offset, start:{}, end:{}", mq, startOffset, endOffset);
-                // 拉取消息
-                while (startOffset < endOffset) {
-                    PullResult pullResult = pullConsumer.pull(mq, "*", startOffset, 32);
-                    // 防止offset不前进
-                    if (startOffset < pullResult.getNextBeginOffset()) {
-                        startOffset = pullResult.getNextBeginOffset();
-                    } else {
-                        ++startOffset;
+            }
+            logger.info("{}'s offset, start:{}, end:{}", mq, startOffset, endOffset);
+            totalOffset.add(endOffset - startOffset);
+            // 拉取消息
+            CompletableFuture<PullResult> future = pull(mq, startOffset);
+            int retry = 0;
+            while (startOffset < endOffset) {
+                PullResult pullResult = null;
+                try {
+                    pullResult = future.get();
+                } catch (ExecutionException e) {
+                    if (++retry > MAX_PULL_RETRY) {
+                        throw e;
                     }
-                    // 无消息继续
-                    if (PullStatus.FOUND != pullResult.getPullStatus()) {
-                        continue;
+                    logger.warn("{} pull offset:{} retry:{} error:{}", mq, startOffset, retry, e.getCause().toString());
+                    future = pull(mq, startOffset);
+                    continue;
+                }
+                retry = 0;
+                // 防止offset不前进
+                long nextOffset = Math.max(startOffset + 1, pullResult.getNextBeginOffset());
+                pulledOffset.add(Math.min(nextOffset, endOffset) - startOffset);
+                startOffset = nextOffset;
+                // 预取下一批
+                if (startOffset < endOffset) {
+                    future = pull(mq, startOffset);
+                }
+                // 无消息继续
+                if (PullStatus.FOUND != pullResult.getPullStatus()) {
+                    continue;
+                }
+                // 时间过滤
+                List<MessageExt> msgs = new ArrayList<>();
+                for (MessageExt msg : pullResult.getMsgFoundList()) {
+                    long msgTime = msg.getBornTimestamp();
+                    if (isDLQ) {
+                        msgTime = msg.getStoreTimestamp();
                     }
-                    // 时间过滤
-                    List<MessageExt> msgs = new ArrayList<>();
-                    for (MessageExt msg : pullResult.getMsgFoundList()) {
-                        long msgTime = msg.getBornTimestamp();
-                        if (isDLQ) {
-                            msgTime = msg.getStoreTimestamp();
-                        }
-                        if (msgTime >= start && msgTime <= end) {
-                            msgs.add(msg);
-                            logger.info("fetch msgId:{} from:{}:{} time:{}", msg.getMsgId(),
-                                    mq.getBrokerName(), mq.getQueueId(), sdf.format(new Date(msgTime)));
+                    if (msgTime >= start && msgTime <= end) {
+                        msgs.add(msg);
+                        if (logger.isDebugEnabled()) {
+                            logger.debug("fetch msgId:{} from:{}:{} time:{}", msg.getMsgId(), mq.getBrokerName(),
+                                    mq.getQueueId(), msgTime);
                         }
                     }
-                    if (msgs.size() == 0) {
-                        continue;
-                    }
-                    totalSize += msgs.size();
-                    // 消费
-                    if (mqConsumer.isConsumeOrderly()) {
-                        mqConsumer.getMessageConsumer().consumeMessage(msgs, (ConsumeOrderlyContext) null);
-                    } else {
-                        mqConsumer.getMessageConsumer().consumeMessage(msgs, (ConsumeConcurrentlyContext) null);
-                    }
                 }
+                if (msgs.size() == 0) {
+                    continue;
+                }
+                // 消费
+                if (mqConsumer.isConsumeOrderly()) {
+                    mqConsumer.getMessageConsumer().consumeMessage(msgs, (ConsumeOrderlyContext) null);
+                } else {
+                    mqConsumer.getMessageConsumer().consumeMessage(msgs, (ConsumeConcurrentlyContext) null);
+                }
+                consumed.add(msgs.size());
             }
-            long use = System.currentTimeMillis() - time;
-            logger.info("{} time[{},{}] size:{} use:{}ms", topic, startDate, endDate, totalSize, use);
+            finishedQueues.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failedQueues.incrementAndGet();
         } catch (Exception e) {
-            logger.error("{} consume start:{} end:{} error", topic, startDate, endDate, e);
-        } finally {
-            pullConsumer.shutdown();
+            failedQueues.incrementAndGet();
+            logger.error("{} consume start:{} end:{} error", mq, start, end, e);
+        }
+    }
+
+    /**
+     * 异步拉取
+     *
+     * @param mq
+     * @param offset
+     * @return
+     */
+    private CompletableFuture<PullResult> pull(MessageQueue mq, long offset) {
+        CompletableFuture<PullResult> future = new CompletableFuture<>();
+        try {
+            pullConsumer.pull(mq, "*", offset, pullBatchSize, new PullCallback() {
+                public void onSuccess(PullResult pullResult) {
+                    future.complete(pullResult);
+                }
+
+                public void onException(Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * 获取消费进度
+     *
+     * @return
+     */
+    public TimespanConsumeProgress getProgress() {
+        TimespanConsumeProgress progress = new TimespanConsumeProgress();
+        progress.setTopic(topic);
+        progress.setStart(start);
+        progress.setEnd(end);
+        progress.setBeginTime(beginTime);
+        progress.setFinishTime(finishTime);
+        progress.setQueues(queues);
+        progress.setFinishedQueues(finishedQueues.get());
+        progress.setFailedQueues(failedQueues.get());
+        progress.setTotalOffset(totalOffset.sum());
+        progress.setPulledOffset(pulledOffset.sum());
+        progress.setConsumed(consumed.sum());
+        return progress;
+    }
+
+    public boolean isFinished() {
+        return finishTime > 0;
+    }
+
+    public long getFinishTime() {
+        return finishTime;
+    }
+
+    public int getPullBatchSize() {
+        return pullBatchSize;
+    }
+
+    public void setPullBatchSize(int pullBatchSize) {
+        if (pullBatchSize <= 0) {
+            return;
+        }
+        this.pullBatchSize = pullBatchSize;
+    }
+
+    public int getPullThreads() {
+        return pullThreads;
+    }
+
+    public void setPullThreads(int pullThreads) {
+        if (pullThreads <= 0) {
+            return;
         }
+        this.pullThreads = pullThreads;
     }
 }
@@ -1,28 +1,35 @@
 package com.sohu.tv.mq.rocketmq.consumer;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import com.sohu.tv.mq.util.JSONUtil;
 import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyContext;
 import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
 import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyContext;
 import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyStatus;
+import org.apache.rocketmq.common.message.MessageClientIDSetter;
 import org.apache.rocketmq.common.message.MessageConst;
 import org.apache.rocketmq.common.message.MessageExt;
 import org.slf4j.Logger;
 
 import com.sohu.index.tv.mq.common.MQMessage;
+import com.sohu.index.tv.mq.common.RawMessage;
+import com.sohu.tv.mq.compress.CompressorEnum;
 import com.sohu.tv.mq.metric.ConsumeStatManager;
 import com.sohu.tv.mq.metric.ConsumeThreadStat;
+import com.sohu.tv.mq.metric.MQMeters;
 import com.sohu.tv.mq.metric.MQMetricsExporter;
 import com.sohu.tv.mq.metric.MessageExceptionMetric;
 import com.sohu.tv.mq.metric.MessageMetric;
 import com.sohu.tv.mq.rocketmq.RocketMQConsumer;
-import com.sohu.tv.mq.serializable.MessageSerializer;
-import com.sohu.tv.mq.serializable.MessageSerializerEnum;
+import com.sohu.tv.mq.serializable.AdaptiveMessageDeserializer;
 import com.sohu.tv.mq.stats.ConsumeStats;
 import com.sohu.tv.mq.util.CommonUtil;
+import com.sohu.tv.mq.util.JSONUtil.Binding;
 
 /**
  * 公共逻辑
@@ -42,6 +49,15 @@ public abstract class AbstractMessageConsumer<T, C> implements IMessageConsumer<
     // 消费统计
     protected ConsumeStats consumeStats;
 
+    // 自适应反序列化器
+    private volatile AdaptiveMessageDeserializer adaptiveMessageDeserializer;
+
+    // 本线程本次消费的回调耗时，纳秒
+    private ThreadLocal<long[]> callbackTime = ThreadLocal.withInitial(() -> new long[1]);
+
+    // 延迟解析的消息解析器
+    private RawMessage.Parser<T> rawMessageParser = this::parseRawMessage;
+
     public AbstractMessageConsumer(RocketMQConsumer rocketMQConsumer) {
         this.rocketMQConsumer = rocketMQConsumer;
         this.logger = rocketMQConsumer.getLogger();
@@ -58,16 +74,27 @@ public abstract class AbstractMessageConsumer<T, C> implements IMessageConsumer<
      * @return
      */
     public ConsumeConcurrentlyStatus consumeMessage(List<MessageExt> msgs, ConsumeConcurrentlyContext context) {
-        long start = System.currentTimeMillis();
-        ConsumeStatus consumeStatus = consume(new MessageContext(msgs, context));
+        long start = System.nanoTime();
+        long[] callbackTime = resetCallbackTime();
+        MessageContext messageContext = new MessageContext(msgs, context);
+        ConsumeStatus consumeStatus = consume(messageContext);
+        record(callbackTime[0], consumeStatus, msgs.size());
         if (ConsumeStatus.FAIL == consumeStatus && rocketMQConsumer.isReconsume()) {
             if (consumeStats != null) {
                 consumeStats.incrementException();
             }
             return ConsumeConcurrentlyStatus.RECONSUME_LATER;
         }
+        // 部分成功，只确认连续成功的部分，其余消息重试
+        if (ConsumeStatus.PARTIAL == consumeStatus && rocketMQConsumer.isReconsume()) {
+            if (consumeStats != null) {
+                consumeStats.incrementException();
+            }
+            context.setAckIndex(messageContext.getAckIndex());
+            return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
+        }
         if (consumeStats != null) {
-            consumeStats.increment(System.currentTimeMillis() - start);
+            consumeStats.increment(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
         }
         return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
     }
@@ -79,8 +106,10 @@ public abstract class AbstractMessageConsumer<T, C> implements IMessageConsumer<
      * @return
      */
     public ConsumeOrderlyStatus consumeMessage(List<MessageExt> msgs, ConsumeOrderlyContext context) {
-        long start = System.currentTimeMillis();
+        long start = System.nanoTime();
+        long[] callbackTime = resetCallbackTime();
         ConsumeStatus consumeStatus = consume(new MessageContext(msgs, context));
+        record(callbackTime[0], consumeStatus, msgs.size());
         if (ConsumeStatus.FAIL == consumeStatus && rocketMQConsumer.isReconsume()) {
             if (consumeStats != null) {
                 consumeStats.incrementException();
@@ -88,11 +117,49 @@ public abstract class AbstractMessageConsumer<T, C> implements IMessageConsumer<
             return ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT;
         }
         if (consumeStats != null) {
-            consumeStats.increment(System.currentTimeMillis() - start);
+            consumeStats.increment(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
         }
         return ConsumeOrderlyStatus.SUCCESS;
     }
 
+    /**
+     * 重置本线程的回调耗时
+     * 
+     * @return
+     */
+    private long[] resetCallbackTime() {
+        long[] time = callbackTime.get();
+        time[0] = 0;
+        return time;
+    }
+
+    /**
+     * 累加回调耗时，只统计用户回调，不含限速等待、解析及去重
+     * 
+     * @param start 回调开始的纳秒时间
+     */
+    protected void recordCallbackTime(long start) {
+        callbackTime.get()[0] += System.nanoTime() - start;
+    }
+
+    /**
+     * 记录回调耗时及结果，用于实时指标及自适应调整消费并发，未调用回调时不记录
+     * 
+     * @param use 回调耗时，纳秒
+     * @param consumeStatus
+     * @param count
+     */
+    private void record(long use, ConsumeStatus consumeStatus, int count) {
+        if (use <= 0) {
+            return;
+        }
+        MQMeters.recordConsume(rocketMQConsumer.getGroup(), use, count, ConsumeStatus.OK == consumeStatus);
+        AdaptiveConcurrencyController controller = rocketMQConsumer.getAdaptiveConcurrencyController();
+        if (controller != null) {
+            controller.record(use, ConsumeStatus.OK == consumeStatus);
+        }
+    }
+
     /**
      * 消费逻辑
      */
@@ -107,18 +174,16 @@ public abstract class AbstractMessageConsumer<T, C> implements IMessageConsumer<
         ConsumeThreadStat metric = ConsumeStatManager.getInstance().getConsumeThreadMetrics(group);
         try {
             metric.set(buildThreadConsumeMetric(messageList));
+            // 整批获取许可
+            acquirePermit(messageList.size());
+            // 并行消费
+            KeyPartitionedExecutor executor = rocketMQConsumer.getParallelConsumeExecutor();
+            if (executor != null && messageList.size() > 1 && context.context instanceof ConsumeConcurrentlyContext) {
+                return consumeInParallel(executor, messageList, context);
+            }
             // 消费消息
             for (MQMessage<T> mqMessage : messageList) {
-                try {
-                    // 获取许可
-                    acquirePermit();
-                    consume(mqMessage.getMessage(), mqMessage.getMessageExt());
-                } catch (Throwable e) {
-                    logger.error("consume topic:{} consumer:{} msgId:{} bornTimestamp:{}",
-                            rocketMQConsumer.getTopic(), group, mqMessage.getMessageExt().getMsgId(),
-                            mqMessage.getMessageExt().getBornTimestamp(), e);
-                    ConsumeStatManager.getInstance().getConsumeFailedMetrics(group)
-                            .set(buildMessageExceptionMetric(mqMessage, e));
+                if (!consumeOne(mqMessage)) {
                     return ConsumeStatus.FAIL;
                 }
             }
@@ -128,6 +193,101 @@ public abstract class AbstractMessageConsumer<T, C> implements IMessageConsumer<
         return ConsumeStatus.OK;
     }
 
+    /**
+     * 消费单条消息
+     * 
+     * @param mqMessage
+     * @return 是否成功
+     */
+    private boolean consumeOne(MQMessage<T> mqMessage) {
+        try {
+            consume(mqMessage);
+            return true;
+        } catch (Throwable e) {
+            logger.error("consume topic:{} consumer:{} msgId:{} bornTimestamp:{}",
+                    rocketMQConsumer.getTopic(), rocketMQConsumer.getGroup(), mqMessage.getMessageExt().getMsgId(),
+                    mqMessage.getMessageExt().getBornTimestamp(), e);
+            ConsumeStatManager.getInstance().getConsumeFailedMetrics(rocketMQConsumer.getGroup())
+                    .set(buildMessageExceptionMetric(mqMessage, e));
+            return false;
+        }
+    }
+
+    /**
+     * 按key分区并行消费，相同key的消息按顺序消费，某条消息失败后，只有同一key其后的消息不再消费，其余key不受影响。
+     * 只确认连续成功的部分，其余消息重试。
+     * 
+     * @param executor
+     * @param messageList
+     * @param context
+     * @return
+     */
+    protected ConsumeStatus consumeInParallel(KeyPartitionedExecutor executor, List<MQMessage<T>> messageList,
+            MessageContext<C> context) {
+        // 按key分区，分区只在本批次内有效
+        Map<String, List<Integer>> keyIndexes = new LinkedHashMap<>();
+        for (int i = 0; i < messageList.size(); ++i) {
+            String key = partitionKey(messageList.get(i).getMessageExt());
+            keyIndexes.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+        }
+        boolean[] succeeded = new boolean[messageList.size()];
+        List<Runnable> tasks = new ArrayList<>(keyIndexes.size());
+        for (List<Integer> indexes : keyIndexes.values()) {
+            tasks.add(() -> {
+                for (int index : indexes) {
+                    if (!consumeOne(messageList.get(index))) {
+                        return;
+                    }
+                    succeeded[index] = true;
+                }
+            });
+        }
+        // 各分区并行回调，以整体耗时作为回调耗时
+        long[] time = callbackTime.get();
+        long callbackTimeBefore = time[0];
+        long start = System.nanoTime();
+        // invokeAll返回时全部分区已完成，并保证succeeded的可见性
+        executor.invokeAll(tasks);
+        time[0] = callbackTimeBefore + System.nanoTime() - start;
+        int firstFailed = -1;
+        for (int i = 0; i < succeeded.length; ++i) {
+            if (!succeeded[i]) {
+                firstFailed = i;
+                break;
+            }
+        }
+        if (firstFailed == -1) {
+            return ConsumeStatus.OK;
+        }
+        // 换算为原始消息的下标，解析时跳过的消息视为成功
+        MessageExt failedMessageExt = messageList.get(firstFailed).getMessageExt();
+        for (int i = 0; i < context.msgs.size(); ++i) {
+            if (context.msgs.get(i) == failedMessageExt) {
+                context.ackIndex = i - 1;
+                break;
+            }
+        }
+        return context.ackIndex < 0 ? ConsumeStatus.FAIL : ConsumeStatus.PARTIAL;
+    }
+
+    /**
+     * 分区key，优先使用消息key，其次使用幂等id，最后使用消息id
+     * 
+     * @param msgExt
+     * @return
+     */
+    protected String partitionKey(MessageExt msgExt) {
+        String key = msgExt.getKeys();
+        if (key != null && key.length() > 0) {
+            return key;
+        }
+        key = msgExt.getProperty(MQMessage.IDEMPOTENT_ID);
+        if (key != null) {
+            return key;
+        }
+        return MessageClientIDSetter.getUniqID(msgExt);
+    }
+
     /**
      * 解析消息
      * 
@@ -142,26 +302,9 @@ public abstract class AbstractMessageConsumer<T, C> implements IMessageConsumer<
         for (MessageExt me : msgs) {
             byte[] bytes = me.getBody();
             try {
-                if (bytes == null || bytes.length == 0) {
-                    logger.warn("MessageExt={}, body is null", me);
+                if (isSkip(me)) {
                     continue;
                 }
-                // 校验是否需要跳过重试消息
-                if (CommonUtil.isRetryTopic(me.getProperty(MessageConst.PROPERTY_REAL_TOPIC)) &&
-                        me.getBornTimestamp() < rocketMQConsumer.getRetryMessageResetTo()) {
-                    if (rocketMQConsumer.getRetryMessageSkipKey() != null) {
-                        if (rocketMQConsumer.getRetryMessageSkipKey().equals(me.getKeys())) {
-                            logger.warn("skip topic:{} msgId:{} bornTime:{} key:{}",
-                                    rocketMQConsumer.getTopic(), me.getMsgId(), me.getBornTimestamp(),
-                                    me.getKeys());
-                            continue;
-                        }
-                    } else {
-                        logger.warn("skip topic:{} msgId:{} bornTime:{}",
-                                rocketMQConsumer.getTopic(), me.getMsgId(), me.getBornTimestamp());
-                        continue;
-                    }
-                }
                 msgList.add(buildMQMessage(me));
             } catch (Throwable e) {
                 // 解析失败打印警告，不再抛出异常重试(即使重试，仍然会失败)
@@ -173,39 +316,150 @@ public abstract class AbstractMessageConsumer<T, C> implements IMessageConsumer<
         return msgList;
     }
 
-    private MQMessage<T> buildMQMessage(MessageExt me) throws Exception {
+    /**
+     * 包装为延迟解析的消息，只过滤需要跳过的消息，不解压和反序列化
+     * 
+     * @param msgs
+     * @return
+     */
+    protected List<MQMessage<T>> parseLazily(List<MessageExt> msgs) {
+        if (msgs == null || msgs.isEmpty()) {
+            return null;
+        }
+        List<MQMessage<T>> msgList = new ArrayList<>(msgs.size());
+        for (MessageExt me : msgs) {
+            if (isSkip(me)) {
+                continue;
+            }
+            msgList.add(new RawMessage<>(me, rawMessageParser, rocketMQConsumer.getMaxDecompressedLength()));
+        }
+        return msgList;
+    }
+
+    protected RawMessage.Parser<T> getRawMessageParser() {
+        return rawMessageParser;
+    }
+
+    /**
+     * 是否跳过消息：消息体为空或重试消息需要跳过
+     * 
+     * @param me
+     * @return
+     */
+    protected boolean isSkip(MessageExt me) {
         byte[] bytes = me.getBody();
+        if (bytes == null || bytes.length == 0) {
+            logger.warn("MessageExt={}, body is null", me);
+            return true;
+        }
+        // 校验是否需要跳过重试消息
+        if (CommonUtil.isRetryTopic(me.getProperty(MessageConst.PROPERTY_REAL_TOPIC)) &&
+                me.getBornTimestamp() < rocketMQConsumer.getRetryMessageResetTo()) {
+            if (rocketMQConsumer.getRetryMessageSkipKey() != null) {
+                if (rocketMQConsumer.getRetryMessageSkipKey().equals(me.getKeys())) {
+                    logger.warn("skip topic:{} msgId:{} bornTime:{} key:{}",
+                            rocketMQConsumer.getTopic(), me.getMsgId(), me.getBornTimestamp(),
+                            me.getKeys());
+                    return true;
+                }
+            } else {
+                logger.warn("skip topic:{} msgId:{} bornTime:{}",
+                        rocketMQConsumer.getTopic(), me.getMsgId(), me.getBornTimestamp());
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private MQMessage<T> buildMQMessage(MessageExt me) throws Exception {
+        return new MQMessage<>(parseMessage(me), me);
+    }
+
+    /**
+     * 解压并反序列化为消费类型
+     * 
+     * @param me
+     * @return
+     * @throws Exception
+     */
+    protected T parseMessage(MessageExt me) throws Exception {
+        // 解压
+        CompressorEnum.decompress(me, rocketMQConsumer.getMaxDecompressedLength());
+        return parseMessage(me, me.getBody());
+    }
+
+    /**
+     * 延迟解析，解压到本地缓冲区，不修改MessageExt；解析失败打印警告，由RawMessage记录异常
+     * 
+     * @param rawMessage
+     * @return
+     * @throws Exception
+     */
+    private T parseRawMessage(RawMessage<T> rawMessage) throws Exception {
+        MessageExt me = rawMessage.getMessageExt();
+        try {
+            return parseMessage(me, rawMessage.getDecompressedBody());
+        } catch (Exception e) {
+            logger.error("parse topic:{} consumer:{} msgId:{} bornTimestamp:{}", rocketMQConsumer.getTopic(),
+                    rocketMQConsumer.getGroup(), me.getMsgId(), me.getBornTimestamp(), e);
+            throw e;
+        }
+    }
+
+    /**
+     * 反序列化为消费类型
+     * 
+     * @param me
+     * @param bytes 解压后的消息体
+     * @return
+     * @throws Exception
+     */
+    protected T parseMessage(MessageExt me, byte[] bytes) throws Exception {
         // 无序列化器直接返回
         if (rocketMQConsumer.getMessageSerializer() == null) {
             debugLog("null-serializer", me.getMsgId(), bytes.getClass().getName(), null);
-            return (MQMessage<T>) new MQMessage<>(bytes, me);
+            return (T) bytes;
         }
         // 反序列化
-        T message = deserialize(me);
+        T message = deserialize(me, bytes);
         Class<?> consumerParameterTypeClass = rocketMQConsumer.getConsumerParameterTypeClass();
         // 无法获取消费类型
         if (consumerParameterTypeClass == null) {
             debugLog("null-consumerParameterType", me.getMsgId(), message.getClass().getName(), null);
-            return new MQMessage<>(message, me);
+            return message;
         }
         // 反序列化后类型相同直接返回
         if (consumerParameterTypeClass.isInstance(message)) {
             debugLog("isInstance", me.getMsgId(), message.getClass().getName(), consumerParameterTypeClass.getName());
-            return new MQMessage<>(message, me);
+            return message;
         }
         // 消费类型为String，采用JSON转换
         if (consumerParameterTypeClass == String.class) {
             debugLog("String-consumerParameterType", me.getMsgId(), message.getClass().getName(), "String");
-            return (MQMessage<T>) new MQMessage<>(JSONUtil.toJSONString(message), me);
+            return (T) getJsonBinding(consumerParameterTypeClass).toJSONString(message);
         }
         // 消息为String，采用JSON转换
         if (message instanceof String) {
             debugLog("String-Message", me.getMsgId(), "String", consumerParameterTypeClass.getName());
-            return (MQMessage<T>) new MQMessage<>(JSONUtil.parse(message.toString(), consumerParameterTypeClass), me);
+            return (T) getJsonBinding(consumerParameterTypeClass).parse(message.toString());
         }
         debugLog("unknown", me.getMsgId(), message.getClass().getName(), consumerParameterTypeClass.getName());
         // 消费类型和消息都不是String，并且消息与消费类型不匹配，此时可能会类转换异常
-        return (MQMessage<T>) new MQMessage<>(message, me);
+        return message;
+    }
+
+    /**
+     * 获取绑定的json类型，未初始化时临时绑定
+     * 
+     * @param consumerParameterTypeClass
+     * @return
+     */
+    private Binding<?> getJsonBinding(Class<?> consumerParameterTypeClass) {
+        Binding<?> jsonBinding = rocketMQConsumer.getConsumerParameterTypeBinding();
+        if (jsonBinding == null) {
+            jsonBinding = JSONUtil.bind(consumerParameterTypeClass);
+        }
+        return jsonBinding;
     }
 
     private void debugLog(String flag, String msgId, String msgType, String consumerType) {
@@ -214,47 +468,46 @@ public abstract class AbstractMessageConsumer<T, C> implements IMessageConsumer<
     }
 
     /**
-     * 反序列化，若设置的反序列化器执行失败，则使用其他反序列化器进行尝试
+     * 反序列化，通过消息标识、魔数、生产者组缓存及格式特征识别序列化器，识别失败时才尝试其他反序列化器
      * 
-     * @param bytes
      * @param me
+     * @param bytes 解压后的消息体
      * @return
      * @throws Exception
      */
-    private T deserialize(MessageExt me) throws Exception {
-        // 使用设置的序列化器
-        MessageSerializer<Object> messageSerializer = rocketMQConsumer.getMessageSerializer();
-        Exception excp = null;
-        try {
-            T t = (T) messageSerializer.deserialize(me.getBody());
-            if (logger.isDebugEnabled()) {
-                logger.debug("consumer:{} msgId:{} deserializer:{}",
-                        rocketMQConsumer.getGroup(), me.getMsgId(), messageSerializer.getClass().getName());
-            }
-            return t;
-        } catch (Exception e) {
-            excp = e;
+    private T deserialize(MessageExt me, byte[] bytes) throws Exception {
+        // 字符串消息直接从字节解析为消费类型，消费类型可以接收字符串时无需解析
+        Class<?> consumerParameterTypeClass = rocketMQConsumer.getConsumerParameterTypeClass();
+        Binding<?> jsonBinding = null;
+        if (consumerParameterTypeClass != null && !consumerParameterTypeClass.isAssignableFrom(String.class)) {
+            jsonBinding = rocketMQConsumer.getConsumerParameterTypeBinding();
         }
-        // 使用其他序列化器
-        for (MessageSerializerEnum messageSerializerEnum : MessageSerializerEnum.values()) {
-            if (messageSerializer.getClass() == messageSerializerEnum.getMessageSerializer().getClass()) {
-                continue;
-            }
-            try {
-                T t = (T) messageSerializerEnum.getMessageSerializer().deserialize(me.getBody());
-                if (logger.isDebugEnabled()) {
-                    logger.debug("consumer:{} msgId:{} compatible deserializer:{}",
-                            rocketMQConsumer.getGroup(), me.getMsgId(),
-                            messageSerializerEnum.getMessageSerializer().getClass().getName());
-                }
-                return t;
-            } catch (Exception e) {
-                logger.warn("try deserializer:{}, topic:{}, consumer:{} msgId:{} err",
-                        messageSerializerEnum.getMessageSerializer().getClass().getName(),
-                        rocketMQConsumer.getTopic(), rocketMQConsumer.getGroup(), me.getMsgId());
-            }
+        return (T) getAdaptiveMessageDeserializer().deserialize(me, bytes, jsonBinding);
+    }
+
+    /**
+     * 获取自适应反序列化器，序列化器变更时重建
+     * 
+     * @return
+     */
+    public AdaptiveMessageDeserializer getAdaptiveMessageDeserializer() {
+        AdaptiveMessageDeserializer deserializer = adaptiveMessageDeserializer;
+        if (deserializer == null || deserializer.getMessageSerializer() != rocketMQConsumer.getMessageSerializer()) {
+            deserializer = new AdaptiveMessageDeserializer(rocketMQConsumer.getMessageSerializer(),
+                    rocketMQConsumer.getTypedMessageSerializer());
+            adaptiveMessageDeserializer = deserializer;
         }
-        throw excp;
+        return deserializer;
+    }
+
+    /**
+     * 消费单条解析后的消息
+     * 
+     * @param mqMessage
+     * @throws Exception
+     */
+    protected void consume(MQMessage<T> mqMessage) throws Exception {
+        consume(mqMessage.getMessage(), mqMessage.getMessageExt());
     }
 
     /**
@@ -323,11 +576,7 @@ public abstract class AbstractMessageConsumer<T, C> implements IMessageConsumer<
      * 获取许可
      */
     protected void acquirePermit() {
-        try {
-            rocketMQConsumer.getRateLimiter().limit();
-        } catch (InterruptedException e) {
-            logger.warn("acquirePermit error", e.getMessage());
-        }
+        acquirePermit(1);
     }
 
     /**
@@ -335,7 +584,10 @@ public abstract class AbstractMessageConsumer<T, C> implements IMessageConsumer<
      */
     protected void acquirePermit(int permits) {
         try {
+            long start = System.nanoTime();
             rocketMQConsumer.getRateLimiter().limit(permits);
+            // 记录限速等待时间
+            MQMeters.recordLimitWait(rocketMQConsumer.getGroup(), System.nanoTime() - start);
         } catch (InterruptedException e) {
             logger.warn("acquirePermit error", e.getMessage());
         }
@@ -0,0 +1,206 @@
+package com.sohu.tv.mq.rocketmq.consumer;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sohu.tv.mq.common.ClientRuntime;
+
+/**
+ * 自适应消费并发控制
+ *
+ * 按周期统计消费耗时和失败率，结合本地积压的消息量，以AIMD方式调整消费线程数：
+ * 失败率过高或耗时明显高于基准耗时时，说明下游已饱和，线程数乘性减少；
+ * 否则若积压的消息多于线程数，线程数加性增加；积压消退到线程数的一半以下时，线程数加性减少，释放空闲线程。
+ *
+ * @author yongfeigao
+ * @date 2026年10月17日
+ */
+public class AdaptiveConcurrencyController {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    // 基准耗时上浮的速度
+    private static final double BASELINE_DRIFT = 0.01;
+
+    private String group;
+
+    // 最小线程数
+    private int minThreads;
+
+    // 最大线程数
+    private int maxThreads;
+
+    // 当前线程数
+    private volatile int threads;
+
+    // 失败率超过该值时减少线程
+    private double maxErrorRate = 0.1;
+
+    // 耗时超过基准耗时的倍数时减少线程
+    private double latencyTolerance = 2;
+
+    // 减少线程时的乘数
+    private double decreaseFactor = 0.75;
+
+    // 周期内消费次数
+    private LongAdder count = new LongAdder();
+
+    // 周期内失败次数
+    private LongAdder errors = new LongAdder();
+
+    // 周期内总耗时，纳秒
+    private LongAdder latency = new LongAdder();
+
+    // 基准耗时，取历史最小的周期平均耗时，并缓慢向当前耗时上浮
+    private double baselineLatency = -1;
+
+    // 本地积压的消息量
+    private LongSupplier backlogSupplier;
+
+    // 调整线程数
+    private IntConsumer resizer;
+
+    private ScheduledFuture<?> scheduledFuture;
+
+    public AdaptiveConcurrencyController(String group, int minThreads, int maxThreads, int threads,
+            LongSupplier backlogSupplier, IntConsumer resizer) {
+        this.group = group;
+        this.minThreads = minThreads;
+        this.maxThreads = maxThreads;
+        this.threads = Math.min(maxThreads, Math.max(minThreads, threads));
+        this.backlogSupplier = backlogSupplier;
+        this.resizer = resizer;
+    }
+
+    /**
+     * 启动，使用jvm内共享的调度线程按周期调整
+     *
+     * @param intervalMillis
+     */
+    public void start(long intervalMillis) {
+        resizer.accept(threads);
+        scheduledFuture = ClientRuntime.getInstance().scheduleWithFixedDelay("adaptiveConcurrency-" + group,
+                this::adjust, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        logger.info("consumer:{} adaptive concurrency start, threads:{} range:[{}, {}]", group, threads, minThreads,
+                maxThreads);
+    }
+
+    /**
+     * 记录一次消费
+     *
+     * @param latencyNanos
+     * @param success
+     */
+    public void record(long latencyNanos, boolean success) {
+        count.increment();
+        latency.add(latencyNanos);
+        if (!success) {
+            errors.increment();
+        }
+    }
+
+    /**
+     * 根据上个周期的统计调整线程数
+     *
+     * @return 调整后的线程数
+     */
+    public int adjust() {
+        long n = count.sumThenReset();
+        long errorCount = errors.sumThenReset();
+        long totalLatency = latency.sumThenReset();
+        long backlog = backlogSupplier.getAsLong();
+        // 没有消费，无法判断耗时，仅在无积压时释放线程
+        if (n == 0) {
+            if (backlog == 0) {
+                resize(Math.max(minThreads, threads - 1), 0, 0);
+            }
+            return threads;
+        }
+        double avgLatency = totalLatency / (double) n;
+        if (baselineLatency < 0 || avgLatency < baselineLatency) {
+            baselineLatency = avgLatency;
+        } else {
+            baselineLatency += (avgLatency - baselineLatency) * BASELINE_DRIFT;
+        }
+        double errorRate = errorCount / (double) n;
+        int target = threads;
+        if (errorRate > maxErrorRate || avgLatency > baselineLatency * latencyTolerance) {
+            target = Math.max(minThreads, (int) (threads * decreaseFactor));
+        } else if (backlog > threads) {
+            target = Math.min(maxThreads, threads + 1);
+        } else if (backlog * 2 < threads) {
+            target = Math.max(minThreads, threads - 1);
+        }
+        resize(target, avgLatency, errorRate);
+        return threads;
+    }
+
+    /**
+     * 调整线程数
+     * 
+     * @param target
+     * @param avgLatency 用于日志
+     * @param errorRate 用于日志
+     */
+    private void resize(int target, double avgLatency, double errorRate) {
+        if (target == threads) {
+            return;
+        }
+        logger.info("consumer:{} threads:{}->{} avgLatency:{}us baseline:{}us errorRate:{}", group, threads, target,
+                (long) (avgLatency / 1000), (long) (baselineLatency / 1000), errorRate);
+        resizer.accept(target);
+        threads = target;
+    }
+
+    /**
+     * 停止调整
+     */
+    public void shutdown() {
+        if (scheduledFuture != null) {
+            scheduledFuture.cancel(false);
+        }
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public double getMaxErrorRate() {
+        return maxErrorRate;
+    }
+
+    public void setMaxErrorRate(double maxErrorRate) {
+        if (maxErrorRate <= 0) {
+            return;
+        }
+        this.maxErrorRate = maxErrorRate;
+    }
+
+    public double getLatencyTolerance() {
+        return latencyTolerance;
+    }
+
+    public void setLatencyTolerance(double latencyTolerance) {
+        if (latencyTolerance <= 1) {
+            return;
+        }
+        this.latencyTolerance = latencyTolerance;
+    }
+
+    public double getDecreaseFactor() {
+        return decreaseFactor;
+    }
+
+    public void setDecreaseFactor(double decreaseFactor) {
+        if (decreaseFactor <= 0 || decreaseFactor >= 1) {
+            return;
+        }
+        this.decreaseFactor = decreaseFactor;
+    }
+}
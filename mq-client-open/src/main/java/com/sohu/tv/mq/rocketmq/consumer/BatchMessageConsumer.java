@@ -4,6 +4,7 @@ import java.util.List;
 
 import org.apache.rocketmq.common.message.MessageExt;
 
+import com.sohu.index.tv.mq.common.LazyMessageList;
 import com.sohu.index.tv.mq.common.MQMessage;
 import com.sohu.tv.mq.metric.ConsumeStatManager;
 import com.sohu.tv.mq.metric.ConsumeThreadStat;
@@ -28,13 +29,43 @@ public class BatchMessageConsumer<C> extends AbstractMessageConsumer<Object, C>
         if (msgList == null || msgList.isEmpty()) {
             return ConsumeStatus.OK;
         }
+        return consume(msgList, context);
+    }
+
+    @Override
+    protected List<MQMessage<Object>> parse(List<MessageExt> msgs) {
+        if (rocketMQConsumer.isBatchLazyDeserialize()) {
+            return parseLazily(msgs);
+        }
+        return super.parse(msgs);
+    }
+
+    /**
+     * 消费解析后的消息
+     * 
+     * @param msgList
+     * @param context
+     * @return
+     */
+    protected ConsumeStatus consume(List<MQMessage<Object>> msgList, MessageContext<C> context) {
         // 设置消费线程统计
         ConsumeThreadStat metric = ConsumeStatManager.getInstance().getConsumeThreadMetrics(rocketMQConsumer.getGroup());
         try {
             metric.set(buildThreadConsumeMetric(msgList));
             // 获取许可
             acquirePermit(msgList.size());
-            rocketMQConsumer.getBatchConsumerCallback().call(msgList, context.context);
+            List<MQMessage<Object>> batchMessage = msgList;
+            // 回调访问时才反序列化，处理完的消息可被回收
+            if (rocketMQConsumer.isBatchLazyDeserialize()) {
+                batchMessage = new LazyMessageList<>(msgList, getRawMessageParser(),
+                        rocketMQConsumer.getMaxDecompressedLength());
+            }
+            long start = System.nanoTime();
+            try {
+                rocketMQConsumer.getBatchConsumerCallback().call(batchMessage, context.context);
+            } finally {
+                recordCallbackTime(start);
+            }
         } catch (Throwable e) {
             logger.error("topic:{} consumer:{} msgSize:{}", 
                     rocketMQConsumer.getTopic(), rocketMQConsumer.getGroup(), msgList.size(), e);
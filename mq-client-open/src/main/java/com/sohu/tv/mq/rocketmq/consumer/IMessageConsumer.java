@@ -42,6 +42,8 @@ public interface IMessageConsumer<C> {
     public enum ConsumeStatus {
         OK, 
         FAIL,
+        // 部分成功，MessageContext.ackIndex之前(含)的消息成功
+        PARTIAL,
         ;
     }
 
@@ -55,6 +57,8 @@ public interface IMessageConsumer<C> {
     public class MessageContext<C> {
         List<MessageExt> msgs;
         C context;
+        // 连续成功的最后一条消息在msgs中的下标
+        int ackIndex = -1;
 
         public MessageContext(List<MessageExt> msgs, C context) {
             this.msgs = msgs;
@@ -72,5 +76,13 @@ public interface IMessageConsumer<C> {
         public C getContext() {
             return context;
         }
+
+        public int getAckIndex() {
+            return ackIndex;
+        }
+
+        public void setAckIndex(int ackIndex) {
+            this.ackIndex = ackIndex;
+        }
     }
 }
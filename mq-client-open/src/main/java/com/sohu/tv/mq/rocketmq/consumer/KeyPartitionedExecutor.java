@@ -0,0 +1,95 @@
+package com.sohu.tv.mq.rocketmq.consumer;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按key分区的执行器
+ *
+ * 调用方将一批消息按key分成若干任务(每个key一个任务，任务内按顺序消费)，由调用线程和辅助线程共同领取执行。
+ * 辅助线程池不排队，没有空闲线程时剩余任务由调用线程自己执行，因此不同批次之间不会互相阻塞。
+ *
+ * @author yongfeigao
+ * @date 2026年10月17日
+ */
+public class KeyPartitionedExecutor {
+
+    // 辅助线程池
+    private ThreadPoolExecutor executor;
+
+    public KeyPartitionedExecutor(String name, int threads) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = new ThreadPoolExecutor(0, threads, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, name + "-parallelConsume-" + threadIndex.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    /**
+     * 执行全部任务，返回时全部任务已执行完毕
+     *
+     * @param tasks
+     */
+    public void invokeAll(List<Runnable> tasks) {
+        int size = tasks.size();
+        AtomicInteger next = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(size);
+        Runnable worker = () -> {
+            int index;
+            while ((index = next.getAndIncrement()) < size) {
+                try {
+                    tasks.get(index).run();
+                } finally {
+                    latch.countDown();
+                }
+            }
+        };
+        // 调用线程自己也执行任务，只需size-1个辅助线程
+        for (int i = 1; i < size; ++i) {
+            try {
+                executor.execute(worker);
+            } catch (RejectedExecutionException e) {
+                break;
+            }
+        }
+        worker.run();
+        // 等待辅助线程上正在执行的任务
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 关闭，等待正在执行的任务执行完毕
+     *
+     * @param timeoutInMillis
+     */
+    public void shutdown(long timeoutInMillis) {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(timeoutInMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.sohu.tv.mq.rocketmq.consumer;
+
+import java.util.List;
+
+import org.apache.rocketmq.common.message.MessageExt;
+
+import com.sohu.index.tv.mq.common.MQMessage;
+import com.sohu.index.tv.mq.common.RawConsumerCallback;
+import com.sohu.index.tv.mq.common.RawMessage;
+import com.sohu.tv.mq.rocketmq.RocketMQConsumer;
+
+/**
+ * 原始消息消费，解析时不反序列化，由回调按需反序列化
+ *
+ * 未压缩的消息直接访问MessageExt的消息体，不复制；压缩的消息在首次访问时解压到RawMessage持有的缓冲区。
+ * 不支持去重。
+ *
+ * @author yongfeigao
+ * @date 2026年10月17日
+ * @param <T>
+ */
+@SuppressWarnings("unchecked")
+public class RawMessageConsumer<T> extends AbstractMessageConsumer<T, Void> {
+
+    public RawMessageConsumer(RocketMQConsumer rocketMQConsumer) {
+        super(rocketMQConsumer);
+    }
+
+    @Override
+    protected List<MQMessage<T>> parse(List<MessageExt> msgs) {
+        return parseLazily(msgs);
+    }
+
+    @Override
+    protected void consume(MQMessage<T> mqMessage) throws Exception {
+        RawConsumerCallback<T> callback = rocketMQConsumer.getRawConsumerCallback();
+        long start = System.nanoTime();
+        try {
+            callback.call((RawMessage<T>) mqMessage);
+        } finally {
+            recordCallbackTime(start);
+        }
+    }
+
+    /**
+     * 原始消息只通过consume(MQMessage)回调，不应调用到此，避免消息未经处理即被确认
+     */
+    @Override
+    public void consume(T message, MessageExt msgExt) throws Exception {
+        throw new IllegalStateException("raw message consumer only consumes RawMessage");
+    }
+}
@@ -20,6 +20,11 @@ public class SingleMessageConsumer<T> extends AbstractMessageConsumer<T, Void> {
 
     @Override
     public void consume(T message, MessageExt msgExt) throws Exception {
-        rocketMQConsumer.getConsumerCallback().call(message, msgExt);
+        long start = System.nanoTime();
+        try {
+            rocketMQConsumer.getConsumerCallback().call(message, msgExt);
+        } finally {
+            recordCallbackTime(start);
+        }
     }
 }
@@ -0,0 +1,281 @@
+package com.sohu.tv.mq.rocketmq.consumer.deduplicate;
+
+import static com.sohu.tv.mq.rocketmq.consumer.deduplicate.DeduplicateHelper.CONSUME_FAILED;
+import static com.sohu.tv.mq.rocketmq.consumer.deduplicate.DeduplicateHelper.CONSUME_OK;
+import static com.sohu.tv.mq.rocketmq.consumer.deduplicate.DeduplicateHelper.CONSUMING;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyContext;
+import org.apache.rocketmq.common.Pair;
+import org.apache.rocketmq.common.message.MessageExt;
+
+import com.sohu.index.tv.mq.common.MQMessage;
+import com.sohu.index.tv.mq.common.Result;
+import com.sohu.tv.mq.rocketmq.RocketMQConsumer;
+import com.sohu.tv.mq.rocketmq.consumer.BatchMessageConsumer;
+import com.sohu.tv.mq.rocketmq.redis.degradable.RedisBatchGetCommand;
+import com.sohu.tv.mq.rocketmq.redis.degradable.RedisBatchSetCommand;
+import com.sohu.tv.mq.rocketmq.redis.degradable.RedisGetCommand;
+import com.sohu.tv.mq.rocketmq.redis.degradable.RedisSetCommand;
+
+import redis.clients.jedis.params.SetParams;
+
+/**
+ * 批量消息去重消费
+ *
+ * 一批消息的去重标识通过一次批量set(nx)抢占，消费完成后通过一次批量set(xx)设置结果，
+ * 只有抢占失败的消息才需要再批量获取一次标识。
+ *
+ * @author yongfeigao
+ * @date 2026年10月17日
+ * @param <C>
+ */
+public class DeduplicateBatchMessageConsumer<C> extends BatchMessageConsumer<C> {
+
+    private DeduplicateHelper deduplicateHelper;
+
+    public DeduplicateBatchMessageConsumer(RocketMQConsumer rocketMQConsumer) {
+        super(rocketMQConsumer);
+        deduplicateHelper = new DeduplicateHelper(rocketMQConsumer);
+    }
+
+    @Override
+    public ConsumeStatus consume(MessageContext<C> context) {
+        List<MQMessage<Object>> msgList = parse(context.getMsgs());
+        if (msgList == null || msgList.isEmpty()) {
+            return ConsumeStatus.OK;
+        }
+        // 需要去重的消息
+        List<DeduplicateMessage> deduplicateList = new ArrayList<>(msgList.size());
+        // 不需要消费的消息
+        Set<MQMessage<Object>> skipSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<String> keySet = new HashSet<>();
+        for (MQMessage<Object> mqMessage : msgList) {
+            MessageExt msgExt = mqMessage.getMessageExt();
+            // 重试消息但非延迟消息直接消费
+            if (deduplicateHelper.isRetryMessage(msgExt)) {
+                continue;
+            }
+            String key = deduplicateHelper.buildKey(msgExt);
+            String offsetMsgId = deduplicateHelper.getOffsetMsgId(msgExt);
+            if (key == null || offsetMsgId == null) {
+                continue;
+            }
+            // 同一批内重复
+            if (!keySet.add(key)) {
+                logger.info("msg:{} offsetMsgId:{} duplicate in batch", key, offsetMsgId);
+                skipSet.add(mqMessage);
+                continue;
+            }
+            deduplicateList.add(new DeduplicateMessage(key, offsetMsgId, mqMessage));
+        }
+        // 抢占消费
+        List<DeduplicateMessage> claimedList = claim(deduplicateList, skipSet);
+        // 保持原有顺序
+        List<MQMessage<Object>> consumeList = new ArrayList<>(msgList.size() - skipSet.size());
+        for (MQMessage<Object> mqMessage : msgList) {
+            if (!skipSet.contains(mqMessage)) {
+                consumeList.add(mqMessage);
+            }
+        }
+        if (consumeList.isEmpty()) {
+            return ConsumeStatus.OK;
+        }
+        ConsumeStatus status = consume(consumeList, context);
+        // 设置消费结果
+        setFlag(claimedList, status == ConsumeStatus.OK ? CONSUME_OK : CONSUME_FAILED,
+                SetParams.setParams().xx().ex(rocketMQConsumer.getDeduplicateWindowSeconds()));
+        if (status == ConsumeStatus.FAIL && !skipSet.isEmpty()) {
+            return reconsumeLater(consumeList, context);
+        }
+        return status;
+    }
+
+    /**
+     * 整批重试时跳过的消息也会进入重试队列，而重试消息不再去重，会被重复消费。
+     * 因此只将消费失败的消息发回重试队列，整批确认；发回失败时仍整批重试。
+     * 
+     * @param consumeList
+     * @param context
+     * @return
+     */
+    private ConsumeStatus reconsumeLater(List<MQMessage<Object>> consumeList, MessageContext<C> context) {
+        // 顺序消费在本地重试，不经过重试队列
+        if (!rocketMQConsumer.isReconsume() || !(context.getContext() instanceof ConsumeConcurrentlyContext)) {
+            return ConsumeStatus.FAIL;
+        }
+        ConsumeConcurrentlyContext concurrentlyContext = (ConsumeConcurrentlyContext) context.getContext();
+        for (MQMessage<Object> mqMessage : consumeList) {
+            if (!sendMessageBack(mqMessage.getMessageExt(), concurrentlyContext)) {
+                return ConsumeStatus.FAIL;
+            }
+        }
+        context.setAckIndex(context.getMsgs().size() - 1);
+        return ConsumeStatus.PARTIAL;
+    }
+
+    /**
+     * 发回重试队列
+     * 
+     * @param msgExt
+     * @param context
+     * @return 是否成功
+     */
+    protected boolean sendMessageBack(MessageExt msgExt, ConsumeConcurrentlyContext context) {
+        try {
+            rocketMQConsumer.sendMessageBack(msgExt, context.getDelayLevelWhenNextConsume(), context.getMessageQueue());
+            return true;
+        } catch (Exception e) {
+            logger.warn("sendMessageBack msgId:{} error:{}", msgExt.getMsgId(), e.toString());
+        }
+        return false;
+    }
+
+    /**
+     * 抢占消费，不需要消费的消息加入skipSet
+     *
+     * @param deduplicateList
+     * @param skipSet
+     * @return 抢占成功的消息
+     */
+    private List<DeduplicateMessage> claim(List<DeduplicateMessage> deduplicateList,
+            Set<MQMessage<Object>> skipSet) {
+        if (deduplicateList.isEmpty()) {
+            return deduplicateList;
+        }
+        List<String> results = setFlag(deduplicateList, CONSUMING,
+                SetParams.setParams().nx().ex(rocketMQConsumer.getDeduplicateWindowSeconds()));
+        List<DeduplicateMessage> claimedList = new ArrayList<>(deduplicateList.size());
+        List<DeduplicateMessage> conflictList = new ArrayList<>();
+        for (int i = 0; i < deduplicateList.size(); ++i) {
+            DeduplicateMessage deduplicateMessage = deduplicateList.get(i);
+            if ("OK".equals(results.get(i))) {
+                claimedList.add(deduplicateMessage);
+            } else {
+                conflictList.add(deduplicateMessage);
+            }
+        }
+        if (conflictList.isEmpty()) {
+            return claimedList;
+        }
+        List<Pair<String, String>> pairs = getFlag(conflictList);
+        for (int i = 0; i < conflictList.size(); ++i) {
+            DeduplicateMessage deduplicateMessage = conflictList.get(i);
+            Pair<String, String> pair = pairs.get(i);
+            // 获取失败或真的不存在，直接消费
+            if (pair == null) {
+                continue;
+            }
+            // offsetMsgId相同且正在消费，发送失败直接消费
+            if (deduplicateMessage.offsetMsgId.equals(pair.getObject1()) && CONSUMING.equals(pair.getObject2())) {
+                if (deduplicateHelper.sendDelayMessage(deduplicateMessage.mqMessage.getMessageExt())) {
+                    skipSet.add(deduplicateMessage.mqMessage);
+                }
+                continue;
+            }
+            skipSet.add(deduplicateMessage.mqMessage);
+            logger.info("msg:{} offsetMsgId:{} flag:{} duplicate offsetMsgId:{}, reconsumeTimes:{}",
+                    deduplicateMessage.key, deduplicateMessage.offsetMsgId, pair.getObject2(), pair.getObject1(),
+                    deduplicateMessage.mqMessage.getMessageExt().getReconsumeTimes());
+        }
+        return claimedList;
+    }
+
+    /**
+     * 批量设置标识，批量命令失败时降级为逐个设置
+     *
+     * @param list
+     * @param flag
+     * @param setParams
+     * @return 与list一一对应的结果，单个key异常时当做设置成功
+     */
+    private List<String> setFlag(List<DeduplicateMessage> list, String flag, SetParams setParams) {
+        if (list.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> keys = new ArrayList<>(list.size());
+        List<String> values = new ArrayList<>(list.size());
+        for (DeduplicateMessage deduplicateMessage : list) {
+            keys.add(deduplicateMessage.key);
+            values.add(deduplicateHelper.buildValue(deduplicateMessage.offsetMsgId, flag));
+        }
+        try {
+            Result<List<String>> result = new RedisBatchSetCommand(rocketMQConsumer.getRedis(), keys, values,
+                    setParams).execute();
+            if (result.isSuccess()) {
+                return result.getResult();
+            }
+        } catch (Exception e) {
+            logger.warn("setFlag:{} size:{} error:{}", flag, keys.size(), e.toString());
+        }
+        // 逐个设置，每个key独立降级，避免整批失效
+        List<String> results = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); ++i) {
+            String set = "OK";
+            try {
+                Result<String> result = new RedisSetCommand(rocketMQConsumer.getRedis(), keys.get(i),
+                        values.get(i), setParams).execute();
+                if (result.isSuccess()) {
+                    set = result.getResult();
+                }
+            } catch (Exception e) {
+                logger.warn("setFlag:{} key:{} error:{}", flag, keys.get(i), e.toString());
+            }
+            results.add(set);
+        }
+        return results;
+    }
+
+    /**
+     * 批量获取标识，批量命令失败时降级为逐个获取
+     *
+     * @param list
+     * @return 与list一一对应的标识，单个key异常时为null
+     */
+    private List<Pair<String, String>> getFlag(List<DeduplicateMessage> list) {
+        List<String> keys = new ArrayList<>(list.size());
+        for (DeduplicateMessage deduplicateMessage : list) {
+            keys.add(deduplicateMessage.key);
+        }
+        try {
+            List<Pair<String, String>> pairs = new RedisBatchGetCommand(rocketMQConsumer.getRedis(), keys).execute();
+            if (pairs != null) {
+                return pairs;
+            }
+        } catch (Exception e) {
+            logger.warn("getFlag size:{} error:{}", keys.size(), e.toString());
+        }
+        List<Pair<String, String>> pairs = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            Pair<String, String> pair = null;
+            try {
+                pair = new RedisGetCommand(rocketMQConsumer.getRedis(), key).execute();
+            } catch (Exception e) {
+                logger.warn("getFlag:{} error:{}", key, e.toString());
+            }
+            pairs.add(pair);
+        }
+        return pairs;
+    }
+
+    /**
+     * 需要去重的消息
+     */
+    private static class DeduplicateMessage {
+        private String key;
+        private String offsetMsgId;
+        private MQMessage<Object> mqMessage;
+
+        public DeduplicateMessage(String key, String offsetMsgId, MQMessage<Object> mqMessage) {
+            this.key = key;
+            this.offsetMsgId = offsetMsgId;
+            this.mqMessage = mqMessage;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.sohu.tv.mq.rocketmq.consumer.deduplicate;
+
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.common.MixAll;
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageAccessor;
+import org.apache.rocketmq.common.message.MessageClientExt;
+import org.apache.rocketmq.common.message.MessageClientIDSetter;
+import org.apache.rocketmq.common.message.MessageConst;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sohu.index.tv.mq.common.MQMessage;
+import com.sohu.tv.mq.rocketmq.RocketMQConsumer;
+import com.sohu.tv.mq.rocketmq.RocketMQProducer.MessageDelayLevel;
+import com.sohu.tv.mq.util.CommonUtil;
+
+/**
+ * 去重消费公共逻辑，供单条和批量去重消费使用
+ *
+ * @author yongfeigao
+ * @date 2026年10月17日
+ */
+public class DeduplicateHelper {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    // 标识消息消费中
+    public static final String CONSUMING = "0";
+    // 标识消息消费失败
+    public static final String CONSUME_FAILED = "1";
+    // 标识消息消费成功
+    public static final String CONSUME_OK = "2";
+    // 标识延迟消息
+    public static final String DELAY_MESSAGE = "delay";
+
+    private RocketMQConsumer rocketMQConsumer;
+
+    public DeduplicateHelper(RocketMQConsumer rocketMQConsumer) {
+        this.rocketMQConsumer = rocketMQConsumer;
+    }
+
+    /**
+     * 重试消息但非延迟消息无需去重
+     *
+     * @param msgExt
+     * @return
+     */
+    public boolean isRetryMessage(MessageExt msgExt) {
+        return CommonUtil.isRetryTopic(msgExt.getProperty(MessageConst.PROPERTY_REAL_TOPIC)) &&
+                msgExt.getProperty(DELAY_MESSAGE) == null;
+    }
+
+    /**
+     * 构建redis中存储的值
+     *
+     * @param offsetMsgId
+     * @param flag
+     * @return
+     */
+    public String buildValue(String offsetMsgId, String flag) {
+        return offsetMsgId + ":" + flag;
+    }
+
+    /**
+     * 获取offsetMsgId
+     *
+     * @param msgExt
+     * @return
+     */
+    public String getOffsetMsgId(MessageExt msgExt) {
+        // 延迟消息使用之前的offsetMsgId
+        String offsetMsgId = msgExt.getProperty(DELAY_MESSAGE);
+        if (offsetMsgId == null) {
+            if (msgExt instanceof MessageClientExt) {
+                offsetMsgId = ((MessageClientExt) msgExt).getOffsetMsgId();
+            }
+        }
+        return offsetMsgId;
+    }
+
+    /**
+     * 构建去重的key
+     *
+     * @param msgExt
+     * @return
+     */
+    public String buildKey(MessageExt msgExt) {
+        // 优先使用客户端自己设置的幂等id
+        String idempotentId = msgExt.getProperty(MQMessage.IDEMPOTENT_ID);
+        if (idempotentId == null) {
+            // 其次使用客户端生成的消息id
+            idempotentId = MessageClientIDSetter.getUniqID(msgExt);
+        }
+        if (idempotentId == null) {
+            return null;
+        }
+        return idempotentId;
+    }
+
+    /**
+     * 发送延迟消息
+     *
+     * @param msg
+     * @return
+     */
+    @SuppressWarnings("deprecation")
+    public boolean sendDelayMessage(MessageExt msg) {
+        String consumerGroup = rocketMQConsumer.getGroup();
+        try {
+            Message newMsg = new Message(MixAll.getRetryTopic(consumerGroup), msg.getBody());
+            String originMsgId = MessageAccessor.getOriginMessageId(msg);
+            MessageAccessor.setOriginMessageId(newMsg, UtilAll.isBlank(originMsgId) ? msg.getMsgId() : originMsgId);
+            newMsg.setFlag(msg.getFlag());
+            MessageAccessor.setProperties(newMsg, msg.getProperties());
+            MessageAccessor.putProperty(newMsg, MessageConst.PROPERTY_RETRY_TOPIC, msg.getTopic());
+            MessageAccessor.setReconsumeTime(newMsg, String.valueOf(msg.getReconsumeTimes() + 1));
+            int delayInterval = (int) (MessageDelayLevel.LEVEL_30_SECONDS.getDelayTimeMillis() / 1000);
+            int maxReconsumeTimes = rocketMQConsumer.getDeduplicateWindowSeconds() / delayInterval;
+            MessageAccessor.setMaxReconsumeTimes(newMsg, String.valueOf(maxReconsumeTimes));
+            MessageAccessor.clearProperty(newMsg, MessageConst.PROPERTY_TRANSACTION_PREPARED);
+            newMsg.setDelayTimeLevel(MessageDelayLevel.LEVEL_30_SECONDS.getLevel());
+            MessageAccessor.putProperty(newMsg, DELAY_MESSAGE, getOffsetMsgId(msg));
+            SendResult sendResult = rocketMQConsumer.getConsumer().getDefaultMQPushConsumerImpl().getmQClientFactory()
+                    .getDefaultMQProducer().send(newMsg);
+            logger.info(
+                    "sendDelayMessage consumerGroup:{} msgId:{} offsetMsgId:{} reconsumeTimes:{} maxReconsumeTimes:{} result:{}",
+                    consumerGroup, msg.getMsgId(), getOffsetMsgId(msg), msg.getReconsumeTimes(), maxReconsumeTimes,
+                    sendResult);
+            return true;
+        } catch (Exception e) {
+            logger.warn("sendDelayMessage consumerGroup:{} msgId:{} offsetMsgId:{} reconsumeTimes:{} error:{}",
+                    consumerGroup, msg.getMsgId(), getOffsetMsgId(msg), msg.getReconsumeTimes(), e.toString());
+        }
+        return false;
+    }
+}
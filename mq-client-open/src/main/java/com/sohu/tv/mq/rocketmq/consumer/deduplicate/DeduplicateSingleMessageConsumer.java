@@ -1,24 +1,17 @@
 package com.sohu.tv.mq.rocketmq.consumer.deduplicate;
 
-import org.apache.rocketmq.client.producer.SendResult;
-import org.apache.rocketmq.common.MixAll;
+import static com.sohu.tv.mq.rocketmq.consumer.deduplicate.DeduplicateHelper.CONSUME_FAILED;
+import static com.sohu.tv.mq.rocketmq.consumer.deduplicate.DeduplicateHelper.CONSUME_OK;
+import static com.sohu.tv.mq.rocketmq.consumer.deduplicate.DeduplicateHelper.CONSUMING;
+
 import org.apache.rocketmq.common.Pair;
-import org.apache.rocketmq.common.UtilAll;
-import org.apache.rocketmq.common.message.Message;
-import org.apache.rocketmq.common.message.MessageAccessor;
-import org.apache.rocketmq.common.message.MessageClientExt;
-import org.apache.rocketmq.common.message.MessageClientIDSetter;
-import org.apache.rocketmq.common.message.MessageConst;
 import org.apache.rocketmq.common.message.MessageExt;
 
-import com.sohu.index.tv.mq.common.MQMessage;
 import com.sohu.index.tv.mq.common.Result;
 import com.sohu.tv.mq.rocketmq.RocketMQConsumer;
-import com.sohu.tv.mq.rocketmq.RocketMQProducer.MessageDelayLevel;
 import com.sohu.tv.mq.rocketmq.consumer.SingleMessageConsumer;
 import com.sohu.tv.mq.rocketmq.redis.degradable.RedisGetCommand;
 import com.sohu.tv.mq.rocketmq.redis.degradable.RedisSetCommand;
-import com.sohu.tv.mq.util.CommonUtil;
 
 import redis.clients.jedis.params.SetParams;
 
@@ -31,60 +24,67 @@ import redis.clients.jedis.params.SetParams;
  */
 public class DeduplicateSingleMessageConsumer<T> extends SingleMessageConsumer<T> {
 
-    // 标识消息消费中
-    private static final String CONSUMING = "0";
-    // 标识消息消费失败
-    private static final String CONSUME_FAILED = "1";
-    // 标识消息消费成功
-    private static final String CONSUME_OK = "2";
-    // 标识延迟消息
-    private static final String DELAY_MESSAGE = "delay";
+    private DeduplicateHelper deduplicateHelper;
+
+    // 本地去重缓存，为null时只使用redis
+    private LocalDeduplicateCache localCache;
 
     public DeduplicateSingleMessageConsumer(RocketMQConsumer rocketMQConsumer) {
         super(rocketMQConsumer);
+        deduplicateHelper = new DeduplicateHelper(rocketMQConsumer);
+        if (rocketMQConsumer.getDeduplicateLocalCacheSize() > 0) {
+            localCache = new LocalDeduplicateCache(rocketMQConsumer.getDeduplicateLocalCacheSize());
+        }
     }
 
     @Override
     public void consume(T message, MessageExt msgExt) throws Exception {
         // 重试消息但非延迟消息直接消费
-        if (CommonUtil.isRetryTopic(msgExt.getProperty(MessageConst.PROPERTY_REAL_TOPIC)) &&
-                msgExt.getProperty(DELAY_MESSAGE) == null) {
+        if (deduplicateHelper.isRetryMessage(msgExt)) {
             super.consume(message, msgExt);
             return;
         }
         // 构建去重key
-        String key = buildKey(msgExt);
+        String key = deduplicateHelper.buildKey(msgExt);
         if (key == null) {
             super.consume(message, msgExt);
             return;
         }
         // 获取offsetMsgId
-        String offsetMsgId = getOffsetMsgId(msgExt);
+        String offsetMsgId = deduplicateHelper.getOffsetMsgId(msgExt);
         if (offsetMsgId == null) {
             super.consume(message, msgExt);
             return;
         }
-        // 设置正在消费标识
-        if (setConsumingFlag(key, offsetMsgId)) {
-            try {
+        // 优先从本地获取标识，未命中时由redis仲裁
+        Pair<String, String> pair = getLocalFlag(key);
+        if (pair == null) {
+            // 设置正在消费标识
+            if (setConsumingFlag(key, offsetMsgId)) {
+                try {
+                    super.consume(message, msgExt);
+                    setConsumeOKFlag(key, offsetMsgId);
+                } catch (Exception e) {
+                    setConsumeFailedFlag(key, offsetMsgId);
+                    throw e;
+                }
+                return;
+            }
+            // 获取标识
+            pair = getFlag(key);
+            // 获取失败或真的不存在，直接消费
+            if (pair == null) {
                 super.consume(message, msgExt);
-                setConsumeOKFlag(key, offsetMsgId);
-            } catch (Exception e) {
-                setConsumeFailedFlag(key, offsetMsgId);
-                throw e;
+                return;
+            }
+            // 终态标识不会再变化，缓存到本地
+            if (!CONSUMING.equals(pair.getObject2())) {
+                putLocalFlag(key, pair.getObject1(), pair.getObject2());
             }
-            return;
-        }
-        // 获取标识
-        Pair<String, String> pair = getFlag(key);
-        // 获取失败或真的不存在，直接消费
-        if (pair == null) {
-            super.consume(message, msgExt);
-            return;
         }
         // offsetMsgId相同且正在消费
         if (offsetMsgId.equals(pair.getObject1()) && CONSUMING.equals(pair.getObject2())) {
-            if (sendDelayMessage(rocketMQConsumer.getGroup(), msgExt)) {
+            if (deduplicateHelper.sendDelayMessage(msgExt)) {
                 return;
             }
             // 发送失败直接消费
@@ -140,17 +140,24 @@ public class DeduplicateSingleMessageConsumer<T> extends SingleMessageConsumer<T
      * @return
      */
     private boolean setFlag(String key, String flag, String offsetMsgId, SetParams setParams) {
+        // 异常状况当做设置成功
+        boolean set = true;
         try {
-            String value = offsetMsgId + ":" + flag;
+            String value = deduplicateHelper.buildValue(offsetMsgId, flag);
             Result<String> result = new RedisSetCommand(rocketMQConsumer.getRedis(), key, value, setParams).execute();
             if (result.isSuccess()) {
-                return "OK".equals(result.getResult());
+                set = "OK".equals(result.getResult());
             }
         } catch (Exception e) {
             logger.warn("setFlag:{} key:{} error:{}", flag, key, e.toString());
         }
-        // 异常状况当做设置成功
-        return true;
+        if (set) {
+            putLocalFlag(key, offsetMsgId, flag);
+        } else {
+            // 未设置成功，本地标识已无效
+            removeLocalFlag(key);
+        }
+        return set;
     }
 
     /**
@@ -169,76 +176,40 @@ public class DeduplicateSingleMessageConsumer<T> extends SingleMessageConsumer<T
     }
 
     /**
-     * 获取offsetMsgId
+     * 获取本地标识
      * 
-     * @param msgExt
+     * @param key
      * @return
      */
-    private String getOffsetMsgId(MessageExt msgExt) {
-        // 延迟消息使用之前的offsetMsgId
-        String offsetMsgId = msgExt.getProperty(DELAY_MESSAGE);
-        if (offsetMsgId == null) {
-            if (msgExt instanceof MessageClientExt) {
-                offsetMsgId = ((MessageClientExt) msgExt).getOffsetMsgId();
-            }
+    private Pair<String, String> getLocalFlag(String key) {
+        if (localCache == null) {
+            return null;
         }
-        return offsetMsgId;
+        return localCache.get(key);
     }
 
     /**
-     * 构建去重的key
+     * 设置本地标识
      * 
-     * @param consumerGroup
-     * @param msgExt
-     * @return
+     * @param key
+     * @param offsetMsgId
+     * @param flag
      */
-    private String buildKey(MessageExt msgExt) {
-        // 优先使用客户端自己设置的幂等id
-        String idempotentId = msgExt.getProperty(MQMessage.IDEMPOTENT_ID);
-        if (idempotentId == null) {
-            // 其次使用客户端生成的消息id
-            idempotentId = MessageClientIDSetter.getUniqID(msgExt);
-        }
-        if (idempotentId == null) {
-            return null;
+    private void putLocalFlag(String key, String offsetMsgId, String flag) {
+        if (localCache == null) {
+            return;
         }
-        return idempotentId;
+        localCache.put(key, offsetMsgId, flag, rocketMQConsumer.getDeduplicateWindowSeconds());
     }
 
-    /**
-     * 发送延迟消息
-     * 
-     * @param consumerGroup
-     * @param msg
-     * @return
-     */
-    @SuppressWarnings("deprecation")
-    private boolean sendDelayMessage(String consumerGroup, MessageExt msg) {
-        try {
-            Message newMsg = new Message(MixAll.getRetryTopic(consumerGroup), msg.getBody());
-            String originMsgId = MessageAccessor.getOriginMessageId(msg);
-            MessageAccessor.setOriginMessageId(newMsg, UtilAll.isBlank(originMsgId) ? msg.getMsgId() : originMsgId);
-            newMsg.setFlag(msg.getFlag());
-            MessageAccessor.setProperties(newMsg, msg.getProperties());
-            MessageAccessor.putProperty(newMsg, MessageConst.PROPERTY_RETRY_TOPIC, msg.getTopic());
-            MessageAccessor.setReconsumeTime(newMsg, String.valueOf(msg.getReconsumeTimes() + 1));
-            int delayInterval = (int) (MessageDelayLevel.LEVEL_30_SECONDS.getDelayTimeMillis() / 1000);
-            int maxReconsumeTimes = rocketMQConsumer.getDeduplicateWindowSeconds() / delayInterval;
-            MessageAccessor.setMaxReconsumeTimes(newMsg, String.valueOf(maxReconsumeTimes));
-            MessageAccessor.clearProperty(newMsg, MessageConst.PROPERTY_TRANSACTION_PREPARED);
-            newMsg.setDelayTimeLevel(MessageDelayLevel.LEVEL_30_SECONDS.getLevel());
-            MessageAccessor.putProperty(newMsg, DELAY_MESSAGE, getOffsetMsgId(msg));
-            SendResult sendResult = rocketMQConsumer.getConsumer().getDefaultMQPushConsumerImpl().getmQClientFactory()
-                    .getDefaultMQProducer().send(newMsg);
-            logger.info(
-                    "sendDelayMessage consumerGroup:{} msgId:{} offsetMsgId:{} reconsumeTimes:{} maxReconsumeTimes:{} result:{}",
-                    consumerGroup, msg.getMsgId(), getOffsetMsgId(msg), msg.getReconsumeTimes(), maxReconsumeTimes,
-                    sendResult);
-            return true;
-        } catch (Exception e) {
-            logger.warn("sendDelayMessage consumerGroup:{} msgId:{} offsetMsgId:{} reconsumeTimes:{} error:{}",
-                    msg.getMsgId(), getOffsetMsgId(msg), msg.getReconsumeTimes(), e.toString());
+    private void removeLocalFlag(String key) {
+        if (localCache == null) {
+            return;
         }
-        return false;
+        localCache.remove(key);
+    }
+
+    public LocalDeduplicateCache getLocalCache() {
+        return localCache;
     }
 }
@@ -0,0 +1,163 @@
+package com.sohu.tv.mq.rocketmq.consumer.deduplicate;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.rocketmq.common.Pair;
+
+/**
+ * 本地去重缓存，位于redis之前
+ *
+ * 缓存本实例写入redis的标识及从redis读到的终态标识，在去重窗口内命中时无需访问redis，
+ * 未命中时再由redis做跨实例的仲裁。按key哈希分段，每段按插入顺序淘汰，过期的条目读取时丢弃。
+ *
+ * @author yongfeigao
+ * @date 2026年10月17日
+ */
+public class LocalDeduplicateCache {
+
+    // 分段数
+    private static final int SEGMENTS = 16;
+
+    private Segment[] segments;
+
+    // 命中次数
+    private LongAdder hits = new LongAdder();
+
+    // 未命中次数
+    private LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxSize 最多缓存的key数
+     */
+    public LocalDeduplicateCache(int maxSize) {
+        int segmentSize = Math.max(1, (maxSize + SEGMENTS - 1) / SEGMENTS);
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; ++i) {
+            segments[i] = new Segment(segmentSize);
+        }
+    }
+
+    /**
+     * 获取标识
+     *
+     * @param key
+     * @return <offsetMsgId, flag>，不存在或已过期返回null
+     */
+    public Pair<String, String> get(String key) {
+        Entry entry = segment(key).get(key, System.currentTimeMillis());
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return new Pair<>(entry.offsetMsgId, entry.flag);
+    }
+
+    /**
+     * 设置标识
+     *
+     * @param key
+     * @param offsetMsgId
+     * @param flag
+     * @param expireSeconds
+     */
+    public void put(String key, String offsetMsgId, String flag, int expireSeconds) {
+        long expireTime = System.currentTimeMillis() + expireSeconds * 1000L;
+        segment(key).put(key, new Entry(offsetMsgId, flag, expireTime));
+    }
+
+    /**
+     * 删除标识
+     *
+     * @param key
+     */
+    public void remove(String key) {
+        segment(key).remove(key);
+    }
+
+    private Segment segment(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (SEGMENTS - 1)];
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * 缓存条目
+     */
+    private static class Entry {
+        private String offsetMsgId;
+        private String flag;
+        private long expireTime;
+
+        public Entry(String offsetMsgId, String flag, long expireTime) {
+            this.offsetMsgId = offsetMsgId;
+            this.flag = flag;
+            this.expireTime = expireTime;
+        }
+    }
+
+    /**
+     * 分段，超过容量或最老的条目已过期时淘汰最老的条目
+     */
+    @SuppressWarnings("serial")
+    private static class Segment extends LinkedHashMap<String, Entry> {
+        private int maxSize;
+
+        public Segment(int maxSize) {
+            super(16, 0.75f, false);
+            this.maxSize = maxSize;
+        }
+
+        public synchronized Entry get(String key, long now) {
+            Entry entry = super.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expireTime <= now) {
+                super.remove(key);
+                return null;
+            }
+            return entry;
+        }
+
+        @Override
+        public synchronized Entry put(String key, Entry value) {
+            // 重新插入到末尾，保持按写入时间淘汰
+            super.remove(key);
+            return super.put(key, value);
+        }
+
+        @Override
+        public synchronized Entry remove(Object key) {
+            return super.remove(key);
+        }
+
+        @Override
+        public synchronized int size() {
+            return super.size();
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > maxSize || eldest.getValue().expireTime <= System.currentTimeMillis();
+        }
+    }
+}
@@ -1,11 +1,11 @@
 package com.sohu.tv.mq.rocketmq.limiter;
 
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.LockSupport;
 
 import org.slf4j.Logger;
@@ -14,86 +14,184 @@ import org.slf4j.LoggerFactory;
 /**
  * 漏桶限速器
  * 当前请求线程看做水滴
- * 
+ *
+ * 每滴水按滴速依次分配滴落时间，不积攒空闲时的额度；需要等待的线程按滴落时间放入定时轮的格中，
+ * 漏水线程每格唤醒一次，整格的线程批量唤醒，同一格内的水滴直接放行，无需逐个唤醒。
+ *
  * @author yongfeigao
  * @date 2020年6月11日
  */
 public class LeakyBucketRateLimiter implements RateLimiter {
     private Logger logger = LoggerFactory.getLogger(this.getClass());
+    // 定时轮每格的纳秒
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    // 定时轮格数，需为2的幂
+    private static final int WHEEL_SIZE = 512;
+    // 无水滴时漏水线程最长休眠的纳秒
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
     // 漏桶名
     private String name;
+    // 桶容量，保留兼容，定时轮调度下等待时间只由滴速决定
+    private int bucketCapacity;
     // 滴速
     private volatile int dripSpeed;
     // 滴速时间单位
     private volatile TimeUnit dripSpeedTimeUnit;
-    // 漏桶
-    private BlockingQueue<Thread> bucket;
     // 滴一滴水需要的纳秒
-    private long dripSpeedNanos;
+    private volatile long dripSpeedNanos;
+    // 下一滴水的滴落时间，相对startTick的纳秒
+    private final AtomicLong nextDripNanos = new AtomicLong();
+    // 定时轮
+    private Queue<Drop>[] wheel;
+    // 已处理到的格
+    private volatile long processedTick = -1;
+    // 桶中的水量，即等待的线程数
+    private AtomicInteger water = new AtomicInteger();
+    // 漏水线程是否空闲
+    private volatile boolean idle;
 
-    private ExecutorService dripExecutorService;
+    private volatile boolean stopped;
+
+    private Thread leakThread;
+
+    private final long startTick = System.nanoTime();
 
     /**
      * LeakyBucketRateLimiter
-     * 
+     *
      * @param name 漏桶名
      * @param bucketCapacity 桶容量
      * @param dripSpeed 滴速
      * @param dripSpeedTimeUnit 滴速单位
      */
+    @SuppressWarnings("unchecked")
     public LeakyBucketRateLimiter(final String name, int bucketCapacity, int dripSpeed, TimeUnit dripSpeedTimeUnit) {
         this.name = name;
+        this.bucketCapacity = bucketCapacity;
         this.dripSpeed = dripSpeed;
         this.dripSpeedTimeUnit = dripSpeedTimeUnit;
-        this.bucket = new ArrayBlockingQueue<>(bucketCapacity);
-        dripExecutorService = Executors.newSingleThreadExecutor(new ThreadFactory() {
-            public Thread newThread(Runnable r) {
-                return new Thread(r, "LeakyBucket-" + name);
-            }
-        });
+        this.wheel = new Queue[WHEEL_SIZE];
+        for (int i = 0; i < WHEEL_SIZE; ++i) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
         caclulateDripSpeedNanos();
         leak();
     }
 
     /**
-     * 滴水入桶，若水桶满则等待
-     * 
+     * 滴水入桶，未到滴落时间则等待
+     *
      * @throws InterruptedException
      */
     public void drip() throws InterruptedException {
-        Thread thread = Thread.currentThread();
-        synchronized (thread) {
-            bucket.put(thread);
-            thread.wait();
+        drip(1);
+    }
+
+    /**
+     * 滴多滴水入桶，未到滴落时间则等待
+     *
+     * @param drops
+     * @throws InterruptedException
+     */
+    public void drip(int drops) throws InterruptedException {
+        long cost = drops * dripSpeedNanos;
+        long now;
+        long dripTime;
+        while (true) {
+            now = readNanos();
+            long next = nextDripNanos.get();
+            dripTime = Math.max(next, now);
+            if (nextDripNanos.compareAndSet(next, dripTime + cost)) {
+                break;
+            }
+        }
+        // 当前格内的直接放行
+        if (dripTime - now < TICK_NANOS || stopped) {
+            return;
+        }
+        Drop drop = new Drop(Thread.currentThread(), dripTime / TICK_NANOS);
+        water.incrementAndGet();
+        try {
+            wheel[(int) (drop.tick & (WHEEL_SIZE - 1))].add(drop);
+            // 漏水线程已处理过该格，自行放行
+            if (drop.tick <= processedTick) {
+                drop.released = true;
+            } else if (idle) {
+                LockSupport.unpark(leakThread);
+            }
+            while (!drop.released) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    drop.released = true;
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            water.decrementAndGet();
         }
     }
 
     /**
-     * 漏水，匀速
+     * 漏水，每格批量唤醒到期的水滴
      */
     public void leak() {
-        dripExecutorService.execute(new Runnable() {
+        leakThread = new Thread(new Runnable() {
             public void run() {
-                while (!dripExecutorService.isShutdown()) {
-                    Thread thread = null;
+                long tick = readNanos() / TICK_NANOS;
+                while (!stopped) {
                     try {
-                        thread = bucket.take();
-                        if (thread != null) {
-                            synchronized (thread) {
-                                thread.notifyAll();
+                        long waitNanos = tick * TICK_NANOS - readNanos();
+                        if (waitNanos > 0) {
+                            // 先标记空闲再检查水量，与drip中先加水量再检查空闲配合，避免漏掉唤醒
+                            idle = true;
+                            if (water.get() > 0) {
+                                idle = false;
                             }
+                            LockSupport.parkNanos(this, idle ? Math.max(waitNanos, IDLE_NANOS) : waitNanos);
+                            idle = false;
+                            continue;
                         }
-                        LockSupport.parkNanos(dripSpeedNanos);
-                    } catch (Exception e) {
-                        logger.error("leak error, thread:{}", thread, e);
+                        // 先标记已处理再唤醒，之后入格的水滴自行放行
+                        processedTick = tick;
+                        release(tick, false);
+                        ++tick;
+                    } catch (Throwable e) {
+                        logger.error("leak error, tick:{}", tick, e);
                     }
                 }
+                // 关闭时放行所有水滴
+                for (int i = 0; i < WHEEL_SIZE; ++i) {
+                    release(i, true);
+                }
             }
-        });
+        }, "LeakyBucket-" + name);
+        leakThread.setDaemon(true);
+        leakThread.start();
+    }
+
+    /**
+     * 唤醒格中到期的水滴
+     *
+     * @param tick
+     * @param all 是否唤醒全部
+     */
+    private void release(long tick, boolean all) {
+        Iterator<Drop> iterator = wheel[(int) (tick & (WHEEL_SIZE - 1))].iterator();
+        while (iterator.hasNext()) {
+            Drop drop = iterator.next();
+            if (drop.released) {
+                iterator.remove();
+            } else if (all || drop.tick <= tick) {
+                iterator.remove();
+                drop.released = true;
+                LockSupport.unpark(drop.thread);
+            }
+        }
     }
 
     public void shutdown() {
-        dripExecutorService.shutdown();
+        stopped = true;
+        LockSupport.unpark(leakThread);
     }
 
     /**
@@ -103,10 +201,18 @@ public class LeakyBucketRateLimiter implements RateLimiter {
         this.dripSpeedNanos = dripSpeedTimeUnit.toNanos(1) / dripSpeed;
     }
 
+    private long readNanos() {
+        return System.nanoTime() - startTick;
+    }
+
     public String getName() {
         return name;
     }
 
+    public int getBucketCapacity() {
+        return bucketCapacity;
+    }
+
     public int getDripSpeed() {
         return dripSpeed;
     }
@@ -125,7 +231,7 @@ public class LeakyBucketRateLimiter implements RateLimiter {
 
     /**
      * 以秒为单位重置滴速
-     * 
+     *
      * @param dripSpeedInSecs
      */
     public void resetDripSpeedInSecs(int dripSpeedInSecs) {
@@ -136,21 +242,21 @@ public class LeakyBucketRateLimiter implements RateLimiter {
 
     /**
      * 获取水量
-     * 
+     *
      * @return
      */
     public int getWater() {
-        return bucket.size();
+        return water.get();
     }
 
     @Override
     public void limit() throws InterruptedException {
         drip();
     }
-    
+
     @Override
     public void limit(int permits) throws InterruptedException {
-        
+        drip(permits);
     }
 
     @Override
@@ -162,4 +268,19 @@ public class LeakyBucketRateLimiter implements RateLimiter {
     public int getRate() {
         return getDripSpeed();
     }
+
+    /**
+     * 等待滴落的水滴
+     */
+    private static class Drop {
+        private Thread thread;
+        // 滴落的格
+        private long tick;
+        private volatile boolean released;
+
+        public Drop(Thread thread, long tick) {
+            this.thread = thread;
+            this.tick = tick;
+        }
+    }
 }
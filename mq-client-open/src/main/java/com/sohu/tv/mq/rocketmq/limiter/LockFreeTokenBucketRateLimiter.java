@@ -0,0 +1,93 @@
+package com.sohu.tv.mq.rocketmq.limiter;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 无锁令牌桶限速器
+ *
+ * 语义同{@link TokenBucketRateLimiter}：请求立即获得许可，其消耗的令牌由后续请求等待偿还，最多积攒1秒的令牌。
+ * 状态只有"下一个许可可用的时间"，早于当前时间的部分即为积攒的令牌，通过CAS更新，无需加锁；
+ * 获取多个许可与获取一个许可的开销相同，适合整批获取。
+ *
+ * @author yongfeigao
+ * @date 2026年10月17日
+ */
+public class LockFreeTokenBucketRateLimiter implements RateLimiter {
+
+    // 最多积攒1秒的令牌
+    private static final long MAX_BURST_NANOS = SECONDS.toNanos(1);
+
+    // 下一个许可可用的时间，相对startTick的纳秒
+    private final AtomicLong nextFreeTicketNanos;
+
+    // 生成一个令牌的间隔，纳秒
+    private volatile double stableIntervalNanos;
+
+    // 速率
+    private volatile int rate;
+
+    private final long startTick = System.nanoTime();
+
+    public LockFreeTokenBucketRateLimiter(int permitsPerSecond) {
+        setRate(permitsPerSecond);
+        nextFreeTicketNanos = new AtomicLong(readNanos());
+    }
+
+    /**
+     * 预定许可
+     *
+     * @param permits
+     * @return 需要等待的纳秒
+     */
+    public long reserve(int permits) {
+        long cost = (long) (permits * stableIntervalNanos);
+        while (true) {
+            long now = readNanos();
+            long next = nextFreeTicketNanos.get();
+            // 早于当前时间的部分为积攒的令牌，可直接抵扣
+            long start = Math.max(next, now - MAX_BURST_NANOS);
+            if (nextFreeTicketNanos.compareAndSet(next, start + cost)) {
+                return Math.max(start - now, 0);
+            }
+        }
+    }
+
+    @Override
+    public void limit() throws InterruptedException {
+        limit(1);
+    }
+
+    @Override
+    public void limit(int permits) throws InterruptedException {
+        long nanosToWait = reserve(permits);
+        if (nanosToWait > 0) {
+            LockSupport.parkNanos(nanosToWait);
+        }
+    }
+
+    @Override
+    public int getRate() {
+        return rate;
+    }
+
+    @Override
+    public void setRate(int rateInSecs) {
+        if (rateInSecs <= 0) {
+            return;
+        }
+        this.stableIntervalNanos = (double) SECONDS.toNanos(1) / rateInSecs;
+        this.rate = rateInSecs;
+    }
+
+    @Override
+    public void shutdown() {
+
+    }
+
+    private long readNanos() {
+        return System.nanoTime() - startTick;
+    }
+}
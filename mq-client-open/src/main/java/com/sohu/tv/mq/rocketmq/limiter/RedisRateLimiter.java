@@ -0,0 +1,257 @@
+package com.sohu.tv.mq.rocketmq.limiter;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sohu.tv.mq.rocketmq.redis.IRedis;
+import com.sohu.tv.mq.rocketmq.redis.degradable.RedisIncrCommand;
+import com.sohu.tv.mq.rocketmq.redis.degradable.RedisTimeCommand;
+
+/**
+ * 集群限速器
+ *
+ * 同名的所有实例共享每秒的速率，实例增减时无需重新分配。
+ * 每秒对应redis中的一个计数器，实例每次从计数器租借一批令牌到本地消耗，避免每条消息访问redis；
+ * 计数器超过速率后，本秒内不再租借，等待下一秒。每个实例在秒末最多浪费一批未用完的令牌。
+ * 超过速率的批量许可跨多秒扣除，按实际数量计费。
+ *
+ * 秒的划分以redis服务器时间为准，定期校正本地时钟偏差，避免各实例的计数器错位。
+ * 同一时刻只有一个线程访问redis，其余线程等待租借结果，访问redis时不持有锁。
+ *
+ * redis不可用时降级为本地令牌桶，速率按上一秒本实例租借的令牌占比估算。
+ *
+ * @author yongfeigao
+ * @date 2026年10月17日
+ */
+public class RedisRateLimiter implements RateLimiter {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    // key前缀
+    public static final String KEY_PREFIX = "mq:limit:";
+
+    // 每批租借速率的1/LEASE_DIVISOR
+    private static final int LEASE_DIVISOR = 100;
+
+    // 计数器过期时间
+    private static final int EXPIRE_SECONDS = 2;
+
+    // 时钟校正间隔，毫秒
+    private static final long CLOCK_SYNC_MILLIS = 60000;
+
+    // 校正时钟允许的最大往返耗时，毫秒，超过时误差过大不校正
+    private static final long CLOCK_SYNC_MAX_RTT = 100;
+
+    // 租借失败告警间隔，毫秒
+    private static final long WARN_INTERVAL_MILLIS = 10000;
+
+    private IRedis redis;
+
+    // 限速器名，同名的实例共享速率
+    private String name;
+
+    // 集群速率
+    private volatile int rate;
+
+    // 每批租借的令牌数
+    private volatile int leaseSize;
+
+    // 本地令牌所属的秒
+    private long second;
+
+    // 本地剩余的令牌
+    private long tokens;
+
+    // 本秒是否已租完
+    private boolean exhausted;
+
+    // 本秒本实例租借的令牌数
+    private long leased;
+
+    // 本秒观察到的集群租借的令牌数
+    private long clusterLeased;
+
+    // 是否有线程正在租借
+    private boolean leasing;
+
+    // redis时间与本地时间之差
+    private volatile long clockOffset;
+
+    // 上次校正时钟的时间
+    private volatile long clockSyncTime;
+
+    // 上次告警的时间
+    private volatile long warnTime;
+
+    // 未输出告警的租借失败次数
+    private AtomicLong leaseFailed = new AtomicLong();
+
+    // redis不可用时降级的本地限速器
+    private LockFreeTokenBucketRateLimiter fallbackRateLimiter;
+
+    public RedisRateLimiter(IRedis redis, String name, int rate) {
+        this.redis = redis;
+        this.name = name;
+        this.fallbackRateLimiter = new LockFreeTokenBucketRateLimiter(rate);
+        setRate(rate);
+    }
+
+    @Override
+    public void limit() throws InterruptedException {
+        limit(1);
+    }
+
+    /**
+     * 获取许可，超过集群速率的批量跨多秒扣除
+     */
+    @Override
+    public void limit(int permits) throws InterruptedException {
+        long remaining = permits;
+        while (true) {
+            long leaseSecond;
+            long lack;
+            synchronized (this) {
+                long now = currentTimeMillis();
+                long currentSecond = now / 1000;
+                if (currentSecond != second) {
+                    roll(currentSecond);
+                }
+                long take = Math.min(remaining, tokens);
+                tokens -= take;
+                remaining -= take;
+                if (remaining <= 0) {
+                    return;
+                }
+                // 本秒已租完或其他线程正在租借，等待下一秒或租借结果
+                if (exhausted || leasing) {
+                    wait(1000 - now % 1000);
+                    continue;
+                }
+                leasing = true;
+                leaseSecond = second;
+                lack = Math.min(remaining, rate);
+            }
+            // 访问redis时不持有锁
+            Long value = null;
+            long size = Math.max(lack, leaseSize);
+            try {
+                syncClock();
+                value = new RedisIncrCommand(redis, KEY_PREFIX + name + ":" + leaseSecond, size, EXPIRE_SECONDS)
+                        .execute();
+            } finally {
+                synchronized (this) {
+                    leasing = false;
+                    if (value != null) {
+                        grant(leaseSecond, size, value);
+                    }
+                    notifyAll();
+                }
+            }
+            if (value == null) {
+                warnLeaseFailed();
+                break;
+            }
+        }
+        fallbackRateLimiter.limit((int) remaining);
+    }
+
+    /**
+     * 进入新的一秒，按上一秒本实例的租借占比估算降级速率
+     *
+     * @param currentSecond
+     */
+    private void roll(long currentSecond) {
+        if (currentSecond == second + 1 && clusterLeased > 0) {
+            int localRate = (int) Math.max(1, rate * leased / clusterLeased);
+            if (localRate != fallbackRateLimiter.getRate()) {
+                fallbackRateLimiter.setRate(localRate);
+            }
+        }
+        second = currentSecond;
+        tokens = 0;
+        exhausted = false;
+        leased = 0;
+        clusterLeased = 0;
+    }
+
+    /**
+     * 记录租借的令牌，租借期间已进入下一秒的作废
+     *
+     * @param leaseSecond 租借的秒
+     * @param size 租借的令牌数
+     * @param value 计数器的值
+     */
+    private void grant(long leaseSecond, long size, long value) {
+        if (leaseSecond != second) {
+            return;
+        }
+        long granted = Math.max(0, Math.min(size, rate - (value - size)));
+        tokens += granted;
+        leased += granted;
+        clusterLeased = Math.max(clusterLeased, Math.min(value, rate));
+        if (granted < size) {
+            exhausted = true;
+        }
+    }
+
+    /**
+     * 按redis时间校正本地时钟，redis不可用时保持原偏差
+     */
+    private void syncClock() {
+        long start = System.currentTimeMillis();
+        if (start - clockSyncTime < CLOCK_SYNC_MILLIS) {
+            return;
+        }
+        clockSyncTime = start;
+        Long redisTime = new RedisTimeCommand(redis).execute();
+        long end = System.currentTimeMillis();
+        if (redisTime != null && end - start <= CLOCK_SYNC_MAX_RTT) {
+            // 以往返的中点估算redis时间对应的本地时间
+            clockOffset = redisTime - (start + end) / 2;
+        }
+    }
+
+    private long currentTimeMillis() {
+        return System.currentTimeMillis() + clockOffset;
+    }
+
+    /**
+     * 租借失败告警，限制告警频率
+     */
+    private void warnLeaseFailed() {
+        long failed = leaseFailed.incrementAndGet();
+        long now = System.currentTimeMillis();
+        if (now - warnTime < WARN_INTERVAL_MILLIS) {
+            return;
+        }
+        warnTime = now;
+        leaseFailed.addAndGet(-failed);
+        logger.warn("{} lease from redis failed {} times, fallback to local rate:{}", name, failed,
+                fallbackRateLimiter.getRate());
+    }
+
+    @Override
+    public int getRate() {
+        return rate;
+    }
+
+    @Override
+    public void setRate(int rateInSecs) {
+        if (rateInSecs <= 0) {
+            return;
+        }
+        this.rate = rateInSecs;
+        this.leaseSize = Math.max(1, rateInSecs / LEASE_DIVISOR);
+    }
+
+    @Override
+    public void shutdown() {
+        fallbackRateLimiter.shutdown();
+    }
+
+    public String getName() {
+        return name;
+    }
+}
@@ -1,9 +1,11 @@
 package com.sohu.tv.mq.rocketmq.netty;
 
 import com.sohu.tv.mq.metric.ConsumeFailedStat;
+import com.sohu.tv.mq.metric.ConsumeProfile;
 import com.sohu.tv.mq.metric.ConsumeStatManager;
 import com.sohu.tv.mq.metric.ConsumeThreadStat;
 import com.sohu.tv.mq.metric.StackTraceMetric;
+import com.sohu.tv.mq.metric.TimespanConsumeProgress;
 import com.sohu.tv.mq.rocketmq.RocketMQConsumer;
 import com.sohu.tv.mq.util.Constant;
 import com.sohu.tv.mq.util.JSONUtil;
@@ -64,6 +66,10 @@ public class SohuClientRemotingProcessor implements NettyRequestProcessor {
             consumerRunningInfo = getConsumerThreadMetric(requestHeader);
         } else if (map != null && Constant.COMMAND_TRUE.equals(map.get(Constant.COMMAND_FAILED_METRIC))) {
             consumerRunningInfo = getConsumerFailedMetric(requestHeader);
+        } else if (map != null && Constant.COMMAND_TRUE.equals(map.get(Constant.COMMAND_TIMESPAN_PROGRESS))) {
+            consumerRunningInfo = getTimespanConsumeProgress(requestHeader);
+        } else if (map != null && Constant.COMMAND_TRUE.equals(map.get(Constant.COMMAND_CONSUME_PROFILE))) {
+            consumerRunningInfo = getConsumeProfile(requestHeader);
         } else if (map != null && map.get(Constant.COMMAND_TIMESPAN_TOPIC) != null) {
             consumerRunningInfo = consumeTimespanMessage(requestHeader, map);
         } else {
@@ -138,6 +144,40 @@ public class SohuClientRemotingProcessor implements NettyRequestProcessor {
         return consumerRunningInfo;
     }
 
+    /**
+     * 获取时间段消费进度
+     * 
+     * @param requestHeader
+     * @return
+     */
+    public ConsumerRunningInfo getTimespanConsumeProgress(GetConsumerRunningInfoRequestHeader requestHeader) {
+        if (!rocketMQConsumer.getGroup().equals(requestHeader.getConsumerGroup())) {
+            return null;
+        }
+        List<TimespanConsumeProgress> progressList = rocketMQConsumer.getTimespanConsumeProgress();
+        ConsumerRunningInfo consumerRunningInfo = new ConsumerRunningInfo();
+        consumerRunningInfo.getProperties().put(Constant.COMMAND_VALUE_TIMESPAN_PROGRESS,
+                JSONUtil.toJSONString(progressList));
+        return consumerRunningInfo;
+    }
+
+    /**
+     * 获取消费线程采样数据
+     * 
+     * @param requestHeader
+     * @return
+     */
+    public ConsumerRunningInfo getConsumeProfile(GetConsumerRunningInfoRequestHeader requestHeader) {
+        if (!rocketMQConsumer.getGroup().equals(requestHeader.getConsumerGroup())) {
+            return null;
+        }
+        ConsumeProfile consumeProfile = rocketMQConsumer.getConsumeProfile();
+        ConsumerRunningInfo consumerRunningInfo = new ConsumerRunningInfo();
+        consumerRunningInfo.getProperties().put(Constant.COMMAND_VALUE_CONSUME_PROFILE,
+                JSONUtil.toJSONString(consumeProfile));
+        return consumerRunningInfo;
+    }
+
     @Override
     public boolean rejectRequest() {
         return false;
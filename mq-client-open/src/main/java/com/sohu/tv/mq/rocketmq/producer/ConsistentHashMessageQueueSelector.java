@@ -0,0 +1,115 @@
+package com.sohu.tv.mq.rocketmq.producer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.rocketmq.client.producer.MessageQueueSelector;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageQueue;
+
+/**
+ * 一致性hash队列选择器
+ * 
+ * 按arg(为null时取消息的keys)选择队列，相同的key总是落到同一个队列上；
+ * 队列按broker名和队列id放到hash环上，队列增减时只有少量key会迁移。
+ * 
+ * @author yongfeigao
+ * @date 2026年10月17日
+ */
+public class ConsistentHashMessageQueueSelector implements MessageQueueSelector {
+
+    // 每个队列的虚拟节点数
+    public static final int DEFAULT_VIRTUAL_NODES = 32;
+
+    private int virtualNodes;
+
+    // 当前的hash环
+    private volatile Ring ring;
+
+    public ConsistentHashMessageQueueSelector() {
+        this(DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ConsistentHashMessageQueueSelector(int virtualNodes) {
+        this.virtualNodes = virtualNodes;
+    }
+
+    @Override
+    public MessageQueue select(List<MessageQueue> mqs, Message msg, Object arg) {
+        Object key = arg;
+        if (key == null) {
+            key = msg.getKeys();
+        }
+        // 无key时随机选择
+        if (key == null) {
+            return mqs.get(ThreadLocalRandom.current().nextInt(mqs.size()));
+        }
+        return getRing(mqs).select(hash(key.toString()));
+    }
+
+    /**
+     * 队列变化时重建hash环
+     * 
+     * @param mqs
+     * @return
+     */
+    private Ring getRing(List<MessageQueue> mqs) {
+        Ring current = ring;
+        if (current != null && (current.mqs == mqs || current.mqs.equals(mqs))) {
+            return current;
+        }
+        current = new Ring(mqs, virtualNodes);
+        ring = current;
+        return current;
+    }
+
+    /**
+     * FNV-1a 64位hash，并做一次混淆使分布更均匀
+     * 
+     * @param key
+     * @return
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        for (byte b : bytes) {
+            hash ^= (b & 0xFF);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * hash环
+     */
+    private static class Ring {
+        private List<MessageQueue> mqs;
+        private TreeMap<Long, MessageQueue> nodes = new TreeMap<>();
+
+        public Ring(List<MessageQueue> mqs, int virtualNodes) {
+            this.mqs = mqs;
+            for (MessageQueue mq : mqs) {
+                String name = mq.getBrokerName() + "@" + mq.getQueueId() + "#";
+                for (int i = 0; i < virtualNodes; ++i) {
+                    nodes.put(hash(name + i), mq);
+                }
+            }
+        }
+
+        public MessageQueue select(long hash) {
+            Map.Entry<Long, MessageQueue> entry = nodes.ceilingEntry(hash);
+            if (entry == null) {
+                entry = nodes.firstEntry();
+            }
+            return entry.getValue();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.sohu.tv.mq.rocketmq.producer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.rocketmq.client.producer.MessageQueueSelector;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageQueue;
+
+/**
+ * 故障转移队列选择器，每次发送创建一个
+ *
+ * 经由选择器发送时，rocketmq既不会重试，也不会规避故障broker(sendLatencyFaultEnable)；
+ * 此选择器包装负载均衡选择器，重试时排除本次发送已失败的broker，全部失败时不再排除。
+ *
+ * @author yongfeigao
+ * @date 2026年10月17日
+ */
+public class FailoverMessageQueueSelector implements MessageQueueSelector {
+
+    private MessageQueueSelector selector;
+
+    // 本次发送已失败的broker
+    private Set<String> failedBrokers = ConcurrentHashMap.newKeySet();
+
+    // 最近一次选择的队列
+    private volatile MessageQueue selected;
+
+    public FailoverMessageQueueSelector(MessageQueueSelector selector) {
+        this.selector = selector;
+    }
+
+    @Override
+    public MessageQueue select(List<MessageQueue> mqs, Message msg, Object arg) {
+        List<MessageQueue> candidates = mqs;
+        if (!failedBrokers.isEmpty()) {
+            candidates = new ArrayList<>(mqs.size());
+            for (MessageQueue mq : mqs) {
+                if (!failedBrokers.contains(mq.getBrokerName())) {
+                    candidates.add(mq);
+                }
+            }
+            if (candidates.isEmpty()) {
+                candidates = mqs;
+            }
+        }
+        selected = selector.select(candidates, msg, arg);
+        return selected;
+    }
+
+    /**
+     * 最近一次选择的broker发送失败
+     */
+    public void markFailed() {
+        MessageQueue mq = selected;
+        if (mq != null) {
+            failedBrokers.add(mq.getBrokerName());
+        }
+    }
+
+    public MessageQueue getSelected() {
+        return selected;
+    }
+}
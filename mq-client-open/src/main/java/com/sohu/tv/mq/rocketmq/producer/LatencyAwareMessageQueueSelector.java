@@ -0,0 +1,69 @@
+package com.sohu.tv.mq.rocketmq.producer;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.rocketmq.client.producer.MessageQueueSelector;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageQueue;
+
+import com.sohu.tv.mq.rocketmq.RocketMQProducer;
+import com.sohu.tv.mq.stats.StatsHelper;
+
+/**
+ * 延迟感知的队列选择器
+ * 
+ * 随机选两个队列，取所在broker近期平均耗时较低的一个(power of two choices)，
+ * 慢broker被选中的概率随之下降，但不会完全摘除，恢复后能重新获得流量。
+ * 耗时来自StatsHelper的调用统计，未开启统计时退化为随机选择。
+ * 
+ * @author yongfeigao
+ * @date 2026年10月17日
+ */
+public class LatencyAwareMessageQueueSelector implements MessageQueueSelector {
+
+    private RocketMQProducer rocketMQProducer;
+
+    public LatencyAwareMessageQueueSelector(RocketMQProducer rocketMQProducer) {
+        this.rocketMQProducer = rocketMQProducer;
+    }
+
+    @Override
+    public MessageQueue select(List<MessageQueue> mqs, Message msg, Object arg) {
+        int size = mqs.size();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (size == 1) {
+            return mqs.get(0);
+        }
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            ++second;
+        }
+        MessageQueue a = mqs.get(first);
+        MessageQueue b = mqs.get(second);
+        if (a.getBrokerName().equals(b.getBrokerName())) {
+            return a;
+        }
+        return getAvgTime(a) <= getAvgTime(b) ? a : b;
+    }
+
+    /**
+     * 获取broker近期平均耗时，无数据时为0，以便新broker能获得流量
+     * 
+     * @param mq
+     * @return
+     */
+    protected double getAvgTime(MessageQueue mq) {
+        StatsHelper statsHelper = rocketMQProducer.getStatsHelper();
+        if (statsHelper == null) {
+            return 0;
+        }
+        String brokerAddr = rocketMQProducer.findBrokerAddress(mq.getBrokerName());
+        if (brokerAddr == null) {
+            return 0;
+        }
+        double avgTime = statsHelper.getRecentAvgTime(brokerAddr);
+        return avgTime < 0 ? 0 : avgTime;
+    }
+}
@@ -0,0 +1,424 @@
+package com.sohu.tv.mq.rocketmq.producer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageClientIDSetter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sohu.index.tv.mq.common.Result;
+import com.sohu.tv.mq.rocketmq.RocketMQProducer;
+
+/**
+ * 消息累积器
+ *
+ * 将单条消息按topic分通道攒批，满足条数、字节数或等待时间任一条件时，通过批量发送接口发送，
+ * 每个通道的一批消息属于同一topic并会落到同一个队列上，发送结果再拆分给每条消息。
+ * 
+ * 待发送的批次数有上限，追加消息的线程在超限时阻塞等待以此形成背压，等待超时检测线程则不会阻塞；
+ * 关闭后追加的消息立即失败，关闭前已取出的批次一定会被发送或失败。
+ *
+ * @author yongfeigao
+ * @date 2026年10月17日
+ */
+public class MessageAccumulator {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    // 生产者
+    private RocketMQProducer rocketMQProducer;
+
+    // 每批最大条数
+    private int batchMaxSize;
+
+    // 每批最大字节数
+    private int batchMaxBytes;
+
+    // 攒批最长等待时间
+    private int lingerMillis;
+
+    // 每个topic的通道数
+    private int laneSize;
+
+    // 攒批通道，按topic区分
+    private Map<String, Lane[]> topicLanes = new ConcurrentHashMap<>();
+
+    // 等待超时检测线程
+    private ScheduledExecutorService lingerExecutorService;
+
+    // 批量发送线程池
+    private ThreadPoolExecutor senderExecutor;
+
+    // 待发送的批次许可
+    private Semaphore pendingBatchPermits;
+
+    // 追加取批次时持读锁，关闭时持写锁修改状态，保证已取出的批次在线程池关闭前提交
+    private ReadWriteLock stateLock = new ReentrantReadWriteLock();
+
+    private volatile boolean stopped;
+
+    public MessageAccumulator(RocketMQProducer rocketMQProducer, int batchMaxSize, int batchMaxBytes,
+            int lingerMillis, int laneSize) {
+        this.rocketMQProducer = rocketMQProducer;
+        this.batchMaxSize = batchMaxSize;
+        this.batchMaxBytes = batchMaxBytes;
+        this.lingerMillis = lingerMillis;
+        this.laneSize = laneSize;
+        this.pendingBatchPermits = new Semaphore(laneSize * 3);
+    }
+
+    /**
+     * 启动
+     */
+    public void start() {
+        String group = rocketMQProducer.getGroup();
+        // 队列长度由pendingBatchPermits限制，只有线程池关闭后才会拒绝，此时直接在调用线程发送，保证结果不丢
+        senderExecutor = new ThreadPoolExecutor(laneSize, laneSize, 1000 * 60, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), new ThreadFactory() {
+                    private AtomicInteger threadIndex = new AtomicInteger(0);
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, group + "-batchSender-" + this.threadIndex.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }, new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                        r.run();
+                    }
+                });
+        lingerExecutorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, group + "-batchLinger");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long period = Math.max(1, lingerMillis / 2);
+        lingerExecutorService.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flushExpired();
+                } catch (Throwable e) {
+                    logger.warn("flush expired batch err:{}", e.getMessage());
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 追加消息
+     *
+     * @param message
+     * @return 该消息的发送结果
+     */
+    public CompletableFuture<Result<SendResult>> append(Message message) {
+        CompletableFuture<Result<SendResult>> future = new CompletableFuture<>();
+        if (stopped) {
+            future.complete(new Result<SendResult>(false, new IllegalStateException("accumulator stopped")));
+            return future;
+        }
+        int size = estimateSize(message);
+        // 单条消息超过批次上限，直接单独发送
+        if (size >= batchMaxBytes) {
+            future.complete(rocketMQProducer.publish(message));
+            return future;
+        }
+        Lane[] lanes = getLanes(message.getTopic());
+        Lane lane = lanes[(int) (Thread.currentThread().getId() % lanes.length)];
+        Batch full = null;
+        Batch ready = null;
+        stateLock.readLock().lock();
+        try {
+            // 在锁内再次检查，shutdown时flush已取走剩余批次，之后追加的消息不会再被发送
+            if (stopped) {
+                future.complete(new Result<SendResult>(false, new IllegalStateException("accumulator stopped")));
+                return future;
+            }
+            synchronized (lane) {
+                // 字节数将超限，先把当前批次发出
+                if (lane.batch != null && lane.batch.bytes + size > batchMaxBytes) {
+                    full = lane.batch;
+                    lane.batch = null;
+                }
+                if (lane.batch == null) {
+                    lane.batch = new Batch();
+                }
+                lane.batch.add(message, size, future);
+                if (lane.batch.size() >= batchMaxSize || lane.batch.bytes >= batchMaxBytes) {
+                    ready = lane.batch;
+                    lane.batch = null;
+                }
+            }
+            // 持有读锁提交，关闭时线程池不会在取出批次和提交之间关闭
+            submit(full);
+            submit(ready);
+        } finally {
+            stateLock.readLock().unlock();
+        }
+        return future;
+    }
+
+    /**
+     * 获取topic对应的通道
+     * 
+     * @param topic
+     * @return
+     */
+    private Lane[] getLanes(String topic) {
+        Lane[] lanes = topicLanes.get(topic);
+        if (lanes != null) {
+            return lanes;
+        }
+        return topicLanes.computeIfAbsent(topic, k -> {
+            Lane[] newLanes = new Lane[laneSize];
+            for (int i = 0; i < laneSize; ++i) {
+                newLanes[i] = new Lane();
+            }
+            return newLanes;
+        });
+    }
+
+    /**
+     * 发送超过等待时间的批次
+     */
+    private void flushExpired() {
+        stateLock.readLock().lock();
+        try {
+            if (stopped) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            for (Lane[] lanes : topicLanes.values()) {
+                for (Lane lane : lanes) {
+                    Batch expired = null;
+                    synchronized (lane) {
+                        // 无许可时批次留在通道中，等待下次检测或被追加线程取走，检测线程不阻塞
+                        if (lane.batch != null && now - lane.batch.createTime >= lingerMillis
+                                && pendingBatchPermits.tryAcquire()) {
+                            expired = lane.batch;
+                            lane.batch = null;
+                        }
+                    }
+                    if (expired != null) {
+                        senderExecutor.execute(new BatchTask(expired));
+                    }
+                }
+            }
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 发送所有批次
+     */
+    public void flush() {
+        for (Lane[] lanes : topicLanes.values()) {
+            for (Lane lane : lanes) {
+                Batch batch = null;
+                synchronized (lane) {
+                    batch = lane.batch;
+                    lane.batch = null;
+                }
+                submit(batch);
+            }
+        }
+    }
+
+    /**
+     * 提交发送，待发送批次超限时阻塞等待
+     *
+     * @param batch
+     */
+    private void submit(Batch batch) {
+        if (batch == null) {
+            return;
+        }
+        try {
+            pendingBatchPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            batch.fail(e);
+            return;
+        }
+        senderExecutor.execute(new BatchTask(batch));
+    }
+
+    /**
+     * 批量发送，并将结果拆分给每条消息
+     *
+     * @param batch
+     */
+    private void send(Batch batch) {
+        Result<SendResult> result = null;
+        try {
+            if (batch.size() == 1) {
+                result = rocketMQProducer.publish(batch.messages.get(0));
+            } else {
+                result = rocketMQProducer.publish(batch.messages);
+            }
+        } catch (Throwable e) {
+            result = new Result<SendResult>(false, e);
+        }
+        if (!result.isSuccess()) {
+            // 一次批量发送失败只计一次异常，由publish统计
+            for (CompletableFuture<Result<SendResult>> future : batch.futures) {
+                future.complete(result);
+            }
+            return;
+        }
+        if (batch.size() == 1) {
+            batch.futures.get(0).complete(result);
+            return;
+        }
+        SendResult sendResult = result.getResult();
+        String[] offsetMsgIds = null;
+        if (sendResult.getOffsetMsgId() != null) {
+            offsetMsgIds = sendResult.getOffsetMsgId().split(",");
+        }
+        for (int i = 0; i < batch.size(); ++i) {
+            Message message = batch.messages.get(i);
+            String offsetMsgId = null;
+            if (offsetMsgIds != null && offsetMsgIds.length == batch.size()) {
+                offsetMsgId = offsetMsgIds[i];
+            }
+            SendResult messageSendResult = new SendResult(sendResult.getSendStatus(),
+                    MessageClientIDSetter.getUniqID(message), offsetMsgId, sendResult.getMessageQueue(),
+                    sendResult.getQueueOffset() + i);
+            messageSendResult.setRegionId(sendResult.getRegionId());
+            messageSendResult.setTraceOn(sendResult.isTraceOn());
+            batch.futures.get(i).complete(new Result<SendResult>(true, messageSendResult));
+        }
+    }
+
+    /**
+     * 估算消息大小，算法参考DefaultMQProducer批量发送的大小校验
+     *
+     * @param message
+     * @return
+     */
+    private int estimateSize(Message message) {
+        int size = message.getTopic().length() + (message.getBody() == null ? 0 : message.getBody().length);
+        Map<String, String> properties = message.getProperties();
+        if (properties != null) {
+            for (Map.Entry<String, String> entry : properties.entrySet()) {
+                size += entry.getKey().length() + entry.getValue().length() + 2;
+            }
+        }
+        // 日志开销
+        return size + 20;
+    }
+
+    /**
+     * 关闭，发送剩余批次
+     */
+    public void shutdown() {
+        stateLock.writeLock().lock();
+        try {
+            stopped = true;
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+        if (lingerExecutorService != null) {
+            lingerExecutorService.shutdown();
+        }
+        flush();
+        if (senderExecutor != null) {
+            senderExecutor.shutdown();
+            try {
+                senderExecutor.awaitTermination(rocketMQProducer.getSendMsgTimeout() * 2, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                logger.warn("await batch sender interrupted");
+            }
+        }
+    }
+
+    public int getBatchMaxSize() {
+        return batchMaxSize;
+    }
+
+    public int getBatchMaxBytes() {
+        return batchMaxBytes;
+    }
+
+    public int getLingerMillis() {
+        return lingerMillis;
+    }
+
+    /**
+     * 批次发送任务，完成后归还许可
+     */
+    private class BatchTask implements Runnable {
+        private Batch batch;
+
+        public BatchTask(Batch batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void run() {
+            try {
+                send(batch);
+            } finally {
+                pendingBatchPermits.release();
+            }
+        }
+    }
+
+    /**
+     * 攒批通道
+     */
+    private static class Lane {
+        // 当前批次
+        private Batch batch;
+    }
+
+    /**
+     * 批次
+     */
+    private static class Batch {
+        private List<Message> messages = new ArrayList<>();
+        private List<CompletableFuture<Result<SendResult>>> futures = new ArrayList<>();
+        private int bytes;
+        private long createTime = System.currentTimeMillis();
+
+        public void add(Message message, int size, CompletableFuture<Result<SendResult>> future) {
+            messages.add(message);
+            futures.add(future);
+            bytes += size;
+        }
+
+        public void fail(Throwable e) {
+            Result<SendResult> result = new Result<SendResult>(false, e);
+            for (CompletableFuture<Result<SendResult>> future : futures) {
+                future.complete(result);
+            }
+        }
+
+        public int size() {
+            return messages.size();
+        }
+    }
+}
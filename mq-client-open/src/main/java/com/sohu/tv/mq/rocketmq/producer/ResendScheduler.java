@@ -0,0 +1,365 @@
+package com.sohu.tv.mq.rocketmq.producer;
+
+import java.io.File;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sohu.index.tv.mq.common.MQMessage;
+import com.sohu.index.tv.mq.common.Result;
+import com.sohu.tv.mq.rocketmq.RocketMQProducer;
+import com.sohu.tv.mq.rocketmq.limiter.NoneBlockingRateLimiter;
+
+/**
+ * 重试调度器
+ *
+ * 失败的消息按带抖动的指数退避延迟后异步重发，不占用发送线程；
+ * 重发时避开上次失败的broker，且每个broker有重试预算，防止broker抖动时重试风暴；
+ * 待重试的消息超过上限时溢出到本地文件，压力下降或重启后重新加载。
+ *
+ * @author yongfeigao
+ * @date 2026年10月17日
+ */
+public class ResendScheduler {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    // 生产者
+    private RocketMQProducer rocketMQProducer;
+
+    // 重试结果处理
+    private Consumer<Result<SendResult>> resultConsumer;
+
+    // 退避基础延迟
+    private int baseDelayMillis;
+
+    // 退避最大延迟
+    private int maxDelayMillis;
+
+    // 内存中最多待重试的消息数
+    private int maxPending;
+
+    // 每个broker每秒允许的重试次数
+    private int brokerPermitsPerSecond;
+
+    // 溢出文件，为null时不溢出
+    private ResendSpillFile spillFile;
+
+    // 待重试的消息数
+    private AtomicInteger pending = new AtomicInteger();
+
+    // 内存中待重试的任务
+    private Set<ResendTask> taskSet = ConcurrentHashMap.newKeySet();
+
+    // broker重试预算
+    private ConcurrentMap<String, NoneBlockingRateLimiter> brokerBudgetMap = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduledExecutorService;
+
+    private volatile boolean stopped;
+
+    public ResendScheduler(RocketMQProducer rocketMQProducer, Consumer<Result<SendResult>> resultConsumer,
+            int baseDelayMillis, int maxDelayMillis, int maxPending, int brokerPermitsPerSecond, String spillDir) {
+        this.rocketMQProducer = rocketMQProducer;
+        this.resultConsumer = resultConsumer;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.maxPending = maxPending;
+        this.brokerPermitsPerSecond = brokerPermitsPerSecond;
+        if (spillDir != null) {
+            this.spillFile = new ResendSpillFile(spillDir);
+        }
+    }
+
+    /**
+     * 启动
+     */
+    public void start() {
+        String group = rocketMQProducer.getGroup();
+        scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, group + "-resendScheduler");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        if (spillFile == null) {
+            return;
+        }
+        try {
+            spillFile.open();
+        } catch (Exception e) {
+            logger.error("open spill file:{} error, spill disabled", spillFile.getDir(), e);
+            spillFile.close();
+            spillFile = null;
+            return;
+        }
+        // 定时刷盘，并在压力下降时加载溢出的消息，启动后立即加载上次未发送的消息
+        scheduledExecutorService.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    spillFile.flush();
+                    replay();
+                } catch (Throwable e) {
+                    logger.warn("replay spilled message err:{}", e.getMessage());
+                }
+            }
+        }, 0, 1000, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 重试发送
+     *
+     * @param mqMessage
+     * @return 是否已接管该消息
+     */
+    @SuppressWarnings("rawtypes")
+    public boolean resend(MQMessage mqMessage) {
+        return resend(mqMessage, mqMessage.getRetryTimes());
+    }
+
+    @SuppressWarnings("rawtypes")
+    private boolean resend(MQMessage mqMessage, int retryTimes) {
+        if (stopped) {
+            return spill(mqMessage, retryTimes);
+        }
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            return spill(mqMessage, retryTimes);
+        }
+        ResendTask task = new ResendTask(mqMessage, retryTimes);
+        taskSet.add(task);
+        return schedule(task);
+    }
+
+    /**
+     * 退避后发送
+     *
+     * @param task
+     * @return
+     */
+    private boolean schedule(ResendTask task) {
+        try {
+            scheduledExecutorService.schedule(() -> send(task), backoff(task.attempt), TimeUnit.MILLISECONDS);
+            return true;
+        } catch (RejectedExecutionException e) {
+            // 已关闭
+            if (taskSet.remove(task)) {
+                pending.decrementAndGet();
+                return spill(task.mqMessage, task.remainingTimes());
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 计算退避时间：base*2^(attempt-1)，不超过max，并在[delay/2, delay]间抖动
+     *
+     * @param attempt 第几次重试
+     * @return
+     */
+    long backoff(int attempt) {
+        long delay = (long) baseDelayMillis << Math.min(attempt - 1, 20);
+        delay = Math.min(delay, maxDelayMillis);
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+    }
+
+    /**
+     * 异步发送
+     *
+     * @param task
+     */
+    private void send(ResendTask task) {
+        if (!taskSet.contains(task)) {
+            return;
+        }
+        MessageQueue messageQueue = rocketMQProducer.selectOneMessageQueue(task.lastBrokerName);
+        String brokerName = messageQueue == null ? "" : messageQueue.getBrokerName();
+        // broker重试预算耗尽，不计重试次数，退避后再试
+        if (!getBrokerBudget(brokerName).acquire()) {
+            task.lastBrokerName = brokerName;
+            schedule(task);
+            return;
+        }
+        SendCallback sendCallback = new SendCallback() {
+            @Override
+            public void onSuccess(SendResult sendResult) {
+                complete(task, new Result<SendResult>(true, sendResult));
+            }
+
+            @Override
+            public void onException(Throwable e) {
+                failed(task, brokerName, e);
+            }
+        };
+        try {
+            if (messageQueue == null) {
+                rocketMQProducer.getProducer().send(task.mqMessage.getInnerMessage(), sendCallback);
+            } else {
+                rocketMQProducer.getProducer().send(task.mqMessage.getInnerMessage(), messageQueue, sendCallback);
+            }
+        } catch (Throwable e) {
+            failed(task, brokerName, e);
+        }
+    }
+
+    private NoneBlockingRateLimiter getBrokerBudget(String brokerName) {
+        NoneBlockingRateLimiter budget = brokerBudgetMap.get(brokerName);
+        if (budget == null) {
+            budget = new NoneBlockingRateLimiter(brokerPermitsPerSecond);
+            NoneBlockingRateLimiter prev = brokerBudgetMap.putIfAbsent(brokerName, budget);
+            if (prev != null) {
+                budget = prev;
+            }
+        }
+        return budget;
+    }
+
+    /**
+     * 发送失败
+     *
+     * @param task
+     * @param brokerName
+     * @param e
+     */
+    private void failed(ResendTask task, String brokerName, Throwable e) {
+        task.lastBrokerName = brokerName;
+        if (task.attempt >= task.retryTimes) {
+            if (rocketMQProducer.getStatsHelper() != null && e instanceof Exception) {
+                rocketMQProducer.getStatsHelper().recordException((Exception) e);
+            }
+            complete(task, new Result<SendResult>(false, e));
+            return;
+        }
+        ++task.attempt;
+        schedule(task);
+    }
+
+    /**
+     * 重试结束
+     *
+     * @param task
+     * @param result
+     */
+    private void complete(ResendTask task, Result<SendResult> result) {
+        // 关闭时已溢出到文件
+        if (!taskSet.remove(task)) {
+            return;
+        }
+        pending.decrementAndGet();
+        result.setRetriedTimes(task.attempt);
+        result.setMqMessage(task.mqMessage);
+        resultConsumer.accept(result);
+    }
+
+    /**
+     * 溢出到文件
+     *
+     * @param mqMessage
+     * @param retryTimes
+     * @return
+     */
+    @SuppressWarnings("rawtypes")
+    private boolean spill(MQMessage mqMessage, int retryTimes) {
+        if (spillFile == null) {
+            logger.warn("reject resend, pending:{}", pending.get());
+            return false;
+        }
+        return spillFile.append(mqMessage, retryTimes);
+    }
+
+    /**
+     * 待重试的消息少于上限的一半时，加载溢出的消息
+     */
+    private void replay() {
+        if (stopped || pending.get() > maxPending / 2) {
+            return;
+        }
+        List<File> replayFiles = spillFile.rotate();
+        for (File replayFile : replayFiles) {
+            List<MQMessage<?>> list = spillFile.read(replayFile, rocketMQProducer.getTopic(),
+                    rocketMQProducer::deserialize);
+            for (MQMessage<?> mqMessage : list) {
+                resend(mqMessage, mqMessage.getRetryTimes());
+            }
+            if (!replayFile.delete()) {
+                logger.error("delete replay file:{} failed", replayFile);
+            }
+            logger.info("replay {} messages from {}", list.size(), replayFile);
+            if (pending.get() > maxPending / 2) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 关闭，尚未完成的消息溢出到文件
+     */
+    public void shutdown() {
+        stopped = true;
+        if (scheduledExecutorService != null) {
+            scheduledExecutorService.shutdownNow();
+        }
+        int spilled = 0;
+        for (ResendTask task : taskSet) {
+            if (taskSet.remove(task)) {
+                pending.decrementAndGet();
+                if (spill(task.mqMessage, task.remainingTimes())) {
+                    ++spilled;
+                }
+            }
+        }
+        if (spillFile != null) {
+            spillFile.close();
+        }
+        if (spilled > 0) {
+            logger.info("spill {} pending messages on shutdown", spilled);
+        }
+    }
+
+    public int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * 重试任务
+     */
+    private static class ResendTask {
+        @SuppressWarnings("rawtypes")
+        private MQMessage mqMessage;
+        // 最多重试次数
+        private int retryTimes;
+        // 第几次重试
+        private int attempt = 1;
+        // 上次发送的broker
+        private volatile String lastBrokerName;
+
+        @SuppressWarnings("rawtypes")
+        public ResendTask(MQMessage mqMessage, int retryTimes) {
+            this.mqMessage = mqMessage;
+            this.retryTimes = retryTimes;
+        }
+
+        public int remainingTimes() {
+            return retryTimes - attempt + 1;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.sohu.tv.mq.rocketmq.producer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageDecoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sohu.index.tv.mq.common.MQMessage;
+
+/**
+ * 重试消息溢出文件
+ *
+ * 内存中待重试的消息过多时，追加写入本地文件，待压力下降或重启后重新加载。
+ * 目录以文件锁独占，同一目录只能被一个进程使用，避免多个实例互相重放对方的消息。
+ * 记录格式：[记录长度(int)][剩余重试次数(int)][是否有消息对象(byte)][消息编码]
+ *
+ * @author yongfeigao
+ * @date 2026年10月17日
+ */
+public class ResendSpillFile {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    public static final String SPILL_FILE_NAME = "resend.spill";
+
+    public static final String REPLAY_FILE_SUFFIX = ".replay";
+
+    public static final String LOCK_FILE_NAME = "lock";
+
+    // 记录头长度：剩余重试次数+是否有消息对象
+    private static final int RECORD_HEADER_SIZE = 5;
+
+    // 文件目录
+    private File dir;
+
+    // 当前追加的文件
+    private File file;
+
+    private FileChannel channel;
+
+    // 目录锁
+    private FileChannel lockChannel;
+    private FileLock lock;
+
+    // 上次刷盘后是否有写入
+    private boolean dirty;
+
+    public ResendSpillFile(String dir) {
+        this.dir = new File(dir);
+        this.file = new File(this.dir, SPILL_FILE_NAME);
+    }
+
+    /**
+     * 打开文件，目录已被其他进程使用时抛出异常
+     *
+     * @throws IOException
+     */
+    @SuppressWarnings("resource")
+    public synchronized void open() throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("mkdirs " + dir + " failed");
+        }
+        if (lock == null) {
+            lock();
+        }
+        channel = new RandomAccessFile(file, "rw").getChannel();
+        channel.position(channel.size());
+    }
+
+    private void lock() throws IOException {
+        File lockFile = new File(dir, LOCK_FILE_NAME);
+        lockChannel = new RandomAccessFile(lockFile, "rw").getChannel();
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // 本进程内其他实例已持有
+            lock = null;
+        }
+        if (lock == null) {
+            lockChannel.close();
+            lockChannel = null;
+            throw new IOException(dir + " is used by another instance");
+        }
+    }
+
+    /**
+     * 追加消息
+     *
+     * @param mqMessage
+     * @param retryTimes 剩余重试次数
+     * @return 是否成功
+     */
+    public synchronized boolean append(MQMessage<?> mqMessage, int retryTimes) {
+        if (channel == null) {
+            return false;
+        }
+        try {
+            byte[] data = MessageDecoder.encodeMessage(mqMessage.getInnerMessage());
+            ByteBuffer buffer = ByteBuffer.allocate(4 + RECORD_HEADER_SIZE + data.length);
+            buffer.putInt(RECORD_HEADER_SIZE + data.length);
+            buffer.putInt(retryTimes);
+            buffer.put((byte) (mqMessage.getMessage() != null ? 1 : 0));
+            buffer.put(data);
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            dirty = true;
+            return true;
+        } catch (Exception e) {
+            logger.error("spill message:{} error", mqMessage, e);
+        }
+        return false;
+    }
+
+    /**
+     * 刷盘
+     */
+    public synchronized void flush() {
+        if (channel == null || !dirty) {
+            return;
+        }
+        try {
+            channel.force(false);
+            dirty = false;
+        } catch (IOException e) {
+            logger.warn("flush {} error:{}", file, e.toString());
+        }
+    }
+
+    /**
+     * 当前文件大小
+     *
+     * @return
+     */
+    public synchronized long size() {
+        if (channel == null) {
+            return 0;
+        }
+        try {
+            return channel.size();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 将当前文件转为待重放文件，并重新打开一个空文件
+     *
+     * @return 所有待重放的文件
+     */
+    public synchronized List<File> rotate() {
+        if (channel != null && size() > 0) {
+            try {
+                channel.force(false);
+                channel.close();
+                File replayFile = new File(dir, SPILL_FILE_NAME + "." + System.currentTimeMillis() + REPLAY_FILE_SUFFIX);
+                if (!file.renameTo(replayFile)) {
+                    logger.error("rename {} to {} failed", file, replayFile);
+                }
+                open();
+            } catch (IOException e) {
+                logger.error("rotate {} error", file, e);
+            }
+        }
+        File[] files = dir.listFiles((d, name) -> name.endsWith(REPLAY_FILE_SUFFIX));
+        if (files == null) {
+            return new ArrayList<>();
+        }
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    /**
+     * 读取重放文件，末尾不完整的记录将被忽略
+     *
+     * @param replayFile
+     * @param topic
+     * @param decoder 还原消息对象，溢出时有消息对象的记录才会调用，为null时不还原
+     * @return
+     */
+    public List<MQMessage<?>> read(File replayFile, String topic, Function<Message, Object> decoder) {
+        List<MQMessage<?>> list = new ArrayList<>();
+        try (RandomAccessFile raf = new RandomAccessFile(replayFile, "r"); FileChannel fc = raf.getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(4);
+            while (true) {
+                header.clear();
+                if (readFully(fc, header) < 4) {
+                    break;
+                }
+                header.flip();
+                int length = header.getInt();
+                if (length <= RECORD_HEADER_SIZE || length > fc.size() - fc.position()) {
+                    logger.warn("{} broken record at:{}, length:{}", replayFile, fc.position() - 4, length);
+                    break;
+                }
+                ByteBuffer record = ByteBuffer.allocate(length);
+                readFully(fc, record);
+                record.flip();
+                int retryTimes = record.getInt();
+                boolean hasObject = record.get() == 1;
+                Message message = MessageDecoder.decodeMessage(record);
+                message.setTopic(topic);
+                Object messageObject = null;
+                if (hasObject && decoder != null) {
+                    messageObject = decoder.apply(message);
+                }
+                MQMessage<Object> mqMessage = new MQMessage<>(messageObject, message);
+                mqMessage.setRetryTimes(retryTimes);
+                list.add(mqMessage);
+            }
+        } catch (Exception e) {
+            logger.error("read {} error", replayFile, e);
+        }
+        return list;
+    }
+
+    private int readFully(FileChannel fc, ByteBuffer buffer) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = fc.read(buffer);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * 关闭
+     */
+    public synchronized void close() {
+        if (channel != null) {
+            try {
+                channel.force(false);
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("close {} error:{}", file, e.toString());
+            }
+            channel = null;
+        }
+        if (lockChannel != null) {
+            try {
+                lock.release();
+                lockChannel.close();
+            } catch (IOException e) {
+                logger.warn("release lock {} error:{}", dir, e.toString());
+            }
+            lock = null;
+            lockChannel = null;
+        }
+    }
+
+    public File getDir() {
+        return dir;
+    }
+}
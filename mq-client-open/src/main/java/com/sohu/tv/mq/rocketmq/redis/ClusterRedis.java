@@ -1,15 +1,30 @@
 package com.sohu.tv.mq.rocketmq.redis;
 
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.IntFunction;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import redis.clients.jedis.BinaryJedisCluster;
 import redis.clients.jedis.HostAndPort;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisSlotBasedConnectionHandler;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
 import redis.clients.jedis.params.SetParams;
+import redis.clients.jedis.util.JedisClusterCRC16;
 import redis.clients.jedis.util.Pool;
 
 /**
@@ -26,6 +41,9 @@ public class ClusterRedis implements IRedis {
     
     private RedisConfiguration redisConfiguration;
 
+    // 集群连接管理，用于按节点pipeline
+    private volatile JedisSlotBasedConnectionHandler connectionHandler;
+
     public ClusterRedis() {
     }
     
@@ -71,6 +89,113 @@ public class ClusterRedis implements IRedis {
         return jedisCluster.get(key);
     }
     
+    /**
+     * 按key所在节点分组，每个节点一次pipeline
+     */
+    @Override
+    public List<String> set(List<String> keys, List<String> values, SetParams params) {
+        return pipelined(keys, (pipeline, i) -> pipeline.set(keys.get(i), values.get(i), params),
+                i -> jedisCluster.set(keys.get(i), values.get(i), params));
+    }
+
+    /**
+     * 按key所在节点分组，每个节点一次pipeline
+     */
+    @Override
+    public List<String> get(List<String> keys) {
+        return pipelined(keys, (pipeline, i) -> pipeline.get(keys.get(i)), i -> jedisCluster.get(keys.get(i)));
+    }
+
+    /**
+     * 按节点pipeline执行，槽位迁移时刷新槽位缓存，该节点的key由JedisCluster逐个执行
+     * 
+     * @param keys
+     * @param command pipeline命令
+     * @param single 单个key的命令
+     * @return 与keys一一对应的结果
+     */
+    private List<String> pipelined(List<String> keys, BiFunction<Pipeline, Integer, Response<String>> command,
+            IntFunction<String> single) {
+        String[] results = new String[keys.size()];
+        JedisSlotBasedConnectionHandler handler = getConnectionHandler();
+        // 节点<->连接
+        Map<String, Jedis> connectionMap = new HashMap<>();
+        // 节点<->key下标
+        Map<String, List<Integer>> indexMap = new HashMap<>();
+        // 槽位<->节点
+        Map<Integer, String> slotMap = new HashMap<>();
+        try {
+            for (int i = 0; i < keys.size(); ++i) {
+                int slot = JedisClusterCRC16.getSlot(keys.get(i));
+                String node = slotMap.get(slot);
+                if (node == null) {
+                    Jedis jedis = handler.getConnectionFromSlot(slot);
+                    node = jedis.getClient().getHost() + ":" + jedis.getClient().getPort();
+                    if (connectionMap.putIfAbsent(node, jedis) != null) {
+                        jedis.close();
+                    }
+                    slotMap.put(slot, node);
+                }
+                indexMap.computeIfAbsent(node, k -> new ArrayList<>()).add(i);
+            }
+            for (Entry<String, List<Integer>> entry : indexMap.entrySet()) {
+                List<Integer> indexes = entry.getValue();
+                Pipeline pipeline = connectionMap.get(entry.getKey()).pipelined();
+                List<Response<String>> responses = new ArrayList<>(indexes.size());
+                for (int index : indexes) {
+                    responses.add(command.apply(pipeline, index));
+                }
+                pipeline.sync();
+                try {
+                    for (int j = 0; j < indexes.size(); ++j) {
+                        results[indexes.get(j)] = responses.get(j).get();
+                    }
+                } catch (JedisDataException e) {
+                    logger.warn("pipeline node:{} error:{}, execute one by one", entry.getKey(), e.toString());
+                    handler.renewSlotCache();
+                    for (int index : indexes) {
+                        results[index] = single.apply(index);
+                    }
+                }
+            }
+        } finally {
+            for (Jedis jedis : connectionMap.values()) {
+                jedis.close();
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    private JedisSlotBasedConnectionHandler getConnectionHandler() {
+        if (connectionHandler == null) {
+            try {
+                Field field = BinaryJedisCluster.class.getDeclaredField("connectionHandler");
+                field.setAccessible(true);
+                connectionHandler = (JedisSlotBasedConnectionHandler) field.get(jedisCluster);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return connectionHandler;
+    }
+
+    @Override
+    public long incrBy(String key, long increment, int expireSeconds) {
+        long value = jedisCluster.incrBy(key, increment);
+        jedisCluster.expire(key, expireSeconds);
+        return value;
+    }
+
+    /**
+     * 取任一节点的时间
+     */
+    @Override
+    public long time() {
+        try (Jedis jedis = getConnectionHandler().getConnection()) {
+            return PooledRedis.toMillis(jedis.time());
+        }
+    }
+
     @Override
     public RedisConfiguration getRedisConfiguration() {
         return redisConfiguration;
@@ -1,5 +1,8 @@
 package com.sohu.tv.mq.rocketmq.redis;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisCluster;
 import redis.clients.jedis.params.SetParams;
@@ -28,4 +31,57 @@ public interface IRedis {
     String set(String key, String value, SetParams params);
     
     String get(String key);
+
+    /**
+     * 批量set，尽量在一次网络往返内完成；默认逐个执行
+     * 
+     * @param keys
+     * @param values 与keys一一对应
+     * @param params
+     * @return 与keys一一对应的结果，未设置成功的为null
+     */
+    default List<String> set(List<String> keys, List<String> values, SetParams params) {
+        List<String> list = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); ++i) {
+            list.add(set(keys.get(i), values.get(i), params));
+        }
+        return list;
+    }
+
+    /**
+     * 批量get，尽量在一次网络往返内完成；默认逐个执行
+     * 
+     * @param keys
+     * @return 与keys一一对应的值
+     */
+    default List<String> get(List<String> keys) {
+        List<String> list = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            list.add(get(key));
+        }
+        return list;
+    }
+
+    /**
+     * 自增并设置过期时间，尽量在一次网络往返内完成
+     * 
+     * @param key
+     * @param increment
+     * @param expireSeconds
+     * @return 自增后的值
+     * @throws UnsupportedOperationException 未实现时，集群限速不可用
+     */
+    default long incrBy(String key, long increment, int expireSeconds) {
+        throw new UnsupportedOperationException(getClass().getName() + " not support incrBy, required by redis rate limiter");
+    }
+
+    /**
+     * redis服务器当前时间，用于校正各实例的时钟偏差
+     * 
+     * @return 毫秒
+     * @throws UnsupportedOperationException 未实现时使用本地时钟
+     */
+    default long time() {
+        throw new UnsupportedOperationException(getClass().getName() + " not support time");
+    }
 }
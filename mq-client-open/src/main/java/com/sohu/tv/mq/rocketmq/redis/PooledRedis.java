@@ -1,5 +1,7 @@
 package com.sohu.tv.mq.rocketmq.redis;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Function;
 
 import org.slf4j.Logger;
@@ -8,7 +10,9 @@ import org.slf4j.LoggerFactory;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisCluster;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
 import redis.clients.jedis.Protocol;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.params.SetParams;
 import redis.clients.jedis.util.Pool;
 
@@ -69,6 +73,66 @@ public class PooledRedis implements IRedis {
         return execute(jedis -> jedis.get(key));
     }
 
+    @Override
+    public List<String> set(List<String> keys, List<String> values, SetParams params) {
+        return execute(jedis -> {
+            Pipeline pipeline = jedis.pipelined();
+            List<Response<String>> responses = new ArrayList<>(keys.size());
+            for (int i = 0; i < keys.size(); ++i) {
+                responses.add(pipeline.set(keys.get(i), values.get(i), params));
+            }
+            pipeline.sync();
+            return toList(responses);
+        });
+    }
+
+    @Override
+    public List<String> get(List<String> keys) {
+        return execute(jedis -> {
+            Pipeline pipeline = jedis.pipelined();
+            List<Response<String>> responses = new ArrayList<>(keys.size());
+            for (String key : keys) {
+                responses.add(pipeline.get(key));
+            }
+            pipeline.sync();
+            return toList(responses);
+        });
+    }
+
+    @Override
+    public long incrBy(String key, long increment, int expireSeconds) {
+        return execute(jedis -> {
+            Pipeline pipeline = jedis.pipelined();
+            Response<Long> response = pipeline.incrBy(key, increment);
+            pipeline.expire(key, expireSeconds);
+            pipeline.sync();
+            return response.get();
+        });
+    }
+
+    private List<String> toList(List<Response<String>> responses) {
+        List<String> list = new ArrayList<>(responses.size());
+        for (Response<String> response : responses) {
+            list.add(response.get());
+        }
+        return list;
+    }
+
+    @Override
+    public long time() {
+        return toMillis(execute(Jedis::time));
+    }
+
+    /**
+     * TIME命令的结果转换为毫秒
+     * 
+     * @param time 秒和微秒
+     * @return
+     */
+    static long toMillis(List<String> time) {
+        return Long.parseLong(time.get(0)) * 1000 + Long.parseLong(time.get(1)) / 1000;
+    }
+
     private <R> R execute(Function<Jedis, R> function) {
         try (Jedis jedis = pool.getResource()) {
             return function.apply(jedis);
@@ -0,0 +1,63 @@
+package com.sohu.tv.mq.rocketmq.redis.degradable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.rocketmq.common.Pair;
+
+import com.sohu.tv.mq.common.AbstractCommand;
+import com.sohu.tv.mq.common.Alerter;
+import com.sohu.tv.mq.common.DefaultAlerter;
+import com.sohu.tv.mq.rocketmq.redis.IRedis;
+
+/**
+ * redis 批量get 命令
+ * 
+ * @author yongfeigao
+ * @date 2026年10月17日
+ */
+public class RedisBatchGetCommand extends AbstractCommand<List<Pair<String, String>>> {
+
+    private IRedis redis;
+
+    private List<String> keys;
+
+    public RedisBatchGetCommand(IRedis redis, List<String> keys) {
+        this("redis-" + redis.hashCode(), "batchGet", redis.getRedisConfiguration().getMaxTimeout() + 1000,
+                DefaultAlerter.getInstance());
+        this.redis = redis;
+        this.keys = keys;
+    }
+
+    public RedisBatchGetCommand(String groupKey, String commandKey, int timeout, Alerter alerter) {
+        super(groupKey, commandKey, timeout, alerter);
+    }
+
+    /**
+     * @return 与keys一一对应，不存在的为null
+     */
+    @Override
+    protected List<Pair<String, String>> invoke() throws Exception {
+        List<String> results = redis.get(keys);
+        List<Pair<String, String>> list = new ArrayList<>(results.size());
+        for (String result : results) {
+            if (result == null) {
+                list.add(null);
+            } else {
+                String[] array = result.split(":");
+                list.add(new Pair<>(array[0], array[1]));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    protected Object invokeErrorInfo() {
+        return keys.size() + " keys";
+    }
+
+    @Override
+    public List<Pair<String, String>> fallback() {
+        return null;
+    }
+}
@@ -0,0 +1,54 @@
+package com.sohu.tv.mq.rocketmq.redis.degradable;
+
+import com.sohu.tv.mq.common.AbstractCommand;
+import com.sohu.tv.mq.common.Alerter;
+import com.sohu.tv.mq.common.DefaultAlerter;
+import com.sohu.tv.mq.rocketmq.redis.IRedis;
+
+/**
+ * redis incrBy 命令
+ * 
+ * @author yongfeigao
+ * @date 2026年10月17日
+ */
+public class RedisIncrCommand extends AbstractCommand<Long> {
+
+    private IRedis redis;
+
+    private String key;
+
+    private long increment;
+
+    private int expireSeconds;
+
+    public RedisIncrCommand(IRedis redis, String key, long increment, int expireSeconds) {
+        this("redis-" + redis.hashCode(), "incrBy", redis.getRedisConfiguration().getMaxTimeout() + 1000,
+                DefaultAlerter.getInstance());
+        this.redis = redis;
+        this.key = key;
+        this.increment = increment;
+        this.expireSeconds = expireSeconds;
+    }
+
+    public RedisIncrCommand(String groupKey, String commandKey, int timeout, Alerter alerter) {
+        super(groupKey, commandKey, timeout, alerter);
+    }
+
+    @Override
+    protected Long invoke() throws Exception {
+        return redis.incrBy(key, increment, expireSeconds);
+    }
+
+    @Override
+    protected Object invokeErrorInfo() {
+        return key;
+    }
+
+    /**
+     * @return null，表示redis不可用
+     */
+    @Override
+    public Long fallback() {
+        return null;
+    }
+}
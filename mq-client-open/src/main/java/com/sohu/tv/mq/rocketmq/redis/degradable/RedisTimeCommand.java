@@ -0,0 +1,45 @@
+package com.sohu.tv.mq.rocketmq.redis.degradable;
+
+import com.sohu.tv.mq.common.AbstractCommand;
+import com.sohu.tv.mq.common.Alerter;
+import com.sohu.tv.mq.common.DefaultAlerter;
+import com.sohu.tv.mq.rocketmq.redis.IRedis;
+
+/**
+ * redis time 命令
+ * 
+ * @author yongfeigao
+ * @date 2026年10月17日
+ */
+public class RedisTimeCommand extends AbstractCommand<Long> {
+
+    private IRedis redis;
+
+    public RedisTimeCommand(IRedis redis) {
+        this("redis-" + redis.hashCode(), "time", redis.getRedisConfiguration().getMaxTimeout() + 1000,
+                DefaultAlerter.getInstance());
+        this.redis = redis;
+    }
+
+    public RedisTimeCommand(String groupKey, String commandKey, int timeout, Alerter alerter) {
+        super(groupKey, commandKey, timeout, alerter);
+    }
+
+    @Override
+    protected Long invoke() throws Exception {
+        return redis.time();
+    }
+
+    @Override
+    protected Object invokeErrorInfo() {
+        return "time";
+    }
+
+    /**
+     * @return null，表示redis不可用
+     */
+    @Override
+    public Long fallback() {
+        return null;
+    }
+}
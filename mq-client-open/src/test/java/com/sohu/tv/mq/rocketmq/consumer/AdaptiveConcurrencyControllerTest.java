@@ -0,0 +1,79 @@
+package com.sohu.tv.mq.rocketmq.consumer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AdaptiveConcurrencyControllerTest {
+
+    private AtomicLong backlog = new AtomicLong();
+
+    private AtomicInteger poolSize = new AtomicInteger();
+
+    private AdaptiveConcurrencyController controller = new AdaptiveConcurrencyController("test", 2, 10, 4,
+            backlog::get, poolSize::set);
+
+    @Test
+    public void testIncreaseOnBacklog() {
+        backlog.set(1000);
+        for (int i = 0; i < 20; ++i) {
+            record(10, 100, 0);
+            controller.adjust();
+        }
+        // 加性增加到上限
+        Assert.assertEquals(10, controller.getThreads());
+        Assert.assertEquals(10, poolSize.get());
+    }
+
+    @Test
+    public void testHold() {
+        backlog.set(3);
+        record(10, 100, 0);
+        Assert.assertEquals(4, controller.adjust());
+        // 无消费且有积压时保持
+        Assert.assertEquals(4, controller.adjust());
+    }
+
+    @Test
+    public void testDecreaseWhenDrained() {
+        record(10, 100, 0);
+        Assert.assertEquals(3, controller.adjust());
+        // 无消费且无积压
+        Assert.assertEquals(2, controller.adjust());
+        // 不低于下限
+        Assert.assertEquals(2, controller.adjust());
+        Assert.assertEquals(2, poolSize.get());
+    }
+
+    @Test
+    public void testDecreaseOnLatency() {
+        backlog.set(1000);
+        record(10, 100, 0);
+        controller.adjust();
+        Assert.assertEquals(5, controller.getThreads());
+        // 下游饱和，耗时翻倍以上
+        record(50, 100, 0);
+        Assert.assertEquals(3, controller.adjust());
+        record(50, 100, 0);
+        Assert.assertEquals(2, controller.adjust());
+        // 不低于下限
+        record(50, 100, 0);
+        Assert.assertEquals(2, controller.adjust());
+    }
+
+    @Test
+    public void testDecreaseOnError() {
+        backlog.set(1000);
+        record(10, 100, 50);
+        Assert.assertEquals(3, controller.adjust());
+    }
+
+    private void record(long latencyMillis, int times, int errors) {
+        for (int i = 0; i < times; ++i) {
+            controller.record(TimeUnit.MILLISECONDS.toNanos(latencyMillis), i >= errors);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.sohu.tv.mq.rocketmq.consumer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyContext;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.sohu.index.tv.mq.common.BatchConsumerCallback;
+import com.sohu.index.tv.mq.common.MQMessage;
+import com.sohu.index.tv.mq.common.RawMessage;
+import com.sohu.tv.mq.compress.CompressorEnum;
+import com.sohu.tv.mq.rocketmq.RocketMQConsumer;
+import com.sohu.tv.mq.serializable.MessageSerializer;
+import com.sohu.tv.mq.serializable.MessageSerializerEnum;
+
+@SuppressWarnings("unchecked")
+public class BatchMessageConsumerTest {
+
+    @Test
+    public void testLazyDeserialize() {
+        List<String> consumedList = new ArrayList<>();
+        BatchMessageConsumer<ConsumeConcurrentlyContext> consumer = buildConsumer(true,
+                new BatchConsumerCallback<String, ConsumeConcurrentlyContext>() {
+                    public void call(List<MQMessage<String>> batchMessage, ConsumeConcurrentlyContext context)
+                            throws Exception {
+                        Assert.assertEquals(3, batchMessage.size());
+                        // 访问前未反序列化
+                        RawMessage<String> first = (RawMessage<String>) batchMessage.get(0);
+                        Assert.assertFalse(first.isParsed());
+                        // 列表不持有消息对象
+                        Assert.assertNotSame(first, batchMessage.get(0));
+                        for (MQMessage<String> mqMessage : batchMessage) {
+                            consumedList.add(mqMessage.getMessage());
+                        }
+                    }
+                });
+        Assert.assertEquals(ConsumeConcurrentlyStatus.CONSUME_SUCCESS, consumeMessage(consumer));
+        Assert.assertEquals("[0, 1, 2]", consumedList.toString());
+    }
+
+    @Test
+    public void testLazyParseError() {
+        List<String> consumedList = new ArrayList<>();
+        List<Exception> errorList = new ArrayList<>();
+        BatchMessageConsumer<ConsumeConcurrentlyContext> consumer = buildConsumer(true,
+                new BatchConsumerCallback<String, ConsumeConcurrentlyContext>() {
+                    public void call(List<MQMessage<String>> batchMessage, ConsumeConcurrentlyContext context)
+                            throws Exception {
+                        for (MQMessage<String> mqMessage : batchMessage) {
+                            String message = mqMessage.getMessage();
+                            if (message == null) {
+                                errorList.add(((RawMessage<String>) mqMessage).getParseException());
+                            } else {
+                                consumedList.add(message);
+                            }
+                        }
+                    }
+                });
+        List<MessageExt> msgs = buildMessages();
+        // 无法解压的消息
+        msgs.get(1).putUserProperty(CompressorEnum.PROPERTY_COMPRESSOR, "unknown");
+        Assert.assertEquals(ConsumeConcurrentlyStatus.CONSUME_SUCCESS, consumer.consumeMessage(msgs,
+                new ConsumeConcurrentlyContext(new MessageQueue("test-topic", "broker", 0))));
+        Assert.assertEquals("[0, 2]", consumedList.toString());
+        Assert.assertEquals(1, errorList.size());
+    }
+
+    @Test
+    public void testEagerDeserialize() {
+        List<String> consumedList = new ArrayList<>();
+        BatchMessageConsumer<ConsumeConcurrentlyContext> consumer = buildConsumer(false,
+                new BatchConsumerCallback<String, ConsumeConcurrentlyContext>() {
+                    public void call(List<MQMessage<String>> batchMessage, ConsumeConcurrentlyContext context)
+                            throws Exception {
+                        Assert.assertFalse(batchMessage.get(0) instanceof RawMessage);
+                        for (MQMessage<String> mqMessage : batchMessage) {
+                            consumedList.add(mqMessage.getMessage());
+                        }
+                    }
+                });
+        Assert.assertEquals(ConsumeConcurrentlyStatus.CONSUME_SUCCESS, consumeMessage(consumer));
+        Assert.assertEquals("[0, 1, 2]", consumedList.toString());
+    }
+
+    private ConsumeConcurrentlyStatus consumeMessage(BatchMessageConsumer<ConsumeConcurrentlyContext> consumer) {
+        return consumer.consumeMessage(buildMessages(), new ConsumeConcurrentlyContext(new MessageQueue("test-topic",
+                "broker", 0)));
+    }
+
+    private List<MessageExt> buildMessages() {
+        List<MessageExt> msgs = new ArrayList<>();
+        for (int i = 0; i < 3; ++i) {
+            MessageExt messageExt = new MessageExt();
+            messageExt.setTopic("test-topic");
+            messageExt.setBody(String.valueOf(i).getBytes());
+            msgs.add(messageExt);
+        }
+        return msgs;
+    }
+
+    private BatchMessageConsumer<ConsumeConcurrentlyContext> buildConsumer(boolean lazy,
+            BatchConsumerCallback<String, ConsumeConcurrentlyContext> callback) {
+        RocketMQConsumer rocketMQConsumer = new RocketMQConsumer("test-batch-consumer", "test-topic");
+        rocketMQConsumer.setEnableStats(false);
+        rocketMQConsumer.setEnableRateLimit(false);
+        rocketMQConsumer.setMessageSerializer(
+                (MessageSerializer<Object>) MessageSerializerEnum.STRING.getMessageSerializer());
+        rocketMQConsumer.setBatchConsumerCallback(callback);
+        rocketMQConsumer.setBatchLazyDeserialize(lazy);
+        return new BatchMessageConsumer<>(rocketMQConsumer);
+    }
+}
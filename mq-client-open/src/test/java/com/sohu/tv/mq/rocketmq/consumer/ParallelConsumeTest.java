@@ -0,0 +1,142 @@
+package com.sohu.tv.mq.rocketmq.consumer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyContext;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.sohu.index.tv.mq.common.ConsumerCallback;
+import com.sohu.index.tv.mq.common.MQMessage;
+import com.sohu.tv.mq.rocketmq.RocketMQConsumer;
+import com.sohu.tv.mq.rocketmq.consumer.IMessageConsumer.ConsumeStatus;
+import com.sohu.tv.mq.rocketmq.consumer.IMessageConsumer.MessageContext;
+
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class ParallelConsumeTest {
+
+    private KeyPartitionedExecutor executor = new KeyPartitionedExecutor("test", 4);
+
+    // key<->消费顺序
+    private Map<String, List<String>> consumedMap = new ConcurrentHashMap<>();
+
+    @After
+    public void shutdown() {
+        executor.shutdown(1000);
+    }
+
+    @Test
+    public void testAllSuccess() {
+        List<MessageExt> msgs = buildMessages("a", "b", "a", "c", "b", "a");
+        MessageContext context = buildContext(msgs);
+        SingleMessageConsumer<String> consumer = buildConsumer(null);
+        Assert.assertEquals(ConsumeStatus.OK, consumer.consumeInParallel(executor, toMQMessage(msgs), context));
+        assertOrdered();
+        Assert.assertEquals(6, consumedCount());
+    }
+
+    @Test
+    public void testPartial() {
+        List<MessageExt> msgs = buildMessages("a", "b", "a", "c", "b", "a");
+        MessageContext context = buildContext(msgs);
+        SingleMessageConsumer<String> consumer = buildConsumer("3");
+        Assert.assertEquals(ConsumeStatus.PARTIAL, consumer.consumeInParallel(executor, toMQMessage(msgs), context));
+        // 只确认下标3之前的消息
+        Assert.assertEquals(2, context.getAckIndex());
+        assertOrdered();
+        // 其余key不受影响
+        Assert.assertEquals(5, consumedCount());
+    }
+
+    @Test
+    public void testFirstFailed() {
+        List<MessageExt> msgs = buildMessages("a", "b", "a");
+        MessageContext context = buildContext(msgs);
+        SingleMessageConsumer<String> consumer = buildConsumer("0");
+        Assert.assertEquals(ConsumeStatus.FAIL, consumer.consumeInParallel(executor, toMQMessage(msgs), context));
+        // 同一key失败后，其后的消息不再消费
+        Assert.assertEquals(1, consumedCount());
+    }
+
+    @Test
+    public void testKeyIsolated() {
+        // 16个key，远多于线程数
+        String[] keys = new String[32];
+        for (int i = 0; i < keys.length; ++i) {
+            keys[i] = "k" + (i % 16);
+        }
+        List<MessageExt> msgs = buildMessages(keys);
+        MessageContext context = buildContext(msgs);
+        SingleMessageConsumer<String> consumer = buildConsumer("1");
+        Assert.assertEquals(ConsumeStatus.PARTIAL, consumer.consumeInParallel(executor, toMQMessage(msgs), context));
+        Assert.assertEquals(0, context.getAckIndex());
+        assertOrdered();
+        // 只有k1失败后的消息不再消费
+        Assert.assertEquals(30, consumedCount());
+        Assert.assertNull(consumedMap.get("k1"));
+    }
+
+    private void assertOrdered() {
+        for (List<String> list : consumedMap.values()) {
+            for (int i = 1; i < list.size(); ++i) {
+                Assert.assertTrue(Integer.parseInt(list.get(i - 1)) < Integer.parseInt(list.get(i)));
+            }
+        }
+    }
+
+    private int consumedCount() {
+        int count = 0;
+        for (List<String> list : consumedMap.values()) {
+            count += list.size();
+        }
+        return count;
+    }
+
+    private SingleMessageConsumer<String> buildConsumer(String failedBody) {
+        RocketMQConsumer rocketMQConsumer = new RocketMQConsumer("test-consumer", "test-topic");
+        rocketMQConsumer.setEnableStats(false);
+        rocketMQConsumer.setEnableRateLimit(false);
+        rocketMQConsumer.setConsumerCallback(new ConsumerCallback<String, MessageExt>() {
+            public void call(String t, MessageExt k) throws Exception {
+                if (t.equals(failedBody)) {
+                    throw new RuntimeException("mock");
+                }
+                // 放大乱序的可能
+                Thread.sleep(5);
+                consumedMap.computeIfAbsent(k.getKeys(), key -> new CopyOnWriteArrayList<>()).add(t);
+            }
+        });
+        return new SingleMessageConsumer<>(rocketMQConsumer);
+    }
+
+    private List<MessageExt> buildMessages(String... keys) {
+        List<MessageExt> msgs = new ArrayList<>();
+        for (int i = 0; i < keys.length; ++i) {
+            MessageExt messageExt = new MessageExt();
+            messageExt.setTopic("test-topic");
+            messageExt.setKeys(keys[i]);
+            messageExt.setBody(String.valueOf(i).getBytes());
+            msgs.add(messageExt);
+        }
+        return msgs;
+    }
+
+    private List<MQMessage<String>> toMQMessage(List<MessageExt> msgs) {
+        List<MQMessage<String>> list = new ArrayList<>();
+        for (MessageExt messageExt : msgs) {
+            list.add(new MQMessage<>(new String(messageExt.getBody()), messageExt));
+        }
+        return list;
+    }
+
+    private MessageContext<ConsumeConcurrentlyContext> buildContext(List<MessageExt> msgs) {
+        return new MessageContext<>(msgs, new ConsumeConcurrentlyContext(new MessageQueue("test-topic", "broker", 0)));
+    }
+}
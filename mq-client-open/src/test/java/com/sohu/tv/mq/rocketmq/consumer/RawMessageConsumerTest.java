@@ -0,0 +1,114 @@
+package com.sohu.tv.mq.rocketmq.consumer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyContext;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.sohu.index.tv.mq.common.RawConsumerCallback;
+import com.sohu.index.tv.mq.common.RawMessage;
+import com.sohu.tv.mq.compress.CompressorEnum;
+import com.sohu.tv.mq.rocketmq.RocketMQConsumer;
+import com.sohu.tv.mq.serializable.MessageSerializer;
+import com.sohu.tv.mq.serializable.MessageSerializerEnum;
+
+@SuppressWarnings("unchecked")
+public class RawMessageConsumerTest {
+
+    @Test
+    public void testLazyParse() {
+        List<RawMessage<String>> consumedList = new ArrayList<>();
+        List<ByteBuffer> bodyList = new ArrayList<>();
+        RawMessageConsumer<String> consumer = buildConsumer(new RawConsumerCallback<String>() {
+            public void call(RawMessage<String> message) throws Exception {
+                consumedList.add(message);
+                bodyList.add(message.getBodyBuffer());
+                // 只有key为parse的消息反序列化
+                if ("parse".equals(message.getKeys())) {
+                    Assert.assertEquals("1", message.getMessage());
+                }
+            }
+        });
+        List<MessageExt> msgs = buildMessages("forward", "parse", "forward");
+        Assert.assertEquals(ConsumeConcurrentlyStatus.CONSUME_SUCCESS, consumer.consumeMessage(msgs,
+                new ConsumeConcurrentlyContext(new MessageQueue("test-topic", "broker", 0))));
+        Assert.assertEquals(3, consumedList.size());
+        Assert.assertFalse(consumedList.get(0).isParsed());
+        Assert.assertTrue(consumedList.get(1).isParsed());
+        Assert.assertFalse(consumedList.get(2).isParsed());
+        // 只读视图，不复制消息体
+        ByteBuffer body = bodyList.get(2);
+        Assert.assertTrue(body.isReadOnly());
+        Assert.assertEquals(1, body.remaining());
+        Assert.assertEquals('2', body.get(0));
+        msgs.get(2).getBody()[0] = '3';
+        Assert.assertEquals('3', body.get(0));
+    }
+
+    @Test
+    public void testCompressed() throws Exception {
+        List<String> consumedList = new ArrayList<>();
+        RawMessageConsumer<String> consumer = buildConsumer(new RawConsumerCallback<String>() {
+            public void call(RawMessage<String> message) throws Exception {
+                Assert.assertEquals(3, message.getBodyLength());
+                consumedList.add(message.getMessage());
+            }
+        });
+        List<MessageExt> msgs = buildMessages("a");
+        MessageExt me = msgs.get(0);
+        byte[] compressed = CompressorEnum.DEFLATE.getMessageCompressor().compress("abc".getBytes());
+        me.setBody(compressed);
+        me.putUserProperty(CompressorEnum.PROPERTY_COMPRESSOR, CompressorEnum.DEFLATE.getName());
+        Assert.assertEquals(ConsumeConcurrentlyStatus.CONSUME_SUCCESS, consumer.consumeMessage(msgs,
+                new ConsumeConcurrentlyContext(new MessageQueue("test-topic", "broker", 0))));
+        Assert.assertEquals("[abc]", consumedList.toString());
+        // 解压到本地缓冲区，不修改原消息
+        Assert.assertSame(compressed, me.getBody());
+        Assert.assertNotNull(me.getProperty(CompressorEnum.PROPERTY_COMPRESSOR));
+    }
+
+    @Test
+    public void testFail() {
+        RawMessageConsumer<String> consumer = buildConsumer(new RawConsumerCallback<String>() {
+            public void call(RawMessage<String> message) throws Exception {
+                throw new RuntimeException("mock");
+            }
+        });
+        Assert.assertEquals(ConsumeConcurrentlyStatus.RECONSUME_LATER, consumer.consumeMessage(buildMessages("a"),
+                new ConsumeConcurrentlyContext(new MessageQueue("test-topic", "broker", 0))));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testConsumeObject() throws Exception {
+        buildConsumer(message -> {
+        }).consume("a", new MessageExt());
+    }
+
+    private RawMessageConsumer<String> buildConsumer(RawConsumerCallback<String> callback) {
+        RocketMQConsumer rocketMQConsumer = new RocketMQConsumer("test-raw-consumer", "test-topic");
+        rocketMQConsumer.setEnableStats(false);
+        rocketMQConsumer.setEnableRateLimit(false);
+        rocketMQConsumer.setMessageSerializer(
+                (MessageSerializer<Object>) MessageSerializerEnum.STRING.getMessageSerializer());
+        rocketMQConsumer.setRawConsumerCallback(callback);
+        return new RawMessageConsumer<>(rocketMQConsumer);
+    }
+
+    private List<MessageExt> buildMessages(String... keys) {
+        List<MessageExt> msgs = new ArrayList<>();
+        for (int i = 0; i < keys.length; ++i) {
+            MessageExt messageExt = new MessageExt();
+            messageExt.setTopic("test-topic");
+            messageExt.setKeys(keys[i]);
+            messageExt.setBody(String.valueOf(i).getBytes());
+            msgs.add(messageExt);
+        }
+        return msgs;
+    }
+}
@@ -0,0 +1,245 @@
+package com.sohu.tv.mq.rocketmq.consumer.deduplicate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyContext;
+import org.apache.rocketmq.common.message.MessageClientExt;
+import org.apache.rocketmq.common.message.MessageClientIDSetter;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.sohu.index.tv.mq.common.BatchConsumerCallback;
+import com.sohu.index.tv.mq.common.MQMessage;
+import com.sohu.tv.mq.rocketmq.RocketMQConsumer;
+import com.sohu.tv.mq.rocketmq.consumer.IMessageConsumer.ConsumeStatus;
+import com.sohu.tv.mq.rocketmq.consumer.IMessageConsumer.MessageContext;
+import com.sohu.tv.mq.rocketmq.redis.IRedis;
+import com.sohu.tv.mq.rocketmq.redis.RedisConfiguration;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.params.SetParams;
+import redis.clients.jedis.util.Pool;
+
+public class DeduplicateBatchMessageConsumerTest {
+
+    private MockRedis redis = new MockRedis();
+
+    // 消费的消息体
+    private List<String> consumed = new CopyOnWriteArrayList<>();
+
+    private volatile boolean fail;
+
+    // 发回重试队列的消息
+    private List<MessageExt> sentBack = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void testDeduplicate() {
+        DeduplicateBatchMessageConsumer<ConsumeConcurrentlyContext> consumer = buildConsumer();
+        List<MessageExt> msgs = buildMessages("0", "1", "2");
+        Assert.assertEquals(ConsumeStatus.OK, consumer.consume(buildContext(msgs)));
+        Assert.assertEquals(3, consumed.size());
+        // 一次抢占，一次设置结果
+        Assert.assertEquals(2, redis.trips.get());
+        // 重复投递的消息不再消费
+        Assert.assertEquals(ConsumeStatus.OK, consumer.consume(buildContext(msgs)));
+        Assert.assertEquals(3, consumed.size());
+        // 一次抢占，一次获取标识
+        Assert.assertEquals(4, redis.trips.get());
+    }
+
+    @Test
+    public void testDuplicateInBatch() {
+        DeduplicateBatchMessageConsumer<ConsumeConcurrentlyContext> consumer = buildConsumer();
+        List<MessageExt> msgs = buildMessages("0", "1");
+        msgs.add(msgs.get(0));
+        Assert.assertEquals(ConsumeStatus.OK, consumer.consume(buildContext(msgs)));
+        Assert.assertEquals(2, consumed.size());
+    }
+
+    @Test
+    public void testFailed() {
+        DeduplicateBatchMessageConsumer<ConsumeConcurrentlyContext> consumer = buildConsumer();
+        List<MessageExt> msgs = buildMessages("0", "1");
+        fail = true;
+        Assert.assertEquals(ConsumeStatus.FAIL, consumer.consume(buildContext(msgs)));
+        for (String value : redis.data.values()) {
+            Assert.assertTrue(value.endsWith(":" + DeduplicateHelper.CONSUME_FAILED));
+        }
+    }
+
+    @Test
+    public void testRedisError() {
+        DeduplicateBatchMessageConsumer<ConsumeConcurrentlyContext> consumer = buildConsumer();
+        redis.error = true;
+        Assert.assertEquals(ConsumeStatus.OK, consumer.consume(buildContext(buildMessages("0", "1"))));
+        // redis异常时直接消费
+        Assert.assertEquals(2, consumed.size());
+    }
+
+    @Test
+    public void testFailedWithDuplicate() {
+        DeduplicateBatchMessageConsumer<ConsumeConcurrentlyContext> consumer = buildConsumer();
+        List<MessageExt> msgs = buildMessages("0", "1", "2");
+        Assert.assertEquals(ConsumeStatus.OK, consumer.consume(buildContext(msgs.subList(0, 2))));
+        // 重复的消息跳过，只有消费失败的消息发回重试队列，整批确认
+        fail = true;
+        MessageContext<ConsumeConcurrentlyContext> context = buildContext(msgs);
+        Assert.assertEquals(ConsumeStatus.PARTIAL, consumer.consume(context));
+        Assert.assertEquals(2, context.getAckIndex());
+        Assert.assertEquals(1, sentBack.size());
+        Assert.assertEquals("2", new String(sentBack.get(0).getBody()));
+    }
+
+    @Test
+    public void testBatchRedisError() {
+        DeduplicateBatchMessageConsumer<ConsumeConcurrentlyContext> consumer = buildConsumer();
+        List<MessageExt> msgs = buildMessages("0", "1");
+        Assert.assertEquals(ConsumeStatus.OK, consumer.consume(buildContext(msgs)));
+        // 批量命令异常时逐个设置，仍然去重
+        redis.error = true;
+        redis.singleError = false;
+        Assert.assertEquals(ConsumeStatus.OK, consumer.consume(buildContext(msgs)));
+        Assert.assertEquals(2, consumed.size());
+    }
+
+    private DeduplicateBatchMessageConsumer<ConsumeConcurrentlyContext> buildConsumer() {
+        RocketMQConsumer rocketMQConsumer = new RocketMQConsumer("test-consumer", "test-topic");
+        rocketMQConsumer.setEnableStats(false);
+        rocketMQConsumer.setEnableRateLimit(false);
+        rocketMQConsumer.setRedis(redis);
+        rocketMQConsumer.setBatchConsumerCallback(
+                new BatchConsumerCallback<byte[], ConsumeConcurrentlyContext>() {
+                    public void call(List<MQMessage<byte[]>> batchMessage, ConsumeConcurrentlyContext context)
+                            throws Exception {
+                        if (fail) {
+                            throw new RuntimeException("mock");
+                        }
+                        for (MQMessage<byte[]> mqMessage : batchMessage) {
+                            consumed.add(new String(mqMessage.getMessage()));
+                        }
+                    }
+                });
+        return new DeduplicateBatchMessageConsumer<ConsumeConcurrentlyContext>(rocketMQConsumer) {
+            protected boolean sendMessageBack(MessageExt msgExt, ConsumeConcurrentlyContext context) {
+                sentBack.add(msgExt);
+                return true;
+            }
+        };
+    }
+
+    private List<MessageExt> buildMessages(String... bodies) {
+        List<MessageExt> msgs = new ArrayList<>();
+        for (int i = 0; i < bodies.length; ++i) {
+            MessageClientExt messageExt = new MessageClientExt();
+            messageExt.setTopic("test-topic");
+            messageExt.setBody(bodies[i].getBytes());
+            messageExt.setOffsetMsgId("offset" + i);
+            MessageClientIDSetter.setUniqID(messageExt);
+            msgs.add(messageExt);
+        }
+        return msgs;
+    }
+
+    private MessageContext<ConsumeConcurrentlyContext> buildContext(List<MessageExt> msgs) {
+        return new MessageContext<>(msgs, new ConsumeConcurrentlyContext(new MessageQueue("test-topic", "broker", 0)));
+    }
+
+    private static class MockRedis implements IRedis {
+        private Map<String, String> data = new ConcurrentHashMap<>();
+        // 网络往返次数
+        private AtomicInteger trips = new AtomicInteger();
+        // 批量命令异常
+        private volatile boolean error;
+        // 单个命令异常
+        private volatile boolean singleError = true;
+
+        @Override
+        public void init(RedisConfiguration redisConfiguration) {
+        }
+
+        @Override
+        public RedisConfiguration getRedisConfiguration() {
+            return new RedisConfiguration();
+        }
+
+        @Override
+        public Pool<Jedis> getPool() {
+            return null;
+        }
+
+        @Override
+        public JedisCluster getJedisCluster() {
+            return null;
+        }
+
+        @Override
+        public String set(String key, String value, SetParams params) {
+            if (error && singleError) {
+                throw new RuntimeException("mock");
+            }
+            boolean nx = false;
+            boolean xx = false;
+            for (byte[] param : params.getByteParams()) {
+                String name = new String(param);
+                nx |= "nx".equalsIgnoreCase(name);
+                xx |= "xx".equalsIgnoreCase(name);
+            }
+            if ((nx && data.containsKey(key)) || (xx && !data.containsKey(key))) {
+                return null;
+            }
+            data.put(key, value);
+            return "OK";
+        }
+
+        @Override
+        public String get(String key) {
+            if (error && singleError) {
+                throw new RuntimeException("mock");
+            }
+            return data.get(key);
+        }
+
+        @Override
+        public List<String> set(List<String> keys, List<String> values, SetParams params) {
+            trip();
+            List<String> list = new ArrayList<>();
+            for (int i = 0; i < keys.size(); ++i) {
+                list.add(set(keys.get(i), values.get(i), params));
+            }
+            return list;
+        }
+
+        @Override
+        public List<String> get(List<String> keys) {
+            trip();
+            List<String> list = new ArrayList<>();
+            for (String key : keys) {
+                list.add(get(key));
+            }
+            return list;
+        }
+
+        @Override
+        public synchronized long incrBy(String key, long increment, int expireSeconds) {
+            trip();
+            long value = Long.parseLong(data.getOrDefault(key, "0")) + increment;
+            data.put(key, String.valueOf(value));
+            return value;
+        }
+
+        private void trip() {
+            if (error) {
+                throw new RuntimeException("mock");
+            }
+            trips.incrementAndGet();
+        }
+    }
+}
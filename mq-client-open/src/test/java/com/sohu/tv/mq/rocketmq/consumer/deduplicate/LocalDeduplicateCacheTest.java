@@ -0,0 +1,42 @@
+package com.sohu.tv.mq.rocketmq.consumer.deduplicate;
+
+import org.apache.rocketmq.common.Pair;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LocalDeduplicateCacheTest {
+
+    @Test
+    public void testPutAndGet() {
+        LocalDeduplicateCache cache = new LocalDeduplicateCache(100);
+        Assert.assertNull(cache.get("k1"));
+        cache.put("k1", "offset1", "0", 60);
+        cache.put("k1", "offset1", "2", 60);
+        Pair<String, String> pair = cache.get("k1");
+        Assert.assertEquals("offset1", pair.getObject1());
+        Assert.assertEquals("2", pair.getObject2());
+        cache.remove("k1");
+        Assert.assertNull(cache.get("k1"));
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testExpire() throws InterruptedException {
+        LocalDeduplicateCache cache = new LocalDeduplicateCache(100);
+        cache.put("k1", "offset1", "2", 0);
+        Assert.assertNull(cache.get("k1"));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testMaxSize() {
+        LocalDeduplicateCache cache = new LocalDeduplicateCache(1600);
+        for (int i = 0; i < 100000; ++i) {
+            cache.put("key" + i, "offset" + i, "2", 60);
+        }
+        Assert.assertTrue(cache.size() <= 1600);
+        // 最近写入的仍然存在
+        Assert.assertNotNull(cache.get("key99999"));
+    }
+}
@@ -3,8 +3,10 @@ package com.sohu.tv.mq.rocketmq.limiter;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.junit.Assert;
 import org.junit.Test;
 
 public class LeakyBucketRateLimiterTest {
@@ -50,6 +52,49 @@ public class LeakyBucketRateLimiterTest {
         }
     }
 
+    @Test
+    public void testRate() throws InterruptedException {
+        LeakyBucketRateLimiter rateLimiter = new LeakyBucketRateLimiter("rate", 10, 2000, TimeUnit.SECONDS);
+        final AtomicLong counter = new AtomicLong();
+        final AtomicBoolean stop = new AtomicBoolean();
+        int threadNum = 8;
+        final CountDownLatch countDownLatch = new CountDownLatch(threadNum);
+        for (int i = 0; i < threadNum; ++i) {
+            new Thread() {
+                public void run() {
+                    try {
+                        while (!stop.get()) {
+                            rateLimiter.drip();
+                            counter.incrementAndGet();
+                        }
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                    countDownLatch.countDown();
+                }
+            }.start();
+        }
+        Thread.sleep(500);
+        long count = counter.get();
+        stop.set(true);
+        countDownLatch.await();
+        rateLimiter.shutdown();
+        // 500ms内约1000滴
+        Assert.assertTrue("count:" + count, count >= 900 && count <= 1100);
+    }
+
+    @Test
+    public void testBatchDrip() throws InterruptedException {
+        LeakyBucketRateLimiter rateLimiter = new LeakyBucketRateLimiter("batch", 10, 100, TimeUnit.SECONDS);
+        long start = System.nanoTime();
+        rateLimiter.limit(20);
+        // 前20滴占用200ms，下一滴需等待
+        rateLimiter.limit();
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(190));
+        Assert.assertEquals(0, rateLimiter.getWater());
+        rateLimiter.shutdown();
+    }
+
     public void drip() throws InterruptedException {
         long start = System.currentTimeMillis();
         leakyBucketRateLimiter.drip();
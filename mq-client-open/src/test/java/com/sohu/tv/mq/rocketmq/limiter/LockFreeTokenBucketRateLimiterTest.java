@@ -0,0 +1,59 @@
+package com.sohu.tv.mq.rocketmq.limiter;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LockFreeTokenBucketRateLimiterTest {
+
+    @Test
+    public void testBatchPermits() {
+        LockFreeTokenBucketRateLimiter rateLimiter = new LockFreeTokenBucketRateLimiter(100);
+        // 首个请求立即获得许可
+        Assert.assertEquals(0, rateLimiter.reserve(50));
+        // 后续请求偿还50个令牌，即500ms
+        assertWait(500, rateLimiter.reserve(1));
+    }
+
+    @Test
+    public void testSetRate() {
+        LockFreeTokenBucketRateLimiter rateLimiter = new LockFreeTokenBucketRateLimiter(1000);
+        rateLimiter.setRate(200);
+        Assert.assertEquals(200, rateLimiter.getRate());
+        rateLimiter.reserve(10);
+        // 每个令牌5ms
+        assertWait(50, rateLimiter.reserve(1));
+    }
+
+    /**
+     * 多线程并发预定，预定的令牌不丢失
+     */
+    @Test
+    public void testMultiThread() throws InterruptedException {
+        LockFreeTokenBucketRateLimiter rateLimiter = new LockFreeTokenBucketRateLimiter(1000);
+        int threads = 8;
+        int times = 1000;
+        CountDownLatch latch = new CountDownLatch(threads);
+        for (int i = 0; i < threads; ++i) {
+            new Thread(() -> {
+                for (int j = 0; j < times; ++j) {
+                    rateLimiter.reserve(1);
+                }
+                latch.countDown();
+            }).start();
+        }
+        latch.await();
+        // 每个令牌1ms
+        assertWait(threads * times, rateLimiter.reserve(1));
+    }
+
+    /**
+     * 等待时间为预期值减去测试已耗费的时间，允许100ms误差
+     */
+    private void assertWait(long expectedMillis, long nanosToWait) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanosToWait);
+        Assert.assertTrue("wait:" + millis, millis <= expectedMillis && millis > expectedMillis - 100);
+    }
+}
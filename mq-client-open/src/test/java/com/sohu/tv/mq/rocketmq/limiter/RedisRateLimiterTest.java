@@ -0,0 +1,168 @@
+package com.sohu.tv.mq.rocketmq.limiter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.sohu.tv.mq.rocketmq.redis.IRedis;
+import com.sohu.tv.mq.rocketmq.redis.RedisConfiguration;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.params.SetParams;
+import redis.clients.jedis.util.Pool;
+
+public class RedisRateLimiterTest {
+
+    private MockRedis redis = new MockRedis();
+
+    @Test
+    public void testShareRate() throws InterruptedException {
+        // 4个实例共享每秒1000
+        RateLimiter[] rateLimiters = new RateLimiter[4];
+        for (int i = 0; i < rateLimiters.length; ++i) {
+            rateLimiters[i] = new RedisRateLimiter(redis, "test", 1000);
+        }
+        waitNextSecond();
+        long count = run(rateLimiters, 2, 900);
+        // 每实例最多浪费一批令牌
+        Assert.assertTrue("count:" + count, count >= 960 && count <= 1000);
+        // 按批租借，远少于许可数
+        Assert.assertTrue("incr:" + redis.incr.get(), redis.incr.get() <= 110);
+    }
+
+    @Test
+    public void testSingleInstance() throws InterruptedException {
+        RedisRateLimiter rateLimiter = new RedisRateLimiter(redis, "single", 100);
+        waitNextSecond();
+        long start = System.nanoTime();
+        rateLimiter.limit(100);
+        // 本秒已用完，下一秒才可获取
+        rateLimiter.limit();
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(500));
+    }
+
+    @Test
+    public void testChargeFullPermits() throws InterruptedException {
+        RedisRateLimiter rateLimiter = new RedisRateLimiter(redis, "full", 100);
+        waitNextSecond();
+        long start = System.nanoTime();
+        // 超过速率的批量跨秒扣除
+        rateLimiter.limit(250);
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(1500));
+        long charged = 0;
+        for (Long value : redis.data.values()) {
+            charged += Math.min(value, 100);
+        }
+        Assert.assertTrue("charged:" + charged, charged >= 250);
+    }
+
+    @Test
+    public void testFallback() throws InterruptedException {
+        redis.error = true;
+        RedisRateLimiter rateLimiter = new RedisRateLimiter(redis, "fallback", 200);
+        long count = run(new RateLimiter[] { rateLimiter }, 4, 500);
+        // 降级为本地限速
+        Assert.assertTrue("count:" + count, count >= 80 && count <= 320);
+    }
+
+    private void waitNextSecond() throws InterruptedException {
+        Thread.sleep(1000 - System.currentTimeMillis() % 1000 + 10);
+    }
+
+    private long run(RateLimiter[] rateLimiters, int threads, long millis) throws InterruptedException {
+        LongAdder counter = new LongAdder();
+        AtomicBoolean stop = new AtomicBoolean();
+        CountDownLatch latch = new CountDownLatch(threads * rateLimiters.length);
+        for (RateLimiter rateLimiter : rateLimiters) {
+            for (int i = 0; i < threads; ++i) {
+                Thread thread = new Thread(() -> {
+                    try {
+                        while (!stop.get()) {
+                            rateLimiter.limit();
+                            counter.increment();
+                        }
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                    latch.countDown();
+                });
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+        Thread.sleep(millis);
+        long count = counter.sum();
+        stop.set(true);
+        latch.await(2, TimeUnit.SECONDS);
+        return count;
+    }
+
+    private static class MockRedis implements IRedis {
+        private Map<String, Long> data = new ConcurrentHashMap<>();
+        // incr次数
+        private AtomicInteger incr = new AtomicInteger();
+        private volatile boolean error;
+
+        @Override
+        public void init(RedisConfiguration redisConfiguration) {
+        }
+
+        @Override
+        public RedisConfiguration getRedisConfiguration() {
+            return new RedisConfiguration();
+        }
+
+        @Override
+        public Pool<Jedis> getPool() {
+            return null;
+        }
+
+        @Override
+        public JedisCluster getJedisCluster() {
+            return null;
+        }
+
+        @Override
+        public String set(String key, String value, SetParams params) {
+            return null;
+        }
+
+        @Override
+        public String get(String key) {
+            return null;
+        }
+
+        @Override
+        public List<String> set(List<String> keys, List<String> values, SetParams params) {
+            return null;
+        }
+
+        @Override
+        public List<String> get(List<String> keys) {
+            return null;
+        }
+
+        @Override
+        public long incrBy(String key, long increment, int expireSeconds) {
+            if (error) {
+                throw new RuntimeException("mock");
+            }
+            incr.incrementAndGet();
+            return data.merge(key, increment, Long::sum);
+        }
+
+        @Override
+        public long time() {
+            return System.currentTimeMillis();
+        }
+    }
+}
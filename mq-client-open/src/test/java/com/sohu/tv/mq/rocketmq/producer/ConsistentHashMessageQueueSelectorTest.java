@@ -0,0 +1,64 @@
+package com.sohu.tv.mq.rocketmq.producer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConsistentHashMessageQueueSelectorTest {
+
+    private List<MessageQueue> buildQueues(int brokers, int queues) {
+        List<MessageQueue> mqs = new ArrayList<>();
+        for (int i = 0; i < brokers; ++i) {
+            for (int j = 0; j < queues; ++j) {
+                mqs.add(new MessageQueue("test", "broker-" + i, j));
+            }
+        }
+        return mqs;
+    }
+
+    @Test
+    public void testSameKey() {
+        ConsistentHashMessageQueueSelector selector = new ConsistentHashMessageQueueSelector();
+        List<MessageQueue> mqs = buildQueues(2, 8);
+        Message message = new Message("test", new byte[0]);
+        MessageQueue mq = selector.select(mqs, message, "key");
+        for (int i = 0; i < 10; ++i) {
+            Assert.assertEquals(mq, selector.select(mqs, message, "key"));
+        }
+        message.setKeys("key");
+        Assert.assertEquals(mq, selector.select(mqs, message, null));
+    }
+
+    @Test
+    public void testReshuffle() {
+        ConsistentHashMessageQueueSelector selector = new ConsistentHashMessageQueueSelector();
+        Message message = new Message("test", new byte[0]);
+        List<MessageQueue> mqs = buildQueues(2, 8);
+        Map<String, MessageQueue> before = new HashMap<>();
+        Map<MessageQueue, Integer> distribution = new HashMap<>();
+        int keys = 10000;
+        for (int i = 0; i < keys; ++i) {
+            MessageQueue mq = selector.select(mqs, message, "key" + i);
+            before.put("key" + i, mq);
+            distribution.merge(mq, 1, Integer::sum);
+        }
+        Assert.assertEquals(16, distribution.size());
+        // 扩容一个broker，只有约1/3的key迁移
+        List<MessageQueue> expanded = buildQueues(3, 8);
+        int moved = 0;
+        for (int i = 0; i < keys; ++i) {
+            MessageQueue mq = selector.select(expanded, message, "key" + i);
+            if (!mq.equals(before.get("key" + i))) {
+                Assert.assertEquals("broker-2", mq.getBrokerName());
+                ++moved;
+            }
+        }
+        Assert.assertTrue("moved:" + moved, moved > keys / 5 && moved < keys / 2);
+    }
+}
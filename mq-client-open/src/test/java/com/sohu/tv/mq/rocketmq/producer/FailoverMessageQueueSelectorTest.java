@@ -0,0 +1,33 @@
+package com.sohu.tv.mq.rocketmq.producer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FailoverMessageQueueSelectorTest {
+
+    @Test
+    public void testExcludeFailedBroker() {
+        List<MessageQueue> mqs = new ArrayList<>();
+        for (int i = 0; i < 2; ++i) {
+            for (int j = 0; j < 4; ++j) {
+                mqs.add(new MessageQueue("test", "broker-" + i, j));
+            }
+        }
+        FailoverMessageQueueSelector selector = new FailoverMessageQueueSelector(
+                new ConsistentHashMessageQueueSelector());
+        Message message = new Message("test", new byte[0]);
+        MessageQueue first = selector.select(mqs, message, "key");
+        selector.markFailed();
+        // 重试时排除失败的broker
+        MessageQueue second = selector.select(mqs, message, "key");
+        Assert.assertNotEquals(first.getBrokerName(), second.getBrokerName());
+        // 全部失败时不再排除
+        selector.markFailed();
+        Assert.assertEquals(first, selector.select(mqs, message, "key"));
+    }
+}
@@ -0,0 +1,172 @@
+package com.sohu.tv.mq.rocketmq.producer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.client.producer.SendStatus;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageClientIDSetter;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.sohu.index.tv.mq.common.Result;
+import com.sohu.tv.mq.rocketmq.RocketMQProducer;
+
+public class MessageAccumulatorTest {
+
+    private MockProducer producer = new MockProducer();
+
+    private MessageAccumulator accumulator;
+
+    @After
+    public void shutdown() {
+        accumulator.shutdown();
+    }
+
+    @Test
+    public void testBatchSize() throws Exception {
+        accumulator = new MessageAccumulator(producer, 10, 1024 * 1024, 60000, 1);
+        accumulator.start();
+        List<CompletableFuture<Result<SendResult>>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            futures.add(accumulator.append(new Message("test", ("msg" + i).getBytes())));
+        }
+        for (int i = 0; i < futures.size(); ++i) {
+            Result<SendResult> result = futures.get(i).get(1, TimeUnit.SECONDS);
+            Assert.assertTrue(result.isSuccess());
+            Assert.assertEquals(100 + i, result.getResult().getQueueOffset());
+            Assert.assertEquals("offset" + i, result.getResult().getOffsetMsgId());
+        }
+        Assert.assertEquals(1, producer.batches.size());
+        Assert.assertEquals(10, producer.batches.get(0).intValue());
+    }
+
+    @Test
+    public void testBatchBytes() throws Exception {
+        accumulator = new MessageAccumulator(producer, 100, 1000, 60000, 1);
+        accumulator.start();
+        List<CompletableFuture<Result<SendResult>>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; ++i) {
+            futures.add(accumulator.append(new Message("test", new byte[400])));
+        }
+        for (int i = 0; i < 2; ++i) {
+            Assert.assertTrue(futures.get(i).get(1, TimeUnit.SECONDS).isSuccess());
+        }
+        Assert.assertEquals(2, producer.batches.get(0).intValue());
+    }
+
+    @Test
+    public void testLinger() throws Exception {
+        accumulator = new MessageAccumulator(producer, 100, 1024 * 1024, 10, 2);
+        accumulator.start();
+        CompletableFuture<Result<SendResult>> future = accumulator.append(new Message("test", "msg".getBytes()));
+        Assert.assertTrue(future.get(1, TimeUnit.SECONDS).isSuccess());
+    }
+
+    @Test
+    public void testFailed() throws Exception {
+        producer.fail = true;
+        accumulator = new MessageAccumulator(producer, 2, 1024 * 1024, 60000, 1);
+        accumulator.start();
+        CompletableFuture<Result<SendResult>> future1 = accumulator.append(new Message("test", "msg1".getBytes()));
+        CompletableFuture<Result<SendResult>> future2 = accumulator.append(new Message("test", "msg2".getBytes()));
+        Assert.assertFalse(future1.get(1, TimeUnit.SECONDS).isSuccess());
+        Assert.assertFalse(future2.get(1, TimeUnit.SECONDS).isSuccess());
+    }
+
+    @Test
+    public void testTopic() throws Exception {
+        accumulator = new MessageAccumulator(producer, 2, 1024 * 1024, 60000, 1);
+        accumulator.start();
+        List<CompletableFuture<Result<SendResult>>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; ++i) {
+            futures.add(accumulator.append(new Message("test" + (i % 2), "msg".getBytes())));
+        }
+        for (CompletableFuture<Result<SendResult>> future : futures) {
+            Assert.assertTrue(future.get(1, TimeUnit.SECONDS).isSuccess());
+        }
+        Assert.assertEquals(2, producer.batchTopics.size());
+        for (Set<String> topics : producer.batchTopics) {
+            Assert.assertEquals(1, topics.size());
+        }
+    }
+
+    @Test
+    public void testAppendWhileShutdown() throws Exception {
+        accumulator = new MessageAccumulator(producer, 100, 1024 * 1024, 60000, 4);
+        accumulator.start();
+        List<CompletableFuture<Result<SendResult>>> futures = new CopyOnWriteArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; ++i) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < 10000; ++j) {
+                    futures.add(accumulator.append(new Message("test", "msg".getBytes())));
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        accumulator.shutdown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // 关闭期间追加的消息要么被发送，要么立即失败，不会一直等待
+        for (CompletableFuture<Result<SendResult>> future : futures) {
+            future.get(1, TimeUnit.SECONDS);
+        }
+    }
+
+    private static class MockProducer extends RocketMQProducer {
+        private List<Integer> batches = new CopyOnWriteArrayList<>();
+        private List<Set<String>> batchTopics = new CopyOnWriteArrayList<>();
+        private volatile boolean fail;
+
+        @Override
+        public Result<SendResult> publish(Collection<Message> messages) {
+            if (fail) {
+                return new Result<SendResult>(false, new RuntimeException("mock"));
+            }
+            batches.add(messages.size());
+            Set<String> topics = new HashSet<>();
+            for (Message message : messages) {
+                topics.add(message.getTopic());
+            }
+            batchTopics.add(topics);
+            StringBuilder offsetMsgIds = new StringBuilder();
+            int i = 0;
+            for (Message message : messages) {
+                MessageClientIDSetter.setUniqID(message);
+                if (i > 0) {
+                    offsetMsgIds.append(",");
+                }
+                offsetMsgIds.append("offset").append(i++);
+            }
+            SendResult sendResult = new SendResult(SendStatus.SEND_OK, "", offsetMsgIds.toString(),
+                    new MessageQueue("test", "broker", 0), 100);
+            return new Result<SendResult>(true, sendResult);
+        }
+
+        @Override
+        public Result<SendResult> publish(Message message) {
+            if (fail) {
+                return new Result<SendResult>(false, new RuntimeException("mock"));
+            }
+            batches.add(1);
+            return new Result<SendResult>(true, new SendResult());
+        }
+
+        @Override
+        public int getSendMsgTimeout() {
+            return 1000;
+        }
+    }
+}
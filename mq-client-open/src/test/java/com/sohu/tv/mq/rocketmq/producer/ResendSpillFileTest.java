@@ -0,0 +1,78 @@
+package com.sohu.tv.mq.rocketmq.producer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.apache.rocketmq.common.message.Message;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.sohu.index.tv.mq.common.MQMessage;
+
+public class ResendSpillFileTest {
+
+    @Test
+    public void testAppendAndReplay() throws Exception {
+        File dir = Files.createTempDirectory("spill").toFile();
+        ResendSpillFile spillFile = new ResendSpillFile(dir.getAbsolutePath());
+        spillFile.open();
+        for (int i = 0; i < 10; ++i) {
+            Message message = new Message("test", ("msg" + i).getBytes());
+            message.setKeys("key" + i);
+            Assert.assertTrue(spillFile.append(new MQMessage<>(i % 2 == 0 ? "obj" + i : null, message), i));
+        }
+        spillFile.flush();
+        List<File> replayFiles = spillFile.rotate();
+        Assert.assertEquals(1, replayFiles.size());
+        Assert.assertEquals(0, spillFile.size());
+        // 模拟末尾写了一半的记录
+        try (RandomAccessFile raf = new RandomAccessFile(replayFiles.get(0), "rw")) {
+            raf.seek(raf.length());
+            raf.writeInt(1000);
+            raf.writeInt(1);
+        }
+        List<MQMessage<?>> list = spillFile.read(replayFiles.get(0), "topic", m -> new String(m.getBody()));
+        Assert.assertEquals(10, list.size());
+        for (int i = 0; i < 10; ++i) {
+            MQMessage<?> mqMessage = list.get(i);
+            Assert.assertEquals("topic", mqMessage.getTopic());
+            Assert.assertEquals("key" + i, mqMessage.getKeys());
+            Assert.assertEquals(i, mqMessage.getRetryTimes());
+            Assert.assertEquals("msg" + i, new String(mqMessage.getBody()));
+            Assert.assertEquals(i % 2 == 0 ? "msg" + i : null, mqMessage.getMessage());
+        }
+        spillFile.close();
+    }
+
+    @Test
+    public void testLock() throws Exception {
+        File dir = Files.createTempDirectory("spill").toFile();
+        ResendSpillFile spillFile = new ResendSpillFile(dir.getAbsolutePath());
+        spillFile.open();
+        ResendSpillFile other = new ResendSpillFile(dir.getAbsolutePath());
+        try {
+            other.open();
+            Assert.fail();
+        } catch (IOException e) {
+        }
+        spillFile.close();
+        other.open();
+        other.close();
+    }
+
+    @Test
+    public void testBackoff() {
+        ResendScheduler resendScheduler = new ResendScheduler(null, null, 100, 1000, 10, 10, null);
+        for (int i = 0; i < 100; ++i) {
+            long delay = resendScheduler.backoff(1);
+            Assert.assertTrue(delay >= 50 && delay <= 100);
+            delay = resendScheduler.backoff(3);
+            Assert.assertTrue(delay >= 200 && delay <= 400);
+            delay = resendScheduler.backoff(30);
+            Assert.assertTrue(delay >= 500 && delay <= 1000);
+        }
+    }
+}
@@ -190,6 +190,48 @@ public abstract class SohuMQAdmin extends DefaultMQAdminExt {
         return getConsumeMetrics(consumerGroup, clientId, Constant.COMMAND_FAILED_METRIC, timeoutMillis);
     }
 
+    /**
+     * 获取时间段消费进度
+     * 
+     * @param consumerGroup
+     * @param clientId
+     * @param timeoutMillis
+     * @return
+     * @throws RemotingException
+     * @throws MQClientException
+     * @throws InterruptedException
+     * @throws NoSuchFieldException
+     * @throws SecurityException
+     * @throws IllegalArgumentException
+     * @throws IllegalAccessException
+     */
+    public ConsumerRunningInfo getTimespanConsumeProgress(String consumerGroup, String clientId,
+            final long timeoutMillis) throws RemotingException, MQClientException, InterruptedException,
+            NoSuchFieldException, SecurityException, IllegalArgumentException, IllegalAccessException {
+        return getConsumeMetrics(consumerGroup, clientId, Constant.COMMAND_TIMESPAN_PROGRESS, timeoutMillis);
+    }
+
+    /**
+     * 获取消费线程采样数据
+     * 
+     * @param consumerGroup
+     * @param clientId
+     * @param timeoutMillis
+     * @return
+     * @throws RemotingException
+     * @throws MQClientException
+     * @throws InterruptedException
+     * @throws NoSuchFieldException
+     * @throws SecurityException
+     * @throws IllegalArgumentException
+     * @throws IllegalAccessException
+     */
+    public ConsumerRunningInfo getConsumeProfile(String consumerGroup, String clientId,
+            final long timeoutMillis) throws RemotingException, MQClientException, InterruptedException,
+            NoSuchFieldException, SecurityException, IllegalArgumentException, IllegalAccessException {
+        return getConsumeMetrics(consumerGroup, clientId, Constant.COMMAND_CONSUME_PROFILE, timeoutMillis);
+    }
+
     /**
      * 获取消费指标
      * 
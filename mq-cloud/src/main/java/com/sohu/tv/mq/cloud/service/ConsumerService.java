@@ -14,7 +14,9 @@ import com.sohu.tv.mq.cloud.util.MQCloudConfigHelper;
 import com.sohu.tv.mq.cloud.util.Result;
 import com.sohu.tv.mq.cloud.util.Status;
 import com.sohu.tv.mq.cloud.web.vo.UserInfo;
+import com.sohu.tv.mq.metric.ConsumeProfile;
 import com.sohu.tv.mq.metric.StackTraceMetric;
+import com.sohu.tv.mq.metric.TimespanConsumeProgress;
 import com.sohu.tv.mq.util.Constant;
 import com.sohu.tv.mq.util.JSONUtil;
 import org.apache.rocketmq.client.exception.MQBrokerException;
@@ -930,6 +932,85 @@ public class ConsumerService {
         });
     }
 
+    /**
+     * 获取时间段消费进度
+     * 
+     * @param clientId
+     * @param consumerGroup
+     * @return
+     */
+    public Result<List<TimespanConsumeProgress>> getTimespanConsumeProgress(Cluster cluster, String clientId,
+            String consumerGroup) {
+        return mqAdminTemplate.execute(new DefaultCallback<Result<List<TimespanConsumeProgress>>>() {
+            public Result<List<TimespanConsumeProgress>> callback(MQAdminExt mqAdmin) throws Exception {
+                SohuMQAdmin sohuMQAdmin = (SohuMQAdmin) mqAdmin;
+                ConsumerRunningInfo consumerRunningInfo = sohuMQAdmin.getTimespanConsumeProgress(consumerGroup,
+                        clientId, 1000);
+                if (consumerRunningInfo == null) {
+                    return Result.getResult(Status.NO_RESULT);
+                }
+                Properties properties = consumerRunningInfo.getProperties();
+                if (properties == null) {
+                    return Result.getResult(Status.NO_RESULT);
+                }
+                String progressListString = (String) properties.get(Constant.COMMAND_VALUE_TIMESPAN_PROGRESS);
+                if (progressListString == null) {
+                    return Result.getResult(Status.NO_RESULT);
+                }
+                List<TimespanConsumeProgress> list = JSONUtil.parseList(progressListString,
+                        TimespanConsumeProgress.class);
+                return Result.getResult(list);
+            }
+
+            public Result<List<TimespanConsumeProgress>> exception(Exception e) {
+                logger.error("getTimespanConsumeProgress consumer:{} err:{}", consumerGroup, e.getMessage());
+                return Result.getWebErrorResult(e);
+            }
+
+            public Cluster mqCluster() {
+                return cluster;
+            }
+        });
+    }
+
+    /**
+     * 获取消费线程采样数据
+     * 
+     * @param clientId
+     * @param consumerGroup
+     * @return
+     */
+    public Result<ConsumeProfile> getConsumeProfile(Cluster cluster, String clientId, String consumerGroup) {
+        return mqAdminTemplate.execute(new DefaultCallback<Result<ConsumeProfile>>() {
+            public Result<ConsumeProfile> callback(MQAdminExt mqAdmin) throws Exception {
+                SohuMQAdmin sohuMQAdmin = (SohuMQAdmin) mqAdmin;
+                ConsumerRunningInfo consumerRunningInfo = sohuMQAdmin.getConsumeProfile(consumerGroup, clientId,
+                        1000);
+                if (consumerRunningInfo == null) {
+                    return Result.getResult(Status.NO_RESULT);
+                }
+                Properties properties = consumerRunningInfo.getProperties();
+                if (properties == null) {
+                    return Result.getResult(Status.NO_RESULT);
+                }
+                String profileString = (String) properties.get(Constant.COMMAND_VALUE_CONSUME_PROFILE);
+                if (profileString == null) {
+                    return Result.getResult(Status.NO_RESULT);
+                }
+                return Result.getResult(JSONUtil.parse(profileString, ConsumeProfile.class));
+            }
+
+            public Result<ConsumeProfile> exception(Exception e) {
+                logger.error("getConsumeProfile consumer:{} err:{}", consumerGroup, e.getMessage());
+                return Result.getWebErrorResult(e);
+            }
+
+            public Cluster mqCluster() {
+                return cluster;
+            }
+        });
+    }
+
     /**
      * 消费时间段消息
      * 
@@ -12,9 +12,11 @@ import com.sohu.tv.mq.cloud.util.MQCloudConfigHelper.MQCloudConfigEvent;
 import com.sohu.tv.mq.cloud.web.controller.param.MessageParam;
 import com.sohu.tv.mq.cloud.web.vo.TraceViewVO;
 import com.sohu.tv.mq.cloud.web.vo.TraceViewVO.RequestViewVO;
+import com.sohu.tv.mq.compress.CompressorEnum;
 import com.sohu.tv.mq.serializable.DefaultMessageSerializer;
 import com.sohu.tv.mq.serializable.MessageSerializer;
 import com.sohu.tv.mq.serializable.MessageSerializerEnum;
+import com.sohu.tv.mq.serializable.TypedMessageSerializer;
 import com.sohu.tv.mq.util.CommonUtil;
 import com.sohu.tv.mq.util.JSONUtil;
 import org.apache.commons.lang3.StringUtils;
@@ -368,16 +370,27 @@ public class MessageService {
      */
     private DecodedMessage toDecodedMessage(MessageExt msg, String broker) {
         DecodedMessage m = new DecodedMessage();
+        // 客户端压缩的消息先解压
+        try {
+            CompressorEnum.decompress(msg);
+        } catch (Throwable e) {
+            logger.warn("decompress topic:{} message err:{}", msg.getTopic(), e.toString());
+        }
         byte[] bytes = msg.getBody();
         msg.setBody(null);
         Object decodedBody = bytes;
         try {
-            decodedBody = messageSerializer.deserialize(bytes);
-            // 兼容rocketmq原生客户端未序列化消息
-            if (decodedBody == null) {
-                decodedBody = bytes;
+            if (TypedMessageSerializer.isTyped(bytes)) {
+                decodedBody = deserializeTyped(bytes);
+                m.setMessageBodySerializer(MessageSerializerEnum.TYPED_PROTOSTUF);
             } else {
-                m.setMessageBodySerializer(MessageSerializerEnum.PROTOSTUF);
+                decodedBody = messageSerializer.deserialize(bytes);
+                // 兼容rocketmq原生客户端未序列化消息
+                if (decodedBody == null) {
+                    decodedBody = bytes;
+                } else {
+                    m.setMessageBodySerializer(MessageSerializerEnum.PROTOSTUF);
+                }
             }
         } catch (Exception e) {
             logger.debug("deserialize topic:{} message err:{}", msg.getTopic(), e.getMessage());
@@ -419,6 +432,30 @@ public class MessageService {
         return m;
     }
 
+    /**
+     * 反序列化类型化的消息，根据消息头的类名hash在配置的消息类型中查找
+     * 
+     * @param bytes
+     * @return
+     * @throws Exception 未配置该消息类型时
+     */
+    private Object deserializeTyped(byte[] bytes) throws Exception {
+        MessageTypeClassLoader classLoader = messageTypeClassLoader;
+        int hash = TypedMessageSerializer.getTypeHash(bytes);
+        if (classLoader != null) {
+            for (String className : classLoader.getClassNameUrlMap().keySet()) {
+                if (TypedMessageSerializer.typeHash(className) == hash) {
+                    Class<?> clazz = classLoader.loadClass(className);
+                    if (clazz == null) {
+                        throw new ClassNotFoundException(className);
+                    }
+                    return TypedMessageSerializer.deserialize(bytes, clazz);
+                }
+            }
+        }
+        throw new IllegalStateException("no message type with hash:" + hash + " in messageTypeLocation");
+    }
+
     /**
      * 获取mq偏移量数据
      * 
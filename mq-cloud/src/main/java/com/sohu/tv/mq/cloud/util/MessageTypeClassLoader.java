@@ -59,6 +59,17 @@ public class MessageTypeClassLoader extends ClassLoader {
         if (url == null) {
             return super.loadClass(name);
         }
+        // 已加载的类不能重复定义
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> clazz = findLoadedClass(name);
+            if (clazz != null) {
+                return clazz;
+            }
+            return defineClass(name, url);
+        }
+    }
+
+    private Class<?> defineClass(String name, URL url) {
         try {
             URLConnection connection = url.openConnection();
             InputStream input = connection.getInputStream();
@@ -4,9 +4,11 @@ import com.sohu.tv.mq.cloud.bo.*;
 import com.sohu.tv.mq.cloud.common.MemoryMQ;
 import com.sohu.tv.mq.cloud.service.*;
 import com.sohu.tv.mq.cloud.util.Result;
+import com.sohu.tv.mq.cloud.util.Status;
 import com.sohu.tv.mq.cloud.util.WebUtil;
 import com.sohu.tv.mq.cloud.web.controller.param.TopicUserParam;
 import com.sohu.tv.mq.dto.ClusterInfoDTO;
+import com.sohu.tv.mq.stats.ClientStatsCodec;
 import com.sohu.tv.mq.stats.dto.ClientStats;
 import com.sohu.tv.mq.util.JSONUtil;
 import org.slf4j.Logger;
@@ -18,7 +20,9 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.util.List;
 /**
  * 集群信息查询
  * @Description: 
@@ -127,6 +131,33 @@ public class ClusterController {
         }
         return Result.getOKResult();
     }
+
+    /**
+     * 上报客户端统计，gzip压缩的二进制格式，一次可携带多条
+     * 解码失败时返回400，客户端会退化为json上报
+     * @param request
+     * @param response
+     * @return
+     * @throws Exception
+     */
+    @RequestMapping(value = "/report/binary", method = RequestMethod.POST)
+    public Result<?> reportBinary(HttpServletRequest request, HttpServletResponse response) throws Exception {
+        List<ClientStats> list = null;
+        try {
+            list = ClientStatsCodec.decode(request.getInputStream());
+        } catch (Exception e) {
+            logger.error("decode err, ip:{}", WebUtil.getIp(request), e);
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return Result.getResult(Status.PARAM_ERROR);
+        }
+        for (ClientStats clientStats : list) {
+            boolean rst = clientStatsMemoryMQ.produce(clientStats);
+            if (!rst) {
+                logger.info("save failed:{}", clientStats);
+            }
+        }
+        return Result.getOKResult();
+    }
     
     /**
      * 保存客户端版本
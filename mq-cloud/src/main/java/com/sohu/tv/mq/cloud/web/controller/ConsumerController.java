@@ -8,6 +8,7 @@ import com.sohu.tv.mq.cloud.web.controller.param.*;
 import com.sohu.tv.mq.cloud.web.vo.ConsumerProgressVO;
 import com.sohu.tv.mq.cloud.web.vo.QueueOwnerVO;
 import com.sohu.tv.mq.cloud.web.vo.UserInfo;
+import com.sohu.tv.mq.metric.ConsumeProfile;
 import com.sohu.tv.mq.metric.StackTraceMetric;
 import com.sohu.tv.mq.util.CommonUtil;
 import com.sohu.tv.mq.util.Constant;
@@ -974,6 +975,60 @@ public class ConsumerController extends ViewController {
         return view;
     }
 
+    /**
+     * 消费线程采样，折叠堆栈格式，可直接用于生成火焰图
+     * 
+     * @param userInfo
+     * @param clientId
+     * @param consumer
+     * @return
+     * @throws Exception
+     */
+    @ResponseBody
+    @RequestMapping(value = "/consumeProfile", produces = "text/plain;charset=UTF-8")
+    public String consumeProfile(UserInfo userInfo, @RequestParam("clientId") String clientId,
+            @RequestParam(value = "consumer") String consumer) throws Exception {
+        Result<Consumer> consumerResult = consumerService.queryConsumerByName(consumer);
+        if (consumerResult.isNotOK()) {
+            return "consumer:" + consumer + " not found";
+        }
+        Result<Topic> topicResult = topicService.queryTopic(consumerResult.getResult().getTid());
+        if (topicResult.isNotOK()) {
+            return "topic not found";
+        }
+        Cluster cluster = clusterService.getMQClusterById(topicResult.getResult().getClusterId());
+        Result<ConsumeProfile> result = consumerService.getConsumeProfile(cluster, clientId, consumer);
+        if (result.isNotOK()) {
+            return "no profile, set consumeProfileEnabled=true and upgrade client";
+        }
+        return result.getResult().toFolded();
+    }
+
+    /**
+     * 时间段重新消费的进度
+     * 
+     * @param userInfo
+     * @param clientId
+     * @param consumer
+     * @return
+     * @throws Exception
+     */
+    @ResponseBody
+    @RequestMapping("/timespanProgress")
+    public Result<?> timespanProgress(UserInfo userInfo, @RequestParam("clientId") String clientId,
+            @RequestParam(value = "consumer") String consumer) throws Exception {
+        Result<Consumer> consumerResult = consumerService.queryConsumerByName(consumer);
+        if (consumerResult.isNotOK()) {
+            return Result.getWebResult(consumerResult);
+        }
+        Result<Topic> topicResult = topicService.queryTopic(consumerResult.getResult().getTid());
+        if (topicResult.isNotOK()) {
+            return Result.getWebResult(topicResult);
+        }
+        Cluster cluster = clusterService.getMQClusterById(topicResult.getResult().getClusterId());
+        return Result.getWebResult(consumerService.getTimespanConsumeProgress(cluster, clientId, consumer));
+    }
+
     /**
      * 消费失败指标
      * 
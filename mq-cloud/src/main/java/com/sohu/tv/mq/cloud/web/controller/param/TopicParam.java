@@ -44,7 +44,7 @@ public class TopicParam {
     private int delayEnabled;
     
     // 序列化器
-    @Range(min = 0, max = 1)
+    @Range(min = 0, max = 2)
     private int serializer;
 
     // 是否开启http生产